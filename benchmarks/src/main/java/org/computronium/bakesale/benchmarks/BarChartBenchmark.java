@@ -0,0 +1,84 @@
+package org.computronium.bakesale.benchmarks;
+
+import org.computronium.bakesale.barchart.BarChartModel;
+import org.computronium.bakesale.barchart.BarChartRenderer;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lays out and paints a bar chart with the given number of bars.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx2g"})
+public class BarChartBenchmark {
+    private static final Color[] COLORS = {Color.RED, Color.ORANGE, Color.BLUE, Color.GREEN};
+
+    @Param({"5", "500", "50000"})
+    public int bars;
+
+    @Param({"640x480", "1920x1080"})
+    public String size;
+
+    private BarChartRenderer renderer;
+
+    private Canvas canvas;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        final String[] labels = new String[bars];
+        final double[] values = new double[bars];
+        for (int i = 0; i < bars; i++) {
+            labels[i] = "Bar " + i;
+            values[i] = random.nextInt(2000);
+        }
+
+        renderer = new BarChartRenderer();
+        renderer.setTitle("Bars");
+        renderer.setYAxisLabel("Value");
+        renderer.setModel(new BarChartModel() {
+            public int getBarCount() {
+                return labels.length;
+            }
+
+            public String getLabel(int index) {
+                return labels[index];
+            }
+
+            public double getValue(int index) {
+                return values[index];
+            }
+
+            public Color getColor(int index) {
+                return COLORS[index % COLORS.length];
+            }
+        });
+
+        canvas = new Canvas(size);
+        renderer.layout(canvas.getGraphics(), canvas.getBounds());
+    }
+
+    @TearDown
+    public void tearDown() {
+        canvas.dispose();
+    }
+
+    @Benchmark
+    public Rectangle layout() {
+        renderer.layout(canvas.getGraphics(), canvas.getBounds());
+        return renderer.getBounds();
+    }
+
+    @Benchmark
+    public Object paint() {
+        renderer.paint(canvas.clear());
+        return canvas.getImage();
+    }
+}
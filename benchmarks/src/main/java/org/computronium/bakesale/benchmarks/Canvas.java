@@ -0,0 +1,55 @@
+package org.computronium.bakesale.benchmarks;
+
+import org.computronium.bakesale.render.ChartImages;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * An off-screen image for a benchmark to draw on, sized from a parameter
+ * such as "640x480".
+ */
+final class Canvas {
+    private final BufferedImage image;
+
+    private final Graphics2D graphics;
+
+    private final Rectangle bounds;
+
+    Canvas(String size) {
+        int split = size.indexOf('x');
+        int width = Integer.parseInt(size.substring(0, split));
+        int height = Integer.parseInt(size.substring(split + 1));
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        bounds = new Rectangle(0, 0, width, height);
+    }
+
+    /**
+     * Returns the graphics to draw with, cleared to the background color.
+     */
+    Graphics2D clear() {
+        graphics.setColor(ChartImages.BACKGROUND_COLOR);
+        graphics.fillRect(0, 0, bounds.width, bounds.height);
+        graphics.setColor(Color.BLACK);
+        return graphics;
+    }
+
+    Graphics2D getGraphics() {
+        return graphics;
+    }
+
+    Rectangle getBounds() {
+        return bounds;
+    }
+
+    BufferedImage getImage() {
+        return image;
+    }
+
+    void dispose() {
+        graphics.dispose();
+    }
+}
@@ -0,0 +1,70 @@
+package org.computronium.bakesale.benchmarks;
+
+import org.computronium.bakesale.graph.ArrayGraphModel;
+import org.computronium.bakesale.graph.GraphRenderer;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lays out and paints a graph of a single series of the given number of
+ * points.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx4g"})
+public class GraphBenchmark {
+    @Param({"10", "1000", "100000", "10000000"})
+    public int points;
+
+    @Param({"640x480", "1920x1080"})
+    public String size;
+
+    private GraphRenderer renderer;
+
+    private Canvas canvas;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        double[] xs = new double[points];
+        double[] ys = new double[points];
+        double y = 0;
+        for (int i = 0; i < points; i++) {
+            y += random.nextGaussian();
+            xs[i] = i;
+            ys[i] = y;
+        }
+
+        renderer = new GraphRenderer();
+        renderer.setTitle("Random Walk");
+        renderer.setXAxisLabel("Step");
+        renderer.setYAxisLabel("Position");
+        renderer.addModel(new ArrayGraphModel(xs, ys, Color.BLUE));
+
+        canvas = new Canvas(size);
+        renderer.layout(canvas.getGraphics(), canvas.getBounds());
+    }
+
+    @TearDown
+    public void tearDown() {
+        canvas.dispose();
+    }
+
+    @Benchmark
+    public Rectangle layout() {
+        renderer.layout(canvas.getGraphics(), canvas.getBounds());
+        return renderer.getBounds();
+    }
+
+    @Benchmark
+    public Object paint() {
+        renderer.paint(canvas.clear());
+        return canvas.getImage();
+    }
+}
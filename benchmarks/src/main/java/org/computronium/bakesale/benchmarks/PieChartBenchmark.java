@@ -0,0 +1,89 @@
+package org.computronium.bakesale.benchmarks;
+
+import org.computronium.bakesale.piechart.PieChartModel;
+import org.computronium.bakesale.piechart.PieChartRenderer;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lays out and paints a pie chart with the given number of wedges.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx2g"})
+public class PieChartBenchmark {
+    private static final Color[] COLORS = {
+            new Color(255, 236, 0), new Color(156, 206, 46), new Color(249, 99, 13),
+            new Color(247, 174, 22), new Color(88, 142, 3)};
+
+    @Param({"3", "300", "5000"})
+    public int wedges;
+
+    @Param({"640x480", "1920x1080"})
+    public String size;
+
+    private PieChartRenderer renderer;
+
+    private Canvas canvas;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        final String[] names = new String[wedges];
+        final double[] values = new double[wedges];
+        for (int i = 0; i < wedges; i++) {
+            names[i] = "Wedge " + i;
+            values[i] = 1 + random.nextInt(100);
+        }
+
+        renderer = new PieChartRenderer();
+        renderer.setTitle("Wedges");
+        renderer.setModel(new PieChartModel() {
+            public int getCount() {
+                return names.length;
+            }
+
+            public String getName(int index) {
+                return names[index];
+            }
+
+            public double getValue(int index) {
+                return values[index];
+            }
+
+            public Color getColor(int index) {
+                return COLORS[index % COLORS.length];
+            }
+
+            public boolean isOutset(int index) {
+                return index == 0;
+            }
+        });
+
+        canvas = new Canvas(size);
+        renderer.layout(canvas.getGraphics(), canvas.getBounds());
+    }
+
+    @TearDown
+    public void tearDown() {
+        canvas.dispose();
+    }
+
+    @Benchmark
+    public Rectangle layout() {
+        renderer.layout(canvas.getGraphics(), canvas.getBounds());
+        return renderer.getBounds();
+    }
+
+    @Benchmark
+    public Object paint() {
+        renderer.paint(canvas.clear());
+        return canvas.getImage();
+    }
+}
@@ -0,0 +1,316 @@
+package org.computronium.bakesale.axis;
+
+import java.util.Arrays;
+
+/**
+ * Works out the range and tick marks for a chart axis.  Ticks are placed at
+ * "nice" numbers, i.e. multiples of 1, 2 or 5 times a power of ten, far
+ * enough apart that their labels don't run into each other.
+ * <p>
+ * The step is worked out directly from the data range and the room available
+ * rather than by trying one step after another, and nothing is allocated, so
+ * the same instance can be fitted again on every layout.  Each label is
+ * formatted the first time it's asked for and kept until a fit moves the
+ * ticks, so painting the axis again doesn't make new strings.  Nothing here
+ * depends on AWT: the caller says how much room each label needs.
+ */
+public final class AxisScale {
+    /**
+     * Powers of ten, for formatting labels with up to MAX_FRACTION_DIGITS
+     * digits after the decimal point.
+     */
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L,
+            100000000L, 1000000000L, 10000000000L, 100000000000L,
+            1000000000000L, 10000000000000L, 100000000000000L,
+            1000000000000000L};
+
+    private static final int MAX_FRACTION_DIGITS = POWERS_OF_TEN.length - 1;
+
+    /**
+     * Tick values are rounded to whole multiples of the step, allowing this
+     * much slack for floating point error.
+     */
+    private static final double EPSILON = 1e-9;
+
+    private double min = 0;
+
+    private double max = 1;
+
+    private double step = 1;
+
+    private long firstTick;
+
+    private int tickCount = 2;
+
+    private int fractionDigits;
+
+    /**
+     * The labels of the ticks, by index, or null where they haven't been
+     * formatted yet, for the first tick, step and digits they were
+     * formatted with.
+     */
+    private String[] labels = new String[0];
+
+    private long labelsFirstTick;
+
+    private double labelsStep = Double.NaN;
+
+    private int labelsFractionDigits;
+
+    /**
+     * Fits the scale to the given range of data, widening it out to whole
+     * steps so that there's a tick at each end.
+     *
+     * @param dataMin        the smallest value to be shown
+     * @param dataMax        the largest value to be shown
+     * @param length         the length of the axis, in pixels
+     * @param minTickSpacing the least room, in pixels, to leave between ticks
+     * @param charWidth      how much further apart the ticks need to be for
+     *                       each character in their labels, for an axis whose
+     *                       labels sit side by side; zero if they don't
+     * @return this scale
+     */
+    public AxisScale fit(double dataMin, double dataMax, double length, double minTickSpacing,
+                         double charWidth) {
+        return fit(dataMin, dataMax, length, minTickSpacing, charWidth, true);
+    }
+
+    /**
+     * Fits the scale to exactly the given range, as when showing part of the
+     * data zoomed in.  Ticks go at whichever multiples of the step fall
+     * within the range, so there may not be one at either end.
+     *
+     * @see #fit(double, double, double, double, double)
+     */
+    public AxisScale fitWithin(double rangeMin, double rangeMax, double length,
+                               double minTickSpacing, double charWidth) {
+        return fit(rangeMin, rangeMax, length, minTickSpacing, charWidth, false);
+    }
+
+    private AxisScale fit(double dataMin, double dataMax, double length, double minTickSpacing,
+                          double charWidth, boolean roundOut) {
+        if (!(dataMin <= dataMax) || Double.isInfinite(dataMin) || Double.isInfinite(dataMax)) {
+            // No data to speak of.
+            dataMin = 0;
+            dataMax = 1;
+        } else if (dataMin == dataMax) {
+            double pad = dataMin == 0 ? 1 : Math.abs(dataMin) / 10;
+            dataMin -= pad;
+            dataMax += pad;
+        }
+
+        // The labels take up most room at the ends of the axis.  Fractional
+        // steps need room for a decimal point and some digits after it, which
+        // can only widen the step, so one more go is enough.
+        int chars = Math.max(getLabelLength(dataMin, 0), getLabelLength(dataMax, 0));
+        fitStep(dataMin, dataMax, length, minTickSpacing + charWidth * chars, roundOut);
+        if (charWidth > 0 && fractionDigits > 0) {
+            chars += fractionDigits + 1;
+            fitStep(dataMin, dataMax, length, minTickSpacing + charWidth * chars, roundOut);
+        }
+        if (roundOut) {
+            min = getTick(0);
+            max = getTick(tickCount - 1);
+        } else {
+            min = dataMin;
+            max = dataMax;
+        }
+        return this;
+    }
+
+    /**
+     * Picks the smallest nice step which leaves at least the given spacing
+     * between ticks, once the range has been widened out to whole steps if
+     * roundOut is set.
+     */
+    private void fitStep(double dataMin, double dataMax, double length, double spacing,
+                         boolean roundOut) {
+        int max_intervals = spacing > 0 ? (int) Math.min(length / spacing, Integer.MAX_VALUE) : 1;
+        max_intervals = Math.max(1, max_intervals);
+
+        double raw_step = (dataMax - dataMin) / max_intervals;
+        double magnitude = Math.pow(10, Math.floor(Math.log10(raw_step)));
+        double mantissa = raw_step / magnitude;
+        int nice;
+        if (mantissa <= 1 + EPSILON) {
+            nice = 1;
+        } else if (mantissa <= 2 + EPSILON) {
+            nice = 2;
+        } else if (mantissa <= 5 + EPSILON) {
+            nice = 5;
+        } else {
+            nice = 1;
+            magnitude *= 10;
+        }
+
+        if (!roundOut) {
+            step = nice * magnitude;
+            firstTick = (long) Math.ceil(dataMin / step - EPSILON);
+            tickCount = (int) ((long) Math.floor(dataMax / step + EPSILON) - firstTick + 1);
+            fractionDigits = getFractionDigits(step);
+            return;
+        }
+
+        // Rounding the ends out to whole steps can add up to a step at each
+        // end, which the next nice step up always makes up for.
+        while (true) {
+            step = nice * magnitude;
+            firstTick = (long) Math.floor(dataMin / step + EPSILON);
+            long last_tick = (long) Math.ceil(dataMax / step - EPSILON);
+            if (last_tick == firstTick) {
+                last_tick++;
+            }
+            tickCount = (int) (last_tick - firstTick + 1);
+            if (tickCount - 1 <= max_intervals) {
+                break;
+            }
+            if (nice == 5) {
+                nice = 1;
+                magnitude *= 10;
+            } else {
+                nice = nice == 1 ? 2 : 5;
+            }
+        }
+        fractionDigits = getFractionDigits(step);
+    }
+
+    /**
+     * Returns the number of digits needed after the decimal point to show
+     * multiples of the given step exactly.
+     */
+    private static int getFractionDigits(double step) {
+        int digits = (int) -Math.floor(Math.log10(step) + EPSILON);
+        return Math.max(0, Math.min(MAX_FRACTION_DIGITS, digits));
+    }
+
+    /**
+     * Returns how many characters the label for the given value has, with the
+     * given number of digits after the decimal point.
+     */
+    public static int getLabelLength(double value, int fractionDigits) {
+        if (Double.isInfinite(value) || Double.isNaN(value)) {
+            // As when there's no data yet.
+            return String.valueOf(value).length();
+        }
+        int length = value < 0 ? 2 : 1;
+        for (double magnitude = Math.abs(value); magnitude >= 10; magnitude /= 10) {
+            length++;
+        }
+        if (fractionDigits > 0) {
+            length += fractionDigits + 1;
+        }
+        return length;
+    }
+
+    /**
+     * Returns the value at the bottom of the axis.
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the value at the top of the axis.
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the distance between ticks.
+     */
+    public double getStep() {
+        return step;
+    }
+
+    /**
+     * Returns the number of ticks, including any at each end.  There can be
+     * none at all, if the scale was fitted within a range narrower than a
+     * step.
+     */
+    public int getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Returns the value of the tick with the given index, counting up from
+     * the minimum.
+     */
+    public double getTick(int index) {
+        return (firstTick + index) * step;
+    }
+
+    /**
+     * Returns the number of digits shown after the decimal point in labels.
+     */
+    public int getFractionDigits() {
+        return fractionDigits;
+    }
+
+    /**
+     * Returns the label for the tick with the given index.
+     */
+    public String getLabel(int index) {
+        if (index < 0 || index >= tickCount) {
+            return formatLabel(getTick(index));
+        }
+        if (firstTick != labelsFirstTick || step != labelsStep
+                || fractionDigits != labelsFractionDigits) {
+            Arrays.fill(labels, null);
+            labelsFirstTick = firstTick;
+            labelsStep = step;
+            labelsFractionDigits = fractionDigits;
+        }
+        if (labels.length < tickCount) {
+            labels = Arrays.copyOf(labels, tickCount);
+        }
+        String label = labels[index];
+        if (label == null) {
+            label = formatLabel(getTick(index));
+            labels[index] = label;
+        }
+        return label;
+    }
+
+    /**
+     * Formats the given tick value with fractionDigits digits after the
+     * decimal point.
+     */
+    private String formatLabel(double value) {
+        if (Math.abs(value) >= 1e15) {
+            return String.valueOf(value);
+        }
+        if (fractionDigits == 0) {
+            return Long.toString(Math.round(value));
+        }
+
+        long scaled = Math.round(Math.abs(value) * POWERS_OF_TEN[fractionDigits]);
+        StringBuilder sb = new StringBuilder(24);
+        if (value < 0 && scaled != 0) {
+            sb.append('-');
+        }
+        sb.append(scaled / POWERS_OF_TEN[fractionDigits]).append('.');
+        String fraction = Long.toString(scaled % POWERS_OF_TEN[fractionDigits]);
+        for (int i = fraction.length(); i < fractionDigits; i++) {
+            sb.append('0');
+        }
+        return sb.append(fraction).toString();
+    }
+
+    /**
+     * Returns the longest label, in characters.
+     */
+    public int getMaxLabelLength() {
+        if (tickCount == 0) {
+            return 0;
+        }
+        return Math.max(getLabelLength(getTick(0), fractionDigits),
+                getLabelLength(getTick(tickCount - 1), fractionDigits));
+    }
+
+    @Override
+    public String toString() {
+        return "AxisScale[" + getMin() + " to " + getMax() + " by " + step + "]";
+    }
+}
@@ -0,0 +1,16 @@
+package org.computronium.bakesale.barchart;
+
+import java.util.EventListener;
+
+/**
+ * Listener notified when the bars of an ObservableBarChartModel change.
+ */
+public interface BarChartModelListener extends EventListener {
+    /**
+     * Called when the model has changed in any way: bars added or removed,
+     * or their labels, values or colors changed.
+     *
+     * @param model the model that changed
+     */
+    void modelChanged(BarChartModel model);
+}
@@ -1,55 +1,50 @@
 package org.computronium.bakesale.barchart;
 
+import org.computronium.bakesale.metrics.RenderMetrics;
+import org.computronium.bakesale.render.ChartImages;
+import org.computronium.bakesale.render.RepaintScheduler;
+import org.computronium.bakesale.render.StaticLayerCache;
+
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
-import java.awt.geom.AffineTransform;
+import java.awt.event.MouseEvent;
 
 /**
- * A panel used to display a bar graph.
+ * A panel used to display a bar graph.  All the layout and drawing is done
+ * by a BarChartRenderer, which can also be used on its own to draw the chart
+ * without a display.
  */
 @SuppressWarnings("serial")
 public class BarChartPanel extends JPanel {
-    private static final int GAP_BETWEEN_TITLE_AND_CHART = 5;
-
-    private static final int GAP_BETWEEN_X_AXIS_LABELS_AND_X_AXIS = 5;
-
-    private static final int GAP_BETWEEN_Y_AXIS_LABEL_AND_Y_AXIS = 10;
-
-    private static final int GAP_BETWEEN_HASH_MARK_AND_VALUE_LABEL = 3;
-
-    private static final int HASH_MARK_SIZE = 5;
-
-    private static final int MARGIN = 10;
-
-    private static final int PERCENT_WIDTH_OF_EACH_BAR = 40;
-
     private static final Color BACKGROUND_COLOR = Color.WHITE;
 
     private static final Color FOREGROUND_COLOR = Color.BLACK;
 
-    private Font titleFont = new Font("Arial", Font.BOLD, 16);
+    private final BarChartRenderer renderer = new BarChartRenderer();
 
-    private BarChartModel model;
+    private final StaticLayerCache staticLayer = new StaticLayerCache();
 
-    private String title;
+    private final BarChartModelListener modelListener = model -> modelChanged();
 
-    private String yAxisLabel;
+    private RepaintScheduler repaintScheduler;
 
-    private Rectangle visibleRect;
-
-    private FontMetrics fontMetrics;
-
-    private FontMetrics titleFontMetrics;
-
-    private int yScale;
+    /**
+     * The update registered with the repaint scheduler, or null if there's
+     * no scheduler and changes are dealt with straight away.
+     */
+    private volatile RepaintScheduler.Update scheduledUpdate;
 
-    private int scaleMinY;
-    private int scaleMaxY;
+    /**
+     * The part of the panel showing and its font, as of the last time they
+     * were looked at on the event dispatch thread, for laying the chart out
+     * on other threads.  Neither is initialized here, as the font is first
+     * set while the superclass is constructed.
+     */
+    private volatile Rectangle layoutBounds;
 
-    private int graphBottom;
-    private int graphTop;
+    private volatile Font layoutFont;
 
     /**
      * Class constructor.
@@ -65,12 +60,29 @@ public class BarChartPanel extends JPanel {
         setBackground(BACKGROUND_COLOR);
         setForeground(FOREGROUND_COLOR);
 
+        // Register with the tool tip manager; the text depends on where the
+        // mouse is.
+        setToolTipText("");
+
         addComponentListener(new ComponentAdapter() {
             public void componentResized(ComponentEvent e) {
                 recalculateMetrics();
                 repaint();
             }
         });
+
+        // The wheel scrolls through the bars when there are too many to
+        // show at once.  Only the bars need painting again.
+        addMouseWheelListener(e -> {
+            synchronized (renderer) {
+                if (renderer.getScrollRange() == 0) {
+                    return;
+                }
+                renderer.setScrollX(renderer.getScrollX()
+                        + (int) Math.round(e.getUnitsToScroll() * renderer.getSlotWidth()));
+            }
+            repaint();
+        });
     }
 
     /* (non-Javadoc)
@@ -80,222 +92,334 @@ public class BarChartPanel extends JPanel {
     public void paint(Graphics g) {
         super.paint(g);
 
-        g.setColor(FOREGROUND_COLOR);
-
-        int x_midpoint = this.visibleRect.x + this.visibleRect.width / 2;
-
-        // Draw the title.
-        if (title != null && !"".equals(title)) {
-            Font original_font = g.getFont();
-            g.setFont(titleFont);
-            g.drawString(title, x_midpoint
-                            - titleFontMetrics.stringWidth(title) / 2,
-                    this.visibleRect.y + MARGIN + titleFontMetrics.getHeight());
-            g.setFont(original_font);
+        Rectangle bounds = renderer.getBounds();
+        if (bounds == null) {
+            return;
         }
 
-        boolean show_y_axis_label = yAxisLabel != null
-                && !"".equals(yAxisLabel) && fontMetrics != null;
-
-        // Figure where on the screen is the minimum x value (where the
-        // vertical y access will be drawn).  This will depend on how big
-        // the number labels are on the y access hash marks.  So assume
-        // the biggest y value is the longest, when drawn as a string.
-        int min_x_pos = this.visibleRect.x
-                + fontMetrics.stringWidth(String.valueOf(scaleMaxY)) + MARGIN
-                + HASH_MARK_SIZE;
-        if (show_y_axis_label) {
-            min_x_pos += fontMetrics.getHeight()
-                    + GAP_BETWEEN_Y_AXIS_LABEL_AND_Y_AXIS;
+        long start = System.nanoTime();
+        RenderMetrics metrics = renderer.getMetrics();
+        Graphics2D g2d = (Graphics2D) g;
+        synchronized (renderer) {
+            metrics.staticLayerPainted(staticLayer.paint(g2d, bounds,
+                    renderer.getStaticLayerKey(), renderer::paintStaticLayer));
+            renderer.paintDataLayer(g2d);
         }
-        int max_x_pos = this.visibleRect.x + this.visibleRect.width - MARGIN;
+        metrics.paintFinished(System.nanoTime() - start);
+    }
 
-        int min_y_pos = getScreenY(scaleMinY);
-        int max_y_pos = getScreenY(scaleMaxY);
+    /**
+     * Counts the repaint towards the metrics, then asks for it as usual.
+     */
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {
+        // This is called while the superclass is constructed, before there's
+        // a renderer.
+        if (renderer != null) {
+            renderer.getMetrics().repaintRequested();
+        }
+        super.repaint(tm, x, y, width, height);
+    }
 
-        // Draw the x axis line
-        g.drawLine(min_x_pos, min_y_pos, max_x_pos, min_y_pos);
+    /**
+     * Returns the label and value of the bar under the mouse, if there is
+     * one.
+     */
+    @Override
+    public String getToolTipText(MouseEvent event) {
+        synchronized (renderer) {
+            int index = renderer.getBarAt(event.getX(), event.getY());
+            if (index < 0) {
+                return null;
+            }
+            BarChartModel model = renderer.getShownModel();
+            int series = renderer.getSeriesAt(event.getX(), event.getY());
+            if (series >= 0) {
+                MultiSeriesBarChartModel multi_series = (MultiSeriesBarChartModel) model;
+                return model.getLabel(index) + ", " + multi_series.getSeriesName(series) + ": "
+                        + multi_series.getValue(index, series);
+            }
+            return model.getLabel(index) + ": " + model.getValue(index);
+        }
+    }
 
-        // Draw the y axis plus hashmarks.
-        g.drawLine(min_x_pos, min_y_pos, min_x_pos, max_y_pos);
-        for (int y = scaleMinY; y <= scaleMaxY; y += yScale) {
-            int y_pos = getScreenY(y);
+    /**
+     * Finds the bar at the given position in the panel.
+     *
+     * @return the index of the bar, or -1 if the position isn't on one
+     */
+    public int getBarAt(int x, int y) {
+        synchronized (renderer) {
+            return renderer.getBarAt(x, y);
+        }
+    }
 
-            // Draw the hashmark.
-            g.drawLine(min_x_pos - HASH_MARK_SIZE, y_pos, min_x_pos
-                    + HASH_MARK_SIZE, y_pos);
+    /**
+     * Remembers the font, so that the chart can be laid out in it from any
+     * thread.
+     */
+    @Override
+    public void setFont(Font font) {
+        super.setFont(font);
+        layoutFont = font;
+    }
 
-            // Label the hashmark.
-            String value_label = String.valueOf(y);
-            g.drawString(value_label, min_x_pos - HASH_MARK_SIZE
-                    - fontMetrics.stringWidth(value_label)
-                    - GAP_BETWEEN_HASH_MARK_AND_VALUE_LABEL, y_pos
-                    + fontMetrics.getAscent() / 2);
+    /**
+     * Passes the color on to the renderer, which draws the axis, the bar
+     * labels and the title in it.  A null color leaves the renderer with the one the
+     * panel now inherits from its parent, if there is one.
+     */
+    @Override
+    public void setForeground(Color foreground) {
+        super.setForeground(foreground);
+        Color color = getForeground();
+        // The superclass sets a foreground while being constructed, before
+        // the renderer is.
+        if (renderer != null && color != null) {
+            synchronized (renderer) {
+                renderer.setForeground(color);
+            }
         }
+    }
 
-        // Draw the y axis label.
-        if (show_y_axis_label) {
-            Graphics2D g2d = (Graphics2D) g;
-            AffineTransform save_at = g2d.getTransform();
-            AffineTransform at = new AffineTransform();
-            int x = visibleRect.x + MARGIN + fontMetrics.getHeight();
-            int y_midpoint = getScreenY((this.scaleMinY + this.scaleMaxY) / 2D);
-            int y = y_midpoint + fontMetrics.stringWidth(yAxisLabel) / 2;
-            at.setToRotation(-Math.PI / 2.0, x, y);
-            g2d.setTransform(at);
-            g2d.drawString(yAxisLabel, x, y);
-            g2d.setTransform(save_at);
+    /**
+     * Recomputes all the values necessary to draw the chart.
+     */
+    private void recalculateMetrics() {
+        Rectangle bounds;
+        Font font;
+        Graphics g = null;
+        if (SwingUtilities.isEventDispatchThread()) {
+            bounds = layoutBounds = getVisibleRect();
+            font = layoutFont = getFont();
+            g = getGraphics();
+        } else {
+            // Swing mustn't be touched here, so make do with what was last
+            // seen on the event dispatch thread, and measure text without
+            // the screen's help.
+            bounds = layoutBounds;
+            font = layoutFont;
+            if (bounds == null || !(renderer.getModel() instanceof SnapshotBarChartModel)) {
+                // Nothing has been seen of the panel yet, or the model can
+                // only be read where it's changed.
+                SwingUtilities.invokeLater(() -> {
+                    recalculateMetrics();
+                    repaint();
+                });
+                return;
+            }
         }
+        Graphics2D g2d = g != null ? (Graphics2D) g : ChartImages.createScratchGraphics();
+        try {
+            synchronized (renderer) {
+                renderer.setFont(font);
+                renderer.layout(g2d, bounds);
+            }
+        } finally {
+            g2d.dispose();
+        }
+    }
 
-        // Draw the bars.
-        int total_width_for_each_bar = (max_x_pos - min_x_pos - HASH_MARK_SIZE)
-                / model.getBarCount();
-        int padding_on_each_side_of_bar = total_width_for_each_bar
-                * (100 - PERCENT_WIDTH_OF_EACH_BAR) / 100 / 2;
-        for (int index = 0; index < model.getBarCount(); index++) {
-            // Figure out the polygon for drawing the bar.
-            Polygon bar = new Polygon();
-            int area_left = min_x_pos + HASH_MARK_SIZE + index
-                    * total_width_for_each_bar;
-            int bar_left = area_left + padding_on_each_side_of_bar;
-            int bar_right = area_left + total_width_for_each_bar
-                    - padding_on_each_side_of_bar;
-            int bar_top = getScreenY(model.getValue(index));
-            bar.addPoint(bar_left, min_y_pos);
-            bar.addPoint(bar_left, bar_top);
-            bar.addPoint(bar_right, bar_top);
-            bar.addPoint(bar_right, min_y_pos);
-
-            // Draw the colored inside of the bar.
-            g.setColor(model.getColor(index));
-            g.fillPolygon(bar);
-
-            // Draw the border around it.
-            g.setColor(FOREGROUND_COLOR);
-            g.drawPolygon(bar);
-
-            // Draw the label underneath the bar.
-            g.drawString(model.getLabel(index), area_left
-                            + total_width_for_each_bar / 2
-                            - fontMetrics.stringWidth(model.getLabel(index)) / 2,
-                    min_y_pos + GAP_BETWEEN_X_AXIS_LABELS_AND_X_AXIS + fontMetrics.getHeight());
+    /**
+     * Asks the repaint scheduler to bring the chart up to date with a change
+     * to the model, or does so on the event dispatch thread if there's no
+     * scheduler.  Either way the thread making the change never has to wait
+     * for the renderer, which might be painting.
+     */
+    private void modelChanged() {
+        RepaintScheduler.Update update = scheduledUpdate;
+        if (update != null) {
+            update.request();
+        } else if (SwingUtilities.isEventDispatchThread()) {
+            update();
+        } else {
+            SwingUtilities.invokeLater(this::update);
         }
     }
 
     /**
-     * Retrieves the actual screen y coordinate for the given data value.
+     * Brings the chart up to date, on the repaint scheduler's thread or the
+     * event dispatch thread.
+     */
+    private void update() {
+        recalculateMetrics();
+        repaint();
+    }
+
+    /**
+     * Retrieves the scheduler which brings the chart up to date when the
+     * model changes.
      *
-     * @param value the data value
-     * @return the screen coord for that value
+     * @return the scheduler, or null if changes are dealt with straight away
      */
-    private int getScreenY(double value) {
-        return (int) (graphBottom - (value - scaleMinY) * (graphBottom - graphTop)
-                / (scaleMaxY - scaleMinY));
+    public RepaintScheduler getRepaintScheduler() {
+        return repaintScheduler;
     }
 
     /**
-     * Recomputes all the values necessary to draw the chart.
+     * Sets the scheduler to bring the chart up to date when the model
+     * changes, which holds it to the scheduler's frame rate.  A SnapshotBarChartModel
+     * is laid out on the scheduler's thread; any other model is still laid
+     * out on the event dispatch thread, where it's changed.  Without one, every change to an
+     * observable model is dealt with on its own, on the event dispatch
+     * thread.
+     *
+     * @param scheduler the scheduler, or null to deal with changes straight
+     *                  away
      */
-    private void recalculateMetrics() {
-        this.visibleRect = this.getVisibleRect();
-        if (this.visibleRect.width == 0) {
-            // Still initializing.
-            return;
+    public void setRepaintScheduler(RepaintScheduler scheduler) {
+        if (scheduledUpdate != null) {
+            scheduledUpdate.cancel();
         }
+        repaintScheduler = scheduler;
+        scheduledUpdate = scheduler == null ? null : scheduler.register(this::update);
+    }
 
-        Graphics g = this.getGraphics();
-        fontMetrics = g.getFontMetrics();
-        titleFontMetrics = g.getFontMetrics(titleFont);
+    /**
+     * Retrieves the metrics layout and painting are reported to.
+     */
+    public RenderMetrics getRenderMetrics() {
+        return renderer.getMetrics();
+    }
 
-        double dataMaxY = Double.NEGATIVE_INFINITY;
-        double dataMinY = Double.NEGATIVE_INFINITY;
-        for (int index = 0; index < model.getBarCount(); index++) {
-            double y = model.getValue(index);
-            if (y > dataMaxY)
-                dataMaxY = y;
-        }
+    /**
+     * Sets the metrics to report layout and painting to, such as a
+     * JmxRenderMetrics.
+     *
+     * @param metrics the metrics, or null to stop reporting
+     */
+    public void setRenderMetrics(RenderMetrics metrics) {
+        renderer.setMetrics(metrics);
+    }
 
-        // What's the minimum width needed for each number along the y axis,
-        // so that they don't overlap?
-        double width_needed_for_y_label = fontMetrics.getHeight() + 5;
-
-        // Calculate the optimal y increment.  We want to try nice numbers
-        // that increase like 1, 5, 10, 50, 100, 500, etc...  So to find
-        // the next "nice" number, we multiply the previous number by 5,
-        // then 2, then 5, then 2, etc.  So the multiplier switches between
-        // 5 and 2.  The easiest way to do this is to set it to seven minus
-        // the current value.
-        int multiplier = 5;
-        yScale = 1;
-        while (this.visibleRect.height / (dataMaxY / yScale) < width_needed_for_y_label) {
-            yScale *= multiplier;
-            multiplier = 7 - multiplier;
-        }
+    /**
+     * Returns the renderer which does the drawing, which can be handed to
+     * ChartImages to save the chart as an image.
+     */
+    public BarChartRenderer getRenderer() {
+        return renderer;
+    }
 
-        scaleMinY = (int) (dataMinY - (dataMinY % yScale));
-        scaleMaxY = (int) (dataMaxY + yScale - (dataMaxY % yScale));
+    /**
+     * Sets the model to use when drawing the chart.  If it's an
+     * ObservableBarChartModel, the chart keeps itself up to date with it.
+     *
+     * @param model the new model
+     */
+    public void setModel(BarChartModel model) {
+        BarChartModel old_model = renderer.getModel();
+        if (old_model instanceof ObservableBarChartModel) {
+            ((ObservableBarChartModel) old_model).removeBarChartModelListener(modelListener);
+        }
+        synchronized (renderer) {
+            renderer.setModel(model);
+        }
+        if (model instanceof ObservableBarChartModel) {
+            ((ObservableBarChartModel) model).addBarChartModelListener(modelListener);
+        }
+        recalculateMetrics();
+    }
 
-        graphBottom = this.visibleRect.y + this.visibleRect.height - MARGIN -
-                fontMetrics.getHeight() - GAP_BETWEEN_X_AXIS_LABELS_AND_X_AXIS - HASH_MARK_SIZE;
+    /**
+     * Retrieves whether the values of multi-series bars are stacked.
+     */
+    public boolean isStacked() {
+        return renderer.isStacked();
+    }
 
-        int top_y_axis_number_label_overhang = fontMetrics.getHeight() / 2;
-        graphTop = this.visibleRect.y + MARGIN
-                + top_y_axis_number_label_overhang;
-        if (title != null && !"".equals(title)) {
-            graphTop += titleFontMetrics.getHeight() + GAP_BETWEEN_TITLE_AND_CHART;
+    /**
+     * Sets whether the values of the bars of a MultiSeriesBarChartModel are
+     * stacked one on top of another, or drawn side by side.
+     */
+    public void setStacked(boolean stacked) {
+        synchronized (renderer) {
+            renderer.setStacked(stacked);
         }
+        recalculateMetrics();
+        repaint();
     }
 
     /**
-     * Sets the model to use when drawing the chart.
+     * Retrieves the narrowest the room for each bar is allowed to get.
+     */
+    public int getMinBarWidth() {
+        return renderer.getMinBarWidth();
+    }
+
+    /**
+     * Sets the narrowest the room for each bar is allowed to get, beyond
+     * which the chart scrolls sideways.
      *
-     * @param model the new model
+     * @see BarChartRenderer#setMinBarWidth(int)
      */
-    public void setModel(BarChartModel model) {
-        this.model = model;
+    public void setMinBarWidth(int minBarWidth) {
+        synchronized (renderer) {
+            renderer.setMinBarWidth(minBarWidth);
+        }
         recalculateMetrics();
+        repaint();
+    }
+
+    /**
+     * Retrieves how far, in pixels, the bars have been scrolled.
+     */
+    public int getScrollX() {
+        return renderer.getScrollX();
+    }
+
+    /**
+     * Scrolls the bars the given number of pixels to the left.
+     */
+    public void setScrollX(int scrollX) {
+        synchronized (renderer) {
+            renderer.setScrollX(scrollX);
+        }
+        repaint();
     }
 
     /**
      * @return Returns the title.
      */
     public String getTitle() {
-        return title;
+        return renderer.getTitle();
     }
 
     /**
      * @param title The title to set.
      */
     public void setTitle(String title) {
-        this.title = title;
+        renderer.setTitle(title);
+        recalculateMetrics();
     }
 
     /**
      * @return Returns the titleFont.
      */
     public Font getTitleFont() {
-        return titleFont;
+        return renderer.getTitleFont();
     }
 
     /**
      * @param titleFont The titleFont to set.
      */
     public void setTitleFont(Font titleFont) {
-        this.titleFont = titleFont;
+        renderer.setTitleFont(titleFont);
+        recalculateMetrics();
     }
 
     /**
      * @return Returns the yAxisLabel.
      */
     public String getYAxisLabel() {
-        return yAxisLabel;
+        return renderer.getYAxisLabel();
     }
 
     /**
      * @param axisLabel The yAxisLabel to set.
      */
     public void setYAxisLabel(String axisLabel) {
-        yAxisLabel = axisLabel;
+        renderer.setYAxisLabel(axisLabel);
+        recalculateMetrics();
     }
 
 }
@@ -0,0 +1,976 @@
+package org.computronium.bakesale.barchart;
+
+import org.computronium.bakesale.axis.AxisScale;
+import org.computronium.bakesale.metrics.RenderMetrics;
+import org.computronium.bakesale.render.ChartRenderer;
+import org.computronium.bakesale.text.TextCache;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+/**
+ * Lays out and draws a bar chart onto any Graphics2D.  BarChartPanel wraps
+ * one of these to show the chart on screen.
+ */
+public class BarChartRenderer implements ChartRenderer {
+    private static final int GAP_BETWEEN_TITLE_AND_CHART = 5;
+
+    private static final int GAP_BETWEEN_X_AXIS_LABELS_AND_X_AXIS = 5;
+
+    private static final int GAP_BETWEEN_Y_AXIS_LABEL_AND_Y_AXIS = 10;
+
+    private static final int GAP_BETWEEN_HASH_MARK_AND_VALUE_LABEL = 3;
+
+    private static final int HASH_MARK_SIZE = 5;
+
+    private static final int MARGIN = 10;
+
+    private static final int PERCENT_WIDTH_OF_EACH_BAR = 40;
+
+    /**
+     * How much of the room for each bar the values of a multi-series bar
+     * take up when they're side by side.
+     */
+    private static final int PERCENT_WIDTH_OF_EACH_GROUP = 80;
+
+    private static final int GAP_BETWEEN_LEGEND_ENTRIES = 15;
+
+    /**
+     * The least room left between one bar label and the next; a label which
+     * would come any closer to the one before is left out.
+     */
+    private static final int GAP_BETWEEN_BAR_LABELS = 4;
+
+    private static final int SCROLL_BAR_HEIGHT = 4;
+
+    private static final int MIN_WIDTH_FOR_BORDER = 3;
+
+    /**
+     * The fewest bars worth splitting between threads when looking for the
+     * biggest and smallest values.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private Color foreground = Color.BLACK;
+
+    private Font font = new Font(Font.DIALOG, Font.PLAIN, 12);
+
+    private Font titleFont = new Font("Arial", Font.BOLD, 16);
+
+    private BarChartModel model;
+
+    /**
+     * The model as it was when the chart was last laid out, which is what's
+     * painted: a snapshot of a SnapshotBarChartModel, or the model itself.
+     */
+    private BarChartModel shownModel;
+
+    private String title;
+
+    private String yAxisLabel;
+
+    private Rectangle visibleRect;
+
+    private FontMetrics fontMetrics;
+
+    private FontMetrics titleFontMetrics;
+
+    private final AxisScale yAxis = new AxisScale();
+
+    private int graphBottom;
+    private int graphTop;
+    private int graphLeft;
+    private int graphRight;
+
+    /**
+     * The width, in pixels, of the room given to each bar.
+     */
+    private double slotWidth;
+
+    private int minBarWidth;
+
+    /**
+     * How far, in pixels, the bars have been scrolled to the left, and how
+     * far they can be.
+     */
+    private int scrollX;
+
+    private int scrollRange;
+
+    /**
+     * The widths of the bar labels, measured when first drawn, or -1 if
+     * they haven't been yet, along with the labels they were measured for.
+     * A width is kept from one snapshot to the next for as long as its
+     * label stays the same, and they're all forgotten when the font
+     * changes.
+     */
+    private int[] labelWidths = new int[0];
+
+    private String[] measuredLabels = new String[0];
+
+    private Font labelWidthsFont;
+
+    /**
+     * Whether the values of a multi-series bar are stacked one on top of
+     * another, rather than side by side.
+     */
+    private boolean stacked;
+
+    /**
+     * The shown model, if it has more than one series, otherwise null.
+     */
+    private MultiSeriesBarChartModel multiSeries;
+
+    /**
+     * The names and colors of the series, as shown in the legend.
+     */
+    private List<String> seriesNames = new ArrayList<>();
+
+    private List<Color> seriesColors = new ArrayList<>();
+
+    // Where each stack has got up (or down) to, for the bars in view, while
+    // the stacks are being drawn.
+    private double[] stackTops = new double[0];
+    private double[] stackBottoms = new double[0];
+
+    /**
+     * The borders of the bars filled in so far, as x, y, width and height,
+     * to be drawn all at once after them.
+     */
+    private int[] borders = new int[0];
+
+    private int borderCount;
+
+    private RenderMetrics metrics = RenderMetrics.NONE;
+
+    /**
+     * Where the widths of strings, and the glyphs to draw them with, are
+     * kept from one layout and paint to the next.
+     */
+    private TextCache textCache = TextCache.getShared();
+
+    /**
+     * Goes up by one whenever anything the static layer shows changes: the
+     * setters of what it draws bump it, and so does a layout which moves
+     * the axis or changes the legend.  It's kept boxed, as the key, so that
+     * painting doesn't box it again each time.
+     */
+    private Long staticLayerVersion = 0L;
+
+    /**
+     * Where the static layer was last laid out, as the bounds, the axis
+     * range and step and the edges of the graph.
+     */
+    private double[] staticLayout = new double[0];
+
+    /**
+     * Recomputes all the values necessary to draw the chart.
+     */
+    public void layout(Graphics2D g, Rectangle bounds) {
+        long start = System.nanoTime();
+        calculateLayout(g, bounds);
+        metrics.layoutFinished(System.nanoTime() - start);
+    }
+
+    private void calculateLayout(Graphics2D g, Rectangle bounds) {
+        if (bounds.width == 0 || model == null) {
+            // Nothing to lay out yet.
+            this.visibleRect = null;
+            return;
+        }
+        shownModel = model instanceof SnapshotBarChartModel
+                ? ((SnapshotBarChartModel) model).snapshot() : model;
+        multiSeries = shownModel instanceof MultiSeriesBarChartModel
+                ? (MultiSeriesBarChartModel) shownModel : null;
+        this.visibleRect = new Rectangle(bounds);
+
+        fontMetrics = g.getFontMetrics(font);
+        titleFontMetrics = g.getFontMetrics(titleFont);
+
+        graphBottom = this.visibleRect.y + this.visibleRect.height - MARGIN -
+                fontMetrics.getHeight() - GAP_BETWEEN_X_AXIS_LABELS_AND_X_AXIS - HASH_MARK_SIZE;
+
+        int top_y_axis_number_label_overhang = fontMetrics.getHeight() / 2;
+        graphTop = this.visibleRect.y + MARGIN
+                + top_y_axis_number_label_overhang;
+        if (title != null && !"".equals(title)) {
+            graphTop += titleFontMetrics.getHeight() + GAP_BETWEEN_TITLE_AND_CHART;
+        }
+
+        // A legend of the series goes along the top.
+        List<String> series_names = new ArrayList<>();
+        List<Color> series_colors = new ArrayList<>();
+        if (multiSeries != null) {
+            for (int series = 0; series < multiSeries.getSeriesCount(); series++) {
+                series_names.add(multiSeries.getSeriesName(series));
+                series_colors.add(multiSeries.getSeriesColor(series));
+            }
+            graphTop += fontMetrics.getHeight() + GAP_BETWEEN_TITLE_AND_CHART;
+        }
+        if (!series_names.equals(seriesNames) || !series_colors.equals(seriesColors)) {
+            seriesNames = series_names;
+            seriesColors = series_colors;
+            staticLayerChanged();
+        }
+
+        double[] range = findValueRange();
+        double dataMinY = range[0];
+        double dataMaxY = range[1];
+
+        // What's the minimum height needed for each number along the y axis,
+        // so that they don't overlap?
+        double height_needed_for_y_label = fontMetrics.getHeight() + 5;
+        yAxis.fit(dataMinY, dataMaxY, graphBottom - graphTop, height_needed_for_y_label, 0);
+
+        // Figure where on the screen is the minimum x value (where the
+        // vertical y access will be drawn).  This will depend on how big
+        // the number labels are on the y access hash marks, and the widest
+        // of those is at one end or the other.
+        graphLeft = this.visibleRect.x
+                + Math.max(textCache.stringWidth(fontMetrics, yAxis.getLabel(0)),
+                textCache.stringWidth(fontMetrics, yAxis.getLabel(yAxis.getTickCount() - 1)))
+                + MARGIN + HASH_MARK_SIZE;
+        if (isShowingYAxisLabel()) {
+            graphLeft += fontMetrics.getHeight()
+                    + GAP_BETWEEN_Y_AXIS_LABEL_AND_Y_AXIS;
+        }
+        graphRight = this.visibleRect.x + this.visibleRect.width - MARGIN;
+
+        // The bars share out the width between them, unless that would make
+        // them narrower than minBarWidth, in which case they run off the
+        // right hand side and can be scrolled through.
+        int count = shownModel.getBarCount();
+        int plot_width = graphRight - graphLeft - HASH_MARK_SIZE;
+        slotWidth = count == 0 ? 0 : (double) plot_width / count;
+        if (slotWidth < minBarWidth) {
+            slotWidth = minBarWidth;
+        }
+        scrollRange = (int) Math.max(0, Math.ceil(count * slotWidth) - plot_width);
+        scrollX = Math.max(0, Math.min(scrollX, scrollRange));
+
+        if (!font.equals(labelWidthsFont)) {
+            labelWidthsFont = font;
+            labelWidths = new int[0];
+            measuredLabels = new String[0];
+        }
+        if (labelWidths.length != count) {
+            int kept = Math.min(labelWidths.length, count);
+            labelWidths = Arrays.copyOf(labelWidths, count);
+            measuredLabels = Arrays.copyOf(measuredLabels, count);
+            Arrays.fill(labelWidths, kept, count, -1);
+        }
+
+        // New values only make the static layer look any different if they
+        // move the axis.
+        double[] static_layout = {visibleRect.x, visibleRect.y, visibleRect.width,
+                visibleRect.height, yAxis.getMin(), yAxis.getMax(), yAxis.getStep(),
+                graphLeft, graphRight, graphTop, graphBottom};
+        if (!Arrays.equals(static_layout, staticLayout)) {
+            staticLayout = static_layout;
+            staticLayerChanged();
+        }
+    }
+
+    /**
+     * Returns the width of the label of the bar at the given index, measuring
+     * it if it hasn't been already, or has changed since.
+     */
+    private int getLabelWidth(int index) {
+        String label = shownModel.getLabel(index);
+        int width = labelWidths[index];
+        if (width < 0 || !Objects.equals(label, measuredLabels[index])) {
+            width = textCache.stringWidth(fontMetrics, label);
+            labelWidths[index] = width;
+            measuredLabels[index] = label;
+        }
+        return width;
+    }
+
+    /**
+     * Finds the lowest and highest the bars reach, as a two element array.
+     * The bars start from zero, so the range always takes it in, whether the
+     * values are all positive, all negative or a mix.  With enough bars in
+     * the snapshot of a SnapshotBarChartModel, which can be read from any
+     * thread, they are split between threads on the common fork-join pool;
+     * any other model is read on this one.
+     */
+    private double[] findValueRange() {
+        int count = shownModel.getBarCount();
+        IntStream indices = IntStream.range(0, count);
+        if (model instanceof SnapshotBarChartModel && count >= PARALLEL_THRESHOLD) {
+            indices = indices.parallel();
+        }
+        return indices.collect(() -> new double[2], this::includeBar, (range, other) -> {
+            range[0] = Math.min(range[0], other[0]);
+            range[1] = Math.max(range[1], other[1]);
+        });
+    }
+
+    /**
+     * Widens the given range to take in the bar at the given index.
+     */
+    private void includeBar(double[] range, int index) {
+        if (multiSeries == null) {
+            double y = shownModel.getValue(index);
+            if (y < range[0])
+                range[0] = y;
+            if (y > range[1])
+                range[1] = y;
+            return;
+        }
+
+        // Stacked, positive values go up from zero and negative ones down,
+        // so it's their sums which count.
+        double up = 0;
+        double down = 0;
+        for (int series = 0; series < multiSeries.getSeriesCount(); series++) {
+            double y = multiSeries.getValue(index, series);
+            if (!stacked) {
+                up = Math.max(up, y);
+                down = Math.min(down, y);
+            } else if (y > 0) {
+                up += y;
+            } else {
+                down += y;
+            }
+        }
+        if (down < range[0])
+            range[0] = down;
+        if (up > range[1])
+            range[1] = up;
+    }
+
+    public Rectangle getBounds() {
+        return visibleRect == null ? null : new Rectangle(visibleRect);
+    }
+
+    public Object getStaticLayerKey() {
+        return staticLayerVersion;
+    }
+
+    /**
+     * Marks the static layer as changed.
+     */
+    private void staticLayerChanged() {
+        staticLayerVersion = staticLayerVersion + 1;
+    }
+
+    /**
+     * Paints the parts of the chart which don't depend on the bars: the
+     * title, the axes with their hash marks and labels.
+     */
+    public void paintStaticLayer(Graphics2D g) {
+        if (visibleRect == null) {
+            return;
+        }
+
+        g.setColor(foreground);
+        g.setFont(font);
+
+        int x_midpoint = this.visibleRect.x + this.visibleRect.width / 2;
+
+        // Draw the title.
+        if (title != null && !"".equals(title)) {
+            Font original_font = g.getFont();
+            g.setFont(titleFont);
+            textCache.drawString(g, title, x_midpoint
+                            - textCache.stringWidth(titleFontMetrics, title) / 2,
+                    this.visibleRect.y + MARGIN + titleFontMetrics.getHeight());
+            g.setFont(original_font);
+        }
+
+        // Draw the legend of the series, each name after a box of its color.
+        if (multiSeries != null) {
+            int box_size = fontMetrics.getAscent();
+            int baseline = graphTop - GAP_BETWEEN_TITLE_AND_CHART - fontMetrics.getDescent()
+                    - fontMetrics.getHeight() / 2;
+            int x = graphLeft;
+            for (int series = 0; series < seriesNames.size(); series++) {
+                String name = seriesNames.get(series);
+                g.setColor(seriesColors.get(series));
+                g.fillRect(x, baseline - box_size, box_size, box_size);
+                g.setColor(foreground);
+                g.drawRect(x, baseline - box_size, box_size, box_size);
+                x += box_size + GAP_BETWEEN_HASH_MARK_AND_VALUE_LABEL;
+                textCache.drawString(g, name, x, baseline);
+                x += textCache.stringWidth(fontMetrics, name) + GAP_BETWEEN_LEGEND_ENTRIES;
+            }
+        }
+
+        int min_y_pos = getScreenY(yAxis.getMin());
+        int max_y_pos = getScreenY(yAxis.getMax());
+
+        // Draw the x axis line, where the bars start from.
+        int zero_y_pos = getScreenY(0);
+        g.drawLine(graphLeft, zero_y_pos, graphRight, zero_y_pos);
+
+        // Draw the y axis plus hashmarks.
+        g.drawLine(graphLeft, min_y_pos, graphLeft, max_y_pos);
+        for (int tick = 0; tick < yAxis.getTickCount(); tick++) {
+            int y_pos = getScreenY(yAxis.getTick(tick));
+
+            // Draw the hashmark.
+            g.drawLine(graphLeft - HASH_MARK_SIZE, y_pos, graphLeft
+                    + HASH_MARK_SIZE, y_pos);
+
+            // Label the hashmark.
+            String value_label = yAxis.getLabel(tick);
+            textCache.drawString(g, value_label, graphLeft - HASH_MARK_SIZE
+                    - textCache.stringWidth(fontMetrics, value_label)
+                    - GAP_BETWEEN_HASH_MARK_AND_VALUE_LABEL, y_pos
+                    + fontMetrics.getAscent() / 2);
+        }
+
+        // Draw the y axis label.
+        if (isShowingYAxisLabel()) {
+            AffineTransform save_at = g.getTransform();
+            AffineTransform at = new AffineTransform(save_at);
+            int x = visibleRect.x + MARGIN + fontMetrics.getHeight();
+            int y_midpoint = getScreenY((yAxis.getMin() + yAxis.getMax()) / 2);
+            int y = y_midpoint + textCache.stringWidth(fontMetrics, yAxisLabel) / 2;
+            at.rotate(-Math.PI / 2.0, x, y);
+            g.setTransform(at);
+            textCache.drawString(g, yAxisLabel, x, y);
+            g.setTransform(save_at);
+        }
+    }
+
+    /**
+     * Paints the bars and the labels underneath them.
+     */
+    public void paintDataLayer(Graphics2D g) {
+        if (visibleRect == null) {
+            return;
+        }
+
+        g.setFont(font);
+
+        int min_y_pos = getScreenY(yAxis.getMin());
+        int zero_y_pos = getScreenY(0);
+
+        // Only the bars within the width of the graph are drawn.
+        int count = shownModel.getBarCount();
+        int plot_left = graphLeft + HASH_MARK_SIZE;
+        int plot_width = graphRight - plot_left;
+        int first = count == 0 ? 0 : Math.max(0, (int) Math.floor(scrollX / slotWidth));
+        int end = count == 0 ? 0
+                : Math.min(count, (int) Math.ceil((scrollX + plot_width) / slotWidth));
+
+        Shape clip = g.getClip();
+        if (scrollRange > 0) {
+            g.clipRect(plot_left, visibleRect.y, plot_width + 1, visibleRect.height);
+        }
+        if (multiSeries == null) {
+            paintBars(g, first, end, plot_left, zero_y_pos);
+        } else if (stacked) {
+            paintStacks(g, first, end, plot_left);
+        } else {
+            paintGroups(g, first, end, plot_left, zero_y_pos);
+        }
+
+        paintBorders(g);
+
+        // Draw the labels underneath the bars, leaving out any which would
+        // run into the one before.
+        int label_y = min_y_pos + GAP_BETWEEN_X_AXIS_LABELS_AND_X_AXIS + fontMetrics.getHeight();
+        int last_label_right = Integer.MIN_VALUE;
+        for (int index = first; index < end; index++) {
+            double area_left = plot_left - scrollX + index * slotWidth;
+            int label_width = getLabelWidth(index);
+            int label_left = (int) (area_left + slotWidth / 2) - label_width / 2;
+            if (label_left >= last_label_right) {
+                textCache.drawString(g, shownModel.getLabel(index), label_left, label_y);
+                last_label_right = label_left + label_width + GAP_BETWEEN_BAR_LABELS;
+            }
+        }
+        g.setClip(clip);
+
+        // Show how far the bars have been scrolled.
+        if (scrollRange > 0) {
+            int full_width = plot_width + scrollRange;
+            int thumb_left = plot_left + (int) ((long) plot_width * scrollX / full_width);
+            int thumb_width = Math.max(SCROLL_BAR_HEIGHT,
+                    (int) ((long) plot_width * plot_width / full_width));
+            g.setColor(Color.GRAY);
+            g.fillRect(thumb_left, visibleRect.y + visibleRect.height - SCROLL_BAR_HEIGHT - 2,
+                    thumb_width, SCROLL_BAR_HEIGHT);
+        }
+        int series_count = multiSeries == null ? 1 : multiSeries.getSeriesCount();
+        metrics.itemsPainted((end - first) * series_count, (count - (end - first)) * series_count);
+    }
+
+    /**
+     * Paints the bars from first up to end, each in its own color.
+     */
+    private void paintBars(Graphics2D g, int first, int end, int plot_left, int zero_y_pos) {
+        double padding_on_each_side_of_bar = slotWidth
+                * (100 - PERCENT_WIDTH_OF_EACH_BAR) / 100 / 2;
+        for (int index = first; index < end; index++) {
+            double area_left = plot_left - scrollX + index * slotWidth;
+            int bar_left = (int) (area_left + padding_on_each_side_of_bar);
+            int bar_right = (int) (area_left + slotWidth - padding_on_each_side_of_bar);
+            int bar_top = getScreenY(shownModel.getValue(index));
+
+            g.setColor(shownModel.getColor(index));
+            paintBar(g, bar_left, bar_right, bar_top, zero_y_pos);
+        }
+    }
+
+    /**
+     * Paints the values of the multi-series bars from first up to end side
+     * by side.  All the values of one series are drawn before any of the
+     * next, so the color only changes once for each series.
+     */
+    private void paintGroups(Graphics2D g, int first, int end, int plot_left, int zero_y_pos) {
+        int series_count = multiSeries.getSeriesCount();
+        double padding_on_each_side_of_group = slotWidth
+                * (100 - PERCENT_WIDTH_OF_EACH_GROUP) / 100 / 2;
+        double width_of_each_bar = (slotWidth - 2 * padding_on_each_side_of_group) / series_count;
+        for (int series = 0; series < series_count; series++) {
+            g.setColor(multiSeries.getSeriesColor(series));
+            for (int index = first; index < end; index++) {
+                double bar_left = plot_left - scrollX + index * slotWidth
+                        + padding_on_each_side_of_group + series * width_of_each_bar;
+                int bar_top = getScreenY(multiSeries.getValue(index, series));
+                paintBar(g, (int) bar_left, (int) (bar_left + width_of_each_bar), bar_top,
+                        zero_y_pos);
+            }
+        }
+    }
+
+    /**
+     * Paints the values of the multi-series bars from first up to end
+     * stacked one on top of another, positive values going up from zero and
+     * negative ones down.  Each series is drawn in one go, as for
+     * paintGroups(), and where each stack has got to so far is carried from
+     * one series to the next, so working out the stacks is a single running
+     * sum.
+     */
+    private void paintStacks(Graphics2D g, int first, int end, int plot_left) {
+        int series_count = multiSeries.getSeriesCount();
+        int in_view = end - first;
+        if (stackTops.length < in_view) {
+            stackTops = new double[in_view];
+            stackBottoms = new double[in_view];
+        }
+        Arrays.fill(stackTops, 0, in_view, 0);
+        Arrays.fill(stackBottoms, 0, in_view, 0);
+
+        double padding_on_each_side_of_bar = slotWidth
+                * (100 - PERCENT_WIDTH_OF_EACH_BAR) / 100 / 2;
+        for (int series = 0; series < series_count; series++) {
+            g.setColor(multiSeries.getSeriesColor(series));
+            for (int index = first; index < end; index++) {
+                double value = multiSeries.getValue(index, series);
+                if (value == 0) {
+                    continue;
+                }
+                double from;
+                double to;
+                int stack = index - first;
+                if (value > 0) {
+                    from = stackTops[stack];
+                    to = stackTops[stack] = from + value;
+                } else {
+                    from = stackBottoms[stack];
+                    to = stackBottoms[stack] = from + value;
+                }
+                double area_left = plot_left - scrollX + index * slotWidth;
+                paintBar(g, (int) (area_left + padding_on_each_side_of_bar),
+                        (int) (area_left + slotWidth - padding_on_each_side_of_bar),
+                        getScreenY(to), getScreenY(from));
+            }
+        }
+    }
+
+    /**
+     * Fills in a bar in the current color, and makes a note of the border to
+     * draw around it once all the bars are filled.  Bars too narrow for the
+     * border to leave any room inside it get no border.
+     */
+    private void paintBar(Graphics2D g, int left, int right, int top, int bottom) {
+        int y = Math.min(top, bottom);
+        int height = Math.abs(bottom - top);
+        g.fillRect(left, y, Math.max(1, right - left), height);
+        if (right - left >= MIN_WIDTH_FOR_BORDER) {
+            if (borderCount + 4 > borders.length) {
+                borders = Arrays.copyOf(borders, Math.max(64, borders.length * 2));
+            }
+            borders[borderCount++] = left;
+            borders[borderCount++] = y;
+            borders[borderCount++] = right - left;
+            borders[borderCount++] = height;
+        }
+    }
+
+    /**
+     * Draws the borders noted by paintBar() since the last time, all in the
+     * foreground color.
+     */
+    private void paintBorders(Graphics2D g) {
+        g.setColor(foreground);
+        for (int i = 0; i < borderCount; i += 4) {
+            g.drawRect(borders[i], borders[i + 1], borders[i + 2], borders[i + 3]);
+        }
+        borderCount = 0;
+    }
+
+    /**
+     * Finds the bar at the given screen position.  The bars are all the same
+     * width, so this is just a matter of arithmetic, wherever they've been
+     * scrolled to.
+     *
+     * @return the index of the bar, or -1 if the position isn't on one
+     */
+    public int getBarAt(int x, int y) {
+        int index = getSlotAt(x);
+        if (index < 0) {
+            return -1;
+        }
+        if (multiSeries != null) {
+            return findSeries(index, x, y) >= 0 ? index : -1;
+        }
+
+        double area_left = getPlotLeft() - scrollX + index * slotWidth;
+        double padding_on_each_side_of_bar = slotWidth
+                * (100 - PERCENT_WIDTH_OF_EACH_BAR) / 100 / 2;
+        if (x < (int) (area_left + padding_on_each_side_of_bar)
+                || x > (int) (area_left + slotWidth - padding_on_each_side_of_bar)) {
+            return -1;
+        }
+
+        int zero_y_pos = getScreenY(0);
+        int bar_top = getScreenY(shownModel.getValue(index));
+        if (y < Math.min(zero_y_pos, bar_top) || y > Math.max(zero_y_pos, bar_top)) {
+            return -1;
+        }
+        return index;
+    }
+
+    /**
+     * Finds which series of a multi-series bar chart the value at the given
+     * screen position belongs to.
+     *
+     * @return the index of the series, or -1 if the position isn't on a
+     * value, or the chart has only one series
+     */
+    public int getSeriesAt(int x, int y) {
+        int index = getSlotAt(x);
+        return index < 0 || multiSeries == null ? -1 : findSeries(index, x, y);
+    }
+
+    /**
+     * Returns the index of the bar whose room takes in the given screen x
+     * coordinate, or -1 if there's none.
+     */
+    private int getSlotAt(int x) {
+        if (visibleRect == null || shownModel.getBarCount() == 0) {
+            return -1;
+        }
+        int plot_left = getPlotLeft();
+        if (x < plot_left || x > graphRight) {
+            return -1;
+        }
+        int index = (int) Math.floor((x - plot_left + scrollX) / slotWidth);
+        return index < shownModel.getBarCount() ? index : -1;
+    }
+
+    /**
+     * Returns the series whose value is drawn at the given screen position,
+     * within the room for the bar at the given index, or -1 if there's none.
+     * The values are looked at in the same order they're drawn in.
+     */
+    private int findSeries(int index, int x, int y) {
+        int series_count = multiSeries.getSeriesCount();
+        double area_left = getPlotLeft() - scrollX + index * slotWidth;
+        if (!stacked) {
+            double padding_on_each_side_of_group = slotWidth
+                    * (100 - PERCENT_WIDTH_OF_EACH_GROUP) / 100 / 2;
+            double width_of_each_bar = (slotWidth - 2 * padding_on_each_side_of_group)
+                    / series_count;
+            int series = (int) Math.floor((x - area_left - padding_on_each_side_of_group)
+                    / width_of_each_bar);
+            if (series < 0 || series >= series_count) {
+                return -1;
+            }
+            int zero_y_pos = getScreenY(0);
+            int bar_top = getScreenY(multiSeries.getValue(index, series));
+            return y >= Math.min(zero_y_pos, bar_top) && y <= Math.max(zero_y_pos, bar_top)
+                    ? series : -1;
+        }
+
+        double padding_on_each_side_of_bar = slotWidth
+                * (100 - PERCENT_WIDTH_OF_EACH_BAR) / 100 / 2;
+        if (x < (int) (area_left + padding_on_each_side_of_bar)
+                || x > (int) (area_left + slotWidth - padding_on_each_side_of_bar)) {
+            return -1;
+        }
+        double top = 0;
+        double bottom = 0;
+        for (int series = 0; series < series_count; series++) {
+            double value = multiSeries.getValue(index, series);
+            double from;
+            double to;
+            if (value > 0) {
+                from = top;
+                to = top += value;
+            } else if (value < 0) {
+                from = bottom;
+                to = bottom += value;
+            } else {
+                continue;
+            }
+            int from_y = getScreenY(from);
+            int to_y = getScreenY(to);
+            if (y >= Math.min(from_y, to_y) && y <= Math.max(from_y, to_y)) {
+                return series;
+            }
+        }
+        return -1;
+    }
+
+    private int getPlotLeft() {
+        return graphLeft + HASH_MARK_SIZE;
+    }
+
+    /**
+     * Returns whether there's a y axis label to draw.
+     */
+    private boolean isShowingYAxisLabel() {
+        return yAxisLabel != null && !"".equals(yAxisLabel);
+    }
+
+    /**
+     * Retrieves the actual screen y coordinate for the given data value.
+     *
+     * @param value the data value
+     * @return the screen coord for that value
+     */
+    private int getScreenY(double value) {
+        return (int) (graphBottom - (value - yAxis.getMin()) * (graphBottom - graphTop)
+                / (yAxis.getMax() - yAxis.getMin()));
+    }
+
+    /**
+     * Retrieves whether the values of multi-series bars are stacked.
+     */
+    public boolean isStacked() {
+        return stacked;
+    }
+
+    /**
+     * Sets whether the values of the bars of a MultiSeriesBarChartModel are
+     * stacked one on top of another, or drawn side by side.
+     */
+    public void setStacked(boolean stacked) {
+        this.stacked = stacked;
+    }
+
+    /**
+     * Retrieves the narrowest the room for each bar is allowed to get.
+     */
+    public int getMinBarWidth() {
+        return minBarWidth;
+    }
+
+    /**
+     * Sets the narrowest the room for each bar, including the gaps either
+     * side of it, is allowed to get.  If there are too many bars to fit,
+     * the chart scrolls sideways, and only the bars showing are drawn.
+     *
+     * @param minBarWidth the narrowest width in pixels, or zero to squeeze
+     *                    all the bars in however many there are
+     */
+    public void setMinBarWidth(int minBarWidth) {
+        if (minBarWidth < 0) {
+            throw new IllegalArgumentException("minBarWidth must not be negative: " + minBarWidth);
+        }
+        this.minBarWidth = minBarWidth;
+    }
+
+    /**
+     * Retrieves how far, in pixels, the bars have been scrolled to the left.
+     */
+    public int getScrollX() {
+        return scrollX;
+    }
+
+    /**
+     * Scrolls the bars the given number of pixels to the left of where
+     * they'd start unscrolled, as far as they'll go.  Only the bars need
+     * painting again; nothing has to be laid out.
+     */
+    public void setScrollX(int scrollX) {
+        this.scrollX = Math.max(0, Math.min(scrollX, scrollRange));
+    }
+
+    /**
+     * Retrieves the furthest the bars can be scrolled, which is zero if they
+     * all fit.
+     */
+    public int getScrollRange() {
+        return scrollRange;
+    }
+
+    /**
+     * Retrieves the width of the room given to each bar, as of the last
+     * layout.
+     */
+    public double getSlotWidth() {
+        return slotWidth;
+    }
+
+    /**
+     * Retrieves the model the chart was last laid out from, which is what
+     * the indices of the bars refer to.
+     */
+    BarChartModel getShownModel() {
+        return shownModel;
+    }
+
+    /**
+     * Retrieves the model.
+     */
+    public BarChartModel getModel() {
+        return model;
+    }
+
+    /**
+     * Sets the model to use when drawing the chart.
+     */
+    public void setModel(BarChartModel model) {
+        this.model = model;
+    }
+
+    /**
+     * Retrieves the title.
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Sets the title.
+     */
+    public void setTitle(String title) {
+        if (!Objects.equals(title, this.title)) {
+            staticLayerChanged();
+        }
+        this.title = title;
+    }
+
+    /**
+     * Retrieves the color of the axis, the borders of the bars and the
+     * text.
+     */
+    public Color getForeground() {
+        return foreground;
+    }
+
+    /**
+     * Sets the color of the axis, the borders of the bars and the text.
+     *
+     * @throws IllegalArgumentException if the color is null
+     */
+    public void setForeground(Color foreground) {
+        if (foreground == null) {
+            throw new IllegalArgumentException("The foreground color can't be null");
+        }
+        if (!Objects.equals(foreground, this.foreground)) {
+            staticLayerChanged();
+        }
+        this.foreground = foreground;
+    }
+
+    /**
+     * Retrieves the font used for everything but the title.
+     */
+    public Font getFont() {
+        return font;
+    }
+
+    /**
+     * Sets the font used for everything but the title.
+     */
+    public void setFont(Font font) {
+        if (!Objects.equals(font, this.font)) {
+            staticLayerChanged();
+        }
+        this.font = font;
+    }
+
+    /**
+     * Retrieves the title font.
+     */
+    public Font getTitleFont() {
+        return titleFont;
+    }
+
+    /**
+     * Sets the title font.
+     */
+    public void setTitleFont(Font titleFont) {
+        if (!Objects.equals(titleFont, this.titleFont)) {
+            staticLayerChanged();
+        }
+        this.titleFont = titleFont;
+    }
+
+    /**
+     * Retrieves the y axis label.
+     */
+    public String getYAxisLabel() {
+        return yAxisLabel;
+    }
+
+    /**
+     * Sets the y axis label.
+     */
+    public void setYAxisLabel(String axisLabel) {
+        if (!Objects.equals(axisLabel, yAxisLabel)) {
+            staticLayerChanged();
+        }
+        yAxisLabel = axisLabel;
+    }
+
+    /**
+     * Retrieves the cache text is measured and drawn through.
+     */
+    public TextCache getTextCache() {
+        return textCache;
+    }
+
+    /**
+     * Sets the cache text is measured and drawn through, which is normally
+     * the one shared by all charts.
+     *
+     * @throws IllegalArgumentException if the cache is null
+     */
+    public void setTextCache(TextCache textCache) {
+        if (textCache == null) {
+            throw new IllegalArgumentException("The text cache can't be null");
+        }
+        this.textCache = textCache;
+    }
+
+    /**
+     * Retrieves the metrics the renderer reports to.
+     */
+    public RenderMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics to report layout and painting to.
+     *
+     * @param metrics the metrics, or null to stop reporting
+     */
+    public void setMetrics(RenderMetrics metrics) {
+        this.metrics = metrics == null ? RenderMetrics.NONE : metrics;
+    }
+}
@@ -0,0 +1,203 @@
+package org.computronium.bakesale.barchart;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A BarChartModel which any number of threads can change while it is being
+ * drawn.
+ * <p>
+ * The bars are kept in an immutable snapshot.  Each change copies it, makes
+ * the change to the copy and publishes that with a single volatile write, so
+ * readers never lock and never see a change half made.  Changing many bars
+ * at once with setValues() or setBars() costs a single copy.
+ * <p>
+ * Writers take turns, but listeners are told about each change on the
+ * thread which made it only once it has let the others go, so a listener
+ * may hear of changes after later ones have been made, or in a different
+ * order; the snapshot is always the latest.
+ */
+public class ConcurrentBarChartModel implements ObservableBarChartModel, SnapshotBarChartModel {
+    private static final Bars EMPTY = new Bars(new String[0], new double[0], new Color[0]);
+
+    private final List<BarChartModelListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile Bars bars = EMPTY;
+
+    /**
+     * Replaces all the bars.
+     *
+     * @throws IllegalArgumentException if the arrays aren't all the same
+     *                                  length
+     */
+    public void setBars(String[] labels, double[] values, Color[] colors) {
+        synchronized (this) {
+            if (values.length != labels.length || colors.length != labels.length) {
+                throw new IllegalArgumentException("There are " + labels.length + " labels, "
+                        + values.length + " values and " + colors.length + " colors");
+            }
+            bars = new Bars(labels.clone(), values.clone(), colors.clone());
+        }
+        fireModelChanged();
+    }
+
+    /**
+     * Adds a bar to the end.
+     */
+    public void addBar(String label, double value, Color color) {
+        synchronized (this) {
+            Bars old = bars;
+            int count = old.labels.length;
+            Bars changed = new Bars(Arrays.copyOf(old.labels, count + 1),
+                    Arrays.copyOf(old.values, count + 1), Arrays.copyOf(old.colors, count + 1));
+            changed.labels[count] = label;
+            changed.values[count] = value;
+            changed.colors[count] = color;
+            bars = changed;
+        }
+        fireModelChanged();
+    }
+
+    /**
+     * Removes the bar at the given index.
+     */
+    public void removeBar(int index) {
+        synchronized (this) {
+            Bars old = bars;
+            int count = old.labels.length;
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("Index " + index + " of " + count);
+            }
+            Bars changed = new Bars(new String[count - 1], new double[count - 1],
+                    new Color[count - 1]);
+            copyAround(old.labels, changed.labels, index, count);
+            copyAround(old.values, changed.values, index, count);
+            copyAround(old.colors, changed.colors, index, count);
+            bars = changed;
+        }
+        fireModelChanged();
+    }
+
+    /**
+     * Copies everything but the element at the given index from one array of
+     * the given length to another one shorter.
+     */
+    private static void copyAround(Object from, Object to, int index, int length) {
+        System.arraycopy(from, 0, to, 0, index);
+        System.arraycopy(from, index + 1, to, index, length - index - 1);
+    }
+
+    /**
+     * Sets the value of the bar at the given index.
+     */
+    public void setValue(int index, double value) {
+        synchronized (this) {
+            Bars old = bars;
+            double[] values = old.values.clone();
+            values[index] = value;
+            bars = new Bars(old.labels, values, old.colors);
+        }
+        fireModelChanged();
+    }
+
+    /**
+     * Sets the values of all the bars at once.
+     *
+     * @throws IllegalArgumentException if there isn't one value for each bar
+     */
+    public void setValues(double[] values) {
+        synchronized (this) {
+            Bars old = bars;
+            if (values.length != old.values.length) {
+                throw new IllegalArgumentException("There are " + old.values.length
+                        + " bars but " + values.length + " values");
+            }
+            bars = new Bars(old.labels, values.clone(), old.colors);
+        }
+        fireModelChanged();
+    }
+
+    /**
+     * Removes all the bars.
+     */
+    public void clear() {
+        synchronized (this) {
+            bars = EMPTY;
+        }
+        fireModelChanged();
+    }
+
+    private void fireModelChanged() {
+        for (BarChartModelListener listener : listeners) {
+            listener.modelChanged(this);
+        }
+    }
+
+    public BarChartModel snapshot() {
+        return bars;
+    }
+
+    // Each of these reads the latest snapshot, so two calls in a row can see
+    // different bars; take a snapshot to read more than one thing.
+
+    public int getBarCount() {
+        return bars.getBarCount();
+    }
+
+    public String getLabel(int index) {
+        return bars.getLabel(index);
+    }
+
+    public double getValue(int index) {
+        return bars.getValue(index);
+    }
+
+    public Color getColor(int index) {
+        return bars.getColor(index);
+    }
+
+    public void addBarChartModelListener(BarChartModelListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeBarChartModelListener(BarChartModelListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * A snapshot of the bars.  The arrays are never changed once it has been
+     * published, and are shared with later snapshots wherever they're the
+     * same.
+     */
+    private static final class Bars implements BarChartModel {
+        private final String[] labels;
+
+        private final double[] values;
+
+        private final Color[] colors;
+
+        Bars(String[] labels, double[] values, Color[] colors) {
+            this.labels = labels;
+            this.values = values;
+            this.colors = colors;
+        }
+
+        public int getBarCount() {
+            return labels.length;
+        }
+
+        public String getLabel(int index) {
+            return labels[index];
+        }
+
+        public double getValue(int index) {
+            return values[index];
+        }
+
+        public Color getColor(int index) {
+            return colors[index];
+        }
+    }
+}
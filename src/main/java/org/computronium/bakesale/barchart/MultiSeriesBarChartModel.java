@@ -0,0 +1,55 @@
+package org.computronium.bakesale.barchart;
+
+import java.awt.*;
+
+/**
+ * A BarChartModel with more than one value for each bar, one from each of a
+ * number of series.  BarChartRenderer draws the values of a bar side by side
+ * or stacked one on top of another, each in the color of its series, and
+ * shows the series in a legend.
+ * <p>
+ * The single value and color of each bar, which the renderer has no need of
+ * for such a model, default to the total of the bar's values and the color
+ * of the first series.
+ */
+public interface MultiSeriesBarChartModel extends BarChartModel {
+    /**
+     * Returns the number of series.
+     */
+    int getSeriesCount();
+
+    /**
+     * Returns the name of the series at the given index, as shown in the
+     * legend.
+     */
+    String getSeriesName(int series);
+
+    /**
+     * Returns the color with which to draw the values of the series at the
+     * given index.
+     */
+    Color getSeriesColor(int series);
+
+    /**
+     * Returns the value of the given series for the bar at the given index.
+     */
+    double getValue(int index, int series);
+
+    /**
+     * Returns the total of the values of the bar at the given index.
+     */
+    default double getValue(int index) {
+        double total = 0;
+        for (int series = 0; series < getSeriesCount(); series++) {
+            total += getValue(index, series);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the color of the first series.
+     */
+    default Color getColor(int index) {
+        return getSeriesColor(0);
+    }
+}
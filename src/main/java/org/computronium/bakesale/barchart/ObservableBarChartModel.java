@@ -0,0 +1,18 @@
+package org.computronium.bakesale.barchart;
+
+/**
+ * A BarChartModel which tells its listeners when its bars change.
+ * BarChartPanel listens to any such model given to it, and keeps itself up to
+ * date without having to be told to.
+ */
+public interface ObservableBarChartModel extends BarChartModel {
+    /**
+     * Adds a listener to be told about changes to the bars.
+     */
+    void addBarChartModelListener(BarChartModelListener listener);
+
+    /**
+     * Removes a listener previously added with addBarChartModelListener().
+     */
+    void removeBarChartModelListener(BarChartModelListener listener);
+}
@@ -0,0 +1,15 @@
+package org.computronium.bakesale.barchart;
+
+/**
+ * A BarChartModel which can be changed from other threads while it is being
+ * drawn.  Rather than reading the model itself, which could change between
+ * one call and the next, BarChartRenderer takes a snapshot of it each time it
+ * lays the chart out, and reads only that until the next layout.
+ */
+public interface SnapshotBarChartModel extends BarChartModel {
+    /**
+     * Returns the bars as they are now, as a model which never changes.  This
+     * should be cheap enough to call on every layout.
+     */
+    BarChartModel snapshot();
+}
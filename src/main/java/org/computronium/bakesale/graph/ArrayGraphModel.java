@@ -0,0 +1,64 @@
+package org.computronium.bakesale.graph;
+
+import java.awt.*;
+
+/**
+ * A GraphModel whose points are held in a pair of double arrays.
+ * <p>
+ * The arrays are used as they are rather than copied, so changes made to them
+ * afterwards show up the next time the graph is drawn.
+ */
+public class ArrayGraphModel implements BulkGraphModel {
+    private final double[] xs;
+
+    private final double[] ys;
+
+    private final int count;
+
+    private final Color color;
+
+    /**
+     * Class constructor, using every point in the arrays.
+     */
+    public ArrayGraphModel(double[] xs, double[] ys, Color color) {
+        this(xs, ys, Math.min(xs.length, ys.length), color);
+    }
+
+    /**
+     * Class constructor, using only the first count points in the arrays.
+     */
+    public ArrayGraphModel(double[] xs, double[] ys, int count, Color color) {
+        if (count > xs.length || count > ys.length) {
+            throw new IllegalArgumentException("count " + count
+                    + " is bigger than the arrays");
+        }
+        this.xs = xs;
+        this.ys = ys;
+        this.count = count;
+        this.color = color;
+    }
+
+    public int getPointCount() {
+        return count;
+    }
+
+    public double getX(int index) {
+        return xs[index];
+    }
+
+    public double getY(int index) {
+        return ys[index];
+    }
+
+    public void getX(int index, double[] dest, int offset, int count) {
+        System.arraycopy(xs, index, dest, offset, count);
+    }
+
+    public void getY(int index, double[] dest, int offset, int count) {
+        System.arraycopy(ys, index, dest, offset, count);
+    }
+
+    public Color getColor() {
+        return color;
+    }
+}
@@ -0,0 +1,20 @@
+package org.computronium.bakesale.graph;
+
+/**
+ * Optional extension of GraphModel for models that can hand over their points
+ * in bulk.  GraphPanel reads such models a chunk at a time into plain arrays
+ * and works on those, rather than making two interface calls per point.
+ */
+public interface BulkGraphModel extends GraphModel {
+    /**
+     * Copies the x coordinates of the points from index through
+     * index + count - 1 into dest, starting at offset.
+     */
+    void getX(int index, double[] dest, int offset, int count);
+
+    /**
+     * Copies the y coordinates of the points from index through
+     * index + count - 1 into dest, starting at offset.
+     */
+    void getY(int index, double[] dest, int offset, int count);
+}
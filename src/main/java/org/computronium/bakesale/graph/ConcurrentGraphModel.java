@@ -0,0 +1,394 @@
+package org.computronium.bakesale.graph;
+
+import java.awt.*;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A GraphModel which any number of threads can append points to while it is
+ * being drawn.
+ * <p>
+ * Every change publishes a new GraphSnapshot with a single volatile write,
+ * so readers never lock, and a reader holding a snapshot sees the same
+ * points however much is appended meanwhile.  Snapshots share the arrays
+ * the points are kept in: appended points go past the end of every
+ * published snapshot, and when the arrays fill up, the points still held
+ * are copied into new ones rather than moved, so nothing a snapshot can see
+ * is ever written again.  Each point is copied no more than a constant
+ * number of times on average.
+ * <p>
+ * Once the model holds as many points as its capacity allows, appending a
+ * point drops the oldest one.  The smallest and largest coordinates are kept
+ * up to date as points come and go, so no snapshot needs scanning for them.
+ * Coordinates which are NaN are left out of them, which are NaN if there
+ * are no others.
+ * <p>
+ * Writers take turns, but listeners are told about each change on the
+ * thread which made it only once it has let the others go, so a listener
+ * may hear of changes after later ones have been made, or in a different
+ * order.  The counts passed to pointsAppended() are those of the change
+ * itself; the snapshot is always the latest, and says how far it has moved
+ * on from an earlier one.
+ */
+public class ConcurrentGraphModel implements ObservableGraphModel, SnapshotGraphModel,
+        BulkGraphModel, ExtentGraphModel {
+    private static final int MIN_LENGTH = 16;
+
+    private static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+    private final int capacity;
+
+    private final Color color;
+
+    private final List<GraphModelListener> listeners = new CopyOnWriteArrayList<>();
+
+    // The rest is only touched by writers, holding the lock on this.
+    private double[] xs = new double[0];
+    private double[] ys = new double[0];
+
+    /**
+     * The points held are those in the arrays from start up to start + size.
+     */
+    private int start;
+    private int size;
+
+    private Object series = new Object();
+
+    /**
+     * The number of points dropped from the start of the series, which is
+     * also the sequence number of the oldest point still held.
+     */
+    private long dropped;
+
+    private final WindowExtreme minX = new WindowExtreme(false);
+    private final WindowExtreme maxX = new WindowExtreme(true);
+    private final WindowExtreme minY = new WindowExtreme(false);
+    private final WindowExtreme maxY = new WindowExtreme(true);
+
+    private volatile GraphSnapshot snapshot;
+
+    /**
+     * Class constructor, for a model which holds any number of points.
+     *
+     * @param color the color with which to draw the points
+     */
+    public ConcurrentGraphModel(Color color) {
+        this(MAX_LENGTH, color);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param capacity the most points the model will hold at once
+     * @param color    the color with which to draw the points
+     */
+    public ConcurrentGraphModel(int capacity, Color color) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = Math.min(capacity, MAX_LENGTH);
+        this.color = color;
+        publish();
+    }
+
+    /**
+     * Appends a single point, dropping the oldest one if the model is full.
+     */
+    public void append(double x, double y) {
+        int drop;
+        synchronized (this) {
+            drop = makeRoom(1);
+            xs[start + size] = x;
+            ys[start + size] = y;
+            track(dropped + size, x, y);
+            size++;
+            evictAndPublish();
+        }
+        for (GraphModelListener listener : listeners) {
+            listener.pointsAppended(this, drop, 1);
+        }
+    }
+
+    /**
+     * Appends count points taken from the given arrays, starting at offset.
+     * Listeners are notified once for the whole batch.
+     */
+    public void append(double[] xs, double[] ys, int offset, int count) {
+        if (count <= 0) {
+            return;
+        }
+        int kept = Math.min(count, capacity);
+        int drop;
+        synchronized (this) {
+            drop = add(xs, ys, offset, count);
+        }
+        for (GraphModelListener listener : listeners) {
+            listener.pointsAppended(this, drop, kept);
+        }
+    }
+
+    /**
+     * Stores the points and publishes a new snapshot, returning the number
+     * of points dropped to make room.
+     */
+    private int add(double[] xs, double[] ys, int offset, int count) {
+        // Points which would be dropped as soon as they were appended are
+        // never stored, and listeners never hear of them.
+        int kept = Math.min(count, capacity);
+        offset += count - kept;
+        int drop = makeRoom(kept);
+        System.arraycopy(xs, offset, this.xs, start + size, kept);
+        System.arraycopy(ys, offset, this.ys, start + size, kept);
+        for (int i = 0; i < kept; i++) {
+            track(dropped + size + i, xs[offset + i], ys[offset + i]);
+        }
+        size += kept;
+        evictAndPublish();
+        return drop;
+    }
+
+    /**
+     * Drops as many of the oldest points as it takes to fit the given number
+     * more, and makes sure there's room for them at the end of the arrays.
+     * Returns the number of points dropped.
+     */
+    private int makeRoom(int kept) {
+        int drop = Math.max(0, size + kept - capacity);
+        start += drop;
+        size -= drop;
+        dropped += drop;
+        if (start + size + kept > xs.length) {
+            moveToNewArrays(size + kept);
+        }
+        return drop;
+    }
+
+    /**
+     * Keeps track of the extremes for a new point with the given sequence
+     * number.
+     */
+    private void track(long sequence, double x, double y) {
+        minX.push(sequence, x);
+        maxX.push(sequence, x);
+        minY.push(sequence, y);
+        maxY.push(sequence, y);
+    }
+
+    /**
+     * Forgets the extremes of the points dropped, and publishes a snapshot
+     * of those left.
+     */
+    private void evictAndPublish() {
+        minX.evictBefore(dropped);
+        maxX.evictBefore(dropped);
+        minY.evictBefore(dropped);
+        maxY.evictBefore(dropped);
+        publish();
+    }
+
+    /**
+     * Replaces all the points with those in the given arrays.  If there are
+     * more than the model can hold, only the last of them are kept.
+     */
+    public void setPoints(double[] xs, double[] ys) {
+        if (xs.length != ys.length) {
+            throw new IllegalArgumentException("There are " + xs.length
+                    + " x coordinates but " + ys.length + " y coordinates");
+        }
+        synchronized (this) {
+            reset();
+            add(xs, ys, 0, xs.length);
+        }
+        fireModelChanged();
+    }
+
+    /**
+     * Removes all the points.
+     */
+    public void clear() {
+        synchronized (this) {
+            reset();
+            publish();
+        }
+        fireModelChanged();
+    }
+
+    /**
+     * Starts a new, empty series, without telling anyone.
+     */
+    private void reset() {
+        xs = new double[0];
+        ys = new double[0];
+        start = 0;
+        size = 0;
+        dropped = 0;
+        series = new Object();
+        minX.clear();
+        maxX.clear();
+        minY.clear();
+        maxY.clear();
+    }
+
+    /**
+     * Copies the points held into new arrays with room for the given number,
+     * and more to grow into.  The old arrays are left as they are for the
+     * snapshots which share them.
+     */
+    private void moveToNewArrays(int needed) {
+        long length = Math.max(needed, Math.min(Math.max(MIN_LENGTH, 2L * needed),
+                2L * capacity));
+        int new_length = (int) Math.min(length, MAX_LENGTH);
+        double[] new_xs = new double[new_length];
+        double[] new_ys = new double[new_length];
+        System.arraycopy(xs, start, new_xs, 0, size);
+        System.arraycopy(ys, start, new_ys, 0, size);
+        xs = new_xs;
+        ys = new_ys;
+        start = 0;
+    }
+
+    private void publish() {
+        snapshot = new GraphSnapshot(xs, ys, start, size, color, series, dropped,
+                minX.peek(), maxX.peek(), minY.peek(), maxY.peek());
+    }
+
+    private void fireModelChanged() {
+        for (GraphModelListener listener : listeners) {
+            listener.modelChanged(this);
+        }
+    }
+
+    public GraphSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the most points the model will hold at once.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Each of these reads the latest snapshot, so two calls in a row can see
+    // different points; take a snapshot to read more than one thing.
+
+    public int getPointCount() {
+        return snapshot.getPointCount();
+    }
+
+    public double getX(int index) {
+        return snapshot.getX(index);
+    }
+
+    public double getY(int index) {
+        return snapshot.getY(index);
+    }
+
+    public void getX(int index, double[] dest, int offset, int count) {
+        snapshot.getX(index, dest, offset, count);
+    }
+
+    public void getY(int index, double[] dest, int offset, int count) {
+        snapshot.getY(index, dest, offset, count);
+    }
+
+    public double getMinX() {
+        return snapshot.getMinX();
+    }
+
+    public double getMaxX() {
+        return snapshot.getMaxX();
+    }
+
+    public double getMinY() {
+        return snapshot.getMinY();
+    }
+
+    public double getMaxY() {
+        return snapshot.getMaxY();
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    public void addGraphModelListener(GraphModelListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeGraphModelListener(GraphModelListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Tracks the minimum (or maximum) of the points held, in the same way as
+     * StreamingGraphModel: a queue of the points which could still become
+     * the extreme once older points are dropped, with their values in
+     * strictly improving order from back to front.  The values are kept in
+     * the queue, since the arrays the points are in get replaced.
+     */
+    private static final class WindowExtreme {
+        private final boolean max;
+
+        private long[] sequences = new long[MIN_LENGTH];
+
+        private double[] values = new double[MIN_LENGTH];
+
+        private int head;
+
+        private int length;
+
+        WindowExtreme(boolean max) {
+            this.max = max;
+        }
+
+        void push(long sequence, double value) {
+            if (value != value) {
+                // NaN is never an extreme, and would beat nothing.
+                return;
+            }
+            while (length > 0 && !beats(values[(head + length - 1) % values.length], value)) {
+                length--;
+            }
+            if (length == values.length) {
+                grow();
+            }
+            int slot = (head + length) % values.length;
+            sequences[slot] = sequence;
+            values[slot] = value;
+            length++;
+        }
+
+        void evictBefore(long sequence) {
+            while (length > 0 && sequences[head] < sequence) {
+                head = (head + 1) % values.length;
+                length--;
+            }
+        }
+
+        double peek() {
+            return length == 0 ? Double.NaN : values[head];
+        }
+
+        void clear() {
+            head = 0;
+            length = 0;
+        }
+
+        private void grow() {
+            long[] new_sequences = new long[sequences.length * 2];
+            double[] new_values = new double[values.length * 2];
+            for (int i = 0; i < length; i++) {
+                new_sequences[i] = sequences[(head + i) % sequences.length];
+                new_values[i] = values[(head + i) % values.length];
+            }
+            sequences = new_sequences;
+            values = new_values;
+            head = 0;
+        }
+
+        private boolean beats(double a, double b) {
+            return max ? a > b : a < b;
+        }
+    }
+}
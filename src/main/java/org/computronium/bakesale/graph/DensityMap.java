@@ -0,0 +1,204 @@
+package org.computronium.bakesale.graph;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Draws the points of a graph as a heat map, for series with so many points
+ * that lines joining them would just be a solid mass.  The points falling
+ * in each pixel are counted, and each pixel is colored according to how
+ * many there are, from the low color for a single point to the high color
+ * for the busiest pixel.  Pixels with no points are left clear.
+ * <p>
+ * The points are read once, a chunk at a time, and nothing is drawn per
+ * point: the counts go into an int array and the colors are written
+ * straight into the pixels of an image, which is drawn in one go.  If every
+ * model is a ParallelGraphModel and there are more than
+ * GraphModels.PARALLEL_THRESHOLD points, the series are split into parts
+ * which are counted on the common fork-join pool, each into its own array,
+ * and the arrays are added together at the end.
+ */
+class DensityMap {
+    private static final int LEVELS = 256;
+
+    private Color lowColor = new Color(0xc6dbef);
+
+    private Color highColor = new Color(0x08306b);
+
+    /**
+     * The ARGB value for each level of density, worked out from the colors
+     * when they're set.
+     */
+    private final int[] palette = new int[LEVELS];
+
+    private int width;
+
+    private int height;
+
+    private BufferedImage image;
+
+    /**
+     * The counts for each part, the first of which ends up with the totals.
+     * They're kept from one paint to the next while the size stays the same.
+     */
+    private int[][] counts = new int[0][];
+
+    DensityMap() {
+        buildPalette();
+    }
+
+    /**
+     * Retrieves the color of pixels with a single point.
+     */
+    Color getLowColor() {
+        return lowColor;
+    }
+
+    /**
+     * Retrieves the color of the busiest pixels.
+     */
+    Color getHighColor() {
+        return highColor;
+    }
+
+    /**
+     * Sets the colors of pixels with a single point and of the busiest
+     * pixels; those in between are blended from the two.
+     */
+    void setColors(Color low, Color high) {
+        if (low == null || high == null) {
+            throw new IllegalArgumentException("Density colors can't be null");
+        }
+        lowColor = low;
+        highColor = high;
+        buildPalette();
+    }
+
+    private void buildPalette() {
+        for (int level = 0; level < LEVELS; level++) {
+            float blend = level / (float) (LEVELS - 1);
+            palette[level] = mix(lowColor.getAlpha(), highColor.getAlpha(), blend) << 24
+                    | mix(lowColor.getRed(), highColor.getRed(), blend) << 16
+                    | mix(lowColor.getGreen(), highColor.getGreen(), blend) << 8
+                    | mix(lowColor.getBlue(), highColor.getBlue(), blend);
+        }
+    }
+
+    private static int mix(int from, int to, float blend) {
+        return Math.round(from + (to - from) * blend);
+    }
+
+    /**
+     * Counts the points of the given stretches of the given models into
+     * pixels and colors the image to match.  A point goes in the pixel
+     * column (int) (x * xScale + xOffset) - left, and likewise for rows,
+     * just as the points of a line are placed.
+     *
+     * @param models the models, or rather where to read their points from
+     * @param starts the index of the first point of each model to count
+     * @param ends   the index after the last point of each model to count
+     * @return the image, width by height, to be drawn at left, top
+     */
+    BufferedImage paint(List<GraphModel> models, int[] starts, int[] ends, int left, int top,
+                        int width, int height, double xScale, double xOffset,
+                        double yScale, double yOffset) {
+        resize(width, height);
+
+        long total = 0;
+        boolean parallel = true;
+        for (int i = 0; i < models.size(); i++) {
+            total += ends[i] - starts[i];
+            if (!(models.get(i) instanceof ParallelGraphModel)) {
+                parallel = false;
+            }
+        }
+        int parts = !parallel ? 1 : (int) Math.max(1,
+                Math.min(Runtime.getRuntime().availableProcessors(),
+                        total / GraphModels.PARALLEL_THRESHOLD));
+        if (counts.length < parts) {
+            counts = Arrays.copyOf(counts, parts);
+        }
+        double x_offset = xOffset - left;
+        double y_offset = yOffset - top;
+        IntStream stream = IntStream.range(0, parts);
+        if (parts > 1) {
+            stream = stream.parallel();
+        }
+        stream.forEach(part -> {
+            int[] part_counts = counts[part];
+            if (part_counts == null || part_counts.length != width * height) {
+                part_counts = counts[part] = new int[width * height];
+            } else {
+                Arrays.fill(part_counts, 0);
+            }
+            double[] xs = new double[GraphModels.CHUNK_SIZE];
+            double[] ys = new double[GraphModels.CHUNK_SIZE];
+            for (int i = 0; i < models.size(); i++) {
+                long length = ends[i] - starts[i];
+                int start = (int) (starts[i] + length * part / parts);
+                int end = (int) (starts[i] + length * (part + 1) / parts);
+                count(models.get(i), start, end, part_counts, xs, ys,
+                        xScale, x_offset, yScale, y_offset);
+            }
+        });
+
+        int[] totals = counts[0];
+        int max = 0;
+        for (int pixel = 0; pixel < totals.length; pixel++) {
+            int sum = totals[pixel];
+            for (int part = 1; part < parts; part++) {
+                sum += counts[part][pixel];
+            }
+            totals[pixel] = sum;
+            max = Math.max(max, sum);
+        }
+
+        // Color by the logarithm of the count, so that a few very busy
+        // pixels don't leave everything else looking the same.
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        double scale = max > 1 ? (LEVELS - 1) / Math.log(max) : 0;
+        for (int pixel = 0; pixel < totals.length; pixel++) {
+            int count = totals[pixel];
+            pixels[pixel] = count == 0 ? 0 : palette[(int) (Math.log(count) * scale)];
+        }
+        return image;
+    }
+
+    /**
+     * Adds one to the count of the pixel each point from start up to end
+     * falls in, leaving out those outside the image.
+     */
+    private void count(GraphModel model, int start, int end, int[] counts, double[] xs,
+                       double[] ys, double xScale, double xOffset, double yScale,
+                       double yOffset) {
+        for (int chunk = start; chunk < end; chunk += GraphModels.CHUNK_SIZE) {
+            int length = Math.min(GraphModels.CHUNK_SIZE, end - chunk);
+            GraphModels.read(model, chunk, xs, ys, length);
+            for (int i = 0; i < length; i++) {
+                double column = xs[i] * xScale + xOffset;
+                double row = ys[i] * yScale + yOffset;
+                // Written so that NaN coordinates are left out too.
+                if (column >= 0 && column < width && row >= 0 && row < height) {
+                    counts[(int) row * width + (int) column]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes a new image, and forgets the counts, if the size has changed.
+     */
+    private void resize(int width, int height) {
+        if (image != null && width == this.width && height == this.height) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        counts = new int[0][];
+    }
+}
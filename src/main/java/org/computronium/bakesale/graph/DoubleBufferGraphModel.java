@@ -0,0 +1,95 @@
+package org.computronium.bakesale.graph;
+
+import java.awt.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+/**
+ * A GraphModel whose points are held in a pair of DoubleBuffers.  When the
+ * buffers are direct (see {@link #allocateDirect(int, Color)}) the points live
+ * outside the Java heap, which keeps very large series away from the garbage
+ * collector.
+ * <p>
+ * The points are those between each buffer's position and its limit at the
+ * time the model is created.  The buffers are shared rather than copied, so
+ * values written into them afterwards show up the next time the graph is
+ * drawn.
+ */
+public class DoubleBufferGraphModel implements BulkGraphModel {
+    private final DoubleBuffer xs;
+
+    private final DoubleBuffer ys;
+
+    private final int count;
+
+    private final Color color;
+
+    /**
+     * Class constructor.
+     */
+    public DoubleBufferGraphModel(DoubleBuffer xs, DoubleBuffer ys, Color color) {
+        this.xs = xs.slice();
+        this.ys = ys.slice();
+        this.count = Math.min(this.xs.capacity(), this.ys.capacity());
+        this.color = color;
+    }
+
+    /**
+     * Creates a model backed by newly allocated direct buffers with room for
+     * the given number of points, all initially zero.  Fill them in through
+     * {@link #getXBuffer()} and {@link #getYBuffer()}.
+     */
+    public static DoubleBufferGraphModel allocateDirect(int count, Color color) {
+        return new DoubleBufferGraphModel(allocate(count), allocate(count), color);
+    }
+
+    private static DoubleBuffer allocate(int count) {
+        return ByteBuffer.allocateDirect(count * 8).order(ByteOrder.nativeOrder())
+                .asDoubleBuffer();
+    }
+
+    /**
+     * Retrieves the buffer holding the x coordinates.
+     */
+    public DoubleBuffer getXBuffer() {
+        return xs.duplicate();
+    }
+
+    /**
+     * Retrieves the buffer holding the y coordinates.
+     */
+    public DoubleBuffer getYBuffer() {
+        return ys.duplicate();
+    }
+
+    public int getPointCount() {
+        return count;
+    }
+
+    public double getX(int index) {
+        return xs.get(index);
+    }
+
+    public double getY(int index) {
+        return ys.get(index);
+    }
+
+    public void getX(int index, double[] dest, int offset, int count) {
+        read(xs, index, dest, offset, count);
+    }
+
+    public void getY(int index, double[] dest, int offset, int count) {
+        read(ys, index, dest, offset, count);
+    }
+
+    private static void read(DoubleBuffer buffer, int index, double[] dest, int offset, int count) {
+        DoubleBuffer view = buffer.duplicate();
+        view.position(index);
+        view.get(dest, offset, count);
+    }
+
+    public Color getColor() {
+        return color;
+    }
+}
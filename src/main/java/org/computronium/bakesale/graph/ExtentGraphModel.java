@@ -0,0 +1,28 @@
+package org.computronium.bakesale.graph;
+
+/**
+ * A GraphModel which keeps track of its own smallest and largest
+ * coordinates, so that GraphPanel needn't scan every point to find them.
+ * The values are undefined when the model has no points.
+ */
+public interface ExtentGraphModel extends GraphModel {
+    /**
+     * Returns the smallest x coordinate of any point.
+     */
+    double getMinX();
+
+    /**
+     * Returns the largest x coordinate of any point.
+     */
+    double getMaxX();
+
+    /**
+     * Returns the smallest y coordinate of any point.
+     */
+    double getMinY();
+
+    /**
+     * Returns the largest y coordinate of any point.
+     */
+    double getMaxY();
+}
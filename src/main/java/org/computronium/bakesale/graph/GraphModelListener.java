@@ -0,0 +1,26 @@
+package org.computronium.bakesale.graph;
+
+import java.util.EventListener;
+
+/**
+ * Listener notified when the points of an ObservableGraphModel change.
+ */
+public interface GraphModelListener extends EventListener {
+    /**
+     * Called when points have been added to the end of the model.
+     *
+     * @param model    the model that changed
+     * @param dropped  how many points were removed from the start of the model
+     *                 to make room (the indices of the remaining points have
+     *                 shifted down by this much)
+     * @param appended how many points were added; they are now the last ones
+     *                 in the model
+     */
+    void pointsAppended(GraphModel model, int dropped, int appended);
+
+    /**
+     * Called when the model has changed in some other way, so that none of
+     * its points should be assumed to be the same as before.
+     */
+    void modelChanged(GraphModel model);
+}
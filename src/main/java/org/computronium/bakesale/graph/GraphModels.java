@@ -0,0 +1,70 @@
+package org.computronium.bakesale.graph;
+
+/**
+ * Helpers for reading points out of a GraphModel a chunk at a time.
+ */
+final class GraphModels {
+    /**
+     * The number of points read in one go.
+     */
+    static final int CHUNK_SIZE = 4096;
+
+    /**
+     * The fewest points worth splitting up between threads.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 18;
+
+    private GraphModels() {
+    }
+
+    /**
+     * Copies count points, starting at index, into the given arrays.  Models
+     * which implement BulkGraphModel are asked for the whole run at once;
+     * anything else is read a point at a time.
+     */
+    static void read(GraphModel model, int index, double[] xs, double[] ys, int count) {
+        if (model instanceof BulkGraphModel) {
+            BulkGraphModel bulk = (BulkGraphModel) model;
+            bulk.getX(index, xs, 0, count);
+            bulk.getY(index, ys, 0, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                xs[i] = model.getX(index + i);
+                ys[i] = model.getY(index + i);
+            }
+        }
+    }
+
+    /**
+     * Copies the y coordinates of count points, starting at index, into the
+     * given array, in the same way as read().
+     */
+    static void readY(GraphModel model, int index, double[] ys, int count) {
+        if (model instanceof BulkGraphModel) {
+            ((BulkGraphModel) model).getY(index, ys, 0, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                ys[i] = model.getY(index + i);
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the first of the first count points of a model
+     * in order of x whose x value is at least the given value, or count if
+     * there's none.
+     */
+    static int findFirstAtLeast(GraphModel model, int count, double x) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (model.getX(middle) < x) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
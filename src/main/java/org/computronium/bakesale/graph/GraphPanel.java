@@ -1,65 +1,132 @@
 package org.computronium.bakesale.graph;
 
+import org.computronium.bakesale.metrics.RenderMetrics;
+import org.computronium.bakesale.render.ChartImages;
+import org.computronium.bakesale.render.RepaintScheduler;
+import org.computronium.bakesale.render.StaticLayerCache;
+
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
-import java.awt.geom.AffineTransform;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.Rectangle2D;
+import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * A panel used to graph one or more sets of points. Each set of points you wish
  * to graph should implement its own GraphModel, and can be added using the
- * addModel() method.
+ * addModel() method.  All the layout and drawing is done by a GraphRenderer,
+ * which can also be used on its own to draw the graph without a display.
+ * <p>
+ * The mouse wheel zooms in and out around the mouse, dragging moves the
+ * graph around, and double clicking goes back to showing all the data.
  */
 @SuppressWarnings("serial")
 public class GraphPanel extends JPanel {
-    private static final int GAP_BETWEEN_TITLE_AND_CHART = 5;
-
-    private static final int GAP_BETWEEN_X_AXIS_LABEL_AND_X_AXIS = 10;
-
-    private static final int HASH_MARK_SIZE = 5;
-
-    private static final int MARGIN = 10;
-
-    private Font titleFont = new Font("Arial", Font.BOLD, 16);
-
-    private String title;
-
-    private String xAxisLabel;
-
-    private String yAxisLabel;
-
-    private double dataMinX, dataMaxX, dataMinY, dataMaxY;
+    /**
+     * How much one notch of the mouse wheel zooms by.
+     */
+    private static final double ZOOM_PER_NOTCH = 1.25;
 
-    private int xScale;
+    private final GraphRenderer renderer = new GraphRenderer();
 
-    private int scaleMinX;
+    private final StaticLayerCache staticLayer = new StaticLayerCache();
 
-    private int scaleMaxX;
+    /**
+     * Leaves changes to the models for the repaint scheduler if there is one,
+     * or else deals with them on the event dispatch thread.  Either way the
+     * thread making the change never has to wait for the renderer, which
+     * might be painting.
+     */
+    private final GraphModelListener modelListener = new GraphModelListener() {
+        public void pointsAppended(GraphModel model, int dropped, int appended) {
+            RepaintScheduler.Update update = scheduledUpdate;
+            if (update != null) {
+                synchronized (pendingLock) {
+                    int[] counts = pendingAppends.get(model);
+                    if (counts == null) {
+                        pendingAppends.put(model, new int[]{dropped, appended});
+                    } else {
+                        counts[0] += dropped;
+                        counts[1] += appended;
+                    }
+                }
+                update.request();
+                return;
+            }
 
-    private int yScale;
+            onEventDispatchThread(() -> {
+                Rectangle dirty;
+                synchronized (renderer) {
+                    dirty = renderer.pointsAppended(model, dropped, appended);
+                }
+                if (dirty == null) {
+                    recalculateMetrics();
+                } else {
+                    repaint(dirty);
+                }
+            });
+        }
 
-    private int scaleMinY;
+        public void modelChanged(GraphModel model) {
+            RepaintScheduler.Update update = scheduledUpdate;
+            if (update != null) {
+                synchronized (pendingLock) {
+                    pendingChanges.add(model);
+                }
+                update.request();
+                return;
+            }
 
-    private int scaleMaxY;
+            onEventDispatchThread(() -> {
+                synchronized (renderer) {
+                    renderer.modelChanged(model);
+                }
+                recalculateMetrics();
+            });
+        }
+    };
 
-    private Rectangle visibleRect;
+    private RepaintScheduler repaintScheduler;
 
-    private List<GraphModel> models = new ArrayList<>();
+    /**
+     * The update registered with the repaint scheduler, or null if there's
+     * no scheduler and changes are dealt with straight away.
+     */
+    private volatile RepaintScheduler.Update scheduledUpdate;
 
-    private FontMetrics fontMetrics;
+    /**
+     * The changes to the models since the last scheduled update: the points
+     * dropped and appended for each model, added up, and the models which
+     * have changed in some other way.
+     */
+    private final Object pendingLock = new Object();
 
-    private FontMetrics titleFontMetrics;
+    private Map<GraphModel, int[]> pendingAppends = new IdentityHashMap<>();
 
-    private int graphLeft;
+    private Set<GraphModel> pendingChanges = Collections.newSetFromMap(new IdentityHashMap<>());
 
-    private int graphRight;
+    private final NumberFormat toolTipFormat = NumberFormat.getNumberInstance();
 
-    private int graphTop;
+    /**
+     * The part of the panel showing and its font, as of the last time they
+     * were looked at on the event dispatch thread.  The graph is laid out
+     * from these on other threads, which mustn't touch Swing.  Neither is
+     * initialized here, as the font is first set while the superclass is
+     * constructed.
+     */
+    private volatile Rectangle layoutBounds;
 
-    private int graphBottom;
+    private volatile Font layoutFont;
 
     /**
      * Class constructor.
@@ -75,11 +142,62 @@ public class GraphPanel extends JPanel {
         setBackground(Color.WHITE);
         setForeground(Color.BLACK);
 
+        // Register with the tool tip manager; the text depends on where the
+        // mouse is.
+        setToolTipText("");
+        toolTipFormat.setMaximumFractionDigits(4);
+
+        // The extents of big models which can be read from any thread are
+        // found in the background, and the graph laid out again once
+        // they're ready.
+        renderer.setExtentsReady(() -> SwingUtilities.invokeLater(this::recalculateMetrics));
+
         addComponentListener(new ComponentAdapter() {
             public void componentResized(ComponentEvent e) {
                 recalculateMetrics();
             }
         });
+
+        MouseAdapter navigator = new MouseAdapter() {
+            private Point dragFrom;
+
+            public void mousePressed(MouseEvent e) {
+                if (SwingUtilities.isLeftMouseButton(e)) {
+                    dragFrom = e.getPoint();
+                }
+            }
+
+            public void mouseDragged(MouseEvent e) {
+                if (dragFrom != null) {
+                    synchronized (renderer) {
+                        renderer.pan(e.getX() - dragFrom.x, e.getY() - dragFrom.y);
+                    }
+                    dragFrom = e.getPoint();
+                    recalculateMetrics();
+                }
+            }
+
+            public void mouseReleased(MouseEvent e) {
+                dragFrom = null;
+            }
+
+            public void mouseClicked(MouseEvent e) {
+                if (SwingUtilities.isLeftMouseButton(e) && e.getClickCount() == 2) {
+                    resetViewport();
+                }
+            }
+
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                synchronized (renderer) {
+                    renderer.zoom(e.getX(), e.getY(),
+                            Math.pow(ZOOM_PER_NOTCH, e.getPreciseWheelRotation()));
+                }
+                recalculateMetrics();
+            }
+        };
+        addMouseListener(navigator);
+        addMouseMotionListener(navigator);
+        addMouseWheelListener(navigator);
     }
 
     /* (non-Javadoc)
@@ -89,302 +207,459 @@ public class GraphPanel extends JPanel {
     public void paint(Graphics g) {
         super.paint(g);
 
-        int x_midpoint = getScreenX((this.scaleMinX + this.scaleMaxX) / 2D);
-
-        // Draw the title.
-        if (title != null && !"".equals(title)) {
-            Font save = g.getFont();
-            g.setFont(titleFont);
-            g.drawString(title, x_midpoint
-                            - titleFontMetrics.stringWidth(title) / 2,
-                    this.visibleRect.y + MARGIN + titleFontMetrics.getHeight());
-            g.setFont(save);
-        }
-
-        int min_x_pos = getScreenX(scaleMinX);
-        int max_x_pos = getScreenX(scaleMaxX);
-        int min_y_pos = getScreenY(scaleMinY);
-        int max_y_pos = getScreenY(scaleMaxY);
-
-        // Draw the x axis plus hashmarks.
-        g.drawLine(min_x_pos, min_y_pos, max_x_pos, min_y_pos);
-        for (int x = scaleMinX; x <= scaleMaxX; x += xScale) {
-            int x_pos = getScreenX(x);
-
-            // Draw the hashmark.
-            g.drawLine(x_pos, min_y_pos - HASH_MARK_SIZE, x_pos, min_y_pos
-                    + HASH_MARK_SIZE);
-
-            // Label the hashmark.
-            String number_label = String.valueOf(x);
-            g.drawString(number_label, x_pos
-                    - fontMetrics.stringWidth(number_label) / 2, min_y_pos
-                    + HASH_MARK_SIZE + fontMetrics.getHeight());
-        }
-
-        // Draw the x axis label.
-        if (xAxisLabel != null && !"".equals(xAxisLabel) && fontMetrics != null) {
-            g.drawString(xAxisLabel, x_midpoint
-                            - fontMetrics.stringWidth(xAxisLabel) / 2,
-                    this.visibleRect.y + this.visibleRect.height - MARGIN);
-        }
-
-        // Draw the y axis plus hashmarks.
-        g.drawLine(min_x_pos, min_y_pos, min_x_pos, max_y_pos);
-        for (int y = scaleMinY; y <= scaleMaxY; y += yScale) {
-            int y_pos = getScreenY(y);
-
-            // Draw the hashmark.
-            g.drawLine(min_x_pos - HASH_MARK_SIZE, y_pos, min_x_pos
-                    + HASH_MARK_SIZE, y_pos);
-
-            // Label the hashmark.
-            String number_label = String.valueOf(y);
-            g.drawString(number_label, min_x_pos - HASH_MARK_SIZE
-                    - fontMetrics.stringWidth(number_label) - 3, y_pos
-                    + fontMetrics.getAscent() / 2);
-        }
-
-        // Draw the y axis label.
-        if (yAxisLabel != null && !"".equals(yAxisLabel) && fontMetrics != null) {
-            Graphics2D g2d = (Graphics2D) g;
-            AffineTransform save_at = g2d.getTransform();
-            AffineTransform at = new AffineTransform();
-            int x = visibleRect.x + MARGIN + fontMetrics.getHeight();
-            int y_midpoint = getScreenY((this.scaleMinY + this.scaleMaxY) / 2D);
-            int y = y_midpoint + fontMetrics.stringWidth(yAxisLabel) / 2;
-            at.setToRotation(-Math.PI / 2.0, x, y);
-            g2d.setTransform(at);
-            g2d.drawString(yAxisLabel, x, y);
-            g2d.setTransform(save_at);
-        }
-
-        // Draw the data points.
-        for (GraphModel model : models) {
-            g.setColor(model.getColor());
-            for (int index = 0; index < model.getPointCount() - 1; index++) {
-                g.drawLine(getScreenX(model.getX(index)), getScreenY(model
-                                .getY(index)), getScreenX(model.getX(index + 1)),
-                        getScreenY(model.getY(index + 1)));
-            }
+        Rectangle bounds = renderer.getBounds();
+        if (bounds == null) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        RenderMetrics metrics = renderer.getMetrics();
+        Graphics2D g2d = (Graphics2D) g;
+        synchronized (renderer) {
+            metrics.staticLayerPainted(staticLayer.paint(g2d, bounds,
+                    renderer.getStaticLayerKey(), renderer::paintStaticLayer));
+            renderer.paintDataLayer(g2d);
         }
+        metrics.paintFinished(System.nanoTime() - start);
     }
 
     /**
-     * Returns the screen x value for the given data x value.
+     * Counts the repaint towards the metrics, then asks for it as usual.
      */
-    private int getScreenX(double x) {
-        return (int) (graphLeft + (x - scaleMinX) * (graphRight - graphLeft)
-                / (scaleMaxX - scaleMinX));
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {
+        // This is called while the superclass is constructed, before there's
+        // a renderer.
+        if (renderer != null) {
+            renderer.getMetrics().repaintRequested();
+        }
+        super.repaint(tm, x, y, width, height);
     }
 
     /**
-     * Returns the screen y value for the given data y value.
+     * Returns the coordinates of the point under the mouse, if there is one.
      */
-    private int getScreenY(double y) {
-        return (int) (graphBottom - (y - scaleMinY) * (graphBottom - graphTop)
-                / (scaleMaxY - scaleMinY));
+    @Override
+    public String getToolTipText(MouseEvent event) {
+        GraphPoint point = getPointAt(event.getX(), event.getY());
+        if (point == null) {
+            return null;
+        }
+        return "(" + toolTipFormat.format(point.getX()) + ", "
+                + toolTipFormat.format(point.getY()) + ")";
     }
 
     /**
-     * Recomputes all the necessary parameters.
+     * Finds the point nearest to the given position in the panel.
+     *
+     * @return the point, or null if there's none within a few pixels
      */
-    private void recalculateMetrics() {
-        this.visibleRect = this.getVisibleRect();
-        if (this.visibleRect.width == 0) {
-            // Still initializing.
-            return;
+    public GraphPoint getPointAt(int x, int y) {
+        synchronized (renderer) {
+            return renderer.getPointAt(x, y);
         }
+    }
 
-        Graphics g = this.getGraphics();
-        fontMetrics = g.getFontMetrics();
-        titleFontMetrics = g.getFontMetrics(titleFont);
-
-        findDataExtremes();
-
-        findGraphBounds();
-
-        findXScaleValues();
+    /**
+     * Remembers the font, so that the graph can be laid out in it from any
+     * thread.
+     */
+    @Override
+    public void setFont(Font font) {
+        super.setFont(font);
+        layoutFont = font;
+    }
 
-        findYScaleValues();
+    /**
+     * Passes the color on to the renderer, which draws the axes, their
+     * labels and the title in it.  A null color leaves the renderer with the one the
+     * panel now inherits from its parent, if there is one.
+     */
+    @Override
+    public void setForeground(Color foreground) {
+        super.setForeground(foreground);
+        Color color = getForeground();
+        // The superclass sets a foreground while being constructed, before
+        // the renderer is.
+        if (renderer != null && color != null) {
+            synchronized (renderer) {
+                renderer.setForeground(color);
+            }
+        }
+    }
 
-        // TODO:  There's a circular dependency here, where figuring out the
-        // graph bounds depends on the x and y scale extremes, and the scale
-        // values depend on the graph bounds.  Hence the need to call this
-        // method again here, but it should be possible to do in one pass.
-        findGraphBounds();
+    /**
+     * Recomputes all the necessary parameters.  On the event dispatch thread
+     * the area showing and the font are looked up afresh; anywhere else,
+     * those last seen there are used, and text is measured without the
+     * screen's help.
+     */
+    private void recalculateMetrics() {
+        Rectangle bounds;
+        Font font;
+        Graphics g = null;
+        if (SwingUtilities.isEventDispatchThread()) {
+            bounds = layoutBounds = getVisibleRect();
+            font = layoutFont = getFont();
+            g = getGraphics();
+        } else {
+            bounds = layoutBounds;
+            font = layoutFont;
+            if (bounds == null || !hasOnlySnapshotModels()) {
+                // Nothing has been seen of the panel yet, or there are
+                // models which can only be read where they're changed.
+                SwingUtilities.invokeLater(this::recalculateMetrics);
+                return;
+            }
+        }
+        Graphics2D g2d = g != null ? (Graphics2D) g : ChartImages.createScratchGraphics();
+        try {
+            synchronized (renderer) {
+                renderer.setFont(font);
+                renderer.layout(g2d, bounds);
+            }
+        } finally {
+            g2d.dispose();
+        }
 
         repaint();
     }
 
     /**
-     * Finds the minimum and maximum values for the actual graph part of the panel.
+     * Returns whether all the models are SnapshotGraphModels.  Only they can
+     * be read away from the event dispatch thread; any other model is taken
+     * to be changed on that thread, and read there too.
      */
-    private void findGraphBounds() {
-        graphLeft = this.visibleRect.x
-                + fontMetrics.stringWidth(String.valueOf(scaleMaxY)) + MARGIN
-                + HASH_MARK_SIZE;
-        if (yAxisLabel != null && !"".equals(yAxisLabel)) {
-            graphLeft += fontMetrics.getHeight() + 10;
+    private boolean hasOnlySnapshotModels() {
+        synchronized (renderer) {
+            for (GraphModel model : renderer.getModels()) {
+                if (!(model instanceof SnapshotGraphModel)) {
+                    return false;
+                }
+            }
         }
+        return true;
+    }
 
-        int overhang_of_x_axis_number_labels = fontMetrics.stringWidth(String
-                .valueOf(scaleMaxX)) / 2;
-        graphRight = this.visibleRect.x + this.visibleRect.width
-                - overhang_of_x_axis_number_labels - MARGIN;
+    /**
+     * Runs the given work straight away if this is the event dispatch
+     * thread, and hands it over to that thread otherwise.  Models which
+     * aren't safe to use from other threads are changed there anyway, so
+     * their changes are still dealt with before the next one is made.
+     */
+    private static void onEventDispatchThread(Runnable work) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            work.run();
+        } else {
+            SwingUtilities.invokeLater(work);
+        }
+    }
 
-        graphBottom = this.visibleRect.y + this.visibleRect.height - 5
-                - fontMetrics.getHeight() - 5 // for the x axis number labels
-                - HASH_MARK_SIZE - MARGIN;
-        if (xAxisLabel != null && !"".equals(xAxisLabel)) {
-            graphBottom -= fontMetrics.getHeight()
-                    - GAP_BETWEEN_X_AXIS_LABEL_AND_X_AXIS;
+    /**
+     * Catches up with the changes to the models since the last scheduled
+     * update, on the repaint scheduler's thread if all the models are
+     * snapshot models, and on the event dispatch thread otherwise.  The
+     * graph is laid out again if need be; otherwise the areas the new
+     * points fall in are repainted together.
+     */
+    private void update() {
+        if (!SwingUtilities.isEventDispatchThread() && !hasOnlySnapshotModels()) {
+            SwingUtilities.invokeLater(this::update);
+            return;
+        }
+        Map<GraphModel, int[]> appends;
+        Set<GraphModel> changes;
+        synchronized (pendingLock) {
+            appends = pendingAppends;
+            changes = pendingChanges;
+            pendingAppends = new IdentityHashMap<>();
+            pendingChanges = Collections.newSetFromMap(new IdentityHashMap<>());
         }
 
-        int top_y_axis_number_label_overhang = fontMetrics.getHeight() / 2;
-        graphTop = this.visibleRect.y + MARGIN
-                + top_y_axis_number_label_overhang;
-        if (title != null && !"".equals(title)) {
-            graphTop += titleFontMetrics.getHeight()
-                    + GAP_BETWEEN_TITLE_AND_CHART;
+        boolean layout = !changes.isEmpty();
+        Rectangle dirty = null;
+        synchronized (renderer) {
+            for (GraphModel model : changes) {
+                renderer.modelChanged(model);
+            }
+            for (Map.Entry<GraphModel, int[]> entry : appends.entrySet()) {
+                if (changes.contains(entry.getKey())) {
+                    continue;
+                }
+                int[] counts = entry.getValue();
+                Rectangle area = renderer.pointsAppended(entry.getKey(), counts[0], counts[1]);
+                if (area == null) {
+                    layout = true;
+                } else {
+                    dirty = dirty == null ? area : dirty.union(area);
+                }
+            }
+        }
+        if (layout) {
+            recalculateMetrics();
+        } else if (dirty != null) {
+            repaint(dirty);
         }
     }
 
     /**
-     * Finds all the minimums and maximums within the data set.
+     * Retrieves the scheduler which brings the graph up to date when the
+     * models change.
+     *
+     * @return the scheduler, or null if changes are dealt with straight away
      */
-    private void findDataExtremes() {
-        dataMinX = Double.POSITIVE_INFINITY;
-        dataMaxX = Double.NEGATIVE_INFINITY;
-        dataMinY = Double.POSITIVE_INFINITY;
-        dataMaxY = Double.NEGATIVE_INFINITY;
-        for (GraphModel model : models) {
-            for (int index = 0; index < model.getPointCount(); index++) {
-                double x = model.getX(index);
-                double y = model.getY(index);
-                if (x < dataMinX)
-                    dataMinX = x;
-                if (x > dataMaxX)
-                    dataMaxX = x;
-                if (y < dataMinY)
-                    dataMinY = y;
-                if (y > dataMaxY)
-                    dataMaxY = y;
-            }
-        }
+    public RepaintScheduler getRepaintScheduler() {
+        return repaintScheduler;
     }
 
     /**
-     * Figures out the proper scale to use for the x axis.
+     * Sets the scheduler to bring the graph up to date when the models
+     * change, which holds it to the scheduler's frame rate.  If all the
+     * models are SnapshotGraphModels, the graph is laid out on the
+     * scheduler's thread; otherwise it's still laid out on the event
+     * dispatch thread, where the models are changed.  Without one, every change to an
+     * observable model is dealt with on its own, on the event dispatch
+     * thread.
+     *
+     * @param scheduler the scheduler, or null to deal with changes straight
+     *                  away
      */
-    private void findXScaleValues() {
-        Graphics g = this.getGraphics();
-        // Calculate the optimal x increment.
-        int multiplier = 5;
-        xScale = 1;
-        scaleMinX = (int) (dataMinX - (dataMinX % xScale));
-        scaleMaxX = (int) (dataMaxX + xScale - (dataMaxX % xScale));
-        double width_needed_for_x_label = fontMetrics.getStringBounds(
-                String.valueOf(scaleMaxX), g).getWidth() + 5;
-        while ((getScreenX(scaleMaxX) - getScreenX(scaleMinX))
-                / ((dataMaxX - dataMinX) / xScale) < width_needed_for_x_label) {
-            xScale *= multiplier;
-            scaleMinX = (int) (dataMinX - (dataMinX % xScale));
-            scaleMaxX = (int) (dataMaxX + xScale - (dataMaxX % xScale));
-            width_needed_for_x_label = fontMetrics.getStringBounds(
-                    String.valueOf(scaleMaxX), g).getWidth() + 5;
-            multiplier = 7 - multiplier;
+    public void setRepaintScheduler(RepaintScheduler scheduler) {
+        if (scheduledUpdate != null) {
+            scheduledUpdate.cancel();
         }
+        repaintScheduler = scheduler;
+        scheduledUpdate = scheduler == null ? null : scheduler.register(this::update);
     }
 
     /**
-     * Figures out the proper scale to use for the y axis.
+     * Retrieves the metrics layout and painting are reported to.
      */
-    private void findYScaleValues() {
-        double width_needed_for_y_label = fontMetrics.getHeight() + 5;
+    public RenderMetrics getRenderMetrics() {
+        return renderer.getMetrics();
+    }
 
-        // Calculate the optimal y increment.
-        int multiplier = 5;
-        yScale = 1;
-        while (this.visibleRect.height / ((dataMaxY - dataMinY) / yScale) < width_needed_for_y_label) {
-            yScale *= multiplier;
-            multiplier = 7 - multiplier;
+    /**
+     * Sets the metrics to report layout and painting to, such as a
+     * JmxRenderMetrics.
+     *
+     * @param metrics the metrics, or null to stop reporting
+     */
+    public void setRenderMetrics(RenderMetrics metrics) {
+        renderer.setMetrics(metrics);
+    }
+
+    /**
+     * Returns the renderer which does the drawing, which can be handed to
+     * ChartImages to save the graph as an image.
+     */
+    public GraphRenderer getRenderer() {
+        return renderer;
+    }
+
+    /**
+     * Shows just the given region of the data, in data coordinates, rather
+     * than all of it.
+     *
+     * @param viewport the region to show, or null to show all the data
+     */
+    public void setViewport(Rectangle2D viewport) {
+        synchronized (renderer) {
+            renderer.setViewport(viewport);
         }
+        recalculateMetrics();
+    }
+
+    /**
+     * Retrieves the region of the data being shown.
+     *
+     * @return the region, or null if all the data is being shown
+     */
+    public Rectangle2D getViewport() {
+        return renderer.getViewport();
+    }
 
-        scaleMinY = (int) (dataMinY - (dataMinY % yScale));
-        scaleMaxY = (int) (dataMaxY + yScale - (dataMaxY % yScale));
-        // System.out.println( "y scale will go from " + graphStartY + " to " +
-        // graphEndY + " by " + yScale );
+    /**
+     * Goes back to showing all the data.
+     */
+    public void resetViewport() {
+        setViewport(null);
     }
 
     /**
      * Adds another set of points (as represented by the given model) to the graph.
      */
     public void addModel(GraphModel model) {
-        this.models.add(model);
+        synchronized (renderer) {
+            renderer.addModel(model);
+        }
+        if (model instanceof ObservableGraphModel) {
+            ((ObservableGraphModel) model).addGraphModelListener(modelListener);
+        }
+        recalculateMetrics();
+    }
+
+    /**
+     * Takes the given model off the graph, leaving the others as they are.
+     * What's known about the others, such as their extents, is kept.
+     *
+     * @return whether the model was on the graph
+     */
+    public boolean removeModel(GraphModel model) {
+        boolean removed;
+        synchronized (renderer) {
+            removed = renderer.removeModel(model);
+        }
+        if (removed) {
+            stopListening(model);
+            recalculateMetrics();
+        }
+        return removed;
+    }
+
+    /**
+     * Puts a new model in place of one on the graph, drawn in the same order
+     * among the others.
+     *
+     * @throws IllegalArgumentException if the old model isn't on the graph
+     */
+    public void replaceModel(GraphModel oldModel, GraphModel newModel) {
+        synchronized (renderer) {
+            renderer.replaceModel(oldModel, newModel);
+        }
+        stopListening(oldModel);
+        if (newModel instanceof ObservableGraphModel) {
+            ((ObservableGraphModel) newModel).addGraphModelListener(modelListener);
+        }
         recalculateMetrics();
     }
 
     /**
-     * Gets rid of all the current models.
+     * Stops listening to a model which has been taken off the graph, as
+     * addModel() started to.  Unless it's still on there, having been added
+     * more than once, any changes to it still waiting for the repaint
+     * scheduler are forgotten.
+     */
+    private void stopListening(GraphModel model) {
+        if (model instanceof ObservableGraphModel) {
+            ((ObservableGraphModel) model).removeGraphModelListener(modelListener);
+        }
+        synchronized (renderer) {
+            if (renderer.getModels().contains(model)) {
+                return;
+            }
+        }
+        synchronized (pendingLock) {
+            pendingAppends.remove(model);
+            pendingChanges.remove(model);
+        }
+    }
+
+    /**
+     * Gets rid of all the current models, and any of their changes still
+     * waiting for the repaint scheduler.
      */
     public void clearModels() {
-        this.models.clear();
+        List<GraphModel> models;
+        synchronized (renderer) {
+            models = new ArrayList<>(renderer.getModels());
+            renderer.clearModels();
+        }
+        for (GraphModel model : models) {
+            if (model instanceof ObservableGraphModel) {
+                ((ObservableGraphModel) model).removeGraphModelListener(modelListener);
+            }
+        }
+        synchronized (pendingLock) {
+            pendingAppends.clear();
+            pendingChanges.clear();
+        }
+    }
+
+    /**
+     * Retrieves whether the points are drawn as a heat map.
+     */
+    public boolean isDensity() {
+        return renderer.isDensity();
+    }
+
+    /**
+     * Sets whether the points are drawn as a heat map, each pixel colored
+     * by how many points fall in it, rather than joined up with lines.
+     */
+    public void setDensity(boolean density) {
+        synchronized (renderer) {
+            renderer.setDensity(density);
+        }
+        repaint();
+    }
+
+    /**
+     * Sets the colors of the heat map: that of pixels with a single point,
+     * and that of the busiest pixels.
+     *
+     * @throws IllegalArgumentException if either color is null
+     */
+    public void setDensityColors(Color low, Color high) {
+        synchronized (renderer) {
+            renderer.setDensityColors(low, high);
+        }
+        repaint();
     }
 
     /**
      * Retrieves the title.
      */
     public String getTitle() {
-        return title;
+        return renderer.getTitle();
     }
 
     /**
      * Sets the title.
      */
     public void setTitle(String title) {
-        this.title = title;
+        renderer.setTitle(title);
     }
 
     /**
      * Retrieves the label for the x axis.
      */
     public String getXAxisLabel() {
-        return xAxisLabel;
+        return renderer.getXAxisLabel();
     }
 
     /**
      * Sets the x axis label.
      */
     public void setXAxisLabel(String axisLabel) {
-        xAxisLabel = axisLabel;
+        renderer.setXAxisLabel(axisLabel);
     }
 
     /**
      * Retrieves the y axis label.
      */
     public String getYAxisLabel() {
-        return yAxisLabel;
+        return renderer.getYAxisLabel();
     }
 
     /**
      * Sets the y axis label.
      */
     public void setYAxisLabel(String axisLabel) {
-        yAxisLabel = axisLabel;
+        renderer.setYAxisLabel(axisLabel);
     }
 
     /**
      * Retrieves the title font.
      */
     public Font getTitleFont() {
-        return titleFont;
+        return renderer.getTitleFont();
     }
 
     /**
      * Sets the title font.
      */
     public void setTitleFont(Font titleFont) {
-        this.titleFont = titleFont;
+        renderer.setTitleFont(titleFont);
     }
 }
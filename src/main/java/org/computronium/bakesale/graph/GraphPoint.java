@@ -0,0 +1,62 @@
+package org.computronium.bakesale.graph;
+
+/**
+ * A point found on a graph, as when looking for the point under the mouse.
+ */
+public final class GraphPoint {
+    private final GraphModel model;
+
+    private final int index;
+
+    private final double x;
+
+    private final double y;
+
+    /**
+     * Class constructor.
+     *
+     * @param model the model the point belongs to
+     * @param index the index of the point in the model
+     * @param x     the point's x coordinate
+     * @param y     the point's y coordinate
+     */
+    public GraphPoint(GraphModel model, int index, double x, double y) {
+        this.model = model;
+        this.index = index;
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Retrieves the model the point belongs to.
+     */
+    public GraphModel getModel() {
+        return model;
+    }
+
+    /**
+     * Retrieves the index of the point in its model.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Retrieves the x coordinate.
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * Retrieves the y coordinate.
+     */
+    public double getY() {
+        return y;
+    }
+
+    @Override
+    public String toString() {
+        return "GraphPoint[" + index + ": " + x + ", " + y + "]";
+    }
+}
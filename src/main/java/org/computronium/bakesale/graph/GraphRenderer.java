@@ -0,0 +1,1135 @@
+package org.computronium.bakesale.graph;
+
+import org.computronium.bakesale.axis.AxisScale;
+import org.computronium.bakesale.metrics.RenderMetrics;
+import org.computronium.bakesale.render.ChartRenderer;
+import org.computronium.bakesale.text.TextCache;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Lays out and draws a graph of one or more sets of points onto any
+ * Graphics2D.  GraphPanel wraps one of these to show the graph on screen.
+ */
+public class GraphRenderer implements ChartRenderer {
+    private static final int GAP_BETWEEN_TITLE_AND_CHART = 5;
+
+    private static final int GAP_BETWEEN_X_AXIS_LABEL_AND_X_AXIS = 10;
+
+    private static final int HASH_MARK_SIZE = 5;
+
+    private static final int MARGIN = 10;
+
+    /**
+     * Series with no more than this many points per pixel column are drawn
+     * as they are; anything denser goes through the decimator first.
+     */
+    private static final int DECIMATION_THRESHOLD = 4;
+
+    /**
+     * How close, in pixels, a point has to be to count as being under the
+     * mouse.
+     */
+    private static final int HIT_DISTANCE = 5;
+
+    private Color foreground = Color.BLACK;
+
+    private Font font = new Font(Font.DIALOG, Font.PLAIN, 12);
+
+    private Font titleFont = new Font("Arial", Font.BOLD, 16);
+
+    private String title;
+
+    private String xAxisLabel;
+
+    private String yAxisLabel;
+
+    private double dataMinX, dataMaxX, dataMinY, dataMaxY;
+
+    private final AxisScale xAxis = new AxisScale();
+
+    private final AxisScale yAxis = new AxisScale();
+
+    private Rectangle visibleRect;
+
+    private List<GraphModel> models = new ArrayList<>();
+
+    private FontMetrics fontMetrics;
+
+    private FontMetrics titleFontMetrics;
+
+    private int graphLeft;
+
+    private int graphRight;
+
+    private int graphTop;
+
+    private int graphBottom;
+
+    private final LineDecimator decimator = new LineDecimator();
+
+    /**
+     * Whether the points are drawn as a heat map of how many fall in each
+     * pixel, rather than joined up with lines.
+     */
+    private boolean density;
+
+    private final DensityMap densityMap = new DensityMap();
+
+    /**
+     * Screen x = data x * xScale + xOffset, and the same for y, worked out
+     * once the axes are fitted so that placing a point takes no division.
+     */
+    private double xScale;
+    private double xOffset;
+    private double yScale;
+    private double yOffset;
+
+    // Reused from one paint to the next: the points of a model a chunk at a
+    // time, and where they go on the screen, with room at the start of the
+    // screen buffers for the last point of the chunk before.
+    private final double[] chunkX = new double[GraphModels.CHUNK_SIZE];
+    private final double[] chunkY = new double[GraphModels.CHUNK_SIZE];
+    private final int[] screenXs = new int[GraphModels.CHUNK_SIZE + 1];
+    private final int[] screenYs = new int[GraphModels.CHUNK_SIZE + 1];
+
+    /**
+     * What has been worked out about each model to speed up drawing it and
+     * finding points on it.
+     */
+    private final Map<GraphModel, SeriesCache> caches = new IdentityHashMap<>();
+
+    /**
+     * Run once the extents of a model found in the background are ready, or
+     * null if they're all found during layout.
+     */
+    private Runnable extentsReady;
+
+    /**
+     * The region of the data being shown, or null to show all of it.
+     */
+    private Rectangle2D viewport;
+
+    /**
+     * Whether the viewport has changed since the last layout, in which case
+     * the layout is just for the sake of the new viewport and there's no
+     * reason to think the data has changed.
+     */
+    private boolean viewportChanged;
+
+    private RenderMetrics metrics = RenderMetrics.NONE;
+
+    /**
+     * Where the widths of strings, and the glyphs to draw them with, are
+     * kept from one layout and paint to the next.
+     */
+    private TextCache textCache = TextCache.getShared();
+
+    /**
+     * The number of points drawn and left out by decimation so far during
+     * the current paint, for the metrics.
+     */
+    private int pointsDrawn;
+
+    private int pointsSkipped;
+
+    /**
+     * Goes up by one whenever anything the static layer shows changes: the
+     * setters of what it draws bump it, and so does a layout which moves
+     * the axes or changes their scale.  It's kept boxed, as the key, so
+     * that painting doesn't box it again each time.
+     */
+    private Long staticLayerVersion = 0L;
+
+    /**
+     * Where the static layer was last laid out, as the bounds, the axis
+     * ranges and steps and the edges of the graph.
+     */
+    private double[] staticLayout = new double[0];
+
+    /**
+     * Returns a value capturing everything the static layer depends on.
+     */
+    public Object getStaticLayerKey() {
+        return staticLayerVersion;
+    }
+
+    /**
+     * Marks the static layer as changed.
+     */
+    private void staticLayerChanged() {
+        staticLayerVersion = staticLayerVersion + 1;
+    }
+
+    /**
+     * Paints the parts of the graph which don't depend on the data: the
+     * title, the axes with their hash marks and labels.
+     */
+    public void paintStaticLayer(Graphics2D g) {
+        if (visibleRect == null) {
+            return;
+        }
+
+        g.setColor(foreground);
+        g.setFont(font);
+
+        int x_midpoint = getScreenX((xAxis.getMin() + xAxis.getMax()) / 2);
+
+        // Draw the title.
+        if (title != null && !"".equals(title)) {
+            Font save = g.getFont();
+            g.setFont(titleFont);
+            textCache.drawString(g, title, x_midpoint
+                            - textCache.stringWidth(titleFontMetrics, title) / 2,
+                    this.visibleRect.y + MARGIN + titleFontMetrics.getHeight());
+            g.setFont(save);
+        }
+
+        int min_x_pos = getScreenX(xAxis.getMin());
+        int max_x_pos = getScreenX(xAxis.getMax());
+        int min_y_pos = getScreenY(yAxis.getMin());
+        int max_y_pos = getScreenY(yAxis.getMax());
+
+        // Draw the x axis plus hashmarks.
+        g.drawLine(min_x_pos, min_y_pos, max_x_pos, min_y_pos);
+        for (int tick = 0; tick < xAxis.getTickCount(); tick++) {
+            int x_pos = getScreenX(xAxis.getTick(tick));
+
+            // Draw the hashmark.
+            g.drawLine(x_pos, min_y_pos - HASH_MARK_SIZE, x_pos, min_y_pos
+                    + HASH_MARK_SIZE);
+
+            // Label the hashmark.
+            String number_label = xAxis.getLabel(tick);
+            textCache.drawString(g, number_label, x_pos
+                    - textCache.stringWidth(fontMetrics, number_label) / 2, min_y_pos
+                    + HASH_MARK_SIZE + fontMetrics.getHeight());
+        }
+
+        // Draw the x axis label.
+        if (xAxisLabel != null && !"".equals(xAxisLabel) && fontMetrics != null) {
+            textCache.drawString(g, xAxisLabel, x_midpoint
+                            - textCache.stringWidth(fontMetrics, xAxisLabel) / 2,
+                    this.visibleRect.y + this.visibleRect.height - MARGIN);
+        }
+
+        // Draw the y axis plus hashmarks.
+        g.drawLine(min_x_pos, min_y_pos, min_x_pos, max_y_pos);
+        for (int tick = 0; tick < yAxis.getTickCount(); tick++) {
+            int y_pos = getScreenY(yAxis.getTick(tick));
+
+            // Draw the hashmark.
+            g.drawLine(min_x_pos - HASH_MARK_SIZE, y_pos, min_x_pos
+                    + HASH_MARK_SIZE, y_pos);
+
+            // Label the hashmark.
+            String number_label = yAxis.getLabel(tick);
+            textCache.drawString(g, number_label, min_x_pos - HASH_MARK_SIZE
+                    - textCache.stringWidth(fontMetrics, number_label) - 3, y_pos
+                    + fontMetrics.getAscent() / 2);
+        }
+
+        // Draw the y axis label.
+        if (yAxisLabel != null && !"".equals(yAxisLabel) && fontMetrics != null) {
+            AffineTransform save_at = g.getTransform();
+            AffineTransform at = new AffineTransform(save_at);
+            int x = visibleRect.x + MARGIN + fontMetrics.getHeight();
+            int y_midpoint = getScreenY((yAxis.getMin() + yAxis.getMax()) / 2);
+            int y = y_midpoint + textCache.stringWidth(fontMetrics, yAxisLabel) / 2;
+            at.rotate(-Math.PI / 2.0, x, y);
+            g.setTransform(at);
+            textCache.drawString(g, yAxisLabel, x, y);
+            g.setTransform(save_at);
+        }
+    }
+
+    /**
+     * Paints the lines joining the points of each model, or the heat map of
+     * all their points.
+     */
+    public void paintDataLayer(Graphics2D g) {
+        if (visibleRect == null) {
+            return;
+        }
+        if (density) {
+            paintDensity(g);
+            return;
+        }
+
+        // Keep the lines within the graph, which matters once zoomed in.
+        Graphics2D clipped = (Graphics2D) g.create();
+        try {
+            clipped.clipRect(graphLeft, graphTop, graphRight - graphLeft + 1,
+                    graphBottom - graphTop + 1);
+
+            // Only the points under the clip need reading, which when just
+            // the strip new points fall in is being repainted is a small part
+            // of the graph.  A couple of pixels either side are included so
+            // that the columns cut off at the ends of the range aren't seen.
+            Rectangle clip = clipped.getClipBounds();
+            double paint_min_x = (clip.x - 2 - xOffset) / xScale;
+            double paint_max_x = (clip.x + clip.width + 2 - xOffset) / xScale;
+
+            // Draw the data points.
+            int columns = graphRight - graphLeft;
+            double pixels_per_unit = columns / (xAxis.getMax() - xAxis.getMin());
+            pointsDrawn = 0;
+            pointsSkipped = 0;
+            for (GraphModel model : models) {
+                clipped.setColor(model.getColor());
+                paintModel(clipped, getCache(model), columns * DECIMATION_THRESHOLD,
+                        pixels_per_unit, paint_min_x, paint_max_x);
+            }
+        } finally {
+            clipped.dispose();
+        }
+        metrics.itemsPainted(pointsDrawn, pointsSkipped);
+    }
+
+    /**
+     * Paints a heat map of the points of all the models.  Models whose x
+     * values never go down only have the points in view counted.
+     */
+    private void paintDensity(Graphics2D g) {
+        int width = graphRight - graphLeft + 1;
+        int height = graphBottom - graphTop + 1;
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        List<GraphModel> points = new ArrayList<>(models.size());
+        int[] starts = new int[models.size()];
+        int[] ends = new int[models.size()];
+        int counted = 0;
+        for (int i = 0; i < models.size(); i++) {
+            SeriesCache cache = getCache(models.get(i));
+            GraphModel model = cache.getPoints();
+            points.add(model);
+            ends[i] = model.getPointCount();
+            if (viewport != null && cache.isSorted()) {
+                starts[i] = cache.findFirstAtLeast(xAxis.getMin());
+                ends[i] = cache.findFirstAtLeast(Math.nextUp(xAxis.getMax()));
+            }
+            counted += ends[i] - starts[i];
+        }
+
+        g.drawImage(densityMap.paint(points, starts, ends, graphLeft, graphTop, width, height,
+                xScale, xOffset, yScale, yOffset), graphLeft, graphTop, null);
+        metrics.itemsPainted(counted, 0);
+    }
+
+    /**
+     * Paints the lines joining the points of one model.  Models whose x
+     * values never go down only have the points between paintMinX and
+     * paintMaxX drawn, found by binary search, and decimated with the help
+     * of the model's pyramid if there are too many points in view.  For a
+     * model which says it's sorted, the pyramid is only built if it's needed
+     * for that.  Whether to decimate goes by all the points in view, not
+     * just those painted, so that repainting part of the graph draws it just
+     * as painting all of it would.
+     */
+    private void paintModel(Graphics2D g, SeriesCache cache, int threshold,
+                            double pixelsPerUnit, double paintMinX, double paintMaxX) {
+        GraphModel model = cache.getPoints();
+        int count = model.getPointCount();
+        if (count <= threshold && viewport == null) {
+            paintPoints(g, model, 0, count);
+            return;
+        }
+
+        if (!cache.isSorted()) {
+            paintUnsorted(g, model, threshold, pixelsPerUnit);
+            return;
+        }
+
+        // Include the points either side of the view, for the lines which
+        // lead off the edges.
+        int start = Math.max(0, cache.findFirstAtLeast(xAxis.getMin()) - 1);
+        int end = Math.min(count, cache.findFirstAtLeast(Math.nextUp(xAxis.getMax())) + 1);
+        boolean decimate = end - start > threshold;
+        if (paintMinX > xAxis.getMin()) {
+            start = Math.max(start, cache.findFirstAtLeast(paintMinX) - 1);
+        }
+        if (paintMaxX < xAxis.getMax()) {
+            end = Math.min(end, cache.findFirstAtLeast(Math.nextUp(paintMaxX)) + 1);
+        }
+        if (start >= end) {
+            return;
+        }
+        if (!decimate) {
+            paintPoints(g, model, start, end);
+            return;
+        }
+
+        MinMaxPyramid pyramid = cache.getPyramid();
+        if (!pyramid.isSorted()) {
+            // The model said it was sorted, but it isn't.
+            paintUnsorted(g, model, threshold, pixelsPerUnit);
+            return;
+        }
+        decimator.decimate(model, pyramid, start, end, xAxis.getMin(), pixelsPerUnit);
+        paintDecimated(g);
+        pointsSkipped += end - start - decimator.getSize();
+    }
+
+    /**
+     * Paints the lines joining all the points of a model whose x values
+     * aren't in order, decimated if there are too many of them.
+     */
+    private void paintUnsorted(Graphics2D g, GraphModel model, int threshold,
+                               double pixelsPerUnit) {
+        int count = model.getPointCount();
+        if (count > threshold) {
+            decimator.decimate(model, xAxis.getMin(), pixelsPerUnit);
+            paintDecimated(g);
+            pointsSkipped += count - decimator.getSize();
+        } else {
+            paintPoints(g, model, 0, count);
+        }
+    }
+
+    /**
+     * Joins up the points of the model from start up to end.  They're read a
+     * chunk at a time, placed on the screen all in one go and drawn as a
+     * single polyline, which carries on from where the last chunk's left
+     * off.
+     */
+    private void paintPoints(Graphics2D g, GraphModel model, int start, int end) {
+        pointsDrawn += end - start;
+        int carried = 0;
+        for (int chunk = start; chunk < end; chunk += GraphModels.CHUNK_SIZE) {
+            int length = Math.min(GraphModels.CHUNK_SIZE, end - chunk);
+            GraphModels.read(model, chunk, chunkX, chunkY, length);
+            int n = toScreen(chunkX, chunkY, length, carried);
+            if (n > 1) {
+                g.drawPolyline(screenXs, screenYs, n);
+            }
+            carried = carryOver(n);
+        }
+    }
+
+    /**
+     * Joins up the points left by the decimator, in the same way as
+     * paintPoints().
+     */
+    private void paintDecimated(Graphics2D g) {
+        int size = decimator.getSize();
+        pointsDrawn += size;
+        int carried = 0;
+        for (int chunk = 0; chunk < size; chunk += GraphModels.CHUNK_SIZE) {
+            int length = Math.min(GraphModels.CHUNK_SIZE, size - chunk);
+            for (int i = 0; i < length; i++) {
+                chunkX[i] = decimator.getX(chunk + i);
+                chunkY[i] = decimator.getY(chunk + i);
+            }
+            int n = toScreen(chunkX, chunkY, length, carried);
+            if (n > 1) {
+                g.drawPolyline(screenXs, screenYs, n);
+            }
+            carried = carryOver(n);
+        }
+    }
+
+    /**
+     * Places the given points on the screen, into the screen buffers after
+     * the carried points already there.
+     *
+     * @return the number of points now in the screen buffers
+     */
+    private int toScreen(double[] xs, double[] ys, int length, int carried) {
+        double x_scale = xScale, x_offset = xOffset;
+        double y_scale = yScale, y_offset = yOffset;
+        for (int i = 0; i < length; i++) {
+            screenXs[carried + i] = (int) (xs[i] * x_scale + x_offset);
+            screenYs[carried + i] = (int) (ys[i] * y_scale + y_offset);
+        }
+        return carried + length;
+    }
+
+    /**
+     * Moves the last point in the screen buffers to the start, so the next
+     * chunk's line joins on to it.
+     *
+     * @return the number of points carried over
+     */
+    private int carryOver(int n) {
+        if (n == 0) {
+            return 0;
+        }
+        screenXs[0] = screenXs[n - 1];
+        screenYs[0] = screenYs[n - 1];
+        return 1;
+    }
+
+    private SeriesCache getCache(GraphModel model) {
+        SeriesCache cache = caches.get(model);
+        if (cache == null) {
+            cache = new SeriesCache(model);
+            caches.put(model, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Returns the screen x value for the given data x value.
+     */
+    private int getScreenX(double x) {
+        return (int) (x * xScale + xOffset);
+    }
+
+    /**
+     * Returns the screen y value for the given data y value.
+     */
+    private int getScreenY(double y) {
+        return (int) (y * yScale + yOffset);
+    }
+
+    /**
+     * Recomputes all the necessary parameters.
+     */
+    public void layout(Graphics2D g, Rectangle bounds) {
+        long start = System.nanoTime();
+        calculateLayout(g, bounds);
+        metrics.layoutFinished(System.nanoTime() - start);
+    }
+
+    private void calculateLayout(Graphics2D g, Rectangle bounds) {
+        if (bounds.width == 0 || models.isEmpty()) {
+            // Nothing to lay out yet.
+            this.visibleRect = null;
+            return;
+        }
+        this.visibleRect = new Rectangle(bounds);
+
+        fontMetrics = g.getFontMetrics(font);
+        titleFontMetrics = g.getFontMetrics(titleFont);
+
+        // Models which can't say when they change might have changed in any
+        // way by now, unless all that's happened is the viewport moving.
+        // The others will have said, and a ParallelGraphModel which can't
+        // say doesn't change.  Snapshots say for themselves how they differ
+        // from the last.
+        if (!viewportChanged) {
+            for (Map.Entry<GraphModel, SeriesCache> entry : caches.entrySet()) {
+                if (!(entry.getKey() instanceof ObservableGraphModel)
+                        && !(entry.getKey() instanceof SnapshotGraphModel)
+                        && !(entry.getKey() instanceof ParallelGraphModel)) {
+                    entry.getValue().invalidate();
+                }
+            }
+        }
+        viewportChanged = false;
+        for (GraphModel model : models) {
+            getCache(model).takeSnapshot();
+        }
+
+        // There's no need to look through the data if only part of it is
+        // being shown.
+        if (viewport == null) {
+            findDataExtremes();
+        }
+
+        findGraphBounds();
+
+        xScale = (graphRight - graphLeft) / (xAxis.getMax() - xAxis.getMin());
+        xOffset = graphLeft - xAxis.getMin() * xScale;
+        yScale = -(graphBottom - graphTop) / (yAxis.getMax() - yAxis.getMin());
+        yOffset = graphBottom - yAxis.getMin() * yScale;
+
+        // Only the axes moving makes the static layer look any different;
+        // new points alone don't.
+        double[] static_layout = {visibleRect.x, visibleRect.y, visibleRect.width,
+                visibleRect.height, xAxis.getMin(), xAxis.getMax(), xAxis.getStep(),
+                yAxis.getMin(), yAxis.getMax(), yAxis.getStep(),
+                graphLeft, graphRight, graphTop, graphBottom};
+        if (!Arrays.equals(static_layout, staticLayout)) {
+            staticLayout = static_layout;
+            staticLayerChanged();
+        }
+    }
+
+    public Rectangle getBounds() {
+        return visibleRect == null ? null : new Rectangle(visibleRect);
+    }
+
+    /**
+     * Finds the minimum and maximum values for the actual graph part of the
+     * panel, fitting the axes to it as it goes.  The top and bottom don't
+     * depend on the axes, so the y axis is fitted first; its labels decide
+     * where the left edge goes, and the x axis is then fitted to the width
+     * left over.
+     */
+    private void findGraphBounds() {
+        graphBottom = this.visibleRect.y + this.visibleRect.height - 5
+                - fontMetrics.getHeight() - 5 // for the x axis number labels
+                - HASH_MARK_SIZE - MARGIN;
+        if (xAxisLabel != null && !"".equals(xAxisLabel)) {
+            graphBottom -= fontMetrics.getHeight()
+                    - GAP_BETWEEN_X_AXIS_LABEL_AND_X_AXIS;
+        }
+
+        int top_y_axis_number_label_overhang = fontMetrics.getHeight() / 2;
+        graphTop = this.visibleRect.y + MARGIN
+                + top_y_axis_number_label_overhang;
+        if (title != null && !"".equals(title)) {
+            graphTop += titleFontMetrics.getHeight()
+                    + GAP_BETWEEN_TITLE_AND_CHART;
+        }
+
+        double min_x = viewport == null ? dataMinX : viewport.getMinX();
+        double max_x = viewport == null ? dataMaxX : viewport.getMaxX();
+        if (viewport == null) {
+            yAxis.fit(dataMinY, dataMaxY, graphBottom - graphTop, fontMetrics.getHeight() + 5, 0);
+        } else {
+            yAxis.fitWithin(viewport.getMinY(), viewport.getMaxY(), graphBottom - graphTop,
+                    fontMetrics.getHeight() + 5, 0);
+        }
+
+        graphLeft = this.visibleRect.x + getWidestLabelWidth(yAxis) + MARGIN
+                + HASH_MARK_SIZE;
+        if (yAxisLabel != null && !"".equals(yAxisLabel)) {
+            graphLeft += fontMetrics.getHeight() + 10;
+        }
+
+        // The last x axis label overhangs the end of the axis by half its
+        // width.  Allow for a label as long as the biggest value while
+        // fitting, then trim to the label actually chosen.
+        int char_width = fontMetrics.charWidth('0');
+        int right = this.visibleRect.x + this.visibleRect.width - MARGIN;
+        int estimated_overhang = char_width * AxisScale.getLabelLength(
+                Math.max(Math.abs(min_x), Math.abs(max_x)), 0) / 2;
+        int length = right - estimated_overhang - graphLeft;
+        if (viewport == null) {
+            xAxis.fit(min_x, max_x, length, 5, char_width);
+        } else {
+            xAxis.fitWithin(min_x, max_x, length, 5, char_width);
+        }
+
+        int overhang_of_x_axis_number_labels = xAxis.getTickCount() == 0 ? 0
+                : textCache.stringWidth(fontMetrics, xAxis.getLabel(xAxis.getTickCount() - 1)) / 2;
+        graphRight = right - overhang_of_x_axis_number_labels;
+    }
+
+    /**
+     * Returns the width of the widest of the given axis's labels, which are
+     * those at either end.
+     */
+    private int getWidestLabelWidth(AxisScale axis) {
+        if (axis.getTickCount() == 0) {
+            return 0;
+        }
+        return Math.max(textCache.stringWidth(fontMetrics, axis.getLabel(0)),
+                textCache.stringWidth(fontMetrics, axis.getLabel(axis.getTickCount() - 1)));
+    }
+
+    /**
+     * Finds the smallest and largest coordinates of all the points.  Each
+     * model's own are kept in its SeriesCache until it changes, so this
+     * only reads the points of models which have.  Those being found in the
+     * background are left out until they're ready.
+     */
+    private void findDataExtremes() {
+        dataMinX = Double.POSITIVE_INFINITY;
+        dataMaxX = Double.NEGATIVE_INFINITY;
+        dataMinY = Double.POSITIVE_INFINITY;
+        dataMaxY = Double.NEGATIVE_INFINITY;
+        for (GraphModel model : models) {
+            SeriesCache cache = getCache(model);
+            if (extentsReady != null && cache.findExtentsLater(this, extentsReady)) {
+                continue;
+            }
+            dataMinX = Math.min(dataMinX, cache.getMinX());
+            dataMaxX = Math.max(dataMaxX, cache.getMaxX());
+            dataMinY = Math.min(dataMinY, cache.getMinY());
+            dataMaxY = Math.max(dataMaxY, cache.getMaxY());
+        }
+    }
+
+    /**
+     * Takes account of points having been appended to one of the models.  As
+     * long as the new points fit within the current axes, nothing is rescanned
+     * or laid out again, and only the strip of the graph they fall in needs
+     * repainting.
+     *
+     * @return the area which needs repainting, or null if the graph needs
+     * laying out again
+     */
+    public Rectangle pointsAppended(GraphModel model, int dropped, int appended) {
+        if (model instanceof SnapshotGraphModel) {
+            // What's drawn is the snapshot taken at the last layout, so the
+            // new points only show up once there's been another.
+            return null;
+        }
+        SeriesCache cache = caches.get(model);
+        if (cache == null || this.visibleRect == null) {
+            // The model hasn't been laid out yet, or isn't on the graph.
+            return null;
+        }
+        cache.pointsAppended(dropped, appended);
+        int count = model.getPointCount();
+        if (dropped > 0) {
+            // The start of the line has moved too, so the graph might have
+            // changed anywhere along its length.
+            findDataExtremes();
+        }
+
+        // The strip starts at the last of the old points, since the line
+        // joining it to the first new point needs drawing too.
+        int start = Math.max(0, count - appended - 1);
+        double strip_min_x = Double.POSITIVE_INFINITY;
+        double strip_max_x = Double.NEGATIVE_INFINITY;
+        for (int index = start; index < count; index++) {
+            double x = model.getX(index);
+            double y = model.getY(index);
+            strip_min_x = Math.min(strip_min_x, x);
+            strip_max_x = Math.max(strip_max_x, x);
+            dataMinX = Math.min(dataMinX, x);
+            dataMaxX = Math.max(dataMaxX, x);
+            dataMinY = Math.min(dataMinY, y);
+            dataMaxY = Math.max(dataMaxY, y);
+        }
+
+        if (viewport == null && (dataMinX < xAxis.getMin() || dataMaxX > xAxis.getMax()
+                || dataMinY < yAxis.getMin() || dataMaxY > yAxis.getMax())) {
+            // The axes need to change.
+            return null;
+        } else if (dropped > 0) {
+            return new Rectangle(graphLeft, graphTop, graphRight - graphLeft + 1,
+                    graphBottom - graphTop + 1);
+        } else {
+            int left = getScreenX(strip_min_x) - 1;
+            int right = getScreenX(strip_max_x) + 1;
+            return new Rectangle(left, graphTop, right - left + 1, graphBottom - graphTop + 1);
+        }
+    }
+
+    /**
+     * Takes account of one of the models having changed in some way other
+     * than having points appended.  The graph needs laying out again too.
+     */
+    public void modelChanged(GraphModel model) {
+        SeriesCache cache = caches.get(model);
+        if (cache != null) {
+            cache.invalidate();
+        }
+    }
+
+    /**
+     * Finds the point nearest to the given screen position, as when finding
+     * the point under the mouse.
+     *
+     * @return the point, or null if there's none within a few pixels
+     */
+    public GraphPoint getPointAt(int x, int y) {
+        if (visibleRect == null || graphRight <= graphLeft || graphBottom <= graphTop) {
+            return null;
+        }
+
+        double pixels_per_unit_x = (graphRight - graphLeft) / (xAxis.getMax() - xAxis.getMin());
+        double pixels_per_unit_y = (graphBottom - graphTop) / (yAxis.getMax() - yAxis.getMin());
+        double data_x = xAxis.getMin() + (x - graphLeft) / pixels_per_unit_x;
+        double data_y = yAxis.getMin() + (graphBottom - y) / pixels_per_unit_y;
+
+        // Later models are drawn on top, so they win ties.
+        GraphPoint nearest = null;
+        double nearest_distance = Double.POSITIVE_INFINITY;
+        for (GraphModel model : models) {
+            SeriesCache cache = getCache(model);
+            int index = cache.getPointIndex().findNearest(data_x, data_y, pixels_per_unit_x,
+                    pixels_per_unit_y, HIT_DISTANCE);
+            if (index >= 0) {
+                double point_x = cache.getPoints().getX(index);
+                double point_y = cache.getPoints().getY(index);
+                double dx = (point_x - data_x) * pixels_per_unit_x;
+                double dy = (point_y - data_y) * pixels_per_unit_y;
+                double distance = dx * dx + dy * dy;
+                if (distance <= nearest_distance) {
+                    nearest = new GraphPoint(model, index, point_x, point_y);
+                    nearest_distance = distance;
+                }
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Shows just the given region of the data, in data coordinates, rather
+     * than all of it.  The graph needs laying out again afterwards.
+     *
+     * @param viewport the region to show, or null to show all the data
+     */
+    public void setViewport(Rectangle2D viewport) {
+        if (viewport != null && !(viewport.getWidth() > 0 && viewport.getHeight() > 0)) {
+            throw new IllegalArgumentException("Empty viewport: " + viewport);
+        }
+        this.viewport = viewport == null ? null : (Rectangle2D) viewport.clone();
+        this.viewportChanged = true;
+    }
+
+    /**
+     * Retrieves the region of the data being shown.
+     *
+     * @return the region, or null if all the data is being shown
+     */
+    public Rectangle2D getViewport() {
+        return viewport == null ? null : (Rectangle2D) viewport.clone();
+    }
+
+    /**
+     * Goes back to showing all the data.
+     */
+    public void resetViewport() {
+        setViewport(null);
+    }
+
+    /**
+     * Zooms in or out, keeping the data at the given screen position where
+     * it is.  The graph needs laying out again afterwards.
+     *
+     * @param factor how much to scale the region shown by; less than one
+     *               zooms in
+     */
+    public void zoom(int x, int y, double factor) {
+        if (visibleRect == null || graphRight <= graphLeft || graphBottom <= graphTop) {
+            return;
+        }
+        Rectangle2D shown = getShownRegion();
+        double anchor_x = shown.getMinX() + (x - graphLeft) * shown.getWidth()
+                / (graphRight - graphLeft);
+        double anchor_y = shown.getMinY() + (graphBottom - y) * shown.getHeight()
+                / (graphBottom - graphTop);
+        double min_x = anchor_x - (anchor_x - shown.getMinX()) * factor;
+        double max_x = anchor_x + (shown.getMaxX() - anchor_x) * factor;
+        double min_y = anchor_y - (anchor_y - shown.getMinY()) * factor;
+        double max_y = anchor_y + (shown.getMaxY() - anchor_y) * factor;
+        setViewportIfValid(min_x, max_x, min_y, max_y);
+    }
+
+    /**
+     * Moves the region shown so that the graph appears to move by the given
+     * number of pixels.  The graph needs laying out again afterwards.
+     */
+    public void pan(int dx, int dy) {
+        if (visibleRect == null || graphRight <= graphLeft || graphBottom <= graphTop) {
+            return;
+        }
+        Rectangle2D shown = getShownRegion();
+        double shift_x = -dx * shown.getWidth() / (graphRight - graphLeft);
+        double shift_y = dy * shown.getHeight() / (graphBottom - graphTop);
+        setViewportIfValid(shown.getMinX() + shift_x, shown.getMaxX() + shift_x,
+                shown.getMinY() + shift_y, shown.getMaxY() + shift_y);
+    }
+
+    /**
+     * Returns the region of the data shown, which is the viewport if there
+     * is one (whether or not the graph has been laid out for it yet), or else
+     * the whole of both axes.
+     */
+    private Rectangle2D getShownRegion() {
+        if (viewport != null) {
+            return viewport;
+        }
+        return new Rectangle2D.Double(xAxis.getMin(), yAxis.getMin(),
+                xAxis.getMax() - xAxis.getMin(), yAxis.getMax() - yAxis.getMin());
+    }
+
+    /**
+     * Sets the viewport, unless it's been zoomed or moved so far that the
+     * numbers no longer make sense.
+     */
+    private void setViewportIfValid(double minX, double maxX, double minY, double maxY) {
+        double width = maxX - minX;
+        double height = maxY - minY;
+        if (width > Math.ulp(Math.max(Math.abs(minX), Math.abs(maxX))) * 16
+                && height > Math.ulp(Math.max(Math.abs(minY), Math.abs(maxY))) * 16
+                && !Double.isInfinite(width) && !Double.isInfinite(height)) {
+            setViewport(new Rectangle2D.Double(minX, minY, width, height));
+        }
+    }
+
+    /**
+     * Adds another set of points (as represented by the given model) to the graph.
+     */
+    public void addModel(GraphModel model) {
+        this.models.add(model);
+    }
+
+    /**
+     * Takes the given model off the graph, leaving the others as they are.
+     *
+     * @return whether the model was on the graph
+     */
+    public boolean removeModel(GraphModel model) {
+        int index = indexOfModel(model);
+        if (index < 0) {
+            return false;
+        }
+        this.models.remove(index);
+        if (indexOfModel(model) < 0) {
+            this.caches.remove(model);
+        }
+        return true;
+    }
+
+    /**
+     * Puts a new model in place of one on the graph, so that it's drawn in
+     * the same order among the others.
+     *
+     * @throws IllegalArgumentException if the old model isn't on the graph
+     */
+    public void replaceModel(GraphModel oldModel, GraphModel newModel) {
+        int index = indexOfModel(oldModel);
+        if (index < 0) {
+            throw new IllegalArgumentException("The model being replaced isn't on the graph");
+        }
+        this.models.set(index, newModel);
+        if (indexOfModel(oldModel) < 0) {
+            this.caches.remove(oldModel);
+        }
+    }
+
+    /**
+     * Returns the position of the given model in the list of models, going
+     * by identity as the caches do, or -1 if it isn't there.
+     */
+    private int indexOfModel(GraphModel model) {
+        for (int i = 0; i < models.size(); i++) {
+            if (models.get(i) == model) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets rid of all the current models.
+     */
+    public void clearModels() {
+        this.models.clear();
+        this.caches.clear();
+    }
+
+    /**
+     * Retrieves the models currently being graphed.
+     */
+    public List<GraphModel> getModels() {
+        return Collections.unmodifiableList(models);
+    }
+
+    /**
+     * Retrieves the title.
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Sets the title.
+     */
+    public void setTitle(String title) {
+        if (!Objects.equals(title, this.title)) {
+            staticLayerChanged();
+        }
+        this.title = title;
+    }
+
+    /**
+     * Retrieves the label for the x axis.
+     */
+    public String getXAxisLabel() {
+        return xAxisLabel;
+    }
+
+    /**
+     * Sets the x axis label.
+     */
+    public void setXAxisLabel(String axisLabel) {
+        if (!Objects.equals(axisLabel, xAxisLabel)) {
+            staticLayerChanged();
+        }
+        xAxisLabel = axisLabel;
+    }
+
+    /**
+     * Retrieves the y axis label.
+     */
+    public String getYAxisLabel() {
+        return yAxisLabel;
+    }
+
+    /**
+     * Sets the y axis label.
+     */
+    public void setYAxisLabel(String axisLabel) {
+        if (!Objects.equals(axisLabel, yAxisLabel)) {
+            staticLayerChanged();
+        }
+        yAxisLabel = axisLabel;
+    }
+
+    /**
+     * Retrieves the color of the axes and the text.
+     */
+    public Color getForeground() {
+        return foreground;
+    }
+
+    /**
+     * Sets the color of the axes and the text.
+     *
+     * @throws IllegalArgumentException if the color is null
+     */
+    public void setForeground(Color foreground) {
+        if (foreground == null) {
+            throw new IllegalArgumentException("The foreground color can't be null");
+        }
+        if (!Objects.equals(foreground, this.foreground)) {
+            staticLayerChanged();
+        }
+        this.foreground = foreground;
+    }
+
+    /**
+     * Retrieves the font used for everything but the title.
+     */
+    public Font getFont() {
+        return font;
+    }
+
+    /**
+     * Sets the font used for everything but the title.
+     */
+    public void setFont(Font font) {
+        if (!Objects.equals(font, this.font)) {
+            staticLayerChanged();
+        }
+        this.font = font;
+    }
+
+    /**
+     * Retrieves the title font.
+     */
+    public Font getTitleFont() {
+        return titleFont;
+    }
+
+    /**
+     * Sets the title font.
+     */
+    public void setTitleFont(Font titleFont) {
+        if (!Objects.equals(titleFont, this.titleFont)) {
+            staticLayerChanged();
+        }
+        this.titleFont = titleFont;
+    }
+
+    /**
+     * Retrieves whether the points are drawn as a heat map.
+     */
+    public boolean isDensity() {
+        return density;
+    }
+
+    /**
+     * Sets whether the points are drawn as a heat map, each pixel colored
+     * by how many points fall in it, rather than joined up with lines.  This
+     * suits scatters of millions of points, which it draws in a single pass
+     * over them, split between threads for the biggest.  The models are
+     * then read from several threads at once.
+     */
+    public void setDensity(boolean density) {
+        this.density = density;
+    }
+
+    /**
+     * Retrieves the color of pixels with a single point in the heat map.
+     */
+    public Color getDensityLowColor() {
+        return densityMap.getLowColor();
+    }
+
+    /**
+     * Retrieves the color of the busiest pixels in the heat map.
+     */
+    public Color getDensityHighColor() {
+        return densityMap.getHighColor();
+    }
+
+    /**
+     * Sets the colors of the heat map: that of pixels with a single point,
+     * and that of the busiest pixels, with those in between blended from the
+     * two.
+     *
+     * @throws IllegalArgumentException if either color is null
+     */
+    public void setDensityColors(Color low, Color high) {
+        densityMap.setColors(low, high);
+    }
+
+    /**
+     * Retrieves the cache text is measured and drawn through.
+     */
+    public TextCache getTextCache() {
+        return textCache;
+    }
+
+    /**
+     * Sets the cache text is measured and drawn through, which is normally
+     * the one shared by all charts.
+     *
+     * @throws IllegalArgumentException if the cache is null
+     */
+    public void setTextCache(TextCache textCache) {
+        if (textCache == null) {
+            throw new IllegalArgumentException("The text cache can't be null");
+        }
+        this.textCache = textCache;
+    }
+
+    /**
+     * Retrieves the metrics the renderer reports to.
+     */
+    public RenderMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Retrieves what's run once extents found in the background are ready.
+     *
+     * @return the callback, or null if extents are all found during layout
+     */
+    public Runnable getExtentsReady() {
+        return extentsReady;
+    }
+
+    /**
+     * Has the extents of big ParallelGraphModels found on the common
+     * fork-join pool rather than during layout, which leaves those models
+     * off the axes until they're ready.  The callback is then run, on the
+     * pool, holding no locks, and should have the graph laid out again.
+     *
+     * @param extentsReady the callback, or null to find all the extents
+     *                     during layout
+     */
+    public void setExtentsReady(Runnable extentsReady) {
+        this.extentsReady = extentsReady;
+    }
+
+    /**
+     * Sets the metrics to report layout and painting to.
+     *
+     * @param metrics the metrics, or null to stop reporting
+     */
+    public void setMetrics(RenderMetrics metrics) {
+        this.metrics = metrics == null ? RenderMetrics.NONE : metrics;
+    }
+}
@@ -0,0 +1,205 @@
+package org.computronium.bakesale.graph;
+
+import java.awt.*;
+
+/**
+ * An unchanging set of points, as taken from a SnapshotGraphModel.  Its
+ * points can be read from any thread without locking, so it's a
+ * ParallelGraphModel.
+ * <p>
+ * Successive snapshots of a series which only ever has points appended to
+ * its end and dropped from its start can say how they differ, so that what
+ * GraphRenderer has worked out about one snapshot can be carried over to the
+ * next rather than worked out from scratch.
+ */
+public final class GraphSnapshot implements BulkGraphModel, ExtentGraphModel,
+        ParallelGraphModel {
+    private final double[] xs;
+
+    private final double[] ys;
+
+    private final int offset;
+
+    private final int count;
+
+    private final Color color;
+
+    private final double minX, maxX, minY, maxY;
+
+    /**
+     * Stands for the series the snapshot was taken from; it changes whenever
+     * the series changes other than by appending and dropping points.
+     */
+    private final Object series;
+
+    /**
+     * The number of points dropped from the start of the series before the
+     * snapshot was taken.
+     */
+    private final long dropped;
+
+    /**
+     * Class constructor, copying the points.
+     *
+     * @param xs    the x coordinates of the points
+     * @param ys    the y coordinates of the points, as many as there are x
+     *              coordinates
+     * @param color the color with which to draw the points
+     */
+    public GraphSnapshot(double[] xs, double[] ys, Color color) {
+        this(xs.clone(), ys.clone(), 0, checkLength(xs, ys), color, new Object(), 0);
+    }
+
+    /**
+     * Class constructor, sharing the given arrays, which the caller promises
+     * never to change within the given range.  The extents are found by
+     * looking through the points.
+     */
+    GraphSnapshot(double[] xs, double[] ys, int offset, int count, Color color,
+                  Object series, long dropped) {
+        this(xs, ys, offset, count, color, series, dropped,
+                min(xs, offset, count), max(xs, offset, count),
+                min(ys, offset, count), max(ys, offset, count));
+    }
+
+    /**
+     * Class constructor, sharing the given arrays, with the extents already
+     * known.
+     */
+    GraphSnapshot(double[] xs, double[] ys, int offset, int count, Color color,
+                  Object series, long dropped,
+                  double minX, double maxX, double minY, double maxY) {
+        this.xs = xs;
+        this.ys = ys;
+        this.offset = offset;
+        this.count = count;
+        this.color = color;
+        this.series = series;
+        this.dropped = dropped;
+        this.minX = minX;
+        this.maxX = maxX;
+        this.minY = minY;
+        this.maxY = maxY;
+    }
+
+    private static int checkLength(double[] xs, double[] ys) {
+        if (xs.length != ys.length) {
+            throw new IllegalArgumentException("There are " + xs.length
+                    + " x coordinates but " + ys.length + " y coordinates");
+        }
+        return xs.length;
+    }
+
+    // These leave NaN out, as ConcurrentGraphModel does, unless there's
+    // nothing else.
+
+    private static double min(double[] values, int offset, int count) {
+        double min = Double.NaN;
+        for (int i = offset; i < offset + count; i++) {
+            if (values[i] < min || min != min) {
+                min = values[i];
+            }
+        }
+        return min;
+    }
+
+    private static double max(double[] values, int offset, int count) {
+        double max = Double.NaN;
+        for (int i = offset; i < offset + count; i++) {
+            if (values[i] > max || max != max) {
+                max = values[i];
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns whether this snapshot was taken after the given one, from the
+     * same series, with nothing but points appended and dropped in between.
+     */
+    boolean follows(GraphSnapshot earlier) {
+        return series == earlier.series && dropped >= earlier.dropped
+                && dropped + count >= earlier.dropped + earlier.count;
+    }
+
+    /**
+     * Returns the number of points dropped from the start since the given
+     * snapshot, which this one follows.
+     */
+    long getDroppedSince(GraphSnapshot earlier) {
+        return dropped - earlier.dropped;
+    }
+
+    /**
+     * Returns the number of points appended to the end since the given
+     * snapshot, which this one follows.
+     */
+    long getAppendedSince(GraphSnapshot earlier) {
+        return dropped + count - (earlier.dropped + earlier.count);
+    }
+
+    public int getPointCount() {
+        return count;
+    }
+
+    public double getX(int index) {
+        return xs[offset + checkIndex(index)];
+    }
+
+    public double getY(int index) {
+        return ys[offset + checkIndex(index)];
+    }
+
+    public void getX(int index, double[] dest, int offset, int count) {
+        checkRange(index, count);
+        System.arraycopy(xs, this.offset + index, dest, offset, count);
+    }
+
+    public void getY(int index, double[] dest, int offset, int count) {
+        checkRange(index, count);
+        System.arraycopy(ys, this.offset + index, dest, offset, count);
+    }
+
+    /**
+     * Makes sure an index is within the snapshot, since the arrays it shares
+     * can hold other points either side.
+     */
+    private int checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + count);
+        }
+        return index;
+    }
+
+    private void checkRange(int index, int length) {
+        if (index < 0 || length < 0 || index + length > count) {
+            throw new IndexOutOfBoundsException("Points " + index + " to "
+                    + (index + length) + " of " + count);
+        }
+    }
+
+    public double getMinX() {
+        return minX;
+    }
+
+    public double getMaxX() {
+        return maxX;
+    }
+
+    public double getMinY() {
+        return minY;
+    }
+
+    public double getMaxY() {
+        return maxY;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    @Override
+    public String toString() {
+        return "GraphSnapshot[" + count + " points]";
+    }
+}
@@ -0,0 +1,222 @@
+package org.computronium.bakesale.graph;
+
+import java.util.Arrays;
+
+/**
+ * Reduces a set of points to at most four points per pixel column, so that
+ * drawing a large series costs time proportional to the width of the graph
+ * rather than to the number of points in it.
+ * <p>
+ * Consecutive points which land in the same pixel column are collapsed into
+ * the first point, the lowest point, the highest point and the last point of
+ * that run (in their original order).  Joining the survivors with lines
+ * covers exactly the same pixels as joining the original points would.
+ */
+class LineDecimator {
+    private final double[] chunkX = new double[GraphModels.CHUNK_SIZE];
+
+    private final double[] chunkY = new double[GraphModels.CHUNK_SIZE];
+
+    private double[] xs = new double[256];
+
+    private double[] ys = new double[256];
+
+    private int size;
+
+    // The run of points in the current column.
+    private long column;
+    private int firstIndex, minIndex, maxIndex, lastIndex;
+    private double firstX, firstY, minX, minY, maxX, maxY, lastX, lastY;
+
+    /**
+     * Decimates the points of the given model.
+     *
+     * @param model         the model to read the points from
+     * @param originX       the data x value at the left edge of pixel column zero
+     * @param pixelsPerUnit how many pixels one unit along the x axis takes up
+     */
+    void decimate(GraphModel model, double originX, double pixelsPerUnit) {
+        size = 0;
+        int count = model.getPointCount();
+        for (int start = 0; start < count; start += GraphModels.CHUNK_SIZE) {
+            int length = Math.min(GraphModels.CHUNK_SIZE, count - start);
+            GraphModels.read(model, start, chunkX, chunkY, length);
+            for (int i = 0; i < length; i++) {
+                double x = chunkX[i];
+                double y = chunkY[i];
+                long this_column = getColumn(x, originX, pixelsPerUnit);
+                int index = start + i;
+                if (index == 0 || this_column != column) {
+                    if (index != 0) {
+                        flush();
+                    }
+                    column = this_column;
+                    firstIndex = minIndex = maxIndex = index;
+                    firstX = minX = maxX = x;
+                    firstY = minY = maxY = y;
+                } else if (y < minY) {
+                    minIndex = index;
+                    minX = x;
+                    minY = y;
+                } else if (y > maxY) {
+                    maxIndex = index;
+                    maxX = x;
+                    maxY = y;
+                }
+                lastIndex = index;
+                lastX = x;
+                lastY = y;
+            }
+        }
+        if (count > 0) {
+            flush();
+        }
+    }
+
+    /**
+     * Decimates the points from start up to end of a model whose x values
+     * never go down, using its pyramid to take in whole runs of points at a
+     * time where they fall within one pixel column.
+     *
+     * @param model         the model to read the points from
+     * @param pyramid       the model's level of detail pyramid
+     * @param start         the index of the first point
+     * @param end           the index after the last point
+     * @param originX       the data x value at the left edge of pixel column zero
+     * @param pixelsPerUnit how many pixels one unit along the x axis takes up
+     */
+    void decimate(GraphModel model, MinMaxPyramid pyramid, int start, int end,
+                  double originX, double pixelsPerUnit) {
+        size = 0;
+        int count = pyramid.getCount();
+        int index = start;
+        while (index < end) {
+            // Start a run with the first point in the next column.
+            double x = model.getX(index);
+            double y = model.getY(index);
+            column = getColumn(x, originX, pixelsPerUnit);
+            firstIndex = minIndex = maxIndex = lastIndex = index;
+            firstX = minX = maxX = lastX = x;
+            firstY = minY = maxY = lastY = y;
+            index++;
+
+            while (index < end) {
+                // Find the biggest bucket starting here which lies within the
+                // column.
+                int level = 0;
+                int bucket_end = index;
+                for (int l = 1; l <= pyramid.getLevels(); l++) {
+                    int bucket_size = MinMaxPyramid.getBucketSize(l);
+                    if (index % bucket_size != 0) {
+                        break;
+                    }
+                    int this_end = Math.min(count, index + bucket_size);
+                    if (this_end > end || getColumn(model.getX(this_end - 1), originX,
+                            pixelsPerUnit) != column) {
+                        break;
+                    }
+                    level = l;
+                    bucket_end = this_end;
+                }
+
+                if (level > 0) {
+                    int bucket = index / MinMaxPyramid.getBucketSize(level);
+                    if (pyramid.getMinY(level, bucket) < minY) {
+                        minIndex = pyramid.getMinIndex(level, bucket);
+                        minX = model.getX(minIndex);
+                        minY = pyramid.getMinY(level, bucket);
+                    }
+                    if (pyramid.getMaxY(level, bucket) > maxY) {
+                        maxIndex = pyramid.getMaxIndex(level, bucket);
+                        maxX = model.getX(maxIndex);
+                        maxY = pyramid.getMaxY(level, bucket);
+                    }
+                    index = bucket_end - 1;
+                    x = model.getX(index);
+                    y = model.getY(index);
+                } else {
+                    x = model.getX(index);
+                    if (getColumn(x, originX, pixelsPerUnit) != column) {
+                        break;
+                    }
+                    y = model.getY(index);
+                    if (y < minY) {
+                        minIndex = index;
+                        minX = x;
+                        minY = y;
+                    }
+                    if (y > maxY) {
+                        maxIndex = index;
+                        maxX = x;
+                        maxY = y;
+                    }
+                }
+                lastIndex = index;
+                lastX = x;
+                lastY = y;
+                index++;
+            }
+            flush();
+        }
+    }
+
+    private static long getColumn(double x, double originX, double pixelsPerUnit) {
+        return (long) Math.floor((x - originX) * pixelsPerUnit);
+    }
+
+    /**
+     * Emits the surviving points for the current column.
+     */
+    private void flush() {
+        add(firstX, firstY);
+        if (minIndex < maxIndex) {
+            addUnlessFirst(minIndex, minX, minY);
+            addUnlessFirst(maxIndex, maxX, maxY);
+        } else {
+            addUnlessFirst(maxIndex, maxX, maxY);
+            if (minIndex != maxIndex) {
+                addUnlessFirst(minIndex, minX, minY);
+            }
+        }
+        if (lastIndex != minIndex && lastIndex != maxIndex) {
+            addUnlessFirst(lastIndex, lastX, lastY);
+        }
+    }
+
+    private void addUnlessFirst(int index, double x, double y) {
+        if (index != firstIndex) {
+            add(x, y);
+        }
+    }
+
+    private void add(double x, double y) {
+        if (size == xs.length) {
+            xs = Arrays.copyOf(xs, size * 2);
+            ys = Arrays.copyOf(ys, size * 2);
+        }
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+    }
+
+    /**
+     * Returns the number of points left after decimation.
+     */
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the x value of the decimated point at the given index.
+     */
+    double getX(int index) {
+        return xs[index];
+    }
+
+    /**
+     * Returns the y value of the decimated point at the given index.
+     */
+    double getY(int index) {
+        return ys[index];
+    }
+}
@@ -0,0 +1,357 @@
+package org.computronium.bakesale.graph;
+
+import java.awt.*;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A GraphModel whose points are read straight out of a file of little-endian
+ * doubles, x then y for each point, through memory mapping.  Nothing is
+ * loaded up front and the points take up no heap: the operating system pages
+ * in whichever parts of the file are drawn, so a series of many gigabytes
+ * opens at once.  Any bytes after the last whole point are ignored.
+ * <p>
+ * The file is mapped in segments, since a single mapping can't be bigger
+ * than 2GB.  Once mapped, the file is closed again; the mapping lasts until
+ * the model is garbage collected.  The file shouldn't be changed while the
+ * model is in use.
+ * <p>
+ * Since the file doesn't change, the points can be read from several
+ * threads at once, so the model is a ParallelGraphModel.  openSorted() opens
+ * a file whose x values never go down as a SortedGraphModel.
+ * <p>
+ * Finding the smallest and largest coordinates means reading every point.
+ * writeSummary() saves them in a small file alongside, which open() then
+ * picks up instead, as long as the data file hasn't changed since.  Only a
+ * model opened with an up to date summary is an ExtentGraphModel; without
+ * one, GraphPanel reads the points through for their extents in the
+ * background, as it does for any other ParallelGraphModel.
+ */
+public class MappedGraphModel implements BulkGraphModel, ParallelGraphModel {
+    /**
+     * The suffix added to the name of a data file for its summary file.
+     */
+    public static final String SUMMARY_SUFFIX = ".summary";
+
+    private static final long SUMMARY_MAGIC = 0x42616b6553756d31L; // "BakeSum1"
+
+    private static final int BYTES_PER_POINT = 16;
+
+    /**
+     * The log to base two of the number of points in each mapped segment,
+     * which makes them 1GB each.
+     */
+    private static final int SEGMENT_BITS = 26;
+
+    /**
+     * The number of points in each mapped segment is a power of two, so
+     * that a point's segment and place in it are found by shifting and
+     * masking.
+     */
+    private final int segmentBits;
+
+    private final int segmentPoints;
+
+    private final int segmentMask;
+
+    private final DoubleBuffer[] segments;
+
+    private final int count;
+
+    private final Color color;
+
+    private volatile boolean extentsFound;
+
+    private double minX;
+    private double maxX;
+    private double minY;
+    private double maxY;
+
+    private MappedGraphModel(int segmentBits, DoubleBuffer[] segments, int count, Color color) {
+        this.segmentBits = segmentBits;
+        this.segmentPoints = 1 << segmentBits;
+        this.segmentMask = segmentPoints - 1;
+        this.segments = segments;
+        this.count = count;
+        this.color = color;
+    }
+
+    /**
+     * Maps the given file of points, picking up its summary file if there's
+     * one which is up to date.
+     *
+     * @return the model, which is an ExtentGraphModel if there was a summary
+     * @throws IOException              if the file can't be read or mapped
+     * @throws IllegalArgumentException if the file holds more points than a
+     *                                  GraphModel can index
+     */
+    public static MappedGraphModel open(Path file, Color color) throws IOException {
+        return open(file, color, false, SEGMENT_BITS);
+    }
+
+    /**
+     * Maps the given file of points, whose x values never go down, as a
+     * SortedGraphModel, picking up its summary file if there's one which is
+     * up to date.  The x values aren't checked.
+     *
+     * @return the model, which is an ExtentGraphModel if there was a summary
+     * @throws IOException              if the file can't be read or mapped
+     * @throws IllegalArgumentException if the file holds more points than a
+     *                                  GraphModel can index
+     */
+    public static MappedGraphModel openSorted(Path file, Color color) throws IOException {
+        return open(file, color, true, SEGMENT_BITS);
+    }
+
+    /**
+     * Maps the given file in segments of 2 to the power segmentBits points,
+     * which is only ever less than SEGMENT_BITS when testing.
+     */
+    static MappedGraphModel open(Path file, Color color, boolean sorted, int segmentBits)
+            throws IOException {
+        int segment_points = 1 << segmentBits;
+        DoubleBuffer[] segments;
+        int count;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long points = channel.size() / BYTES_PER_POINT;
+            if (points > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(file + " holds " + points
+                        + " points, more than " + Integer.MAX_VALUE);
+            }
+            count = (int) points;
+            segments = new DoubleBuffer[(count + segment_points - 1) >>> segmentBits];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i * segment_points;
+                long length = Math.min(segment_points, count - start);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        start * BYTES_PER_POINT, length * BYTES_PER_POINT)
+                        .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            }
+        }
+        double[] summary = readSummary(file);
+        MappedGraphModel model;
+        if (summary == null) {
+            model = sorted ? new Sorted(segmentBits, segments, count, color)
+                    : new MappedGraphModel(segmentBits, segments, count, color);
+        } else {
+            model = sorted ? new SortedSummarized(segmentBits, segments, count, color)
+                    : new Summarized(segmentBits, segments, count, color);
+            model.minX = summary[0];
+            model.maxX = summary[1];
+            model.minY = summary[2];
+            model.maxY = summary[3];
+            model.extentsFound = true;
+        }
+        return model;
+    }
+
+    /**
+     * Works out the smallest and largest coordinates in the given file of
+     * points and saves them in its summary file, so that opening it needn't
+     * read it all through.
+     *
+     * @throws IOException if either file can't be read or written
+     */
+    public static void writeSummary(Path file) throws IOException {
+        MappedGraphModel model = open(file, Color.BLACK);
+        model.findExtents();
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(
+                getSummaryFile(file)))) {
+            out.writeLong(SUMMARY_MAGIC);
+            out.writeLong(Files.size(file));
+            out.writeLong(Files.getLastModifiedTime(file).toMillis());
+            out.writeDouble(model.minX);
+            out.writeDouble(model.maxX);
+            out.writeDouble(model.minY);
+            out.writeDouble(model.maxY);
+        }
+    }
+
+    /**
+     * Writes the given points to a file in the form this model reads.
+     *
+     * @throws IOException if the file can't be written
+     */
+    public static void write(double[] xs, double[] ys, int count, OutputStream out)
+            throws IOException {
+        byte[] buffer = new byte[GraphModels.CHUNK_SIZE * BYTES_PER_POINT];
+        ByteBuffer bytes = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+        for (int start = 0; start < count; start += GraphModels.CHUNK_SIZE) {
+            int length = Math.min(GraphModels.CHUNK_SIZE, count - start);
+            bytes.clear();
+            for (int i = start; i < start + length; i++) {
+                bytes.putDouble(xs[i]);
+                bytes.putDouble(ys[i]);
+            }
+            out.write(buffer, 0, length * BYTES_PER_POINT);
+        }
+    }
+
+    private static Path getSummaryFile(Path file) {
+        return file.resolveSibling(file.getFileName() + SUMMARY_SUFFIX);
+    }
+
+    /**
+     * Reads the extents from the summary file, if there is one and it was
+     * written for the file as it is now.
+     *
+     * @return the smallest and largest x, then y, or null if there's no
+     * summary to be had
+     */
+    private static double[] readSummary(Path file) throws IOException {
+        try (InputStream stream = Files.newInputStream(getSummaryFile(file));
+             DataInputStream in = new DataInputStream(stream)) {
+            if (in.readLong() != SUMMARY_MAGIC || in.readLong() != Files.size(file)
+                    || in.readLong() != Files.getLastModifiedTime(file).toMillis()) {
+                return null;
+            }
+            return new double[]{in.readDouble(), in.readDouble(), in.readDouble(),
+                    in.readDouble()};
+        } catch (NoSuchFileException | EOFException e) {
+            // No summary, or not all of one.
+            return null;
+        }
+    }
+
+    /**
+     * Reads through all the points for their smallest and largest
+     * coordinates, unless that's been done already.
+     */
+    private synchronized void findExtents() {
+        if (extentsFound) {
+            return;
+        }
+        double min_x = Double.POSITIVE_INFINITY;
+        double max_x = Double.NEGATIVE_INFINITY;
+        double min_y = Double.POSITIVE_INFINITY;
+        double max_y = Double.NEGATIVE_INFINITY;
+        for (DoubleBuffer segment : segments) {
+            for (int i = 0, end = segment.limit(); i < end; i += 2) {
+                double x = segment.get(i);
+                double y = segment.get(i + 1);
+                if (x < min_x)
+                    min_x = x;
+                if (x > max_x)
+                    max_x = x;
+                if (y < min_y)
+                    min_y = y;
+                if (y > max_y)
+                    max_y = y;
+            }
+        }
+        minX = min_x;
+        maxX = max_x;
+        minY = min_y;
+        maxY = max_y;
+        extentsFound = true;
+    }
+
+    public int getPointCount() {
+        return count;
+    }
+
+    public double getX(int index) {
+        checkIndex(index, 1);
+        return segments[index >>> segmentBits].get((index & segmentMask) << 1);
+    }
+
+    public double getY(int index) {
+        checkIndex(index, 1);
+        return segments[index >>> segmentBits].get(((index & segmentMask) << 1) + 1);
+    }
+
+    public void getX(int index, double[] dest, int offset, int count) {
+        read(index, dest, offset, count, 0);
+    }
+
+    public void getY(int index, double[] dest, int offset, int count) {
+        read(index, dest, offset, count, 1);
+    }
+
+    /**
+     * Copies either the x (which is 0) or the y (which is 1) coordinates of
+     * a run of points, which may cross from one segment to the next.
+     */
+    private void read(int index, double[] dest, int offset, int count, int which) {
+        checkIndex(index, count);
+        while (count > 0) {
+            DoubleBuffer segment = segments[index >>> segmentBits];
+            int in_segment = index & segmentMask;
+            int length = Math.min(count, segmentPoints - in_segment);
+            for (int i = 0, position = (in_segment << 1) + which; i < length; i++, position += 2) {
+                dest[offset + i] = segment.get(position);
+            }
+            index += length;
+            offset += length;
+            count -= length;
+        }
+    }
+
+    private void checkIndex(int index, int length) {
+        if (index < 0 || length < 0 || index > count - length) {
+            throw new IndexOutOfBoundsException("Points " + index + " to "
+                    + ((long) index + length - 1) + " of " + count);
+        }
+    }
+
+    // These read through all the points the first time one of them is
+    // called, unless there was a summary.
+
+    public double getMinX() {
+        findExtents();
+        return minX;
+    }
+
+    public double getMaxX() {
+        findExtents();
+        return maxX;
+    }
+
+    public double getMinY() {
+        findExtents();
+        return minY;
+    }
+
+    public double getMaxY() {
+        findExtents();
+        return maxY;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    /**
+     * A model opened with a summary, so its extents are known.
+     */
+    private static final class Summarized extends MappedGraphModel implements ExtentGraphModel {
+        Summarized(int segmentBits, DoubleBuffer[] segments, int count, Color color) {
+            super(segmentBits, segments, count, color);
+        }
+    }
+
+    private static final class Sorted extends MappedGraphModel implements SortedGraphModel {
+        Sorted(int segmentBits, DoubleBuffer[] segments, int count, Color color) {
+            super(segmentBits, segments, count, color);
+        }
+    }
+
+    private static final class SortedSummarized extends MappedGraphModel
+            implements SortedGraphModel, ExtentGraphModel {
+        SortedSummarized(int segmentBits, DoubleBuffer[] segments, int count, Color color) {
+            super(segmentBits, segments, count, color);
+        }
+    }
+}
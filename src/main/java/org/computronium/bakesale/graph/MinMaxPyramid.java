@@ -0,0 +1,275 @@
+package org.computronium.bakesale.graph;
+
+import java.util.Arrays;
+
+/**
+ * A level of detail pyramid over a GraphModel whose x values never go down,
+ * so that any stretch of it can be decimated for drawing by looking at a
+ * number of summaries proportional to the number of pixel columns, rather
+ * than at every point.
+ * <p>
+ * Level 1 splits the points into buckets of FAN_OUT points, level 2 into
+ * buckets of FAN_OUT of those, and so on up to a single bucket.  Each bucket
+ * knows its lowest and highest point.  Since the points are in order of x, a
+ * bucket whose first and last points land in the same pixel column lies
+ * wholly within it, and can stand in for all its points.
+ * <p>
+ * The pyramid is built when first needed.  Points appended to the end are
+ * folded in without starting again; anything else means a rebuild.
+ */
+class MinMaxPyramid {
+    private static final int FAN_OUT_BITS = 3;
+
+    static final int FAN_OUT = 1 << FAN_OUT_BITS;
+
+    private GraphModel model;
+
+    private boolean built;
+
+    private boolean sorted;
+
+    /**
+     * The number of points covered.
+     */
+    private int count;
+
+    private double lastX;
+
+    private int levels;
+
+    // Indexed by level - 1, then by bucket.
+    private double[][] minY = new double[0][];
+    private double[][] maxY = new double[0][];
+    private int[][] minIndex = new int[0][];
+    private int[][] maxIndex = new int[0][];
+
+    MinMaxPyramid(GraphModel model) {
+        this.model = model;
+    }
+
+    /**
+     * Moves the pyramid over to a later snapshot of the same series, which it
+     * should then be told about as if points had been appended and dropped.
+     */
+    void setModel(GraphModel model) {
+        this.model = model;
+    }
+
+    /**
+     * Forgets everything, so the pyramid is built again the next time it's
+     * needed.
+     */
+    void invalidate() {
+        built = false;
+    }
+
+    /**
+     * Takes account of points having been dropped from the start of the
+     * model and appended to its end.  Appended points are folded in the next
+     * time the pyramid is used.
+     */
+    void pointsAppended(int dropped, int appended) {
+        if (dropped > 0) {
+            invalidate();
+        }
+    }
+
+    /**
+     * Returns whether the model's x values never go down, in which case the
+     * pyramid can be used.
+     */
+    boolean isSorted() {
+        update();
+        return sorted;
+    }
+
+    /**
+     * Brings the pyramid up to date with the model.
+     */
+    private void update() {
+        int point_count = model.getPointCount();
+        if (!built || point_count < count) {
+            built = true;
+            sorted = true;
+            count = 0;
+            levels = 0;
+        }
+        if (sorted && point_count > count) {
+            extend(point_count);
+        }
+    }
+
+    /**
+     * Returns the index of the first point whose x value is at least the
+     * given value, or the number of points if there's none.  Only meaningful
+     * if the model is sorted.
+     */
+    int findFirstAtLeast(double x) {
+        return GraphModels.findFirstAtLeast(model, count, x);
+    }
+
+    /**
+     * Returns the number of levels above the points themselves.
+     */
+    int getLevels() {
+        return levels;
+    }
+
+    /**
+     * Returns the number of points in each bucket at the given level.
+     */
+    static int getBucketSize(int level) {
+        return 1 << (FAN_OUT_BITS * level);
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    double getMinY(int level, int bucket) {
+        return minY[level - 1][bucket];
+    }
+
+    double getMaxY(int level, int bucket) {
+        return maxY[level - 1][bucket];
+    }
+
+    int getMinIndex(int level, int bucket) {
+        return minIndex[level - 1][bucket];
+    }
+
+    int getMaxIndex(int level, int bucket) {
+        return maxIndex[level - 1][bucket];
+    }
+
+    /**
+     * Adds the points from count up to newCount.  Only the buckets at the
+     * end of each level, which they fall into, need working out again.
+     */
+    private void extend(int newCount) {
+        // Start from the beginning of the first bucket which changes.
+        int start = count & -FAN_OUT;
+        double[] xs = new double[GraphModels.CHUNK_SIZE];
+        double[] ys = new double[GraphModels.CHUNK_SIZE];
+        double previous_x = count > 0 ? lastX : Double.NEGATIVE_INFINITY;
+
+        int new_levels = 1;
+        while (getBucketSize(new_levels) < newCount && new_levels < 10) {
+            new_levels++;
+        }
+        ensureLevels(new_levels, newCount);
+
+        int bucket = start >> FAN_OUT_BITS;
+        double[] level_min_y = minY[0];
+        double[] level_max_y = maxY[0];
+        int[] level_min_index = minIndex[0];
+        int[] level_max_index = maxIndex[0];
+        level_min_y[bucket] = Double.POSITIVE_INFINITY;
+        level_max_y[bucket] = Double.NEGATIVE_INFINITY;
+        for (int chunk = start; chunk < newCount; chunk += GraphModels.CHUNK_SIZE) {
+            int length = Math.min(GraphModels.CHUNK_SIZE, newCount - chunk);
+            GraphModels.read(model, chunk, xs, ys, length);
+            for (int i = 0; i < length; i++) {
+                int index = chunk + i;
+                if (index >= count) {
+                    if (xs[i] < previous_x) {
+                        sorted = false;
+                        return;
+                    }
+                    previous_x = xs[i];
+                }
+                if (index >> FAN_OUT_BITS != bucket) {
+                    bucket = index >> FAN_OUT_BITS;
+                    level_min_y[bucket] = Double.POSITIVE_INFINITY;
+                    level_max_y[bucket] = Double.NEGATIVE_INFINITY;
+                }
+                if (ys[i] < level_min_y[bucket]) {
+                    level_min_y[bucket] = ys[i];
+                    level_min_index[bucket] = index;
+                }
+                if (ys[i] > level_max_y[bucket]) {
+                    level_max_y[bucket] = ys[i];
+                    level_max_index[bucket] = index;
+                }
+            }
+        }
+
+        // Each level above is built from the one below.
+        for (int level = 2; level <= new_levels; level++) {
+            int below_count = getBucketCount(level - 1, newCount);
+            int first = start >> (FAN_OUT_BITS * level);
+            int last = getBucketCount(level, newCount) - 1;
+            double[] below_min_y = minY[level - 2];
+            double[] below_max_y = maxY[level - 2];
+            int[] below_min_index = minIndex[level - 2];
+            int[] below_max_index = maxIndex[level - 2];
+            level_min_y = minY[level - 1];
+            level_max_y = maxY[level - 1];
+            level_min_index = minIndex[level - 1];
+            level_max_index = maxIndex[level - 1];
+            for (bucket = first; bucket <= last; bucket++) {
+                double low = Double.POSITIVE_INFINITY;
+                double high = Double.NEGATIVE_INFINITY;
+                int low_index = 0;
+                int high_index = 0;
+                int end = Math.min(below_count, (bucket + 1) << FAN_OUT_BITS);
+                for (int below = bucket << FAN_OUT_BITS; below < end; below++) {
+                    if (below_min_y[below] < low) {
+                        low = below_min_y[below];
+                        low_index = below_min_index[below];
+                    }
+                    if (below_max_y[below] > high) {
+                        high = below_max_y[below];
+                        high_index = below_max_index[below];
+                    }
+                }
+                level_min_y[bucket] = low;
+                level_max_y[bucket] = high;
+                level_min_index[bucket] = low_index;
+                level_max_index[bucket] = high_index;
+            }
+        }
+
+        levels = new_levels;
+        count = newCount;
+        lastX = previous_x;
+    }
+
+    private static int getBucketCount(int level, int pointCount) {
+        int size_bits = FAN_OUT_BITS * level;
+        return (int) (((long) pointCount + (1L << size_bits) - 1) >> size_bits);
+    }
+
+    /**
+     * Makes sure there's room for the given number of levels over the given
+     * number of points.
+     */
+    private void ensureLevels(int levelCount, int pointCount) {
+        if (minY.length < levelCount) {
+            minY = Arrays.copyOf(minY, levelCount);
+            maxY = Arrays.copyOf(maxY, levelCount);
+            minIndex = Arrays.copyOf(minIndex, levelCount);
+            maxIndex = Arrays.copyOf(maxIndex, levelCount);
+        }
+        for (int level = 1; level <= levelCount; level++) {
+            int buckets = getBucketCount(level, pointCount);
+            double[] current = minY[level - 1];
+            if (current == null || current.length < buckets) {
+                // Leave room to grow, for models which are being appended to.
+                int length = current == null ? buckets : Math.max(buckets, current.length * 2);
+                minY[level - 1] = grow(minY[level - 1], length);
+                maxY[level - 1] = grow(maxY[level - 1], length);
+                minIndex[level - 1] = grow(minIndex[level - 1], length);
+                maxIndex[level - 1] = grow(maxIndex[level - 1], length);
+            }
+        }
+    }
+
+    private static double[] grow(double[] array, int length) {
+        return array == null ? new double[length] : Arrays.copyOf(array, length);
+    }
+
+    private static int[] grow(int[] array, int length) {
+        return array == null ? new int[length] : Arrays.copyOf(array, length);
+    }
+}
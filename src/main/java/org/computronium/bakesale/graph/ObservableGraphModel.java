@@ -0,0 +1,18 @@
+package org.computronium.bakesale.graph;
+
+/**
+ * A GraphModel which tells its listeners when its points change.  GraphPanel
+ * listens to any such model added to it, and keeps itself up to date without
+ * having to be told to.
+ */
+public interface ObservableGraphModel extends GraphModel {
+    /**
+     * Adds a listener to be told about changes to the points.
+     */
+    void addGraphModelListener(GraphModelListener listener);
+
+    /**
+     * Removes a listener previously added with addGraphModelListener().
+     */
+    void removeGraphModelListener(GraphModelListener listener);
+}
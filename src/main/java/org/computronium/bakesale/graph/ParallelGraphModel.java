@@ -0,0 +1,12 @@
+package org.computronium.bakesale.graph;
+
+/**
+ * A GraphModel whose points can be read from several threads at once,
+ * because they never change, or only as an ObservableGraphModel tells its
+ * listeners.  Declaring this lets GraphPanel split a big series between
+ * threads on the common fork-join pool, and find its extents in the
+ * background rather than while laying the graph out.  Snapshots are
+ * always safe to read like this; any other model is read on one thread.
+ */
+public interface ParallelGraphModel extends GraphModel {
+}
@@ -0,0 +1,314 @@
+package org.computronium.bakesale.graph;
+
+import java.util.Arrays;
+
+/**
+ * An index over the points of a GraphModel for finding the point nearest a
+ * position on the graph, as when working out which point the mouse is over.
+ * <p>
+ * Points are kept in order of x, so the ones within reach of the position
+ * are found by binary search.  Models whose x values never go down are
+ * already in that order and are searched as they are; anything else gets a
+ * sorted copy of its x values.  The sorted points are also split into blocks
+ * of BLOCK_SIZE, each knowing the range of its y values, so that blocks
+ * which are nowhere near the position vertically are skipped without
+ * looking at their points.
+ * <p>
+ * The index is built when first needed.  Points appended in order of x to
+ * an already sorted model are added to it as they arrive, and points dropped
+ * from the start just fall out of it, so a streaming series never needs
+ * indexing from scratch.
+ */
+class PointIndex {
+    private static final int BLOCK_SIZE = 64;
+
+    private GraphModel model;
+
+    private boolean built;
+
+    /**
+     * Whether the model's own indices are in order of x.  If not, order
+     * holds the model indices in order of x, and sortedX their x values.
+     */
+    private boolean sorted;
+
+    private int[] order;
+
+    private double[] sortedX;
+
+    /**
+     * The number of points indexed.
+     */
+    private int count;
+
+    private double lastX;
+
+    private double[] blockMinY = new double[16];
+
+    private double[] blockMaxY = new double[16];
+
+    /**
+     * The blocks in use are those from firstBlock up to blockCount.  Point
+     * number p lies in block firstBlock + (p + blockOffset) / BLOCK_SIZE;
+     * blockOffset is the number of points dropped from the start of the
+     * first block.
+     */
+    private int firstBlock;
+
+    private int blockCount;
+
+    private int blockOffset;
+
+    PointIndex(GraphModel model) {
+        this.model = model;
+    }
+
+    /**
+     * Moves the index over to a later snapshot of the same series, which it
+     * should then be told about as if points had been appended and dropped.
+     */
+    void setModel(GraphModel model) {
+        this.model = model;
+    }
+
+    /**
+     * Forgets everything, so the index is built again the next time it's
+     * needed.
+     */
+    void invalidate() {
+        built = false;
+        order = null;
+        sortedX = null;
+    }
+
+    /**
+     * Takes account of points having been dropped from the start of the
+     * model and appended to its end.
+     */
+    void pointsAppended(int dropped, int appended) {
+        if (!built) {
+            return;
+        }
+        if (!sorted || dropped > count || count - dropped + appended != model.getPointCount()) {
+            invalidate();
+            return;
+        }
+
+        count -= dropped;
+        blockOffset += dropped;
+        firstBlock += blockOffset / BLOCK_SIZE;
+        blockOffset %= BLOCK_SIZE;
+        if (firstBlock > blockCount / 2) {
+            // Reclaim the room taken up by blocks which have been dropped.
+            int used = blockCount - firstBlock;
+            System.arraycopy(blockMinY, firstBlock, blockMinY, 0, used);
+            System.arraycopy(blockMaxY, firstBlock, blockMaxY, 0, used);
+            firstBlock = 0;
+            blockCount = used;
+        }
+        if (count == 0) {
+            firstBlock = blockCount = blockOffset = 0;
+        }
+
+        addPoints(count, count + appended);
+        if (!sorted) {
+            invalidate();
+        }
+    }
+
+    /**
+     * Finds the point nearest to the given position, no more than the given
+     * distance away.  Distances are measured in pixels.
+     *
+     * @param x             the x value of the position
+     * @param y             the y value of the position
+     * @param pixelsPerUnitX the number of pixels in one unit along the x axis
+     * @param pixelsPerUnitY the number of pixels in one unit along the y axis
+     * @param maxDistance   the furthest a point can be, in pixels
+     * @return the index of the nearest point in the model, or -1 if none are
+     * close enough
+     */
+    int findNearest(double x, double y, double pixelsPerUnitX, double pixelsPerUnitY,
+                    double maxDistance) {
+        if (!built) {
+            build();
+        }
+
+        double reach_x = maxDistance / pixelsPerUnitX;
+        double reach_y = maxDistance / pixelsPerUnitY;
+        int start = findFirstAtLeast(x - reach_x);
+        int end = findFirstAtLeast(Math.nextUp(x + reach_x));
+
+        int nearest = -1;
+        double nearest_distance = maxDistance * maxDistance;
+        int position = start;
+        while (position < end) {
+            int block = getBlock(position);
+            int block_end = Math.min(end, (block - firstBlock + 1) * BLOCK_SIZE - blockOffset);
+            if (blockMaxY[block] >= y - reach_y && blockMinY[block] <= y + reach_y) {
+                for (; position < block_end; position++) {
+                    int index = sorted ? position : order[position];
+                    double dx = (getSortedX(position) - x) * pixelsPerUnitX;
+                    double dy = (model.getY(index) - y) * pixelsPerUnitY;
+                    double distance = dx * dx + dy * dy;
+                    if (distance <= nearest_distance) {
+                        nearest = index;
+                        nearest_distance = distance;
+                    }
+                }
+            }
+            position = block_end;
+        }
+        return nearest;
+    }
+
+    /**
+     * Returns the position of the first point whose x value is at least the
+     * given value, or the number of points if there's none.
+     */
+    private int findFirstAtLeast(double x) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getSortedX(middle) < x) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private double getSortedX(int position) {
+        return sorted ? model.getX(position) : sortedX[position];
+    }
+
+    private int getBlock(int position) {
+        return firstBlock + (position + blockOffset) / BLOCK_SIZE;
+    }
+
+    private void build() {
+        built = true;
+        sorted = true;
+        count = 0;
+        firstBlock = blockCount = blockOffset = 0;
+        int point_count = model.getPointCount();
+        addPoints(0, point_count);
+        if (sorted) {
+            return;
+        }
+
+        // Sort the indices by x, then work out the blocks in that order.
+        sortedX = new double[point_count];
+        order = new int[point_count];
+        double[] xs = new double[GraphModels.CHUNK_SIZE];
+        double[] ys = new double[GraphModels.CHUNK_SIZE];
+        for (int start = 0; start < point_count; start += GraphModels.CHUNK_SIZE) {
+            int length = Math.min(GraphModels.CHUNK_SIZE, point_count - start);
+            GraphModels.read(model, start, xs, ys, length);
+            System.arraycopy(xs, 0, sortedX, start, length);
+        }
+        for (int i = 0; i < point_count; i++) {
+            order[i] = i;
+        }
+        sort(sortedX, order);
+
+        count = point_count;
+        blockCount = (point_count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        ensureBlocks(blockCount);
+        Arrays.fill(blockMinY, 0, blockCount, Double.POSITIVE_INFINITY);
+        Arrays.fill(blockMaxY, 0, blockCount, Double.NEGATIVE_INFINITY);
+        for (int position = 0; position < point_count; position++) {
+            int block = position / BLOCK_SIZE;
+            double y = model.getY(order[position]);
+            blockMinY[block] = Math.min(blockMinY[block], y);
+            blockMaxY[block] = Math.max(blockMaxY[block], y);
+        }
+    }
+
+    /**
+     * Adds the points from start up to end to the end of the index, on the
+     * understanding that the model is sorted.  If it turns out not to be,
+     * sorted is cleared and the caller has to start again.
+     */
+    private void addPoints(int start, int end) {
+        double[] xs = new double[Math.min(GraphModels.CHUNK_SIZE, Math.max(end - start, 0))];
+        double[] ys = new double[xs.length];
+        for (int chunk = start; chunk < end; chunk += GraphModels.CHUNK_SIZE) {
+            int length = Math.min(GraphModels.CHUNK_SIZE, end - chunk);
+            GraphModels.read(model, chunk, xs, ys, length);
+            for (int i = 0; i < length; i++) {
+                if (count > 0 && xs[i] < lastX) {
+                    sorted = false;
+                    return;
+                }
+                int block = getBlock(count);
+                if (block == blockCount) {
+                    ensureBlocks(blockCount + 1);
+                    blockMinY[block] = Double.POSITIVE_INFINITY;
+                    blockMaxY[block] = Double.NEGATIVE_INFINITY;
+                    blockCount++;
+                }
+                blockMinY[block] = Math.min(blockMinY[block], ys[i]);
+                blockMaxY[block] = Math.max(blockMaxY[block], ys[i]);
+                lastX = xs[i];
+                count++;
+            }
+        }
+    }
+
+    private void ensureBlocks(int blocks) {
+        if (blocks > blockMinY.length) {
+            int length = Math.max(blocks, blockMinY.length * 2);
+            blockMinY = Arrays.copyOf(blockMinY, length);
+            blockMaxY = Arrays.copyOf(blockMaxY, length);
+        }
+    }
+
+    /**
+     * Sorts the keys into ascending order, moving the values along with them.
+     */
+    private static void sort(double[] keys, int[] values) {
+        double[] key_buffer = new double[keys.length];
+        int[] value_buffer = new int[values.length];
+        // A bottom-up merge sort, which leaves equal keys in their original
+        // order.
+        double[] from_keys = keys, to_keys = key_buffer;
+        int[] from_values = values, to_values = value_buffer;
+        for (int width = 1; width < keys.length; width *= 2) {
+            for (int left = 0; left < keys.length; left += 2 * width) {
+                int middle = Math.min(left + width, keys.length);
+                int right = Math.min(left + 2 * width, keys.length);
+                int i = left, j = middle, k = left;
+                while (i < middle && j < right) {
+                    if (from_keys[j] < from_keys[i]) {
+                        to_keys[k] = from_keys[j];
+                        to_values[k++] = from_values[j++];
+                    } else {
+                        to_keys[k] = from_keys[i];
+                        to_values[k++] = from_values[i++];
+                    }
+                }
+                while (i < middle) {
+                    to_keys[k] = from_keys[i];
+                    to_values[k++] = from_values[i++];
+                }
+                while (j < right) {
+                    to_keys[k] = from_keys[j];
+                    to_values[k++] = from_values[j++];
+                }
+            }
+            double[] swap_keys = from_keys;
+            from_keys = to_keys;
+            to_keys = swap_keys;
+            int[] swap_values = from_values;
+            from_values = to_values;
+            to_values = swap_values;
+        }
+        if (from_keys != keys) {
+            System.arraycopy(from_keys, 0, keys, 0, keys.length);
+            System.arraycopy(from_values, 0, values, 0, values.length);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package org.computronium.bakesale.graph;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * What a GraphRenderer keeps about one of its models from one paint to the
+ * next: its smallest and largest coordinates, the pyramid used to draw it
+ * and the index used to find points on it.  Each is only worked out once
+ * it's needed, and kept until the model says it has changed, so adding one
+ * model to a graph doesn't mean looking through all the others again.
+ * <p>
+ * The points of a SnapshotGraphModel are read from the snapshot taken at
+ * the last layout, rather than from the model itself.
+ * <p>
+ * The x values of a SortedGraphModel are taken to be in order without
+ * checking, so its smallest and largest are just those of its first and
+ * last points.
+ */
+class SeriesCache {
+    private final GraphModel model;
+
+    /**
+     * Where the points are read from: the model itself, or its latest
+     * snapshot.
+     */
+    private GraphModel points;
+
+    private MinMaxPyramid pyramid;
+
+    private PointIndex pointIndex;
+
+    private boolean extentsFound;
+
+    /**
+     * The extents being worked out in the background, or null if they
+     * aren't.  If the points change meanwhile, this is forgotten, and so is
+     * what it comes up with.
+     */
+    private CompletableFuture<SeriesStatistics> pendingExtents;
+
+    /**
+     * Set if working out the extents in the background failed, so that
+     * they're worked out during layout instead, until the points change.
+     */
+    private boolean backgroundFailed;
+
+    private double minX;
+    private double maxX;
+    private double minY;
+    private double maxY;
+
+    SeriesCache(GraphModel model) {
+        this.model = model;
+        this.points = model instanceof SnapshotGraphModel
+                ? ((SnapshotGraphModel) model).snapshot() : model;
+    }
+
+    /**
+     * Returns the model to read the points from.
+     */
+    GraphModel getPoints() {
+        return points;
+    }
+
+    /**
+     * Takes a new snapshot of a SnapshotGraphModel to read the points from.
+     * If nothing has happened since the last one but points being appended
+     * and dropped, what was worked out about that one is carried over.
+     */
+    void takeSnapshot() {
+        if (!(model instanceof SnapshotGraphModel)) {
+            return;
+        }
+        GraphSnapshot snapshot = ((SnapshotGraphModel) model).snapshot();
+        if (snapshot == points) {
+            return;
+        }
+
+        GraphSnapshot earlier = (GraphSnapshot) points;
+        points = snapshot;
+        pendingExtents = null;
+        if (pyramid != null) {
+            pyramid.setModel(snapshot);
+        }
+        if (pointIndex != null) {
+            pointIndex.setModel(snapshot);
+        }
+        if (!snapshot.follows(earlier)) {
+            invalidate();
+            return;
+        }
+        long dropped = snapshot.getDroppedSince(earlier);
+        long appended = snapshot.getAppendedSince(earlier);
+        if (dropped > Integer.MAX_VALUE || appended > Integer.MAX_VALUE) {
+            invalidate();
+        } else {
+            pointsAppended((int) dropped, (int) appended);
+        }
+    }
+
+    /**
+     * Works out the smallest and largest coordinates of the points, if they
+     * aren't known already.  Models implementing ExtentGraphModel are asked
+     * for them; anything else is read through a chunk at a time, split
+     * between threads if it's a ParallelGraphModel with enough points.
+     */
+    private void findExtents() {
+        if (extentsFound) {
+            return;
+        }
+        extentsFound = true;
+        if (points instanceof ExtentGraphModel) {
+            ExtentGraphModel extents = (ExtentGraphModel) points;
+            if (extents.getPointCount() == 0) {
+                minX = minY = Double.POSITIVE_INFINITY;
+                maxX = maxY = Double.NEGATIVE_INFINITY;
+            } else {
+                minX = extents.getMinX();
+                maxX = extents.getMaxX();
+                minY = extents.getMinY();
+                maxY = extents.getMaxY();
+            }
+            return;
+        }
+        minX = minY = Double.POSITIVE_INFINITY;
+        maxX = maxY = Double.NEGATIVE_INFINITY;
+        if (isDeclaredSorted() || !(points instanceof ParallelGraphModel)) {
+            includePoints(0, points.getPointCount());
+        } else {
+            setExtents(SeriesStatistics.of(points));
+        }
+    }
+
+    private void setExtents(SeriesStatistics statistics) {
+        minX = statistics.getMinX();
+        maxX = statistics.getMaxX();
+        minY = statistics.getMinY();
+        maxY = statistics.getMaxY();
+    }
+
+    /**
+     * Starts working out the extents on the common fork-join pool, if they
+     * aren't known already and the points are those of a ParallelGraphModel
+     * with enough of them to be worth it.  Once they're ready they're kept,
+     * holding the lock on the given object, as the renderer does, and then
+     * the given callback is run.
+     *
+     * @return whether the extents are still to come
+     */
+    boolean findExtentsLater(Object lock, Runnable ready) {
+        if (extentsFound || backgroundFailed || !(points instanceof ParallelGraphModel)
+                || points instanceof ExtentGraphModel
+                || points.getPointCount() < GraphModels.PARALLEL_THRESHOLD) {
+            return false;
+        }
+        if (pendingExtents == null) {
+            GraphModel scanned = points;
+            CompletableFuture<SeriesStatistics> pending =
+                    CompletableFuture.supplyAsync(() -> SeriesStatistics.of(scanned));
+            pendingExtents = pending;
+            pending.whenComplete((statistics, failure) -> {
+                synchronized (lock) {
+                    if (pendingExtents != pending) {
+                        // The points have changed since.
+                        return;
+                    }
+                    pendingExtents = null;
+                    if (failure != null) {
+                        backgroundFailed = true;
+                    } else {
+                        setExtents(statistics);
+                        extentsFound = true;
+                    }
+                }
+                ready.run();
+            });
+        }
+        return true;
+    }
+
+    /**
+     * Widens the extents to take in the points from start up to end.  Only
+     * the y values are read through if the model is sorted.
+     */
+    private void includePoints(int start, int end) {
+        if (start >= end) {
+            return;
+        }
+        if (isDeclaredSorted()) {
+            minX = Math.min(minX, points.getX(start));
+            maxX = Math.max(maxX, points.getX(end - 1));
+            double[] ys = new double[Math.min(GraphModels.CHUNK_SIZE, end - start)];
+            for (int chunk = start; chunk < end; chunk += GraphModels.CHUNK_SIZE) {
+                int length = Math.min(GraphModels.CHUNK_SIZE, end - chunk);
+                GraphModels.readY(points, chunk, ys, length);
+                for (int i = 0; i < length; i++) {
+                    double y = ys[i];
+                    if (y < minY)
+                        minY = y;
+                    if (y > maxY)
+                        maxY = y;
+                }
+            }
+            return;
+        }
+
+        double[] xs = new double[GraphModels.CHUNK_SIZE];
+        double[] ys = new double[GraphModels.CHUNK_SIZE];
+        for (int chunk = start; chunk < end; chunk += GraphModels.CHUNK_SIZE) {
+            int length = Math.min(GraphModels.CHUNK_SIZE, end - chunk);
+            GraphModels.read(points, chunk, xs, ys, length);
+            for (int i = 0; i < length; i++) {
+                double x = xs[i];
+                double y = ys[i];
+                if (x < minX)
+                    minX = x;
+                if (x > maxX)
+                    maxX = x;
+                if (y < minY)
+                    minY = y;
+                if (y > maxY)
+                    maxY = y;
+            }
+        }
+    }
+
+    /**
+     * Returns whether the model says its x values never go down.
+     */
+    private boolean isDeclaredSorted() {
+        return model instanceof SortedGraphModel;
+    }
+
+    /**
+     * Returns whether the x values never go down, either because the model
+     * says so or because the pyramid has found them not to.
+     */
+    boolean isSorted() {
+        return isDeclaredSorted() || getPyramid().isSorted();
+    }
+
+    /**
+     * Returns the index of the first point whose x value is at least the
+     * given value, or the number of points if there's none.  Only
+     * meaningful if the points are sorted.
+     */
+    int findFirstAtLeast(double x) {
+        return GraphModels.findFirstAtLeast(points, points.getPointCount(), x);
+    }
+
+    double getMinX() {
+        findExtents();
+        return minX;
+    }
+
+    double getMaxX() {
+        findExtents();
+        return maxX;
+    }
+
+    double getMinY() {
+        findExtents();
+        return minY;
+    }
+
+    double getMaxY() {
+        findExtents();
+        return maxY;
+    }
+
+    MinMaxPyramid getPyramid() {
+        if (pyramid == null) {
+            pyramid = new MinMaxPyramid(points);
+        }
+        return pyramid;
+    }
+
+    PointIndex getPointIndex() {
+        if (pointIndex == null) {
+            pointIndex = new PointIndex(points);
+        }
+        return pointIndex;
+    }
+
+    /**
+     * Takes account of points having been dropped from the start of the
+     * model and appended to its end.
+     */
+    void pointsAppended(int dropped, int appended) {
+        pendingExtents = null;
+        backgroundFailed = false;
+        if (dropped > 0 || points instanceof ExtentGraphModel) {
+            // The points dropped might have been the extremes.
+            extentsFound = false;
+        } else if (extentsFound) {
+            int count = points.getPointCount();
+            includePoints(Math.max(0, count - appended), count);
+        }
+        if (pyramid != null) {
+            pyramid.pointsAppended(dropped, appended);
+        }
+        if (pointIndex != null) {
+            pointIndex.pointsAppended(dropped, appended);
+        }
+    }
+
+    /**
+     * Forgets everything worked out about the model, which has changed.
+     */
+    void invalidate() {
+        extentsFound = false;
+        pendingExtents = null;
+        backgroundFailed = false;
+        if (pyramid != null) {
+            pyramid.invalidate();
+        }
+        if (pointIndex != null) {
+            pointIndex.invalidate();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.computronium.bakesale.graph;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The smallest and largest coordinates of the points of a GraphModel, along
+ * with how many there are, how many have a y value which isn't a number,
+ * and the mean of those which are.  NaN coordinates are left out of the
+ * smallest and largest; if there are no other points, those are infinite,
+ * the smallest positive and the largest negative.
+ * <p>
+ * A ParallelGraphModel of at least GraphModels.PARALLEL_THRESHOLD points is
+ * split in half, and the halves split again, down to pieces of about that
+ * size, which are read on the common fork-join pool and their statistics
+ * combined.  Any other model is read through on the calling thread.
+ */
+public final class SeriesStatistics {
+    private final int count;
+
+    private final int nanCount;
+
+    private final double minX;
+    private final double maxX;
+    private final double minY;
+    private final double maxY;
+
+    /**
+     * The total of the y values which are numbers.
+     */
+    private final double sumY;
+
+    private SeriesStatistics(int count, int nanCount, double minX, double maxX,
+                             double minY, double maxY, double sumY) {
+        this.count = count;
+        this.nanCount = nanCount;
+        this.minX = minX;
+        this.maxX = maxX;
+        this.minY = minY;
+        this.maxY = maxY;
+        this.sumY = sumY;
+    }
+
+    /**
+     * Reads through the points of the given model, in parallel if it's a
+     * ParallelGraphModel with enough of them, and works out their
+     * statistics.  A SnapshotGraphModel has a snapshot taken to read.
+     */
+    public static SeriesStatistics of(GraphModel model) {
+        GraphModel points = model instanceof SnapshotGraphModel
+                ? ((SnapshotGraphModel) model).snapshot() : model;
+        int count = points.getPointCount();
+        if (!(points instanceof ParallelGraphModel) || count < GraphModels.PARALLEL_THRESHOLD) {
+            return of(points, 0, count);
+        }
+        return ForkJoinPool.commonPool().invoke(new Task(points, 0, count));
+    }
+
+    /**
+     * Reads through the points from start up to end on this thread.
+     */
+    private static SeriesStatistics of(GraphModel model, int start, int end) {
+        int nan_count = 0;
+        double min_x = Double.POSITIVE_INFINITY;
+        double max_x = Double.NEGATIVE_INFINITY;
+        double min_y = Double.POSITIVE_INFINITY;
+        double max_y = Double.NEGATIVE_INFINITY;
+        double sum_y = 0;
+        double[] xs = new double[Math.min(GraphModels.CHUNK_SIZE, Math.max(end - start, 0))];
+        double[] ys = new double[xs.length];
+        for (int chunk = start; chunk < end; chunk += GraphModels.CHUNK_SIZE) {
+            int length = Math.min(GraphModels.CHUNK_SIZE, end - chunk);
+            GraphModels.read(model, chunk, xs, ys, length);
+            for (int i = 0; i < length; i++) {
+                double x = xs[i];
+                double y = ys[i];
+                if (x < min_x)
+                    min_x = x;
+                if (x > max_x)
+                    max_x = x;
+                if (y < min_y)
+                    min_y = y;
+                if (y > max_y)
+                    max_y = y;
+                if (y != y) {
+                    nan_count++;
+                } else {
+                    sum_y += y;
+                }
+            }
+        }
+        return new SeriesStatistics(end - start, nan_count, min_x, max_x, min_y, max_y, sum_y);
+    }
+
+    /**
+     * Combines the statistics of two stretches of points.
+     */
+    private SeriesStatistics plus(SeriesStatistics other) {
+        return new SeriesStatistics(count + other.count, nanCount + other.nanCount,
+                Math.min(minX, other.minX), Math.max(maxX, other.maxX),
+                Math.min(minY, other.minY), Math.max(maxY, other.maxY), sumY + other.sumY);
+    }
+
+    /**
+     * Works out the statistics of a stretch of points, splitting it in two
+     * if it's big enough.
+     */
+    @SuppressWarnings("serial")
+    private static class Task extends RecursiveTask<SeriesStatistics> {
+        private final GraphModel model;
+
+        private final int start;
+
+        private final int end;
+
+        Task(GraphModel model, int start, int end) {
+            this.model = model;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected SeriesStatistics compute() {
+            if (end - start < 2 * GraphModels.PARALLEL_THRESHOLD) {
+                return of(model, start, end);
+            }
+            int middle = (start + end) >>> 1;
+            Task left = new Task(model, start, middle);
+            left.fork();
+            SeriesStatistics right = new Task(model, middle, end).compute();
+            return left.join().plus(right);
+        }
+    }
+
+    /**
+     * Retrieves the number of points.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Retrieves the number of points whose y value is NaN.
+     */
+    public int getNaNCount() {
+        return nanCount;
+    }
+
+    /**
+     * Retrieves the smallest x coordinate.
+     */
+    public double getMinX() {
+        return minX;
+    }
+
+    /**
+     * Retrieves the largest x coordinate.
+     */
+    public double getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Retrieves the smallest y coordinate.
+     */
+    public double getMinY() {
+        return minY;
+    }
+
+    /**
+     * Retrieves the largest y coordinate.
+     */
+    public double getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * Retrieves the mean of the y values which are numbers, or NaN if there
+     * are none.
+     */
+    public double getMeanY() {
+        int numbers = count - nanCount;
+        return numbers == 0 ? Double.NaN : sumY / numbers;
+    }
+
+    @Override
+    public String toString() {
+        return "SeriesStatistics[count=" + count + ", nanCount=" + nanCount
+                + ", x=" + minX + ".." + maxX + ", y=" + minY + ".." + maxY
+                + ", meanY=" + getMeanY() + "]";
+    }
+}
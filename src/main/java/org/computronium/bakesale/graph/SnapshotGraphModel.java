@@ -0,0 +1,15 @@
+package org.computronium.bakesale.graph;
+
+/**
+ * A GraphModel which can be changed from other threads while it is being
+ * drawn.  Rather than reading the model itself, which could change between
+ * one call and the next, GraphRenderer takes a snapshot of it each time it
+ * lays the graph out, and reads only that until the next layout.
+ */
+public interface SnapshotGraphModel extends GraphModel {
+    /**
+     * Returns the points as they are now.  The snapshot never changes, and
+     * this should be cheap enough to call on every layout.
+     */
+    GraphSnapshot snapshot();
+}
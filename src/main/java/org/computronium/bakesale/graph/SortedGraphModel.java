@@ -0,0 +1,12 @@
+package org.computronium.bakesale.graph;
+
+/**
+ * A GraphModel whose x values never go down from one point to the next, as
+ * with a series of samples taken over time.  Declaring this saves
+ * GraphPanel looking for itself: the points in view are found by binary
+ * search and nothing outside them is read, and the smallest and largest x
+ * values are taken from the first and last points.  The x values had
+ * better not be NaN.
+ */
+public interface SortedGraphModel extends GraphModel {
+}
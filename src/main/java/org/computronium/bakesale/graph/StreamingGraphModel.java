@@ -0,0 +1,269 @@
+package org.computronium.bakesale.graph;
+
+import java.awt.*;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A GraphModel for a series which grows as samples arrive.  Points are kept
+ * in a ring buffer of fixed capacity; once it is full, appending a point
+ * drops the oldest one.
+ * <p>
+ * The smallest and largest coordinates are kept up to date as points come
+ * and go, at an amortized constant cost per point, so a GraphPanel showing
+ * this model never has to rescan it.  Coordinates which are NaN are left
+ * out of the extents, which are NaN if there are no others.  Listeners are
+ * told which points were appended, which lets the panel repaint just the
+ * part of the graph they affect.
+ * <p>
+ * This class is not thread safe.  Points should be appended on the event
+ * dispatch thread, and GraphPanel reads them there too, even when it has a
+ * RepaintScheduler; only snapshot models are read on the scheduler's
+ * thread.
+ */
+public class StreamingGraphModel implements ObservableGraphModel, BulkGraphModel, ExtentGraphModel {
+    private final double[] xs;
+
+    private final double[] ys;
+
+    private final Color color;
+
+    /**
+     * The sequence number of the oldest point still held.  A point's slot in
+     * the ring buffer is its sequence number modulo the capacity.
+     */
+    private long first;
+
+    private int size;
+
+    private final MonotonicQueue minX;
+    private final MonotonicQueue maxX;
+    private final MonotonicQueue minY;
+    private final MonotonicQueue maxY;
+
+    private final List<GraphModelListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Class constructor.
+     *
+     * @param capacity the most points the model will hold at once
+     * @param color    the color with which to draw the points
+     */
+    public StreamingGraphModel(int capacity, Color color) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.xs = new double[capacity];
+        this.ys = new double[capacity];
+        this.color = color;
+        minX = new MonotonicQueue(xs, false);
+        maxX = new MonotonicQueue(xs, true);
+        minY = new MonotonicQueue(ys, false);
+        maxY = new MonotonicQueue(ys, true);
+    }
+
+    /**
+     * Appends a single point, dropping the oldest one if the model is full.
+     */
+    public void append(double x, double y) {
+        int dropped = add(x, y);
+        firePointsAppended(dropped, 1);
+    }
+
+    /**
+     * Appends count points taken from the given arrays, starting at offset.
+     * Listeners are notified once for the whole batch.
+     */
+    public void append(double[] xs, double[] ys, int offset, int count) {
+        int dropped = 0;
+        for (int i = 0; i < count; i++) {
+            dropped += add(xs[offset + i], ys[offset + i]);
+        }
+        if (count > 0) {
+            // If more points were appended than fit, some of the dropped
+            // points were new ones which listeners never saw.
+            int kept = Math.min(count, size);
+            firePointsAppended(dropped - (count - kept), kept);
+        }
+    }
+
+    /**
+     * Removes all the points.
+     */
+    public void clear() {
+        first += size;
+        size = 0;
+        minX.clear();
+        maxX.clear();
+        minY.clear();
+        maxY.clear();
+        for (GraphModelListener listener : listeners) {
+            listener.modelChanged(this);
+        }
+    }
+
+    /**
+     * Stores a point, returning the number of points (zero or one) dropped to
+     * make room for it.
+     */
+    private int add(double x, double y) {
+        int dropped = 0;
+        if (size == xs.length) {
+            minX.evict(first);
+            maxX.evict(first);
+            minY.evict(first);
+            maxY.evict(first);
+            first++;
+            size--;
+            dropped = 1;
+        }
+        long sequence = first + size;
+        int slot = slot(sequence);
+        xs[slot] = x;
+        ys[slot] = y;
+        size++;
+        minX.push(sequence);
+        maxX.push(sequence);
+        minY.push(sequence);
+        maxY.push(sequence);
+        return dropped;
+    }
+
+    private void firePointsAppended(int dropped, int appended) {
+        for (GraphModelListener listener : listeners) {
+            listener.pointsAppended(this, dropped, appended);
+        }
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % xs.length);
+    }
+
+    /**
+     * Returns the most points the model will hold at once.
+     */
+    public int getCapacity() {
+        return xs.length;
+    }
+
+    public int getPointCount() {
+        return size;
+    }
+
+    public double getX(int index) {
+        return xs[slot(first + index)];
+    }
+
+    public double getY(int index) {
+        return ys[slot(first + index)];
+    }
+
+    public void getX(int index, double[] dest, int offset, int count) {
+        copy(xs, index, dest, offset, count);
+    }
+
+    public void getY(int index, double[] dest, int offset, int count) {
+        copy(ys, index, dest, offset, count);
+    }
+
+    /**
+     * Copies a run of points out of the ring buffer, which takes two copies
+     * if the run wraps around the end of it.
+     */
+    private void copy(double[] values, int index, double[] dest, int offset, int count) {
+        int start = slot(first + index);
+        int before_wrap = Math.min(count, values.length - start);
+        System.arraycopy(values, start, dest, offset, before_wrap);
+        System.arraycopy(values, 0, dest, offset + before_wrap, count - before_wrap);
+    }
+
+    public double getMinX() {
+        return minX.peek();
+    }
+
+    public double getMaxX() {
+        return maxX.peek();
+    }
+
+    public double getMinY() {
+        return minY.peek();
+    }
+
+    public double getMaxY() {
+        return maxY.peek();
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    public void addGraphModelListener(GraphModelListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeGraphModelListener(GraphModelListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Tracks the minimum (or maximum) of a sliding window of values.  It holds
+     * the sequence numbers of the points which could still become the extreme
+     * once older points are dropped, with their values in strictly
+     * improving order from back to front, so the front is always the current
+     * extreme.  Each point is pushed and popped at most once.
+     */
+    private final class MonotonicQueue {
+        private final double[] values;
+
+        private final boolean max;
+
+        private final long[] sequences;
+
+        private int head;
+
+        private int length;
+
+        MonotonicQueue(double[] values, boolean max) {
+            this.values = values;
+            this.max = max;
+            this.sequences = new long[values.length];
+        }
+
+        void push(long sequence) {
+            double value = values[slot(sequence)];
+            if (value != value) {
+                // NaN is never an extreme, and would beat nothing.
+                return;
+            }
+            while (length > 0 && !beats(valueAt(length - 1), value)) {
+                length--;
+            }
+            sequences[(head + length) % sequences.length] = sequence;
+            length++;
+        }
+
+        void evict(long sequence) {
+            if (length > 0 && sequences[head] == sequence) {
+                head = (head + 1) % sequences.length;
+                length--;
+            }
+        }
+
+        double peek() {
+            return length == 0 ? Double.NaN : valueAt(0);
+        }
+
+        void clear() {
+            head = 0;
+            length = 0;
+        }
+
+        private double valueAt(int position) {
+            return values[slot(sequences[(head + position) % sequences.length])];
+        }
+
+        private boolean beats(double a, double b) {
+            return max ? a > b : a < b;
+        }
+    }
+}
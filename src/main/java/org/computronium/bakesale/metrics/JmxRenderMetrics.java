@@ -0,0 +1,245 @@
+package org.computronium.bakesale.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps running totals of what a chart is doing, and publishes them as an
+ * MXBean so they can be watched with JConsole, VisualVM or any other JMX
+ * client.  Give each chart its own instance, with its own name:
+ * <pre>
+ *     JmxRenderMetrics metrics = new JmxRenderMetrics("prices");
+ *     metrics.register();
+ *     panel.setRenderMetrics(metrics);
+ * </pre>
+ * Everything is recorded with atomic counters, so reporting costs next to
+ * nothing and the values can be read from any thread.
+ */
+public class JmxRenderMetrics implements RenderMetrics, RenderMetricsMXBean {
+    /**
+     * The domain of the names the metrics are registered under.
+     */
+    public static final String DOMAIN = "org.computronium.bakesale";
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final ObjectName objectName;
+
+    private final LongAdder layoutCount = new LongAdder();
+    private final LongAdder layoutTimeTotal = new LongAdder();
+    private final AtomicLong layoutTimeMax = new AtomicLong();
+    private volatile long layoutTimeLast;
+
+    private final LongAdder paintCount = new LongAdder();
+    private final LongAdder paintTimeTotal = new LongAdder();
+    private final AtomicLong paintTimeMax = new AtomicLong();
+    private volatile long paintTimeLast;
+
+    private final LongAdder itemsDrawn = new LongAdder();
+    private final LongAdder itemsSkipped = new LongAdder();
+    private final LongAdder staticLayerCacheHits = new LongAdder();
+    private final LongAdder staticLayerCacheMisses = new LongAdder();
+    private final LongAdder repaintRequests = new LongAdder();
+
+    /**
+     * The paints counted so far in the current second, and in the whole
+     * second before it.  Guarded by this.
+     */
+    private long currentSecond;
+    private int paintsThisSecond;
+    private int paintsLastSecond;
+
+    /**
+     * Class constructor.
+     *
+     * @param name the name of the chart, which goes in the name the metrics
+     *             are registered under
+     * @throws IllegalArgumentException if the name can't be used in an
+     *                                  ObjectName
+     */
+    public JmxRenderMetrics(String name) {
+        try {
+            objectName = new ObjectName(DOMAIN + ":type=RenderMetrics,name="
+                    + ObjectName.quote(name));
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Bad chart name: " + name, e);
+        }
+    }
+
+    /**
+     * Retrieves the name the metrics are registered under.
+     */
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     *
+     * @throws JMException if they can't be registered, for instance because
+     *                     there's already a chart with the same name
+     */
+    public void register() throws JMException {
+        register(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    /**
+     * Registers the metrics with the given MBean server.
+     */
+    public void register(MBeanServer server) throws JMException {
+        server.registerMBean(this, objectName);
+    }
+
+    /**
+     * Unregisters the metrics from the platform MBean server.
+     */
+    public void unregister() throws JMException {
+        unregister(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    /**
+     * Unregisters the metrics from the given MBean server.
+     */
+    public void unregister(MBeanServer server) throws JMException {
+        server.unregisterMBean(objectName);
+    }
+
+    public void layoutFinished(long nanos) {
+        layoutCount.increment();
+        layoutTimeTotal.add(nanos);
+        layoutTimeMax.accumulateAndGet(nanos, Math::max);
+        layoutTimeLast = nanos;
+    }
+
+    public void paintFinished(long nanos) {
+        paintCount.increment();
+        paintTimeTotal.add(nanos);
+        paintTimeMax.accumulateAndGet(nanos, Math::max);
+        paintTimeLast = nanos;
+        countPaint(System.nanoTime());
+    }
+
+    public void itemsPainted(int drawn, int skipped) {
+        itemsDrawn.add(drawn);
+        itemsSkipped.add(skipped);
+    }
+
+    public void staticLayerPainted(boolean cached) {
+        if (cached) {
+            staticLayerCacheHits.increment();
+        } else {
+            staticLayerCacheMisses.increment();
+        }
+    }
+
+    public void repaintRequested() {
+        repaintRequests.increment();
+    }
+
+    /**
+     * Counts a paint towards the paints per second.
+     */
+    private synchronized void countPaint(long now) {
+        rollOver(now);
+        paintsThisSecond++;
+    }
+
+    /**
+     * Moves on to the second the given time falls in.
+     */
+    private void rollOver(long now) {
+        long second = now / NANOS_PER_SECOND;
+        if (second != currentSecond) {
+            paintsLastSecond = second == currentSecond + 1 ? paintsThisSecond : 0;
+            paintsThisSecond = 0;
+            currentSecond = second;
+        }
+    }
+
+    public long getLayoutCount() {
+        return layoutCount.sum();
+    }
+
+    public long getLayoutTimeTotal() {
+        return layoutTimeTotal.sum();
+    }
+
+    public long getLayoutTimeMax() {
+        return layoutTimeMax.get();
+    }
+
+    public long getLayoutTimeLast() {
+        return layoutTimeLast;
+    }
+
+    public long getPaintCount() {
+        return paintCount.sum();
+    }
+
+    public long getPaintTimeTotal() {
+        return paintTimeTotal.sum();
+    }
+
+    public long getPaintTimeMax() {
+        return paintTimeMax.get();
+    }
+
+    public long getPaintTimeLast() {
+        return paintTimeLast;
+    }
+
+    public synchronized int getPaintsPerSecond() {
+        rollOver(System.nanoTime());
+        return paintsLastSecond;
+    }
+
+    public long getItemsDrawn() {
+        return itemsDrawn.sum();
+    }
+
+    public long getItemsSkipped() {
+        return itemsSkipped.sum();
+    }
+
+    public long getStaticLayerCacheHits() {
+        return staticLayerCacheHits.sum();
+    }
+
+    public long getStaticLayerCacheMisses() {
+        return staticLayerCacheMisses.sum();
+    }
+
+    public long getRepaintRequests() {
+        return repaintRequests.sum();
+    }
+
+    public void reset() {
+        layoutCount.reset();
+        layoutTimeTotal.reset();
+        layoutTimeMax.set(0);
+        layoutTimeLast = 0;
+        paintCount.reset();
+        paintTimeTotal.reset();
+        paintTimeMax.set(0);
+        paintTimeLast = 0;
+        itemsDrawn.reset();
+        itemsSkipped.reset();
+        staticLayerCacheHits.reset();
+        staticLayerCacheMisses.reset();
+        repaintRequests.reset();
+        synchronized (this) {
+            paintsThisSecond = 0;
+            paintsLastSecond = 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "JmxRenderMetrics[" + objectName + "]";
+    }
+}
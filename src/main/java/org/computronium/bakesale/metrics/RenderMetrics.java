@@ -0,0 +1,61 @@
+package org.computronium.bakesale.metrics;
+
+/**
+ * Told what a chart is doing as it lays itself out and paints, so the cost
+ * of drawing charts can be watched under real load.  Each renderer reports
+ * to one of these, which the panels also report their painting to.
+ * <p>
+ * Calls are made on whichever thread is laying out or painting, usually the
+ * event dispatch thread, so implementations should be quick and must be
+ * safe to read from other threads.  Every method does nothing by default.
+ *
+ * @see JmxRenderMetrics
+ */
+public interface RenderMetrics {
+    /**
+     * Metrics which go nowhere, used until something else is set.
+     */
+    RenderMetrics NONE = new RenderMetrics() {
+    };
+
+    /**
+     * Called when the chart has been laid out.
+     *
+     * @param nanos how long it took, in nanoseconds
+     */
+    default void layoutFinished(long nanos) {
+    }
+
+    /**
+     * Called when a panel has painted its chart.
+     *
+     * @param nanos how long it took, in nanoseconds
+     */
+    default void paintFinished(long nanos) {
+    }
+
+    /**
+     * Called when the data layer has been painted.
+     *
+     * @param drawn   the number of points, bars or wedges drawn
+     * @param skipped the number of points which were left out because they
+     *                couldn't be told apart from those drawn
+     */
+    default void itemsPainted(int drawn, int skipped) {
+    }
+
+    /**
+     * Called when a panel has painted the static layer of its chart.
+     *
+     * @param cached whether the cached image of the layer could be used, or
+     *               it had to be drawn again
+     */
+    default void staticLayerPainted(boolean cached) {
+    }
+
+    /**
+     * Called when a panel asks to be repainted.
+     */
+    default void repaintRequested() {
+    }
+}
@@ -0,0 +1,84 @@
+package org.computronium.bakesale.metrics;
+
+/**
+ * The management interface of {@link JmxRenderMetrics}.  Counts and totals
+ * are since the metrics were created or last reset; times are in
+ * nanoseconds.
+ */
+public interface RenderMetricsMXBean {
+    /**
+     * Returns the number of times the chart has been laid out.
+     */
+    long getLayoutCount();
+
+    /**
+     * Returns the total time spent laying out the chart.
+     */
+    long getLayoutTimeTotal();
+
+    /**
+     * Returns the longest a single layout has taken.
+     */
+    long getLayoutTimeMax();
+
+    /**
+     * Returns how long the last layout took.
+     */
+    long getLayoutTimeLast();
+
+    /**
+     * Returns the number of times the chart has been painted.
+     */
+    long getPaintCount();
+
+    /**
+     * Returns the total time spent painting the chart.
+     */
+    long getPaintTimeTotal();
+
+    /**
+     * Returns the longest a single paint has taken.
+     */
+    long getPaintTimeMax();
+
+    /**
+     * Returns how long the last paint took.
+     */
+    long getPaintTimeLast();
+
+    /**
+     * Returns the number of times the chart was painted during the last whole
+     * second.
+     */
+    int getPaintsPerSecond();
+
+    /**
+     * Returns the number of points, bars or wedges drawn.
+     */
+    long getItemsDrawn();
+
+    /**
+     * Returns the number of points left out by decimation.
+     */
+    long getItemsSkipped();
+
+    /**
+     * Returns the number of times the static layer was drawn from its cache.
+     */
+    long getStaticLayerCacheHits();
+
+    /**
+     * Returns the number of times the static layer had to be drawn again.
+     */
+    long getStaticLayerCacheMisses();
+
+    /**
+     * Returns the number of repaints asked for.
+     */
+    long getRepaintRequests();
+
+    /**
+     * Sets all the counts and times back to zero.
+     */
+    void reset();
+}
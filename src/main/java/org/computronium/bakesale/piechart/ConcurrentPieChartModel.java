@@ -0,0 +1,237 @@
+package org.computronium.bakesale.piechart;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A PieChartModel which any number of threads can change while it is being
+ * drawn.
+ * <p>
+ * The wedges are kept in an immutable snapshot.  Each change copies it,
+ * makes the change to the copy and publishes that with a single volatile
+ * write, so readers never lock, and the angles of the wedges worked out at
+ * layout never get out of step with the wedges painted.  Changing many
+ * wedges at once with setValues() or setWedges() costs a single copy.
+ * <p>
+ * Writers take turns, but listeners are told about each change on the
+ * thread which made it only once it has let the others go, so a listener
+ * may hear of changes after later ones have been made, or in a different
+ * order; the snapshot is always the latest.
+ */
+public class ConcurrentPieChartModel implements ObservablePieChartModel, SnapshotPieChartModel {
+    private static final Wedges EMPTY = new Wedges(new String[0], new double[0], new Color[0],
+            new boolean[0]);
+
+    private final List<PieChartModelListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile Wedges wedges = EMPTY;
+
+    /**
+     * Replaces all the wedges.
+     *
+     * @throws IllegalArgumentException if the arrays aren't all the same
+     *                                  length
+     */
+    public void setWedges(String[] names, double[] values, Color[] colors,
+                                       boolean[] outsets) {
+        synchronized (this) {
+            if (values.length != names.length || colors.length != names.length
+                    || outsets.length != names.length) {
+                throw new IllegalArgumentException("There are " + names.length + " names, "
+                        + values.length + " values, " + colors.length + " colors and "
+                        + outsets.length + " outsets");
+            }
+            wedges = new Wedges(names.clone(), values.clone(), colors.clone(), outsets.clone());
+        }
+        fireModelChanged();
+    }
+
+    /**
+     * Adds a wedge to the end.
+     */
+    public void addWedge(String name, double value, Color color, boolean outset) {
+        synchronized (this) {
+            Wedges old = wedges;
+            int count = old.names.length;
+            Wedges changed = new Wedges(Arrays.copyOf(old.names, count + 1),
+                    Arrays.copyOf(old.values, count + 1), Arrays.copyOf(old.colors, count + 1),
+                    Arrays.copyOf(old.outsets, count + 1));
+            changed.names[count] = name;
+            changed.values[count] = value;
+            changed.colors[count] = color;
+            changed.outsets[count] = outset;
+            wedges = changed;
+        }
+        fireModelChanged();
+    }
+
+    /**
+     * Removes the wedge at the given index.
+     */
+    public void removeWedge(int index) {
+        synchronized (this) {
+            Wedges old = wedges;
+            int count = old.names.length;
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("Index " + index + " of " + count);
+            }
+            Wedges changed = new Wedges(new String[count - 1], new double[count - 1],
+                    new Color[count - 1], new boolean[count - 1]);
+            copyAround(old.names, changed.names, index, count);
+            copyAround(old.values, changed.values, index, count);
+            copyAround(old.colors, changed.colors, index, count);
+            copyAround(old.outsets, changed.outsets, index, count);
+            wedges = changed;
+        }
+        fireModelChanged();
+    }
+
+    /**
+     * Copies everything but the element at the given index from one array of
+     * the given length to another one shorter.
+     */
+    private static void copyAround(Object from, Object to, int index, int length) {
+        System.arraycopy(from, 0, to, 0, index);
+        System.arraycopy(from, index + 1, to, index, length - index - 1);
+    }
+
+    /**
+     * Sets the value of the wedge at the given index.
+     */
+    public void setValue(int index, double value) {
+        synchronized (this) {
+            Wedges old = wedges;
+            double[] values = old.values.clone();
+            values[index] = value;
+            wedges = new Wedges(old.names, values, old.colors, old.outsets);
+        }
+        fireModelChanged();
+    }
+
+    /**
+     * Sets the values of all the wedges at once.
+     *
+     * @throws IllegalArgumentException if there isn't one value for each
+     *                                  wedge
+     */
+    public void setValues(double[] values) {
+        synchronized (this) {
+            Wedges old = wedges;
+            if (values.length != old.values.length) {
+                throw new IllegalArgumentException("There are " + old.values.length
+                        + " wedges but " + values.length + " values");
+            }
+            wedges = new Wedges(old.names, values.clone(), old.colors, old.outsets);
+        }
+        fireModelChanged();
+    }
+
+    /**
+     * Sets whether the wedge at the given index is exploded out from the
+     * center.
+     */
+    public void setOutset(int index, boolean outset) {
+        synchronized (this) {
+            Wedges old = wedges;
+            boolean[] outsets = old.outsets.clone();
+            outsets[index] = outset;
+            wedges = new Wedges(old.names, old.values, old.colors, outsets);
+        }
+        fireModelChanged();
+    }
+
+    /**
+     * Removes all the wedges.
+     */
+    public void clear() {
+        synchronized (this) {
+            wedges = EMPTY;
+        }
+        fireModelChanged();
+    }
+
+    private void fireModelChanged() {
+        for (PieChartModelListener listener : listeners) {
+            listener.modelChanged(this);
+        }
+    }
+
+    public PieChartModel snapshot() {
+        return wedges;
+    }
+
+    // Each of these reads the latest snapshot, so two calls in a row can see
+    // different wedges; take a snapshot to read more than one thing.
+
+    public int getCount() {
+        return wedges.getCount();
+    }
+
+    public String getName(int index) {
+        return wedges.getName(index);
+    }
+
+    public double getValue(int index) {
+        return wedges.getValue(index);
+    }
+
+    public boolean isOutset(int index) {
+        return wedges.isOutset(index);
+    }
+
+    public Color getColor(int index) {
+        return wedges.getColor(index);
+    }
+
+    public void addPieChartModelListener(PieChartModelListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removePieChartModelListener(PieChartModelListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * A snapshot of the wedges.  The arrays are never changed once it has
+     * been published, and are shared with later snapshots wherever they're
+     * the same.
+     */
+    private static final class Wedges implements PieChartModel {
+        private final String[] names;
+
+        private final double[] values;
+
+        private final Color[] colors;
+
+        private final boolean[] outsets;
+
+        Wedges(String[] names, double[] values, Color[] colors, boolean[] outsets) {
+            this.names = names;
+            this.values = values;
+            this.colors = colors;
+            this.outsets = outsets;
+        }
+
+        public int getCount() {
+            return names.length;
+        }
+
+        public String getName(int index) {
+            return names[index];
+        }
+
+        public double getValue(int index) {
+            return values[index];
+        }
+
+        public boolean isOutset(int index) {
+            return outsets[index];
+        }
+
+        public Color getColor(int index) {
+            return colors[index];
+        }
+    }
+}
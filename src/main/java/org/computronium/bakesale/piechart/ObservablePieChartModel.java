@@ -0,0 +1,18 @@
+package org.computronium.bakesale.piechart;
+
+/**
+ * A PieChartModel which tells its listeners when its wedges change.
+ * PieChartPanel listens to any such model given to it, and keeps itself up to
+ * date without having to be told to.
+ */
+public interface ObservablePieChartModel extends PieChartModel {
+    /**
+     * Adds a listener to be told about changes to the wedges.
+     */
+    void addPieChartModelListener(PieChartModelListener listener);
+
+    /**
+     * Removes a listener previously added with addPieChartModelListener().
+     */
+    void removePieChartModelListener(PieChartModelListener listener);
+}
@@ -0,0 +1,167 @@
+package org.computronium.bakesale.piechart;
+
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * The wedges of a pie chart with all but the biggest of them lumped together
+ * into a single wedge at the end, so that a model with thousands of wedges,
+ * most of them too thin to see, is drawn as a pie with a few.
+ * <p>
+ * The biggest wedges are picked out with a heap holding the best found so
+ * far, which takes time in proportion to the number of wedges times the
+ * logarithm of the number kept, rather than sorting them all.  The wedges
+ * kept stay in the order the model has them in.
+ */
+final class OtherPieChartModel implements PieChartModel {
+    private final PieChartModel source;
+
+    /**
+     * The model indices of the wedges kept, in ascending order.
+     */
+    private final int[] kept;
+
+    private final String otherName;
+
+    private final double otherValue;
+
+    private final Color otherColor;
+
+    private OtherPieChartModel(PieChartModel source, int[] kept, String otherName,
+                               double otherValue, Color otherColor) {
+        this.source = source;
+        this.kept = kept;
+        this.otherName = otherName;
+        this.otherValue = otherValue;
+        this.otherColor = otherColor;
+    }
+
+    /**
+     * Lumps together the wedges of the given model which aren't among the
+     * biggest maxWedges, or which make up less than minPercentage percent of
+     * the pie.
+     *
+     * @param maxWedges     the most wedges to keep, or zero for no limit
+     * @param minPercentage the smallest share of the pie, in percent, for a
+     *                      wedge to be kept
+     * @return the wedges kept followed by one for the rest, or null if no
+     * more than one wedge would be lumped together, in which case the model
+     * may as well be drawn as it is
+     */
+    static OtherPieChartModel aggregate(PieChartModel source, int maxWedges,
+                                        double minPercentage, String otherName,
+                                        Color otherColor) {
+        int count = source.getCount();
+        if ((maxWedges <= 0 || count <= maxWedges + 1) && minPercentage <= 0) {
+            return null;
+        }
+
+        double total = 0;
+        for (int i = 0; i < count; i++) {
+            total += source.getValue(i);
+        }
+        double min_value = total * minPercentage / 100;
+
+        // A min-heap of the biggest wedges found so far, by model index.
+        int limit = maxWedges <= 0 ? count : Math.min(count, maxWedges);
+        int[] heap = new int[limit];
+        double[] heap_values = new double[limit];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            double value = source.getValue(i);
+            if (value < min_value) {
+                continue;
+            }
+            if (size < limit) {
+                siftUp(heap, heap_values, size++, i, value);
+            } else if (value > heap_values[0]) {
+                siftDown(heap, heap_values, size, i, value);
+            }
+        }
+        if (count - size <= 1) {
+            return null;
+        }
+
+        int[] kept = Arrays.copyOf(heap, size);
+        Arrays.sort(kept);
+        double other_value = total;
+        for (int index : kept) {
+            other_value -= source.getValue(index);
+        }
+        return new OtherPieChartModel(source, kept, otherName, Math.max(0, other_value),
+                otherColor);
+    }
+
+    /**
+     * Adds a wedge at the given position at the bottom of the heap, then
+     * moves it up past any bigger wedges above it.
+     */
+    private static void siftUp(int[] heap, double[] values, int position, int index,
+                               double value) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (values[parent] <= value) {
+                break;
+            }
+            heap[position] = heap[parent];
+            values[position] = values[parent];
+            position = parent;
+        }
+        heap[position] = index;
+        values[position] = value;
+    }
+
+    /**
+     * Replaces the smallest wedge, at the top of the heap, with the given
+     * one, then moves it down past any smaller wedges below it.
+     */
+    private static void siftDown(int[] heap, double[] values, int size, int index,
+                                 double value) {
+        int position = 0;
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && values[child + 1] < values[child]) {
+                child++;
+            }
+            if (value <= values[child]) {
+                break;
+            }
+            heap[position] = heap[child];
+            values[position] = values[child];
+            position = child;
+        }
+        heap[position] = index;
+        values[position] = value;
+    }
+
+    /**
+     * Returns the index in the model of the wedge at the given index here,
+     * or -1 for the wedge made up of the rest.
+     */
+    int getModelIndex(int index) {
+        return index < kept.length ? kept[index] : -1;
+    }
+
+    public int getCount() {
+        return kept.length + 1;
+    }
+
+    public String getName(int index) {
+        return index < kept.length ? source.getName(kept[index]) : otherName;
+    }
+
+    public double getValue(int index) {
+        return index < kept.length ? source.getValue(kept[index]) : otherValue;
+    }
+
+    public boolean isOutset(int index) {
+        return index < kept.length && source.isOutset(kept[index]);
+    }
+
+    public Color getColor(int index) {
+        return index < kept.length ? source.getColor(kept[index]) : otherColor;
+    }
+}
@@ -0,0 +1,16 @@
+package org.computronium.bakesale.piechart;
+
+import java.util.EventListener;
+
+/**
+ * Listener notified when the wedges of an ObservablePieChartModel change.
+ */
+public interface PieChartModelListener extends EventListener {
+    /**
+     * Called when the model has changed in any way: wedges added or removed,
+     * or their names, values, colors or outsets changed.
+     *
+     * @param model the model that changed
+     */
+    void modelChanged(PieChartModel model);
+}
@@ -1,50 +1,46 @@
 package org.computronium.bakesale.piechart;
 
+import org.computronium.bakesale.metrics.RenderMetrics;
+import org.computronium.bakesale.render.ChartImages;
+import org.computronium.bakesale.render.RepaintScheduler;
+import org.computronium.bakesale.render.StaticLayerCache;
+
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
+import java.awt.event.MouseEvent;
 
 /**
- * A panel showing a pie chart.
+ * A panel showing a pie chart.  All the layout and drawing is done by a
+ * PieChartRenderer, which can also be used on its own to draw the chart
+ * without a display.
  */
 @SuppressWarnings("serial")
 public class PieChartPanel extends JPanel {
-    private static final int MARGIN = 10;
-
-    private static final int LEGEND_MARGIN = 10;
-
-    private static final float OUTSET_PERCENTAGE = 0.16f;
-
-    private Font titleFont = new Font("Arial", Font.BOLD, 16);
-
-    private String title;
-
-    private Rectangle visibleRect;
-
-    private PieChartModel model;
-
-    private FontMetrics fontMetrics;
-
-    private FontMetrics titleFontMetrics;
+    private final PieChartRenderer renderer = new PieChartRenderer();
 
-    private int centerX;
+    private final StaticLayerCache staticLayer = new StaticLayerCache();
 
-    private int centerY;
+    private final PieChartModelListener modelListener = model -> modelChanged();
 
-    private double[] rads;
+    private RepaintScheduler repaintScheduler;
 
-    private double radius;
+    /**
+     * The update registered with the repaint scheduler, or null if there's
+     * no scheduler and changes are dealt with straight away.
+     */
+    private volatile RepaintScheduler.Update scheduledUpdate;
 
-    private int legendX;
+    /**
+     * The part of the panel showing and its font, as of the last time they
+     * were looked at on the event dispatch thread, for laying the chart out
+     * on other threads.  Neither is initialized here, as the font is first
+     * set while the superclass is constructed.
+     */
+    private volatile Rectangle layoutBounds;
 
-    private int legendY;
-
-    private int legendWidth;
-
-    private int legendHeight;
-
-    private int colorBoxInLegendSize;
+    private volatile Font layoutFont;
 
     public PieChartPanel() {
         initialize();
@@ -53,6 +49,7 @@ public class PieChartPanel extends JPanel {
     private void initialize() {
         setBackground(Color.WHITE);
         setForeground(Color.BLACK);
+        setToolTipText("");
 
         addComponentListener(new ComponentAdapter() {
             public void componentResized(ComponentEvent e) {
@@ -60,161 +57,293 @@ public class PieChartPanel extends JPanel {
                 repaint();
             }
         });
+
+        // The wheel scrolls the legend when there are too many entries to
+        // show at once.
+        addMouseWheelListener(e -> {
+            synchronized (renderer) {
+                if (!renderer.isInLegend(e.getX(), e.getY())) {
+                    return;
+                }
+                renderer.setLegendFirst(renderer.getLegendFirst() + e.getUnitsToScroll());
+            }
+            recalculateMetrics();
+            repaint();
+        });
     }
 
     @Override
     public void paint(Graphics g) {
         super.paint(g);
 
-        // Draw the title.
-        if (title != null && !"".equals(title)) {
-            Font save = g.getFont();
-            g.setFont(titleFont);
-            g.drawString(title, centerX - titleFontMetrics.stringWidth(title)
-                    / 2, this.visibleRect.y + MARGIN
-                    + titleFontMetrics.getHeight());
-            g.setFont(save);
-        }
-
-        // Draw the legend.
-        Polygon border = new Polygon();
-        border.addPoint(legendX, legendY);
-        border.addPoint(legendX + legendWidth, legendY);
-        border.addPoint(legendX + legendWidth, legendY + legendHeight);
-        border.addPoint(legendX, legendY + legendHeight);
-        g.setColor(Color.BLACK);
-        g.drawPolygon(border);
-
-        int fontHeight = fontMetrics.getHeight();
-        for (int index = 0, y = legendY + fontHeight + 10; index < model.getCount(); index++, y += fontHeight + 10) {
-            Polygon box = new Polygon();
-            box.addPoint(legendX + 10, y - colorBoxInLegendSize + 3);
-            box.addPoint(legendX + 10 + colorBoxInLegendSize, y - colorBoxInLegendSize + 3);
-            box.addPoint(legendX + 10 + colorBoxInLegendSize, y + 3);
-            box.addPoint(legendX + 10, y + 3);
-            g.setColor(model.getColor(index));
-            g.fillPolygon(box);
-            g.setColor(Color.BLACK);
-            g.drawPolygon(box);
-            g.drawString(model.getName(index), legendX + LEGEND_MARGIN + colorBoxInLegendSize + 10, y);
-        }
-
-        // Draw the pie itself.
-        for (int index = 0; index < model.getCount(); index++) {
-            int offsetX = 0;
-            int offsetY = 0;
-            if (model.isOutset(index)) {
-                // Move this particular wedge out by a percentage of the radius
-                // to highlight it.
-                double radsmid = (rads[index] + rads[index + 1]) / 2;
-                offsetX = (int) (radius * OUTSET_PERCENTAGE * Math.cos(radsmid));
-                offsetY = (int) (radius * OUTSET_PERCENTAGE * Math.sin(radsmid));
-            }
+        Rectangle bounds = renderer.getBounds();
+        if (bounds == null) {
+            return;
+        }
 
-            Polygon p = new Polygon();
-            p.addPoint(centerX + offsetX, centerY + offsetY);
-            p
-                    .addPoint(getX(rads[index]) + offsetX, getY(rads[index])
-                            + offsetY);
+        long start = System.nanoTime();
+        RenderMetrics metrics = renderer.getMetrics();
+        Graphics2D g2d = (Graphics2D) g;
+        synchronized (renderer) {
+            metrics.staticLayerPainted(staticLayer.paint(g2d, bounds,
+                    renderer.getStaticLayerKey(), renderer::paintStaticLayer));
+            renderer.paintDataLayer(g2d);
+        }
+        metrics.paintFinished(System.nanoTime() - start);
+    }
 
-            for (double r = rads[index]; r < rads[index + 1]; r += 0.05) {
-                p.addPoint(getX(r) + offsetX, getY(r) + offsetY);
-            }
-            p.addPoint(getX(rads[index + 1]) + offsetX, getY(rads[index + 1])
-                    + offsetY);
-            if (index == model.getCount() - 1) {
-                p.addPoint(getX(rads[0]) + offsetX, getY(rads[0]) + offsetY);
+    /**
+     * Counts the repaint towards the metrics, then asks for it as usual.
+     */
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {
+        // This is called while the superclass is constructed, before there's
+        // a renderer.
+        if (renderer != null) {
+            renderer.getMetrics().repaintRequested();
+        }
+        super.repaint(tm, x, y, width, height);
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent event) {
+        synchronized (renderer) {
+            int index = renderer.getShownWedgeAt(event.getX(), event.getY());
+            if (index < 0) {
+                return null;
             }
-            g.setColor(model.getColor(index));
-            g.fillPolygon(p);
-            g.setColor(Color.BLACK);
-            g.drawPolygon(p);
+            PieChartModel model = renderer.getShownModel();
+            return model.getName(index) + ": " + model.getValue(index);
         }
     }
 
-    private int getX(double r) {
-        double x = centerX + Math.cos(r) * radius;
-        return (int) x;
+    /**
+     * Finds the wedge at the given position in the panel.
+     *
+     * @return the index of the wedge in the model,
+     * PieChartRenderer.OTHER_WEDGE if it's the one the smallest wedges are
+     * lumped together into, or -1 if the position isn't on one
+     */
+    public int getWedgeAt(int x, int y) {
+        synchronized (renderer) {
+            return renderer.getWedgeAt(x, y);
+        }
     }
 
-    private int getY(double r) {
-        double y = centerY + Math.sin(r) * radius;
-        return (int) y;
+    /**
+     * Remembers the font, so that the chart can be laid out in it from any
+     * thread.
+     */
+    @Override
+    public void setFont(Font font) {
+        super.setFont(font);
+        layoutFont = font;
     }
 
-    private void recalculateMetrics() {
-        this.visibleRect = this.getVisibleRect();
-        if (this.visibleRect.width == 0) {
-            // Still initializing.
-            return;
+    /**
+     * Passes the color on to the renderer, which draws the title and the
+     * legend's text and border in it.  A null color leaves the renderer with the one the
+     * panel now inherits from its parent, if there is one.
+     */
+    @Override
+    public void setForeground(Color foreground) {
+        super.setForeground(foreground);
+        Color color = getForeground();
+        // The superclass sets a foreground while being constructed, before
+        // the renderer is.
+        if (renderer != null && color != null) {
+            synchronized (renderer) {
+                renderer.setForeground(color);
+            }
         }
+    }
 
-        Graphics g = this.getGraphics();
-        fontMetrics = g.getFontMetrics();
-        titleFontMetrics = g.getFontMetrics(titleFont);
-
-        // Find the width of the legend, based on the longest of all the
-        // wedge names.
-        int maxNameWidth = 0;
-        for (int i = 0; i < model.getCount(); i++) {
-            int nameWidth = fontMetrics.stringWidth(model.getName(i));
-            if (nameWidth > maxNameWidth) {
-                maxNameWidth = nameWidth;
+    private void recalculateMetrics() {
+        Rectangle bounds;
+        Font font;
+        Graphics g = null;
+        if (SwingUtilities.isEventDispatchThread()) {
+            bounds = layoutBounds = getVisibleRect();
+            font = layoutFont = getFont();
+            g = getGraphics();
+        } else {
+            // Swing mustn't be touched here, so make do with what was last
+            // seen on the event dispatch thread, and measure text without
+            // the screen's help.
+            bounds = layoutBounds;
+            font = layoutFont;
+            if (bounds == null || !(renderer.getModel() instanceof SnapshotPieChartModel)) {
+                // Nothing has been seen of the panel yet, or the model can
+                // only be read where it's changed.
+                SwingUtilities.invokeLater(() -> {
+                    recalculateMetrics();
+                    repaint();
+                });
+                return;
+            }
+        }
+        Graphics2D g2d = g != null ? (Graphics2D) g : ChartImages.createScratchGraphics();
+        try {
+            synchronized (renderer) {
+                renderer.setFont(font);
+                renderer.layout(g2d, bounds);
             }
+        } finally {
+            g2d.dispose();
         }
-        colorBoxInLegendSize = fontMetrics.getHeight() + 4;
-        legendWidth = LEGEND_MARGIN + colorBoxInLegendSize + 10 + maxNameWidth + 10;
-        legendHeight = LEGEND_MARGIN + model.getCount() * (fontMetrics.getHeight() + 10);
+    }
 
-        int pieAreaWidth = visibleRect.width - legendWidth - MARGIN;
-        int pieAreaHeight = visibleRect.height;
-        legendX = visibleRect.x + pieAreaWidth;
-        legendY = visibleRect.y + visibleRect.height - MARGIN - legendHeight;
-        int titleOffset = 0;
+    /**
+     * Asks the repaint scheduler to bring the chart up to date with a change
+     * to the model, or does so on the event dispatch thread if there's no
+     * scheduler.  Either way the thread making the change never has to wait
+     * for the renderer, which might be painting.
+     */
+    private void modelChanged() {
+        RepaintScheduler.Update update = scheduledUpdate;
+        if (update != null) {
+            update.request();
+        } else if (SwingUtilities.isEventDispatchThread()) {
+            update();
+        } else {
+            SwingUtilities.invokeLater(this::update);
+        }
+    }
 
-        if (title != null && !"".equals(title)) {
-            titleOffset = titleFontMetrics.getHeight() + 10;
-            pieAreaHeight -= titleOffset;
+    /**
+     * Brings the chart up to date with changes to the model, on the repaint
+     * scheduler's thread or the event dispatch thread.
+     */
+    private void update() {
+        synchronized (renderer) {
+            renderer.modelChanged();
         }
+        recalculateMetrics();
+        repaint();
+    }
 
-        centerX = visibleRect.x + pieAreaWidth / 2;
-        centerY = visibleRect.y + titleOffset + pieAreaHeight / 2;
-        radius = (pieAreaWidth < pieAreaHeight ? pieAreaWidth : pieAreaHeight)
-                / (1 + 2 * OUTSET_PERCENTAGE) / 2;
+    /**
+     * Retrieves the scheduler which brings the chart up to date when the
+     * model changes.
+     *
+     * @return the scheduler, or null if changes are dealt with straight away
+     */
+    public RepaintScheduler getRepaintScheduler() {
+        return repaintScheduler;
+    }
 
-        double total = 0;
-        for (int i = 0; i < model.getCount(); i++) {
-            total += model.getValue(i);
-        }
-        rads = new double[model.getCount() + 1];
-        rads[0] = 0;
-        int running_total = 0;
-        for (int i = 0; i < model.getCount(); i++) {
-            running_total += model.getValue(i);
-            rads[i + 1] = 2 * Math.PI * running_total / total;
+    /**
+     * Sets the scheduler to bring the chart up to date when the model
+     * changes, which holds it to the scheduler's frame rate.  A SnapshotPieChartModel
+     * is laid out on the scheduler's thread; any other model is still laid
+     * out on the event dispatch thread, where it's changed.  Without one, every change to an
+     * observable model is dealt with on its own, on the event dispatch
+     * thread.
+     *
+     * @param scheduler the scheduler, or null to deal with changes straight
+     *                  away
+     */
+    public void setRepaintScheduler(RepaintScheduler scheduler) {
+        if (scheduledUpdate != null) {
+            scheduledUpdate.cancel();
         }
+        repaintScheduler = scheduler;
+        scheduledUpdate = scheduler == null ? null : scheduler.register(this::update);
+    }
+
+    /**
+     * Retrieves the metrics layout and painting are reported to.
+     */
+    public RenderMetrics getRenderMetrics() {
+        return renderer.getMetrics();
+    }
+
+    /**
+     * Sets the metrics to report layout and painting to, such as a
+     * JmxRenderMetrics.
+     *
+     * @param metrics the metrics, or null to stop reporting
+     */
+    public void setRenderMetrics(RenderMetrics metrics) {
+        renderer.setMetrics(metrics);
+    }
+
+    /**
+     * Returns the renderer which does the drawing, which can be handed to
+     * ChartImages to save the chart as an image.
+     */
+    public PieChartRenderer getRenderer() {
+        return renderer;
     }
 
     public String getTitle() {
-        return title;
+        return renderer.getTitle();
     }
 
     public void setTitle(String title) {
-        this.title = title;
+        renderer.setTitle(title);
         recalculateMetrics();
     }
 
     public Font getTitleFont() {
-        return titleFont;
+        return renderer.getTitleFont();
     }
 
     public void setTitleFont(Font titleFont) {
-        this.titleFont = titleFont;
+        renderer.setTitleFont(titleFont);
+        recalculateMetrics();
+    }
+
+    public int getMaxWedges() {
+        return renderer.getMaxWedges();
+    }
+
+    /**
+     * Sets the most wedges to draw, the rest being lumped together into one.
+     *
+     * @see PieChartRenderer#setMaxWedges(int)
+     */
+    public void setMaxWedges(int maxWedges) {
+        synchronized (renderer) {
+            renderer.setMaxWedges(maxWedges);
+        }
+        recalculateMetrics();
+        repaint();
+    }
+
+    public double getMinWedgePercentage() {
+        return renderer.getMinWedgePercentage();
+    }
+
+    /**
+     * Sets the smallest share of the pie a wedge is drawn for, the rest being
+     * lumped together into one.
+     *
+     * @see PieChartRenderer#setMinWedgePercentage(double)
+     */
+    public void setMinWedgePercentage(double minWedgePercentage) {
+        synchronized (renderer) {
+            renderer.setMinWedgePercentage(minWedgePercentage);
+        }
         recalculateMetrics();
+        repaint();
     }
 
+    /**
+     * Sets the model to use when drawing the chart.  If it's an
+     * ObservablePieChartModel, the chart keeps itself up to date with it.
+     */
     public void setModel(PieChartModel model) {
-        this.model = model;
+        PieChartModel old_model = renderer.getModel();
+        if (old_model instanceof ObservablePieChartModel) {
+            ((ObservablePieChartModel) old_model).removePieChartModelListener(modelListener);
+        }
+        synchronized (renderer) {
+            renderer.setModel(model);
+        }
+        if (model instanceof ObservablePieChartModel) {
+            ((ObservablePieChartModel) model).addPieChartModelListener(modelListener);
+        }
         recalculateMetrics();
     }
 }
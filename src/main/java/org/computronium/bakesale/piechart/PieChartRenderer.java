@@ -0,0 +1,779 @@
+package org.computronium.bakesale.piechart;
+
+import org.computronium.bakesale.metrics.RenderMetrics;
+import org.computronium.bakesale.render.ChartRenderer;
+import org.computronium.bakesale.text.TextCache;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Lays out and draws a pie chart onto any Graphics2D.  PieChartPanel wraps
+ * one of these to show the chart on screen.
+ */
+public class PieChartRenderer implements ChartRenderer {
+    private static final int MARGIN = 10;
+
+    private static final int LEGEND_MARGIN = 10;
+
+    private static final float OUTSET_PERCENTAGE = 0.16f;
+
+    /**
+     * The furthest, in pixels, the straight edges the curve of a wedge is
+     * drawn with may stray from the true circle.
+     */
+    private static final double MAX_CURVE_ERROR = 0.25;
+
+    private static final int SCROLL_BAR_WIDTH = 4;
+
+    /**
+     * What getWedgeAt returns for the wedge the smallest wedges are lumped
+     * together into.
+     */
+    public static final int OTHER_WEDGE = -2;
+
+    private Color foreground = Color.BLACK;
+
+    private Font font = new Font(Font.DIALOG, Font.PLAIN, 12);
+
+    private Font titleFont = new Font("Arial", Font.BOLD, 16);
+
+    private String title;
+
+    private Rectangle visibleRect;
+
+    private PieChartModel model;
+
+    /**
+     * The model as it was when the chart was last laid out, which is what's
+     * painted: a snapshot of a SnapshotPieChartModel, or the model itself.
+     */
+    private PieChartModel shownModel;
+
+    /**
+     * The same as shownModel if its smallest wedges have been lumped
+     * together, otherwise null.
+     */
+    private OtherPieChartModel aggregate;
+
+    private int maxWedges;
+
+    private double minWedgePercentage;
+
+    private String otherName = "Other";
+
+    private Color otherColor = Color.LIGHT_GRAY;
+
+    private FontMetrics fontMetrics;
+
+    private FontMetrics titleFontMetrics;
+
+    private int centerX;
+
+    private int centerY;
+
+    private double[] rads;
+
+    private double radius;
+
+    /**
+     * The outline of each wedge, outset already applied, worked out when the
+     * chart is laid out and kept until the size or the values change.
+     */
+    private Polygon[] wedges = new Polygon[0];
+
+    /**
+     * How far each wedge is moved out from the center, if it's outset.
+     */
+    private int[] offsetXs = new int[0];
+
+    private int[] offsetYs = new int[0];
+
+    /**
+     * The outset flags the wedges were last worked out for.
+     */
+    private boolean[] outsets = new boolean[0];
+
+    /**
+     * The angles, center and radius the wedges were last worked out for.
+     */
+    private double[] wedgeRads;
+
+    private int wedgeCenterX;
+
+    private int wedgeCenterY;
+
+    private double wedgeRadius;
+
+    private int legendX;
+
+    private int legendY;
+
+    private int legendWidth;
+
+    private int legendHeight;
+
+    private int colorBoxInLegendSize;
+
+    /**
+     * The index of the first entry showing in the legend, which scrolls if
+     * there isn't room for them all.
+     */
+    private int legendFirst;
+
+    private int legendRows;
+
+    /**
+     * The widest name measured in the legend since the wedges last changed,
+     * which stops the legend changing size as it scrolls.
+     */
+    private int legendNameWidth;
+
+    /**
+     * The number of entries in the legend when it was last laid out.
+     */
+    private int legendMeasuredCount;
+
+    /**
+     * Goes up by one whenever anything the static layer shows changes: the
+     * setters of what it draws bump it, and so does a layout which moves
+     * the title or the legend, or changes the entries showing in it.  It's
+     * kept boxed, as the key, so that painting doesn't box it again each
+     * time.
+     */
+    private Long staticLayerVersion = 0L;
+
+    /**
+     * Where the static layer was last laid out, as the bounds, the middle
+     * of the pie, the legend's edges and which of its entries show.
+     */
+    private double[] staticLayout = new double[0];
+
+    /**
+     * The names and colors of the entries showing in the legend when it was
+     * last laid out.
+     */
+    private List<String> legendNames = new ArrayList<>();
+
+    private List<Color> legendColors = new ArrayList<>();
+
+    private RenderMetrics metrics = RenderMetrics.NONE;
+
+    /**
+     * Where the widths of strings, and the glyphs to draw them with, are
+     * kept from one layout and paint to the next.
+     */
+    private TextCache textCache = TextCache.getShared();
+
+    /**
+     * Returns a value capturing everything the static layer depends on.
+     */
+    public Object getStaticLayerKey() {
+        return staticLayerVersion;
+    }
+
+    /**
+     * Marks the static layer as changed.
+     */
+    private void staticLayerChanged() {
+        staticLayerVersion = staticLayerVersion + 1;
+    }
+
+    /**
+     * Paints the title and the legend.
+     */
+    public void paintStaticLayer(Graphics2D g) {
+        if (visibleRect == null) {
+            return;
+        }
+
+        g.setFont(font);
+
+        // Draw the title.
+        if (title != null && !"".equals(title)) {
+            Font save = g.getFont();
+            g.setFont(titleFont);
+            textCache.drawString(g, title, centerX - textCache.stringWidth(titleFontMetrics, title)
+                    / 2, this.visibleRect.y + MARGIN
+                    + titleFontMetrics.getHeight());
+            g.setFont(save);
+        }
+
+        // Draw the legend.
+        Polygon border = new Polygon();
+        border.addPoint(legendX, legendY);
+        border.addPoint(legendX + legendWidth, legendY);
+        border.addPoint(legendX + legendWidth, legendY + legendHeight);
+        border.addPoint(legendX, legendY + legendHeight);
+        g.setColor(foreground);
+        g.drawPolygon(border);
+
+        // Only the entries which fit are drawn.
+        int fontHeight = fontMetrics.getHeight();
+        int legend_end = legendFirst + legendRows;
+        for (int index = legendFirst, y = legendY + fontHeight + 10; index < legend_end; index++, y += fontHeight + 10) {
+            Polygon box = new Polygon();
+            box.addPoint(legendX + 10, y - colorBoxInLegendSize + 3);
+            box.addPoint(legendX + 10 + colorBoxInLegendSize, y - colorBoxInLegendSize + 3);
+            box.addPoint(legendX + 10 + colorBoxInLegendSize, y + 3);
+            box.addPoint(legendX + 10, y + 3);
+            g.setColor(shownModel.getColor(index));
+            g.fillPolygon(box);
+            g.setColor(foreground);
+            g.drawPolygon(box);
+            textCache.drawString(g, shownModel.getName(index), legendX + LEGEND_MARGIN + colorBoxInLegendSize + 10, y);
+        }
+
+        // Show how far the legend has been scrolled.
+        int count = shownModel.getCount();
+        if (legendRows < count) {
+            int track = legendHeight - 4;
+            int thumb_top = legendY + 2 + (int) ((long) track * legendFirst / count);
+            int thumb_height = Math.max(SCROLL_BAR_WIDTH, (int) ((long) track * legendRows / count));
+            g.setColor(Color.GRAY);
+            g.fillRect(legendX + legendWidth - SCROLL_BAR_WIDTH - 2, thumb_top,
+                    SCROLL_BAR_WIDTH, thumb_height);
+        }
+    }
+
+    /**
+     * Paints the wedges of the pie.
+     */
+    public void paintDataLayer(Graphics2D g) {
+        if (visibleRect == null) {
+            return;
+        }
+
+        // Draw the pie itself.
+        for (int index = 0; index < wedges.length; index++) {
+            g.setColor(shownModel.getColor(index));
+            g.fillPolygon(wedges[index]);
+            g.setColor(foreground);
+            g.drawPolygon(wedges[index]);
+        }
+        metrics.itemsPainted(shownModel.getCount(), 0);
+    }
+
+    /**
+     * Finds the wedge at the given screen position.  The angle from the
+     * center is looked up in the table of wedge angles by binary search.
+     *
+     * @return the index of the wedge in the model, OTHER_WEDGE if it's the
+     * one the smallest wedges are lumped together into, or -1 if the
+     * position isn't on one
+     */
+    public int getWedgeAt(int x, int y) {
+        int index = getShownWedgeAt(x, y);
+        if (index < 0 || aggregate == null) {
+            return index;
+        }
+        int model_index = aggregate.getModelIndex(index);
+        return model_index >= 0 ? model_index : OTHER_WEDGE;
+    }
+
+    /**
+     * Finds the wedge at the given screen position, as an index into the
+     * shown model.
+     *
+     * @return the index of the wedge, or -1 if the position isn't on one
+     */
+    int getShownWedgeAt(int x, int y) {
+        if (visibleRect == null || shownModel.getCount() == 0) {
+            return -1;
+        }
+
+        int index = findWedge(x - centerX, y - centerY);
+        if (index < 0) {
+            return -1;
+        }
+
+        // An outset wedge is drawn further out along the line through its
+        // middle, which keeps it within the same angles, but it has to be
+        // measured from where its point actually is.
+        int offsetX = offsetXs[index];
+        int offsetY = offsetYs[index];
+        if (outsets[index]) {
+            if (findWedge(x - centerX - offsetX, y - centerY - offsetY) != index) {
+                return -1;
+            }
+        }
+        double dx = x - centerX - offsetX;
+        double dy = y - centerY - offsetY;
+        return dx * dx + dy * dy <= radius * radius ? index : -1;
+    }
+
+    /**
+     * Returns the index of the wedge whose angles take in the direction of
+     * the given offset from the center, or -1 if there's none.
+     */
+    private int findWedge(double dx, double dy) {
+        double angle = Math.atan2(dy, dx);
+        if (angle < 0) {
+            angle += 2 * Math.PI;
+        }
+        int found = Arrays.binarySearch(rads, angle);
+        int index = found >= 0 ? found : -found - 2;
+        return index >= 0 && index < shownModel.getCount() ? index : -1;
+    }
+
+    /**
+     * Works out the outline of every wedge, unless the angles, center, radius
+     * and outsets are all as they were last time.
+     * <p>
+     * The curved edges are drawn as straight lines between points a fixed
+     * angle apart, as few as will keep within MAX_CURVE_ERROR of the circle,
+     * so a small pie has few points and a big one enough to look round.
+     * Every wedge takes its points from the same table around the circle, so
+     * only the table and the ends of the wedges need a sine and cosine.
+     */
+    private void buildWedges() {
+        int count = rads.length - 1;
+        boolean[] new_outsets = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            new_outsets[i] = shownModel.isOutset(i);
+        }
+        if (centerX == wedgeCenterX && centerY == wedgeCenterY && radius == wedgeRadius
+                && Arrays.equals(rads, wedgeRads) && Arrays.equals(new_outsets, outsets)) {
+            return;
+        }
+        wedgeRads = rads;
+        wedgeCenterX = centerX;
+        wedgeCenterY = centerY;
+        wedgeRadius = radius;
+        outsets = new_outsets;
+
+        // The angle the chord between two points on a circle of this radius
+        // strays MAX_CURVE_ERROR from it at its middle.
+        double step = radius > MAX_CURVE_ERROR
+                ? 2 * Math.acos(1 - MAX_CURVE_ERROR / radius) : Math.PI / 2;
+        step = Math.max(step, 1e-3);
+        int steps = (int) Math.ceil(2 * Math.PI / step);
+        step = 2 * Math.PI / steps;
+        int[] circle_x = new int[steps];
+        int[] circle_y = new int[steps];
+        for (int i = 0; i < steps; i++) {
+            circle_x[i] = getX(i * step);
+            circle_y[i] = getY(i * step);
+        }
+
+        wedges = new Polygon[count];
+        offsetXs = new int[count];
+        offsetYs = new int[count];
+        int end_x = getX(rads[0]);
+        int end_y = getY(rads[0]);
+        int first_x = end_x;
+        int first_y = end_y;
+        for (int index = 0; index < count; index++) {
+            int offset_x = 0;
+            int offset_y = 0;
+            if (outsets[index]) {
+                // Move this particular wedge out by a percentage of the radius
+                // to highlight it.
+                double radsmid = (rads[index] + rads[index + 1]) / 2;
+                offset_x = (int) (radius * OUTSET_PERCENTAGE * Math.cos(radsmid));
+                offset_y = (int) (radius * OUTSET_PERCENTAGE * Math.sin(radsmid));
+            }
+            offsetXs[index] = offset_x;
+            offsetYs[index] = offset_y;
+
+            // The points of the table strictly between the two ends.
+            int first = (int) Math.floor(rads[index] / step) + 1;
+            int last = Math.min(steps, (int) Math.ceil(rads[index + 1] / step)) - 1;
+            int between = Math.max(0, last - first + 1);
+            int[] xs = new int[between + 4];
+            int[] ys = new int[between + 4];
+            int n = 0;
+            xs[n] = centerX + offset_x;
+            ys[n++] = centerY + offset_y;
+            xs[n] = end_x + offset_x;
+            ys[n++] = end_y + offset_y;
+            for (int i = first; i <= last; i++) {
+                xs[n] = circle_x[i] + offset_x;
+                ys[n++] = circle_y[i] + offset_y;
+            }
+            end_x = getX(rads[index + 1]);
+            end_y = getY(rads[index + 1]);
+            xs[n] = end_x + offset_x;
+            ys[n++] = end_y + offset_y;
+            if (index == count - 1) {
+                xs[n] = first_x + offset_x;
+                ys[n++] = first_y + offset_y;
+            }
+            wedges[index] = new Polygon(xs, ys, n);
+        }
+    }
+
+    private int getX(double r) {
+        double x = centerX + Math.cos(r) * radius;
+        return (int) x;
+    }
+
+    private int getY(double r) {
+        double y = centerY + Math.sin(r) * radius;
+        return (int) y;
+    }
+
+    /**
+     * Recomputes all the values necessary to draw the chart, to fill the
+     * given bounds.
+     */
+    public void layout(Graphics2D g, Rectangle bounds) {
+        long start = System.nanoTime();
+        calculateLayout(g, bounds);
+        metrics.layoutFinished(System.nanoTime() - start);
+    }
+
+    private void calculateLayout(Graphics2D g, Rectangle bounds) {
+        if (bounds.width == 0 || model == null) {
+            // Nothing to lay out yet.
+            this.visibleRect = null;
+            return;
+        }
+        PieChartModel current = model instanceof SnapshotPieChartModel
+                ? ((SnapshotPieChartModel) model).snapshot() : model;
+        aggregate = OtherPieChartModel.aggregate(current, maxWedges, minWedgePercentage,
+                otherName, otherColor);
+        shownModel = aggregate != null ? aggregate : current;
+        this.visibleRect = new Rectangle(bounds);
+
+        fontMetrics = g.getFontMetrics(font);
+        titleFontMetrics = g.getFontMetrics(titleFont);
+
+        // The legend shows as many entries as fit, scrolled to show
+        // legendFirst onwards.
+        int count = shownModel.getCount();
+        int line_height = fontMetrics.getHeight() + 10;
+        legendRows = Math.max(0, Math.min(count,
+                (visibleRect.height - 2 * MARGIN - LEGEND_MARGIN) / line_height));
+        legendFirst = Math.max(0, Math.min(legendFirst, count - legendRows));
+
+        // Find the width of the legend, based on the longest of the names
+        // showing, or shown since the wedges changed.
+        if (count != legendMeasuredCount) {
+            legendMeasuredCount = count;
+            legendNameWidth = 0;
+        }
+        for (int i = legendFirst; i < legendFirst + legendRows; i++) {
+            int nameWidth = textCache.stringWidth(fontMetrics, shownModel.getName(i));
+            if (nameWidth > legendNameWidth) {
+                legendNameWidth = nameWidth;
+            }
+        }
+        colorBoxInLegendSize = fontMetrics.getHeight() + 4;
+        legendWidth = LEGEND_MARGIN + colorBoxInLegendSize + 10 + legendNameWidth + 10;
+        if (legendRows < count) {
+            legendWidth += SCROLL_BAR_WIDTH + 2;
+        }
+        legendHeight = LEGEND_MARGIN + legendRows * line_height;
+
+        int pieAreaWidth = visibleRect.width - legendWidth - MARGIN;
+        int pieAreaHeight = visibleRect.height;
+        legendX = visibleRect.x + pieAreaWidth;
+        legendY = visibleRect.y + visibleRect.height - MARGIN - legendHeight;
+        int titleOffset = 0;
+
+        if (title != null && !"".equals(title)) {
+            titleOffset = titleFontMetrics.getHeight() + 10;
+            pieAreaHeight -= titleOffset;
+        }
+
+        centerX = visibleRect.x + pieAreaWidth / 2;
+        centerY = visibleRect.y + titleOffset + pieAreaHeight / 2;
+        radius = (pieAreaWidth < pieAreaHeight ? pieAreaWidth : pieAreaHeight)
+                / (1 + 2 * OUTSET_PERCENTAGE) / 2;
+
+        // New values only make the static layer look any different if they
+        // move the title or the legend, or change the entries showing.
+        List<String> legend_names = new ArrayList<>(legendRows);
+        List<Color> legend_colors = new ArrayList<>(legendRows);
+        for (int i = legendFirst; i < legendFirst + legendRows; i++) {
+            legend_names.add(shownModel.getName(i));
+            legend_colors.add(shownModel.getColor(i));
+        }
+        double[] static_layout = {visibleRect.x, visibleRect.y, visibleRect.width,
+                visibleRect.height, centerX, legendX, legendY, legendWidth, legendHeight,
+                colorBoxInLegendSize, legendFirst, legendRows, count};
+        if (!Arrays.equals(static_layout, staticLayout) || !legend_names.equals(legendNames)
+                || !legend_colors.equals(legendColors)) {
+            staticLayout = static_layout;
+            legendNames = legend_names;
+            legendColors = legend_colors;
+            staticLayerChanged();
+        }
+
+        double total = 0;
+        for (int i = 0; i < shownModel.getCount(); i++) {
+            total += shownModel.getValue(i);
+        }
+        rads = new double[shownModel.getCount() + 1];
+        rads[0] = 0;
+        double running_total = 0;
+        for (int i = 0; i < shownModel.getCount(); i++) {
+            running_total += shownModel.getValue(i);
+            rads[i + 1] = 2 * Math.PI * running_total / total;
+        }
+        buildWedges();
+    }
+
+    /**
+     * Retrieves the area the chart was last laid out in, or null if it hasn't
+     * been laid out yet.
+     */
+    public Rectangle getBounds() {
+        return visibleRect == null ? null : new Rectangle(visibleRect);
+    }
+
+    /**
+     * Retrieves the title.
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Sets the title, drawn above the pie, or null for none.
+     */
+    public void setTitle(String title) {
+        if (!Objects.equals(title, this.title)) {
+            staticLayerChanged();
+        }
+        this.title = title;
+    }
+
+    /**
+     * Retrieves the color of the outlines and the text.
+     */
+    public Color getForeground() {
+        return foreground;
+    }
+
+    /**
+     * Sets the color of the outlines and the text.
+     *
+     * @throws IllegalArgumentException if the color is null
+     */
+    public void setForeground(Color foreground) {
+        if (foreground == null) {
+            throw new IllegalArgumentException("The foreground color can't be null");
+        }
+        if (!Objects.equals(foreground, this.foreground)) {
+            staticLayerChanged();
+        }
+        this.foreground = foreground;
+    }
+
+    /**
+     * Retrieves the font used for the legend.
+     */
+    public Font getFont() {
+        return font;
+    }
+
+    /**
+     * Sets the font used for the legend.
+     */
+    public void setFont(Font font) {
+        if (!Objects.equals(font, this.font)) {
+            staticLayerChanged();
+        }
+        this.font = font;
+    }
+
+    /**
+     * Retrieves the title font.
+     */
+    public Font getTitleFont() {
+        return titleFont;
+    }
+
+    /**
+     * Sets the title font.
+     */
+    public void setTitleFont(Font titleFont) {
+        if (!Objects.equals(titleFont, this.titleFont)) {
+            staticLayerChanged();
+        }
+        this.titleFont = titleFont;
+    }
+
+    /**
+     * Retrieves the index of the first entry showing in the legend.
+     */
+    public int getLegendFirst() {
+        return legendFirst;
+    }
+
+    /**
+     * Scrolls the legend to show the given entry first, if there are too
+     * many to show them all.  Takes effect when the chart is next laid out.
+     */
+    public void setLegendFirst(int legendFirst) {
+        this.legendFirst = Math.max(0, legendFirst);
+    }
+
+    /**
+     * Retrieves the number of entries showing in the legend.
+     */
+    public int getLegendRows() {
+        return legendRows;
+    }
+
+    /**
+     * Returns whether the given screen position is on the legend.
+     */
+    public boolean isInLegend(int x, int y) {
+        return visibleRect != null && x >= legendX && x <= legendX + legendWidth
+                && y >= legendY && y <= legendY + legendHeight;
+    }
+
+    /**
+     * Retrieves the most wedges drawn before the rest are lumped together.
+     */
+    public int getMaxWedges() {
+        return maxWedges;
+    }
+
+    /**
+     * Sets the most wedges to draw.  The biggest are kept and the rest drawn
+     * as one wedge at the end, called otherName.
+     *
+     * @param maxWedges the most wedges to draw, not counting the one for the
+     *                  rest, or zero for no limit
+     */
+    public void setMaxWedges(int maxWedges) {
+        if (maxWedges < 0) {
+            throw new IllegalArgumentException("maxWedges must not be negative: " + maxWedges);
+        }
+        this.maxWedges = maxWedges;
+    }
+
+    /**
+     * Retrieves the smallest share of the pie a wedge is drawn for.
+     */
+    public double getMinWedgePercentage() {
+        return minWedgePercentage;
+    }
+
+    /**
+     * Sets the smallest share of the pie, in percent, a wedge is drawn for.
+     * Smaller wedges are drawn as one wedge at the end, called otherName.
+     *
+     * @param minWedgePercentage the smallest share, or zero to draw every
+     *                           wedge however thin
+     */
+    public void setMinWedgePercentage(double minWedgePercentage) {
+        if (!(minWedgePercentage >= 0 && minWedgePercentage <= 100)) {
+            throw new IllegalArgumentException("minWedgePercentage must be from 0 to 100: "
+                    + minWedgePercentage);
+        }
+        this.minWedgePercentage = minWedgePercentage;
+    }
+
+    /**
+     * Retrieves the name of the wedge the smallest are lumped together in.
+     */
+    public String getOtherName() {
+        return otherName;
+    }
+
+    /**
+     * Sets the name of the wedge the smallest are lumped together in, as
+     * shown in the legend.
+     */
+    public void setOtherName(String otherName) {
+        this.otherName = otherName;
+    }
+
+    /**
+     * Retrieves the color of the wedge the smallest are lumped together in.
+     */
+    public Color getOtherColor() {
+        return otherColor;
+    }
+
+    /**
+     * Sets the color of the wedge the smallest are lumped together in.
+     */
+    public void setOtherColor(Color otherColor) {
+        this.otherColor = otherColor;
+    }
+
+    /**
+     * Retrieves the model the chart was last laid out from, with the
+     * smallest wedges lumped together if they were, which is what the
+     * indices of the wedges drawn refer to.
+     */
+    PieChartModel getShownModel() {
+        return shownModel;
+    }
+
+    /**
+     * Retrieves the outlines of the wedges of the shown model, as last
+     * worked out.
+     */
+    Polygon[] getWedges() {
+        return wedges;
+    }
+
+    /**
+     * Retrieves the model.
+     */
+    public PieChartModel getModel() {
+        return model;
+    }
+
+    /**
+     * Sets the model to use when drawing the chart.
+     */
+    public void setModel(PieChartModel model) {
+        this.model = model;
+        legendNameWidth = 0;
+    }
+
+    /**
+     * Tells the renderer that the wedges of the model have changed, so the
+     * names in the legend are measured afresh at the next layout.
+     */
+    public void modelChanged() {
+        legendNameWidth = 0;
+    }
+
+    /**
+     * Retrieves the cache text is measured and drawn through.
+     */
+    public TextCache getTextCache() {
+        return textCache;
+    }
+
+    /**
+     * Sets the cache text is measured and drawn through, which is normally
+     * the one shared by all charts.
+     *
+     * @throws IllegalArgumentException if the cache is null
+     */
+    public void setTextCache(TextCache textCache) {
+        if (textCache == null) {
+            throw new IllegalArgumentException("The text cache can't be null");
+        }
+        this.textCache = textCache;
+    }
+
+    /**
+     * Retrieves the metrics the renderer reports to.
+     */
+    public RenderMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics to report layout and painting to.
+     *
+     * @param metrics the metrics, or null to stop reporting
+     */
+    public void setMetrics(RenderMetrics metrics) {
+        this.metrics = metrics == null ? RenderMetrics.NONE : metrics;
+    }
+}
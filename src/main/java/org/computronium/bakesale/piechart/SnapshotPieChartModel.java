@@ -0,0 +1,15 @@
+package org.computronium.bakesale.piechart;
+
+/**
+ * A PieChartModel which can be changed from other threads while it is being
+ * drawn.  Rather than reading the model itself, which could change between
+ * one call and the next, PieChartRenderer takes a snapshot of it each time it
+ * lays the chart out, and reads only that until the next layout.
+ */
+public interface SnapshotPieChartModel extends PieChartModel {
+    /**
+     * Returns the wedges as they are now, as a model which never changes.
+     * This should be cheap enough to call on every layout.
+     */
+    PieChartModel snapshot();
+}
@@ -0,0 +1,266 @@
+package org.computronium.bakesale.render;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Renders large numbers of charts to image files, spread across a pool of
+ * worker threads.
+ * <p>
+ * Each job in flight borrows a render context holding an image buffer and an
+ * image writer for each format it has seen, and hands it back when done, so
+ * images and writers are reused from one chart to the next rather than
+ * allocated for each.  Contexts are pooled rather than tied to threads, so
+ * this works just as well with executors which start a new thread for every
+ * task (virtual threads, for instance) as with a fixed pool.
+ * <p>
+ * Only as many jobs as there are contexts are handed to the executor at once,
+ * so a very long stream of jobs is never queued up in memory.  That holds
+ * across calls: several threads can render batches through one renderer at
+ * once, and share out its contexts between them.
+ */
+public class BatchRenderer implements AutoCloseable {
+    private final ExecutorService executor;
+
+    private final boolean ownsExecutor;
+
+    private final int parallelism;
+
+    private final BlockingQueue<RenderContext> contexts;
+
+    /**
+     * A permit for each context not lent to a job, taken before a job is
+     * handed to the executor, so that there's always a context waiting for
+     * it when it runs.
+     */
+    private final Semaphore freeContexts;
+
+    private volatile boolean closed;
+
+    /**
+     * Class constructor, rendering on a new fixed pool of platform threads,
+     * one for each available processor.
+     */
+    public BatchRenderer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Class constructor, rendering on a new fixed pool of platform threads.
+     */
+    public BatchRenderer(int threads) {
+        this(threads, Executors.defaultThreadFactory());
+    }
+
+    /**
+     * Class constructor, rendering on a new fixed pool of threads made by the
+     * given factory (which might make virtual threads, say).
+     */
+    public BatchRenderer(int threads, ThreadFactory threadFactory) {
+        this(Executors.newFixedThreadPool(threads, threadFactory), threads, true);
+    }
+
+    /**
+     * Class constructor, rendering on an executor supplied by the caller, who
+     * remains responsible for shutting it down.
+     *
+     * @param executor    runs the jobs
+     * @param parallelism the most jobs to run at once
+     */
+    public BatchRenderer(ExecutorService executor, int parallelism) {
+        this(executor, parallelism, false);
+    }
+
+    private BatchRenderer(ExecutorService executor, int parallelism, boolean ownsExecutor) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.ownsExecutor = ownsExecutor;
+        this.contexts = new LinkedBlockingQueue<>();
+        for (int i = 0; i < parallelism; i++) {
+            contexts.add(new RenderContext());
+        }
+        this.freeContexts = new Semaphore(parallelism);
+    }
+
+    /**
+     * Renders all the jobs, returning once every one has either been written
+     * or failed.
+     *
+     * @throws IllegalStateException if the renderer has been closed
+     */
+    public BatchReport renderAll(Stream<ChartJob> jobs) throws InterruptedException {
+        return renderAll(jobs.iterator());
+    }
+
+    /**
+     * Renders all the jobs, returning once every one has either been written
+     * or failed.
+     *
+     * @throws IllegalStateException if the renderer has been closed
+     */
+    public BatchReport renderAll(Iterable<ChartJob> jobs) throws InterruptedException {
+        return renderAll(jobs.iterator());
+    }
+
+    private BatchReport renderAll(Iterator<ChartJob> jobs) throws InterruptedException {
+        long start = System.nanoTime();
+        AtomicLong rendered = new AtomicLong();
+        List<BatchReport.Failure> failures = new ArrayList<>();
+        // A permit for each of this batch's jobs that has finished.
+        Semaphore finished = new Semaphore(0);
+        int submitted = 0;
+        try {
+            while (jobs.hasNext()) {
+                ChartJob job = jobs.next();
+                acquireContext();
+                try {
+                    executor.execute(() -> {
+                        try {
+                            RenderContext context = contexts.poll();
+                            try {
+                                context.render(job);
+                                rendered.incrementAndGet();
+                            } catch (Exception e) {
+                                synchronized (failures) {
+                                    failures.add(new BatchReport.Failure(job, e));
+                                }
+                            } finally {
+                                contexts.add(context);
+                            }
+                        } finally {
+                            freeContexts.release();
+                            finished.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    freeContexts.release();
+                    throw e;
+                }
+                submitted++;
+            }
+        } finally {
+            // Wait for whatever is still running.
+            finished.acquireUninterruptibly(submitted);
+        }
+
+        synchronized (failures) {
+            return new BatchReport(rendered.get(), new ArrayList<>(failures),
+                    System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Waits for a context to be free for the next job, and takes the permit
+     * for it.
+     *
+     * @throws IllegalStateException if the renderer has been closed
+     */
+    private void acquireContext() throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("The renderer has been closed");
+        }
+        freeContexts.acquire();
+        if (closed) {
+            freeContexts.release();
+            throw new IllegalStateException("The renderer has been closed");
+        }
+    }
+
+    /**
+     * Waits for any jobs still running to finish, then shuts down the thread
+     * pool, if this renderer created it, and lets go of the contexts.  Any
+     * batch still being rendered through this renderer at the time fails
+     * with an IllegalStateException when it comes to hand over its next job,
+     * once those it has already handed over are done.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        freeContexts.acquireUninterruptibly(parallelism);
+        try {
+            if (ownsExecutor) {
+                executor.shutdown();
+            }
+            for (RenderContext context : contexts) {
+                context.dispose();
+            }
+        } finally {
+            // Let any batch waiting for a context see that it's closed.
+            freeContexts.release(parallelism);
+        }
+    }
+
+    /**
+     * The things one job needs to render a chart, kept for the next job.
+     */
+    private static class RenderContext {
+        private BufferedImage image;
+
+        private final Map<String, ImageWriter> writers = new HashMap<>();
+
+        void render(ChartJob job) throws IOException {
+            if (image == null || image.getWidth() != job.getWidth()
+                    || image.getHeight() != job.getHeight()) {
+                image = new BufferedImage(job.getWidth(), job.getHeight(),
+                        BufferedImage.TYPE_INT_RGB);
+            }
+            ChartImages.render(job.getRenderer(), image);
+
+            ImageWriter writer = getWriter(job.getFormatName());
+            // Buffer in memory rather than letting ImageIO pick a temporary
+            // file cache, which it does by default.
+            try (OutputStream out = job.getSink().open();
+                 ImageOutputStream ios = new MemoryCacheImageOutputStream(out)) {
+                writer.setOutput(ios);
+                writer.write(image);
+            } finally {
+                writer.reset();
+            }
+        }
+
+        private ImageWriter getWriter(String formatName) throws IOException {
+            ImageWriter writer = writers.get(formatName);
+            if (writer == null) {
+                Iterator<ImageWriter> found = ImageIO.getImageWritersByFormatName(formatName);
+                if (!found.hasNext()) {
+                    throw new IOException("No image writer for format " + formatName);
+                }
+                writer = found.next();
+                writers.put(formatName, writer);
+            }
+            return writer;
+        }
+
+        void dispose() {
+            for (ImageWriter writer : writers.values()) {
+                writer.dispose();
+            }
+            writers.clear();
+            image = null;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.computronium.bakesale.render;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What happened when a BatchRenderer worked through a set of jobs.
+ */
+public class BatchReport {
+    /**
+     * A job which couldn't be rendered, and why.
+     */
+    public static class Failure {
+        private final ChartJob job;
+
+        private final Exception exception;
+
+        Failure(ChartJob job, Exception exception) {
+            this.job = job;
+            this.exception = exception;
+        }
+
+        public ChartJob getJob() {
+            return job;
+        }
+
+        public Exception getException() {
+            return exception;
+        }
+    }
+
+    private final long rendered;
+
+    private final List<Failure> failures;
+
+    private final long elapsedNanos;
+
+    BatchReport(long rendered, List<Failure> failures, long elapsedNanos) {
+        this.rendered = rendered;
+        this.failures = Collections.unmodifiableList(failures);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns how many charts were rendered and written successfully.
+     */
+    public long getRendered() {
+        return rendered;
+    }
+
+    /**
+     * Returns the jobs which failed.
+     */
+    public List<Failure> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Returns how long the whole batch took, in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns how many charts were rendered per second, on average.
+     */
+    public double getChartsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rendered * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d charts rendered, %d failed, in %.3f s (%.1f charts/s)",
+                rendered, failures.size(), elapsedNanos / 1e9, getChartsPerSecond());
+    }
+}
@@ -0,0 +1,103 @@
+package org.computronium.bakesale.render;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Renders charts into images and image files.  Nothing here needs a display,
+ * so it all works with java.awt.headless=true.
+ */
+public final class ChartImages {
+    /**
+     * The background charts are drawn on, matching the panels.
+     */
+    public static final Color BACKGROUND_COLOR = Color.WHITE;
+
+    private ChartImages() {
+    }
+
+    /**
+     * Renders the chart into a new image of the given size.
+     */
+    public static BufferedImage render(ChartRenderer renderer, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        render(renderer, image);
+        return image;
+    }
+
+    /**
+     * Renders the chart over the whole of the given image.
+     */
+    public static void render(ChartRenderer renderer, BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(BACKGROUND_COLOR);
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+            render(renderer, g, new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Lays out the chart to fill the given area and paints it onto g.  The
+     * area isn't cleared first.
+     */
+    public static void render(ChartRenderer renderer, Graphics2D g, Rectangle bounds) {
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setColor(Color.BLACK);
+        renderer.layout(g, bounds);
+        renderer.paint(g);
+    }
+
+    /**
+     * Renders the chart at the given size and writes it as a PNG.
+     */
+    public static void writePng(ChartRenderer renderer, int width, int height,
+                                OutputStream out) throws IOException {
+        write(renderer, width, height, "png", out);
+    }
+
+    /**
+     * Renders the chart at the given size and writes it as a JPEG.
+     */
+    public static void writeJpeg(ChartRenderer renderer, int width, int height,
+                                 OutputStream out) throws IOException {
+        write(renderer, width, height, "jpeg", out);
+    }
+
+    /**
+     * Renders the chart at the given size and writes it in the given format,
+     * which can be any ImageIO knows how to write.
+     */
+    public static void write(ChartRenderer renderer, int width, int height,
+                             String formatName, OutputStream out) throws IOException {
+        write(render(renderer, width, height), formatName, out);
+    }
+
+    /**
+     * Writes an already rendered chart in the given format.
+     */
+    public static void write(BufferedImage image, String formatName,
+                             OutputStream out) throws IOException {
+        if (!ImageIO.write(image, formatName, out)) {
+            throw new IOException("No image writer for format " + formatName);
+        }
+    }
+
+    /**
+     * Creates a Graphics2D which can be used to measure text when there's no
+     * real one to hand, as when laying out a panel which isn't on screen.
+     * Dispose of it when done.
+     */
+    public static Graphics2D createScratchGraphics() {
+        Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        return g;
+    }
+}
@@ -0,0 +1,76 @@
+package org.computronium.bakesale.render;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * One chart for a BatchRenderer to render: what to draw, how big, in what
+ * format and where to write it.
+ * <p>
+ * Renderers hold their layout between calls, so each job should have a
+ * renderer of its own rather than sharing one with other jobs that might run
+ * at the same time.
+ */
+public class ChartJob {
+    /**
+     * Where a job's image gets written.
+     */
+    public interface Sink {
+        /**
+         * Opens the stream the image should be written to.  It is closed once
+         * the image has been written.
+         */
+        OutputStream open() throws IOException;
+    }
+
+    private final ChartRenderer renderer;
+
+    private final int width;
+
+    private final int height;
+
+    private final String formatName;
+
+    private final Sink sink;
+
+    /**
+     * Class constructor.
+     *
+     * @param renderer   draws the chart
+     * @param width      the width of the image, in pixels
+     * @param height     the height of the image, in pixels
+     * @param formatName the image format, as understood by ImageIO ("png",
+     *                   "jpeg", ...)
+     * @param sink       where to write the image
+     */
+    public ChartJob(ChartRenderer renderer, int width, int height, String formatName, Sink sink) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Bad image size " + width + "x" + height);
+        }
+        this.renderer = renderer;
+        this.width = width;
+        this.height = height;
+        this.formatName = formatName;
+        this.sink = sink;
+    }
+
+    public ChartRenderer getRenderer() {
+        return renderer;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public String getFormatName() {
+        return formatName;
+    }
+
+    public Sink getSink() {
+        return sink;
+    }
+}
@@ -0,0 +1,52 @@
+package org.computronium.bakesale.render;
+
+import java.awt.*;
+
+/**
+ * Lays out and draws a chart onto any Graphics2D, with no need for a Swing
+ * component or a display.  The chart panels are thin wrappers around one of
+ * these, and {@link ChartImages} uses them to render charts straight into
+ * images.
+ */
+public interface ChartRenderer {
+    /**
+     * Works out where everything goes when the chart fills the given area.
+     * This must be called before the chart is painted, and again whenever the
+     * area, the text or the data changes.
+     *
+     * @param g      used to measure text; nothing is drawn on it
+     * @param bounds the area the chart should fill
+     */
+    void layout(Graphics2D g, Rectangle bounds);
+
+    /**
+     * Returns the area the chart was last laid out to fill, or null if it
+     * hasn't been laid out yet.
+     */
+    Rectangle getBounds();
+
+    /**
+     * Paints the whole chart, on top of whatever is there already.
+     */
+    default void paint(Graphics2D g) {
+        paintStaticLayer(g);
+        paintDataLayer(g);
+    }
+
+    /**
+     * Paints the parts of the chart which stay the same until it is laid out
+     * again: the title, axes, labels and the like.
+     */
+    void paintStaticLayer(Graphics2D g);
+
+    /**
+     * Paints the data itself, on top of the static layer.
+     */
+    void paintDataLayer(Graphics2D g);
+
+    /**
+     * Returns a value which stays equal to itself for as long as the static
+     * layer would look the same, for use with a {@link StaticLayerCache}.
+     */
+    Object getStaticLayerKey();
+}
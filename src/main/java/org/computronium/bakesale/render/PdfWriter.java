@@ -0,0 +1,335 @@
+package org.computronium.bakesale.render;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.image.BufferedImage;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a minimal single-page PDF, streaming the page's drawing operators
+ * through a deflater to the output as they are drawn.  The length of the
+ * compressed page content is written after it as a separate object, so
+ * nothing needs buffering.
+ * <p>
+ * Text is written as filled glyph outlines, so no fonts need embedding.
+ * Images are written inline, composited onto white.  Transparency is
+ * ignored.
+ */
+class PdfWriter extends VectorWriter {
+    private final CountingOutputStream out;
+
+    private final DeflaterOutputStream content;
+
+    private final long[] offsets = new long[6];
+
+    private final long contentStart;
+
+    private final StringBuilder sb = new StringBuilder(256);
+
+    /**
+     * The clip currently applied to the page, or null for none.
+     */
+    private Shape currentClip;
+
+    /**
+     * The operators which applied the current clip.
+     */
+    private String currentClipOperators = "";
+
+    PdfWriter(OutputStream out, int width, int height) throws IOException {
+        super(width, height);
+        this.out = new CountingOutputStream(out);
+
+        // The second line marks the file as binary, as the spec recommends.
+        write("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n");
+        startObject(1);
+        write("<< /Type /Catalog /Pages 2 0 R >>\nendobj\n");
+        startObject(2);
+        write("<< /Type /Pages /Kids [3 0 R] /Count 1 >>\nendobj\n");
+        startObject(3);
+        write("<< /Type /Page /Parent 2 0 R /MediaBox [0 0 " + width + " " + height
+                + "] /Contents 4 0 R /Resources << >> >>\nendobj\n");
+        startObject(4);
+        write("<< /Length 5 0 R /Filter /FlateDecode >>\nstream\n");
+        contentStart = this.out.count;
+
+        content = new DeflaterOutputStream(new FilterOutputStream(this.out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                // Leave the underlying stream open.
+            }
+        }, new Deflater(Deflater.DEFAULT_COMPRESSION), 8192);
+
+        // Flip the page so that y runs downwards, as it does in Java2D, then
+        // save the state so clips can be undone.
+        sb.setLength(0);
+        sb.append("1 0 0 -1 0 ").append(height).append(" cm\nq\n");
+        writeContent();
+    }
+
+    @Override
+    protected void writePath(PathIterator path, boolean fill, Color color, BasicStroke stroke,
+                             double scale, Shape clip) throws IOException {
+        useClip(clip);
+        sb.setLength(0);
+        appendColor(color, fill ? "rg" : "RG");
+        if (!fill) {
+            appendNumber(sb, Math.max(stroke.getLineWidth(), 1) * scale);
+            sb.append(" w\n");
+            float[] dash = stroke.getDashArray();
+            sb.append('[');
+            if (dash != null) {
+                for (int i = 0; i < dash.length; i++) {
+                    if (i > 0) {
+                        sb.append(' ');
+                    }
+                    appendNumber(sb, dash[i] * scale);
+                }
+            }
+            sb.append("] 0 d\n");
+        }
+        appendPath(path);
+        if (fill) {
+            sb.append(path.getWindingRule() == PathIterator.WIND_EVEN_ODD ? "f*\n" : "f\n");
+        } else {
+            sb.append("S\n");
+        }
+        writeContent();
+    }
+
+    @Override
+    protected void writeText(String text, float x, float y, Font font, Color color,
+                             AffineTransform transform, Shape clip, VectorGraphics2D g)
+            throws IOException {
+        Shape outline = font.createGlyphVector(g.getFontRenderContext(), text).getOutline(x, y);
+        writePath(outline.getPathIterator(transform), true, color, null, 1, clip);
+    }
+
+    @Override
+    protected void writeImage(BufferedImage image, AffineTransform transform, Shape clip)
+            throws IOException {
+        useClip(clip);
+        int image_width = image.getWidth();
+        int image_height = image.getHeight();
+
+        // PDF images fill the unit square with their first row at the top,
+        // which is y = 1, so scale by the size and flip.
+        AffineTransform at = new AffineTransform(transform);
+        at.translate(0, image_height);
+        at.scale(image_width, -image_height);
+
+        sb.setLength(0);
+        sb.append("q\n");
+        appendMatrix(at);
+        sb.append(" cm\nBI /W ").append(image_width).append(" /H ").append(image_height)
+                .append(" /CS /RGB /BPC 8 /F /Fl ID\n");
+        writeContent();
+
+        DeflaterOutputStream pixels = new DeflaterOutputStream(new FilterOutputStream(content) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                // Leave the content stream open.
+            }
+        });
+        byte[] row = new byte[image_width * 3];
+        int[] argb = new int[image_width];
+        for (int y = 0; y < image_height; y++) {
+            image.getRGB(0, y, image_width, 1, argb, 0, image_width);
+            for (int x = 0; x < image_width; x++) {
+                int alpha = argb[x] >>> 24;
+                for (int channel = 0; channel < 3; channel++) {
+                    int value = (argb[x] >> (16 - channel * 8)) & 0xFF;
+                    row[x * 3 + channel] = (byte) ((value * alpha + 255 * (255 - alpha)) / 255);
+                }
+            }
+            pixels.write(row);
+        }
+        pixels.close();
+
+        sb.setLength(0);
+        sb.append("\nEI\nQ\n");
+        writeContent();
+    }
+
+    @Override
+    protected void writeEnd() throws IOException {
+        sb.setLength(0);
+        sb.append("Q\n");
+        writeContent();
+        content.finish();
+        long length = out.count - contentStart;
+        write("\nendstream\nendobj\n");
+
+        startObject(5);
+        write(length + "\nendobj\n");
+
+        long xref = out.count;
+        StringBuilder table = new StringBuilder();
+        table.append("xref\n0 6\n0000000000 65535 f \n");
+        for (int i = 1; i < offsets.length; i++) {
+            table.append(String.format("%010d 00000 n \n", offsets[i]));
+        }
+        table.append("trailer\n<< /Size 6 /Root 1 0 R >>\nstartxref\n").append(xref)
+                .append("\n%%EOF\n");
+        write(table.toString());
+        out.flush();
+    }
+
+    /**
+     * Makes sure the operators which follow are clipped by the given clip.
+     * Clips can only be narrowed in PDF, so the saved state is restored and
+     * saved again before applying a new one.  Clips are told apart by their
+     * outlines, not by which object they are, so a clip the same as the
+     * current one is left as it is.
+     */
+    private void useClip(Shape clip) throws IOException {
+        if (clip == currentClip || (clip != null && clip.equals(currentClip))) {
+            return;
+        }
+        currentClip = clip;
+        sb.setLength(0);
+        sb.append("Q\nq\n");
+        if (clip != null) {
+            appendPath(clip.getPathIterator(null));
+            sb.append("W n\n");
+        }
+        String operators = sb.toString();
+        if (operators.equals(currentClipOperators)) {
+            return;
+        }
+        currentClipOperators = operators;
+        writeContent();
+    }
+
+    private void appendPath(PathIterator path) {
+        double[] coords = new double[6];
+        double last_x = 0;
+        double last_y = 0;
+        for (; !path.isDone(); path.next()) {
+            switch (path.currentSegment(coords)) {
+                case PathIterator.SEG_MOVETO:
+                    appendPoints(coords, 1);
+                    sb.append(" m\n");
+                    last_x = coords[0];
+                    last_y = coords[1];
+                    break;
+                case PathIterator.SEG_LINETO:
+                    appendPoints(coords, 1);
+                    sb.append(" l\n");
+                    last_x = coords[0];
+                    last_y = coords[1];
+                    break;
+                case PathIterator.SEG_QUADTO:
+                    // PDF has no quadratic curves, so raise it to a cubic.
+                    double[] cubic = {
+                            last_x + 2 * (coords[0] - last_x) / 3,
+                            last_y + 2 * (coords[1] - last_y) / 3,
+                            coords[2] + 2 * (coords[0] - coords[2]) / 3,
+                            coords[3] + 2 * (coords[1] - coords[3]) / 3,
+                            coords[2], coords[3]};
+                    appendPoints(cubic, 3);
+                    sb.append(" c\n");
+                    last_x = coords[2];
+                    last_y = coords[3];
+                    break;
+                case PathIterator.SEG_CUBICTO:
+                    appendPoints(coords, 3);
+                    sb.append(" c\n");
+                    last_x = coords[4];
+                    last_y = coords[5];
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    sb.append("h\n");
+                    break;
+            }
+        }
+    }
+
+    private void appendPoints(double[] coords, int count) {
+        for (int i = 0; i < count * 2; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            appendNumber(sb, coords[i]);
+        }
+    }
+
+    private void appendColor(Color color, String operator) {
+        appendNumber(sb, color.getRed() / 255.0);
+        sb.append(' ');
+        appendNumber(sb, color.getGreen() / 255.0);
+        sb.append(' ');
+        appendNumber(sb, color.getBlue() / 255.0);
+        sb.append(' ').append(operator).append('\n');
+    }
+
+    private void appendMatrix(AffineTransform at) {
+        appendNumber(sb, at.getScaleX());
+        sb.append(' ');
+        appendNumber(sb, at.getShearY());
+        sb.append(' ');
+        appendNumber(sb, at.getShearX());
+        sb.append(' ');
+        appendNumber(sb, at.getScaleY());
+        sb.append(' ');
+        appendNumber(sb, at.getTranslateX());
+        sb.append(' ');
+        appendNumber(sb, at.getTranslateY());
+    }
+
+    private void startObject(int number) throws IOException {
+        offsets[number] = out.count;
+        write(number + " 0 obj\n");
+    }
+
+    private void write(String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Writes the builder's contents to the page content stream.
+     */
+    private void writeContent() throws IOException {
+        content.write(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Keeps track of how many bytes have been written, for the cross
+     * reference table.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.computronium.bakesale.render;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Brings charts up to date with their models at no more than a set number of
+ * frames a second, however often the models change.
+ * <p>
+ * Each chart panel given a scheduler registers an update with it.  When the
+ * panel's model changes, the panel asks for the update rather than laying
+ * itself out there and then.  A burst of requests comes to a single update,
+ * run on the scheduler's own thread no sooner than one frame after the one
+ * before.  A panel showing snapshot models lays itself out there, off the
+ * event dispatch thread, and then asks Swing to repaint it, so all the
+ * event dispatch thread does is paint the latest layout.  Other models
+ * can only be read on the event dispatch thread, so their panels hand the
+ * update over to it, still held to the frame rate.
+ * <p>
+ * One scheduler can serve any number of panels, each held to the frame rate
+ * separately.  Updates run one at a time, on a single daemon thread.
+ */
+public class RepaintScheduler implements AutoCloseable {
+    /**
+     * The frame rate used if none is given.
+     */
+    public static final int DEFAULT_FRAMES_PER_SECOND = 60;
+
+    private final ScheduledExecutorService executor;
+
+    private final long frameNanos;
+
+    /**
+     * Class constructor, allowing DEFAULT_FRAMES_PER_SECOND.
+     */
+    public RepaintScheduler() {
+        this(DEFAULT_FRAMES_PER_SECOND);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param framesPerSecond the most times a second any one chart is
+     *                        updated
+     * @throws IllegalArgumentException if framesPerSecond isn't positive
+     */
+    public RepaintScheduler(int framesPerSecond) {
+        if (framesPerSecond <= 0) {
+            throw new IllegalArgumentException("Frames per second must be positive: "
+                    + framesPerSecond);
+        }
+        frameNanos = TimeUnit.SECONDS.toNanos(1) / framesPerSecond;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "RepaintScheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Retrieves the most times a second any one chart is updated.
+     */
+    public int getFramesPerSecond() {
+        return (int) (TimeUnit.SECONDS.toNanos(1) / frameNanos);
+    }
+
+    /**
+     * Registers an update to be run when asked for, no more than once a
+     * frame.
+     *
+     * @param update brings a chart up to date; run on the scheduler's thread
+     * @return the handle to ask for the update with
+     */
+    public Update register(Runnable update) {
+        return new Update(update);
+    }
+
+    /**
+     * Stops the scheduler.  Updates already asked for may not happen, and
+     * asking for more does nothing.
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * An update registered with a scheduler.
+     */
+    public final class Update {
+        private final Runnable update;
+
+        private final AtomicBoolean pending = new AtomicBoolean();
+
+        private volatile boolean cancelled;
+
+        /**
+         * When the update last ran, by System.nanoTime().
+         */
+        private volatile long lastRun = System.nanoTime() - frameNanos;
+
+        private Update(Runnable update) {
+            this.update = update;
+        }
+
+        /**
+         * Asks for the update to be run.  This can be called from any thread,
+         * as often as liked: if the update is already waiting to run, this
+         * does nothing.
+         */
+        public void request() {
+            if (cancelled || !pending.compareAndSet(false, true)) {
+                return;
+            }
+            long delay = Math.max(0, lastRun + frameNanos - System.nanoTime());
+            try {
+                executor.schedule(this::run, delay, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // The scheduler has been closed.
+            }
+        }
+
+        /**
+         * Stops the update from running again, as when its panel is done with
+         * the scheduler.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void run() {
+            // Clear the flag first, so that anything which changes while the
+            // update runs asks for another.
+            pending.set(false);
+            lastRun = System.nanoTime();
+            if (cancelled) {
+                return;
+            }
+            try {
+                update.run();
+            } catch (RuntimeException | Error e) {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+}
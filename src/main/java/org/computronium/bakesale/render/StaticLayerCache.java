@@ -0,0 +1,113 @@
+package org.computronium.bakesale.render;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * Holds an offscreen image of the parts of a chart which don't change from
+ * one paint to the next (the title, axes, hash marks, labels and so on), so
+ * they can be drawn with a single image copy rather than laid out again.
+ * <p>
+ * The image is tied to a key supplied by the panel, which should capture
+ * everything the layer depends on: fonts, text, axis scale and layout.  The
+ * layer is only rendered again when the key, the size of the area or the
+ * scale of the destination changes.
+ */
+public class StaticLayerCache {
+    /**
+     * Something which can paint the static layer of a chart.
+     */
+    public interface LayerPainter {
+        /**
+         * Paints the layer, in the same coordinates as the component.
+         */
+        void paintLayer(Graphics2D g);
+    }
+
+    private BufferedImage image;
+
+    private Object key;
+
+    private Rectangle bounds;
+
+    private double scaleX;
+
+    private double scaleY;
+
+    /**
+     * Draws the layer onto the given graphics, rendering it first if the
+     * cached image is missing or out of date.
+     *
+     * @param g       where to draw the layer
+     * @param bounds  the area of the component the layer covers
+     * @param key     a value which equals the previous key as long as the
+     *                layer looks the same
+     * @param painter paints the layer when it needs rendering
+     * @return whether the cached image could be drawn as it was, without
+     * painting the layer again
+     */
+    public boolean paint(Graphics2D g, Rectangle bounds, Object key, LayerPainter painter) {
+        AffineTransform transform = g.getTransform();
+        if (transform.getShearX() != 0 || transform.getShearY() != 0
+                || bounds.width <= 0 || bounds.height <= 0) {
+            // Not worth caching; just draw it.
+            painter.paintLayer(g);
+            return false;
+        }
+
+        double scale_x = transform.getScaleX();
+        double scale_y = transform.getScaleY();
+        boolean cached = true;
+        if (image == null || !bounds.equals(this.bounds) || scale_x != scaleX
+                || scale_y != scaleY || !key.equals(this.key)) {
+            render(g, bounds, scale_x, scale_y, painter);
+            this.key = key;
+            this.bounds = new Rectangle(bounds);
+            this.scaleX = scale_x;
+            this.scaleY = scale_y;
+            cached = false;
+        }
+        g.drawImage(image, bounds.x, bounds.y, bounds.width, bounds.height, null);
+        return cached;
+    }
+
+    /**
+     * Renders the layer into the image, at the resolution of the device.
+     */
+    private void render(Graphics2D g, Rectangle bounds, double scaleX, double scaleY,
+                        LayerPainter painter) {
+        int width = (int) Math.ceil(bounds.width * Math.abs(scaleX));
+        int height = (int) Math.ceil(bounds.height * Math.abs(scaleY));
+        if (image == null || image.getWidth() != width || image.getHeight() != height) {
+            GraphicsConfiguration gc = g.getDeviceConfiguration();
+            image = gc != null
+                    ? gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT)
+                    : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        Graphics2D ig = image.createGraphics();
+        try {
+            ig.setComposite(AlphaComposite.Clear);
+            ig.fillRect(0, 0, width, height);
+            ig.setComposite(AlphaComposite.SrcOver);
+            ig.setRenderingHints(g.getRenderingHints());
+            ig.setFont(g.getFont());
+            ig.setColor(g.getColor());
+            ig.scale(Math.abs(scaleX), Math.abs(scaleY));
+            ig.translate(-bounds.x, -bounds.y);
+            painter.paintLayer(ig);
+        } finally {
+            ig.dispose();
+        }
+    }
+
+    /**
+     * Throws away the cached image, so the layer is rendered afresh the next
+     * time it is painted.
+     */
+    public void invalidate() {
+        image = null;
+        key = null;
+    }
+}
@@ -0,0 +1,299 @@
+package org.computronium.bakesale.render;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes SVG, streaming each element to the output as it is drawn.
+ */
+class SvgWriter extends VectorWriter {
+    private final Writer out;
+
+    private final StringBuilder sb = new StringBuilder(256);
+
+    /**
+     * The clip the currently open group applies, or null if there's no group
+     * open.
+     */
+    private Shape currentClip;
+
+    /**
+     * The path data of the current clip, or null if there's no group open.
+     */
+    private String currentClipData;
+
+    /**
+     * The id of the clipPath already written for each clip, by its path
+     * data.
+     */
+    private final Map<String, String> clipIds = new HashMap<>();
+
+    private int clipCount;
+
+    SvgWriter(OutputStream out, int width, int height) throws IOException {
+        super(width, height);
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        this.out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<svg xmlns=\"http://www.w3.org/2000/svg\""
+                + " xmlns:xlink=\"http://www.w3.org/1999/xlink\" version=\"1.1\" width=\""
+                + width + "\" height=\"" + height + "\" viewBox=\"0 0 " + width + " "
+                + height + "\">\n");
+    }
+
+    @Override
+    protected void writePath(PathIterator path, boolean fill, Color color, BasicStroke stroke,
+                             double scale, Shape clip) throws IOException {
+        useClip(clip);
+        sb.setLength(0);
+        sb.append("<path d=\"");
+        appendPathData(sb, path);
+        sb.append('"');
+        if (fill) {
+            appendColor(sb, "fill", color);
+            if (path.getWindingRule() == PathIterator.WIND_EVEN_ODD) {
+                sb.append(" fill-rule=\"evenodd\"");
+            }
+        } else {
+            sb.append(" fill=\"none\"");
+            appendColor(sb, "stroke", color);
+            sb.append(" stroke-width=\"");
+            appendNumber(sb, Math.max(stroke.getLineWidth(), 1) * scale);
+            sb.append('"');
+            float[] dash = stroke.getDashArray();
+            if (dash != null) {
+                sb.append(" stroke-dasharray=\"");
+                for (int i = 0; i < dash.length; i++) {
+                    if (i > 0) {
+                        sb.append(' ');
+                    }
+                    appendNumber(sb, dash[i] * scale);
+                }
+                sb.append('"');
+            }
+        }
+        sb.append("/>\n");
+        out.append(sb);
+    }
+
+    @Override
+    protected void writeText(String text, float x, float y, Font font, Color color,
+                             AffineTransform transform, Shape clip, VectorGraphics2D g)
+            throws IOException {
+        useClip(clip);
+        sb.setLength(0);
+        sb.append("<text x=\"");
+        appendNumber(sb, x);
+        sb.append("\" y=\"");
+        appendNumber(sb, y);
+        sb.append("\" font-family=\"").append(getFamily(font));
+        sb.append("\" font-size=\"");
+        appendNumber(sb, font.getSize2D());
+        sb.append('"');
+        if (font.isBold()) {
+            sb.append(" font-weight=\"bold\"");
+        }
+        if (font.isItalic()) {
+            sb.append(" font-style=\"italic\"");
+        }
+        appendColor(sb, "fill", color);
+        if (!transform.isIdentity()) {
+            appendTransform(sb, transform);
+        }
+        sb.append(" xml:space=\"preserve\">");
+        appendEscaped(sb, text);
+        sb.append("</text>\n");
+        out.append(sb);
+    }
+
+    @Override
+    protected void writeImage(BufferedImage image, AffineTransform transform, Shape clip)
+            throws IOException {
+        useClip(clip);
+        sb.setLength(0);
+        sb.append("<image width=\"").append(image.getWidth());
+        sb.append("\" height=\"").append(image.getHeight()).append('"');
+        appendTransform(sb, transform);
+        sb.append(" xlink:href=\"data:image/png;base64,");
+        out.append(sb);
+
+        // Stream the encoded image straight into the document.
+        OutputStream base64 = Base64.getEncoder().wrap(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+        });
+        ImageIO.write(image, "png", base64);
+        base64.close();
+
+        out.write("\"/>\n");
+    }
+
+    @Override
+    protected void writeEnd() throws IOException {
+        useClip(null);
+        out.write("</svg>\n");
+        out.flush();
+    }
+
+    /**
+     * Makes sure the elements which follow are clipped by the given clip,
+     * closing the group for the previous clip and opening one for the new.
+     * Clips are told apart by their outlines, not by which object they are,
+     * so a clip the same as the current one leaves its group open, and one
+     * the same as an earlier one uses the clipPath written for that.
+     */
+    private void useClip(Shape clip) throws IOException {
+        if (clip == currentClip || (clip != null && clip.equals(currentClip))) {
+            return;
+        }
+        String data = null;
+        if (clip != null) {
+            sb.setLength(0);
+            appendPathData(sb, clip.getPathIterator(null));
+            data = sb.toString();
+            if (data.equals(currentClipData)) {
+                currentClip = clip;
+                return;
+            }
+        }
+        if (currentClip != null) {
+            out.write("</g>\n");
+        }
+        currentClip = clip;
+        currentClipData = data;
+        if (clip != null) {
+            sb.setLength(0);
+            String id = clipIds.get(data);
+            if (id == null) {
+                id = "clip" + (++clipCount);
+                clipIds.put(data, id);
+                sb.append("<clipPath id=\"").append(id).append("\"><path d=\"").append(data)
+                        .append("\"/></clipPath>\n");
+            }
+            sb.append("<g clip-path=\"url(#").append(id).append(")\">\n");
+            out.append(sb);
+        }
+    }
+
+    private static void appendPathData(StringBuilder sb, PathIterator path) {
+        double[] coords = new double[6];
+        for (; !path.isDone(); path.next()) {
+            switch (path.currentSegment(coords)) {
+                case PathIterator.SEG_MOVETO:
+                    sb.append('M');
+                    appendPoints(sb, coords, 1);
+                    break;
+                case PathIterator.SEG_LINETO:
+                    sb.append('L');
+                    appendPoints(sb, coords, 1);
+                    break;
+                case PathIterator.SEG_QUADTO:
+                    sb.append('Q');
+                    appendPoints(sb, coords, 2);
+                    break;
+                case PathIterator.SEG_CUBICTO:
+                    sb.append('C');
+                    appendPoints(sb, coords, 3);
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    sb.append('Z');
+                    break;
+            }
+        }
+    }
+
+    private static void appendPoints(StringBuilder sb, double[] coords, int count) {
+        for (int i = 0; i < count * 2; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            appendNumber(sb, coords[i]);
+        }
+    }
+
+    private static void appendColor(StringBuilder sb, String attribute, Color color) {
+        sb.append(' ').append(attribute).append("=\"#");
+        String hex = Integer.toHexString(color.getRGB() & 0xFFFFFF);
+        for (int i = hex.length(); i < 6; i++) {
+            sb.append('0');
+        }
+        sb.append(hex).append('"');
+        if (color.getAlpha() != 255) {
+            sb.append(' ').append(attribute).append("-opacity=\"");
+            appendNumber(sb, color.getAlpha() / 255.0);
+            sb.append('"');
+        }
+    }
+
+    private static void appendTransform(StringBuilder sb, AffineTransform at) {
+        sb.append(" transform=\"matrix(");
+        appendNumber(sb, at.getScaleX());
+        sb.append(' ');
+        appendNumber(sb, at.getShearY());
+        sb.append(' ');
+        appendNumber(sb, at.getShearX());
+        sb.append(' ');
+        appendNumber(sb, at.getScaleY());
+        sb.append(' ');
+        appendNumber(sb, at.getTranslateX());
+        sb.append(' ');
+        appendNumber(sb, at.getTranslateY());
+        sb.append(")\"");
+    }
+
+    /**
+     * Returns the font family to ask for, mapping Java's logical fonts onto
+     * the generic CSS families.
+     */
+    private static String getFamily(Font font) {
+        String family = font.getFamily();
+        if (Font.DIALOG.equals(family) || Font.SANS_SERIF.equals(family)) {
+            return "sans-serif";
+        } else if (Font.SERIF.equals(family)) {
+            return "serif";
+        } else if (Font.MONOSPACED.equals(family) || Font.DIALOG_INPUT.equals(family)) {
+            return "monospace";
+        }
+        StringBuilder escaped = new StringBuilder();
+        appendEscaped(escaped, family);
+        return "'" + escaped + "', sans-serif";
+    }
+
+    private static void appendEscaped(StringBuilder sb, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '"':
+                    sb.append("&quot;");
+                    break;
+                case '\'':
+                    sb.append("&apos;");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.computronium.bakesale.render;
+
+import java.awt.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes charts out as SVG or PDF.  The chart is streamed out as it is drawn,
+ * so memory use doesn't grow with the number of points plotted.
+ */
+public final class VectorExport {
+    private VectorExport() {
+    }
+
+    /**
+     * Renders the chart at the given size and writes it as SVG.
+     */
+    public static void writeSvg(ChartRenderer renderer, int width, int height,
+                                OutputStream out) throws IOException {
+        write(renderer, width, height, createSvgGraphics(out, width, height));
+    }
+
+    /**
+     * Renders the chart at the given size, in points, and writes it as a
+     * single page PDF.
+     */
+    public static void writePdf(ChartRenderer renderer, int width, int height,
+                                OutputStream out) throws IOException {
+        write(renderer, width, height, createPdfGraphics(out, width, height));
+    }
+
+    /**
+     * Creates a Graphics2D which writes whatever is drawn on it to the stream
+     * as SVG.  Call {@link VectorGraphics2D#finish()} once done.
+     */
+    public static VectorGraphics2D createSvgGraphics(OutputStream out, int width, int height)
+            throws IOException {
+        return new VectorGraphics2D(new SvgWriter(out, width, height));
+    }
+
+    /**
+     * Creates a Graphics2D which writes whatever is drawn on it to the stream
+     * as a single page PDF.  Call {@link VectorGraphics2D#finish()} once done.
+     */
+    public static VectorGraphics2D createPdfGraphics(OutputStream out, int width, int height)
+            throws IOException {
+        return new VectorGraphics2D(new PdfWriter(out, width, height));
+    }
+
+    private static void write(ChartRenderer renderer, int width, int height,
+                              VectorGraphics2D g) throws IOException {
+        try {
+            g.setColor(ChartImages.BACKGROUND_COLOR);
+            g.fillRect(0, 0, width, height);
+            ChartImages.render(renderer, g, new Rectangle(0, 0, width, height));
+            g.finish();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            g.dispose();
+        }
+    }
+}
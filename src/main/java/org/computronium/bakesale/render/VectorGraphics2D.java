@@ -0,0 +1,614 @@
+package org.computronium.bakesale.render;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.text.AttributedCharacterIterator;
+import java.util.Map;
+
+/**
+ * A Graphics2D which, rather than drawing pixels, writes each shape, line and
+ * piece of text out as vector graphics as soon as it is drawn.  Nothing is
+ * kept in memory beyond the shape being drawn at the time, so even charts
+ * with huge numbers of elements can be written in bounded memory.
+ * <p>
+ * Instances come from {@link VectorExport}.  Call {@link #finish()} once the
+ * chart has been drawn to complete the document.
+ * <p>
+ * Compositing modes other than plain source-over, and XOR mode, are ignored.
+ * Any IOException from the underlying stream is rethrown as an
+ * UncheckedIOException, since the Graphics methods can't throw it.
+ */
+public class VectorGraphics2D extends Graphics2D {
+    private final VectorWriter writer;
+
+    private final Graphics2D scratch;
+
+    private Paint paint = Color.BLACK;
+
+    private Color background = Color.WHITE;
+
+    private Font font = new Font(Font.DIALOG, Font.PLAIN, 12);
+
+    private Stroke stroke = new BasicStroke();
+
+    private Composite composite = AlphaComposite.SrcOver;
+
+    private AffineTransform transform = new AffineTransform();
+
+    /**
+     * The clip, in device space, or null for none.  It's kept as a
+     * Rectangle2D for as long as it's a rectangle, so that the writers can
+     * tell a clip the same as the last from its value.
+     */
+    private Shape clip;
+
+    VectorGraphics2D(VectorWriter writer) {
+        this.writer = writer;
+        this.scratch = ChartImages.createScratchGraphics();
+    }
+
+    private VectorGraphics2D(VectorGraphics2D parent) {
+        this.writer = parent.writer;
+        this.scratch = (Graphics2D) parent.scratch.create();
+        this.paint = parent.paint;
+        this.background = parent.background;
+        this.font = parent.font;
+        this.stroke = parent.stroke;
+        this.composite = parent.composite;
+        this.transform = new AffineTransform(parent.transform);
+        this.clip = parent.clip;
+    }
+
+    /**
+     * Completes the document and flushes it to the output stream, which is
+     * left open.
+     */
+    public void finish() throws IOException {
+        writer.finish();
+    }
+
+    // ------------------------------------------------------------------
+    // The primitives everything else comes down to.
+
+    @Override
+    public void draw(Shape s) {
+        if (stroke instanceof BasicStroke) {
+            try {
+                writer.strokePath(s, this);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            fill(stroke.createStrokedShape(s));
+        }
+    }
+
+    @Override
+    public void fill(Shape s) {
+        try {
+            writer.fillPath(s, this);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void drawString(String str, float x, float y) {
+        if (str.isEmpty()) {
+            return;
+        }
+        try {
+            writer.text(str, x, y, this);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs) {
+        BufferedImage image = toBufferedImage(img);
+        if (image == null) {
+            return false;
+        }
+        AffineTransform at = new AffineTransform(transform);
+        if (xform != null) {
+            at.concatenate(xform);
+        }
+        try {
+            writer.image(image, at, this);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    private static BufferedImage toBufferedImage(Image img) {
+        if (img instanceof BufferedImage) {
+            return (BufferedImage) img;
+        }
+        int width = img.getWidth(null);
+        int height = img.getHeight(null);
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        BufferedImage copy = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = copy.createGraphics();
+        g.drawImage(img, 0, 0, null);
+        g.dispose();
+        return copy;
+    }
+
+    // ------------------------------------------------------------------
+    // State the writers need.
+
+    /**
+     * Returns the color to draw with; non-color paints are approximated by
+     * black.
+     */
+    Color getDrawColor() {
+        return paint instanceof Color ? (Color) paint : Color.BLACK;
+    }
+
+    /**
+     * Returns the clip in device space, or null for none.
+     */
+    Shape getDeviceClip() {
+        return clip;
+    }
+
+    /**
+     * Returns the current transform itself, rather than a copy.
+     */
+    AffineTransform getDeviceTransform() {
+        return transform;
+    }
+
+    // ------------------------------------------------------------------
+    // Graphics2D.
+
+    @Override
+    public void drawString(String str, int x, int y) {
+        drawString(str, (float) x, (float) y);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, int x, int y) {
+        drawString(iterator, (float) x, (float) y);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, float x, float y) {
+        fill(new TextLayout(iterator, getFontRenderContext()).getOutline(
+                AffineTransform.getTranslateInstance(x, y)));
+    }
+
+    @Override
+    public void drawGlyphVector(GlyphVector g, float x, float y) {
+        fill(g.getOutline(x, y));
+    }
+
+    @Override
+    public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y) {
+        BufferedImage filtered = op == null ? img : op.filter(img, null);
+        drawImage(filtered, AffineTransform.getTranslateInstance(x, y), null);
+    }
+
+    @Override
+    public void drawRenderedImage(RenderedImage img, AffineTransform xform) {
+        if (img instanceof BufferedImage) {
+            drawImage((BufferedImage) img, xform, null);
+        }
+    }
+
+    @Override
+    public void drawRenderableImage(RenderableImage img, AffineTransform xform) {
+        drawRenderedImage(img.createDefaultRendering(), xform);
+    }
+
+    @Override
+    public boolean hit(Rectangle rect, Shape s, boolean onStroke) {
+        Shape shape = onStroke ? stroke.createStrokedShape(s) : s;
+        return transform.createTransformedShape(shape).intersects(rect);
+    }
+
+    @Override
+    public GraphicsConfiguration getDeviceConfiguration() {
+        return scratch.getDeviceConfiguration();
+    }
+
+    @Override
+    public void setComposite(Composite comp) {
+        this.composite = comp;
+    }
+
+    @Override
+    public Composite getComposite() {
+        return composite;
+    }
+
+    @Override
+    public void setPaint(Paint paint) {
+        if (paint != null) {
+            this.paint = paint;
+        }
+    }
+
+    @Override
+    public Paint getPaint() {
+        return paint;
+    }
+
+    @Override
+    public void setStroke(Stroke s) {
+        this.stroke = s;
+    }
+
+    @Override
+    public Stroke getStroke() {
+        return stroke;
+    }
+
+    @Override
+    public void setRenderingHint(RenderingHints.Key hintKey, Object hintValue) {
+        scratch.setRenderingHint(hintKey, hintValue);
+    }
+
+    @Override
+    public Object getRenderingHint(RenderingHints.Key hintKey) {
+        return scratch.getRenderingHint(hintKey);
+    }
+
+    @Override
+    public void setRenderingHints(Map<?, ?> hints) {
+        scratch.setRenderingHints(hints);
+    }
+
+    @Override
+    public void addRenderingHints(Map<?, ?> hints) {
+        scratch.addRenderingHints(hints);
+    }
+
+    @Override
+    public RenderingHints getRenderingHints() {
+        return scratch.getRenderingHints();
+    }
+
+    @Override
+    public void translate(int x, int y) {
+        transform.translate(x, y);
+    }
+
+    @Override
+    public void translate(double tx, double ty) {
+        transform.translate(tx, ty);
+    }
+
+    @Override
+    public void rotate(double theta) {
+        transform.rotate(theta);
+    }
+
+    @Override
+    public void rotate(double theta, double x, double y) {
+        transform.rotate(theta, x, y);
+    }
+
+    @Override
+    public void scale(double sx, double sy) {
+        transform.scale(sx, sy);
+    }
+
+    @Override
+    public void shear(double shx, double shy) {
+        transform.shear(shx, shy);
+    }
+
+    @Override
+    public void transform(AffineTransform tx) {
+        transform.concatenate(tx);
+    }
+
+    @Override
+    public void setTransform(AffineTransform tx) {
+        transform = new AffineTransform(tx);
+    }
+
+    @Override
+    public AffineTransform getTransform() {
+        return new AffineTransform(transform);
+    }
+
+    @Override
+    public void setBackground(Color color) {
+        this.background = color;
+    }
+
+    @Override
+    public Color getBackground() {
+        return background;
+    }
+
+    @Override
+    public void clip(Shape s) {
+        Shape device = toDevice(s);
+        if (clip == null) {
+            clip = device;
+        } else if (clip instanceof Rectangle2D && device instanceof Rectangle2D) {
+            clip = ((Rectangle2D) clip).createIntersection((Rectangle2D) device);
+        } else {
+            Area area = new Area(clip);
+            area.intersect(new Area(device));
+            clip = area;
+        }
+    }
+
+    /**
+     * Transforms the given shape into device space, leaving rectangles as
+     * rectangles if the transform only moves and scales.
+     */
+    private Shape toDevice(Shape s) {
+        int type = transform.getType();
+        if (s instanceof Rectangle2D && (type & (AffineTransform.TYPE_GENERAL_ROTATION
+                | AffineTransform.TYPE_QUADRANT_ROTATION
+                | AffineTransform.TYPE_GENERAL_TRANSFORM)) == 0) {
+            Rectangle2D r = (Rectangle2D) s;
+            double[] corners = {r.getMinX(), r.getMinY(), r.getMaxX(), r.getMaxY()};
+            transform.transform(corners, 0, corners, 0, 2);
+            Rectangle2D device = new Rectangle2D.Double();
+            device.setFrameFromDiagonal(corners[0], corners[1], corners[2], corners[3]);
+            return device;
+        }
+        return transform.createTransformedShape(s);
+    }
+
+    @Override
+    public FontRenderContext getFontRenderContext() {
+        return scratch.getFontRenderContext();
+    }
+
+    // ------------------------------------------------------------------
+    // Graphics.
+
+    @Override
+    public Graphics create() {
+        return new VectorGraphics2D(this);
+    }
+
+    @Override
+    public Color getColor() {
+        return getDrawColor();
+    }
+
+    @Override
+    public void setColor(Color c) {
+        if (c != null) {
+            this.paint = c;
+        }
+    }
+
+    @Override
+    public void setPaintMode() {
+        // Always in paint mode.
+    }
+
+    @Override
+    public void setXORMode(Color c1) {
+        // Not supported.
+    }
+
+    @Override
+    public Font getFont() {
+        return font;
+    }
+
+    @Override
+    public void setFont(Font font) {
+        if (font != null) {
+            this.font = font;
+        }
+    }
+
+    @Override
+    public FontMetrics getFontMetrics(Font f) {
+        return scratch.getFontMetrics(f);
+    }
+
+    @Override
+    public Rectangle getClipBounds() {
+        Shape user_clip = getClip();
+        return user_clip == null ? null : user_clip.getBounds();
+    }
+
+    @Override
+    public void clipRect(int x, int y, int width, int height) {
+        clip(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public void setClip(int x, int y, int width, int height) {
+        setClip(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public Shape getClip() {
+        if (clip == null) {
+            return null;
+        }
+        try {
+            return transform.createInverse().createTransformedShape(clip);
+        } catch (NoninvertibleTransformException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void setClip(Shape clip) {
+        this.clip = clip == null ? null : toDevice(clip);
+    }
+
+    @Override
+    public void copyArea(int x, int y, int width, int height, int dx, int dy) {
+        // Not possible once the output has been written.
+    }
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        draw(new Line2D.Float(x1, y1, x2, y2));
+    }
+
+    @Override
+    public void fillRect(int x, int y, int width, int height) {
+        fill(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public void clearRect(int x, int y, int width, int height) {
+        Paint save = paint;
+        paint = background;
+        fillRect(x, y, width, height);
+        paint = save;
+    }
+
+    @Override
+    public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+        draw(new RoundRectangle2D.Float(x, y, width, height, arcWidth, arcHeight));
+    }
+
+    @Override
+    public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+        fill(new RoundRectangle2D.Float(x, y, width, height, arcWidth, arcHeight));
+    }
+
+    @Override
+    public void drawOval(int x, int y, int width, int height) {
+        draw(new Ellipse2D.Float(x, y, width, height));
+    }
+
+    @Override
+    public void fillOval(int x, int y, int width, int height) {
+        fill(new Ellipse2D.Float(x, y, width, height));
+    }
+
+    @Override
+    public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+        draw(new Arc2D.Float(x, y, width, height, startAngle, arcAngle, Arc2D.OPEN));
+    }
+
+    @Override
+    public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+        fill(new Arc2D.Float(x, y, width, height, startAngle, arcAngle, Arc2D.PIE));
+    }
+
+    @Override
+    public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
+        if (nPoints > 1) {
+            draw(toPath(xPoints, yPoints, nPoints, false));
+        }
+    }
+
+    @Override
+    public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        if (nPoints > 1) {
+            draw(toPath(xPoints, yPoints, nPoints, true));
+        }
+    }
+
+    @Override
+    public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        if (nPoints > 2) {
+            fill(toPath(xPoints, yPoints, nPoints, true));
+        }
+    }
+
+    private static Path2D toPath(int[] xPoints, int[] yPoints, int nPoints, boolean close) {
+        Path2D.Float path = new Path2D.Float(Path2D.WIND_EVEN_ODD, nPoints);
+        path.moveTo(xPoints[0], yPoints[0]);
+        for (int i = 1; i < nPoints; i++) {
+            path.lineTo(xPoints[i], yPoints[i]);
+        }
+        if (close) {
+            path.closePath();
+        }
+        return path;
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, ImageObserver observer) {
+        return drawImage(img, AffineTransform.getTranslateInstance(x, y), observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, int width, int height, ImageObserver observer) {
+        int image_width = img.getWidth(null);
+        int image_height = img.getHeight(null);
+        if (image_width <= 0 || image_height <= 0) {
+            return false;
+        }
+        AffineTransform at = AffineTransform.getTranslateInstance(x, y);
+        at.scale((double) width / image_width, (double) height / image_height);
+        return drawImage(img, at, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, Color bgcolor, ImageObserver observer) {
+        fillBackground(x, y, img.getWidth(null), img.getHeight(null), bgcolor);
+        return drawImage(img, x, y, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, int width, int height, Color bgcolor,
+                             ImageObserver observer) {
+        fillBackground(x, y, width, height, bgcolor);
+        return drawImage(img, x, y, width, height, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1,
+                             int sx2, int sy2, ImageObserver observer) {
+        BufferedImage image = toBufferedImage(img);
+        if (image == null || sx2 <= sx1 || sy2 <= sy1) {
+            return false;
+        }
+        BufferedImage part = image.getSubimage(sx1, sy1, sx2 - sx1, sy2 - sy1);
+        return drawImage(part, dx1, dy1, dx2 - dx1, dy2 - dy1, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1,
+                             int sx2, int sy2, Color bgcolor, ImageObserver observer) {
+        fillBackground(dx1, dy1, dx2 - dx1, dy2 - dy1, bgcolor);
+        return drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, observer);
+    }
+
+    private void fillBackground(int x, int y, int width, int height, Color color) {
+        if (color != null) {
+            Paint save = paint;
+            paint = color;
+            fill(new Rectangle2D.Float(x, y, width, height));
+            paint = save;
+        }
+    }
+
+    @Override
+    public void dispose() {
+        scratch.dispose();
+    }
+}
@@ -0,0 +1,208 @@
+package org.computronium.bakesale.render;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Turns the drawing done on a VectorGraphics2D into a vector document, one
+ * element at a time.  Subclasses deal with the particular format.
+ * <p>
+ * Everything is handed to the subclass in device coordinates.  Runs of
+ * connected lines drawn one segment at a time, which is how line graphs tend
+ * to be drawn, are joined back up into polylines of up to MAX_POLYLINE_POINTS
+ * points, so they come out as one element rather than one per segment.
+ */
+abstract class VectorWriter {
+    private static final int MAX_POLYLINE_POINTS = 1024;
+
+    private final float[] polyline = new float[MAX_POLYLINE_POINTS * 2];
+
+    private int polylinePoints;
+
+    private Color polylineColor;
+
+    private BasicStroke polylineStroke;
+
+    private double polylineScale;
+
+    private Shape polylineClip;
+
+    private final float[] segment = new float[4];
+
+    /**
+     * The size of the page, in device units.
+     */
+    protected final int width;
+
+    protected final int height;
+
+    protected VectorWriter(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    final void strokePath(Shape shape, VectorGraphics2D g) throws IOException {
+        BasicStroke stroke = (BasicStroke) g.getStroke();
+        AffineTransform transform = g.getDeviceTransform();
+        double scale = Math.sqrt(Math.abs(transform.getDeterminant()));
+        if (shape instanceof Line2D) {
+            Line2D line = (Line2D) shape;
+            segment[0] = (float) line.getX1();
+            segment[1] = (float) line.getY1();
+            segment[2] = (float) line.getX2();
+            segment[3] = (float) line.getY2();
+            transform.transform(segment, 0, segment, 0, 2);
+            addSegment(g.getDrawColor(), stroke, scale, g.getDeviceClip());
+            return;
+        }
+
+        flushPolyline();
+        writePath(shape.getPathIterator(transform), false, g.getDrawColor(),
+                stroke, scale, g.getDeviceClip());
+    }
+
+    final void fillPath(Shape shape, VectorGraphics2D g) throws IOException {
+        flushPolyline();
+        writePath(shape.getPathIterator(g.getDeviceTransform()), true, g.getDrawColor(),
+                null, 1, g.getDeviceClip());
+    }
+
+    final void text(String text, float x, float y, VectorGraphics2D g) throws IOException {
+        flushPolyline();
+        writeText(text, x, y, g.getFont(), g.getDrawColor(), g.getDeviceTransform(),
+                g.getDeviceClip(), g);
+    }
+
+    final void image(BufferedImage image, AffineTransform transform, VectorGraphics2D g)
+            throws IOException {
+        flushPolyline();
+        writeImage(image, transform, g.getDeviceClip());
+    }
+
+    final void finish() throws IOException {
+        flushPolyline();
+        writeEnd();
+    }
+
+    /**
+     * Adds the segment held in the segment array to the polyline being built,
+     * or starts a new one if it doesn't carry straight on from the last.
+     */
+    private void addSegment(Color color, BasicStroke stroke, double scale, Shape clip)
+            throws IOException {
+        boolean continues = polylinePoints > 0
+                && polyline[polylinePoints * 2 - 2] == segment[0]
+                && polyline[polylinePoints * 2 - 1] == segment[1]
+                && color.equals(polylineColor) && stroke.equals(polylineStroke)
+                && scale == polylineScale && clip == polylineClip;
+        if (!continues) {
+            flushPolyline();
+            polylineColor = color;
+            polylineStroke = stroke;
+            polylineScale = scale;
+            polylineClip = clip;
+            polyline[0] = segment[0];
+            polyline[1] = segment[1];
+            polylinePoints = 1;
+        } else if (polylinePoints == MAX_POLYLINE_POINTS) {
+            // Write out what we have and carry on from its last point.
+            flushPolyline();
+            polyline[0] = segment[0];
+            polyline[1] = segment[1];
+            polylinePoints = 1;
+        }
+        polyline[polylinePoints * 2] = segment[2];
+        polyline[polylinePoints * 2 + 1] = segment[3];
+        polylinePoints++;
+    }
+
+    private void flushPolyline() throws IOException {
+        if (polylinePoints < 2) {
+            polylinePoints = 0;
+            return;
+        }
+        Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO, polylinePoints);
+        path.moveTo(polyline[0], polyline[1]);
+        for (int i = 1; i < polylinePoints; i++) {
+            path.lineTo(polyline[i * 2], polyline[i * 2 + 1]);
+        }
+        polylinePoints = 0;
+        writePath(path.getPathIterator(null), false, polylineColor, polylineStroke,
+                polylineScale, polylineClip);
+    }
+
+    /**
+     * Writes a path.
+     *
+     * @param path   the path, in device coordinates
+     * @param fill   whether to fill the path rather than stroke it
+     * @param color  the color to fill or stroke with
+     * @param stroke the stroke, if stroking
+     * @param scale  how much the transform scales line widths by
+     * @param clip   the clip, in device coordinates, or null for none
+     */
+    protected abstract void writePath(PathIterator path, boolean fill, Color color,
+                                      BasicStroke stroke, double scale, Shape clip)
+            throws IOException;
+
+    /**
+     * Writes a piece of text.
+     *
+     * @param text      the text
+     * @param x         where the text starts, in user coordinates
+     * @param y         where the baseline is, in user coordinates
+     * @param font      the font
+     * @param color     the color
+     * @param transform the transform from user to device coordinates
+     * @param clip      the clip, in device coordinates, or null for none
+     * @param g         the graphics being drawn on, should the text need
+     *                  turning into shapes
+     */
+    protected abstract void writeText(String text, float x, float y, Font font, Color color,
+                                      AffineTransform transform, Shape clip,
+                                      VectorGraphics2D g) throws IOException;
+
+    /**
+     * Writes an image, placed by the given transform from image pixels to
+     * device coordinates.
+     */
+    protected abstract void writeImage(BufferedImage image, AffineTransform transform,
+                                       Shape clip) throws IOException;
+
+    /**
+     * Completes the document.
+     */
+    protected abstract void writeEnd() throws IOException;
+
+    /**
+     * Appends a number to the builder, to three decimal places at most and
+     * without any trailing zeroes.
+     */
+    static void appendNumber(StringBuilder sb, double value) {
+        long thousandths = Math.round(value * 1000);
+        if (thousandths < 0) {
+            sb.append('-');
+            thousandths = -thousandths;
+        }
+        sb.append(thousandths / 1000);
+        long fraction = thousandths % 1000;
+        if (fraction != 0) {
+            sb.append('.');
+            if (fraction < 100) {
+                sb.append('0');
+            }
+            if (fraction < 10) {
+                sb.append('0');
+            }
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+            }
+            sb.append(fraction);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package org.computronium.bakesale.text;
+
+import org.computronium.bakesale.render.VectorGraphics2D;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the widths of strings, and the glyphs they're drawn with, so
+ * that the labels and names charts draw over and over are only laid out
+ * once.  Each entry is for a string in a particular font, measured or drawn
+ * in a particular FontRenderContext, and there are at most a set number of
+ * them: once the cache is full, the one least recently used is forgotten to
+ * make room.
+ * <p>
+ * Only strings which need laying out are kept: those in scripts whose
+ * letters join up, combine or run right to left, and any string in a font
+ * with kerning, ligatures or the like turned on.  Every time such a string
+ * is measured or drawn in the usual way, a TextLayout is made for it from
+ * scratch, which is what the cache saves; it keeps the TextLayout, which
+ * holds the glyphs laid out, and draws from that.  Other strings are
+ * measured by adding up the widths of their characters, which Java already
+ * keeps, and drawn straight from its own cache of glyphs, both of which are
+ * quicker than looking anything up here, so they go straight through.
+ * <p>
+ * One cache, returned by getShared(), is used by all the chart renderers,
+ * so any number of charts showing the same names share the work.  It can be
+ * used from any thread.  The numbers of hits and misses are counted, so
+ * that whether it's big enough can be seen from its hit rate.
+ */
+public final class TextCache {
+    /**
+     * The number of entries the shared cache holds.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final TextCache SHARED = new TextCache(DEFAULT_CAPACITY);
+
+    private final int capacity;
+
+    /**
+     * The entries, least recently used first.
+     */
+    private final Map<Key, TextLayout> layouts;
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * Class constructor.
+     *
+     * @param capacity the most entries to hold
+     * @throws IllegalArgumentException if the capacity isn't positive
+     */
+    public TextCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.layouts = new LinkedHashMap<Key, TextLayout>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, TextLayout> eldest) {
+                return size() > TextCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the cache shared by all the chart renderers.
+     */
+    public static TextCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the width of the given string, as the given metrics would
+     * measure it.
+     */
+    public int stringWidth(FontMetrics metrics, String text) {
+        Font font = metrics.getFont();
+        if (text.isEmpty() || !requiresLayout(font, text)) {
+            return metrics.stringWidth(text);
+        }
+        // Rounded as FontMetrics rounds it.
+        return (int) (0.5 + getLayout(font, metrics.getFontRenderContext(), text).getAdvance());
+    }
+
+    /**
+     * Draws the given string in the graphics' current font and color, just
+     * as Graphics2D.drawString() would.
+     */
+    public void drawString(Graphics2D g, String text, float x, float y) {
+        Font font = g.getFont();
+        if (g instanceof VectorGraphics2D || text.isEmpty() || !requiresLayout(font, text)) {
+            // Vector graphics keep text as text, rather than drawing glyphs.
+            g.drawString(text, x, y);
+            return;
+        }
+        TextLayout layout = getLayout(font, g.getFontRenderContext(), text);
+        // A layout works some things out as it's first drawn, so one
+        // mustn't be drawn by two threads at once.
+        synchronized (layout) {
+            layout.draw(g, x, y);
+        }
+    }
+
+    /**
+     * Returns whether the given string has to be laid out, rather than its
+     * characters' glyphs set side by side, to draw it in the given font.
+     * The characters which need it are those Java itself lays out text for.
+     */
+    private static boolean requiresLayout(Font font, String text) {
+        if (font.hasLayoutAttributes()) {
+            return true;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '\u0300' && isComplex(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isComplex(char c) {
+        return c <= '\u036f'                        // combining diacritical marks
+                || (c >= '\u0590' && c <= '\u06ff') // Hebrew and Arabic
+                || (c >= '\u0900' && c <= '\u0e7f') // Indic scripts and Thai
+                || (c >= '\u0f00' && c <= '\u109f') // Tibetan and Myanmar
+                || (c >= '\u1100' && c < '\u11ff')  // Hangul jamo
+                || (c >= '\u1780' && c <= '\u17ff') // Khmer
+                || c == '\u200c' || c == '\u200d'   // joiners
+                || (c >= '\u202a' && c <= '\u202e') // directional controls
+                || (c >= '\u206a' && c <= '\u206f')
+                || Character.isSurrogate(c);
+    }
+
+    /**
+     * Returns the layout of the given string, making it if it isn't already
+     * in the cache.
+     */
+    private TextLayout getLayout(Font font, FontRenderContext context, String text) {
+        Key key = new Key(font, context, text);
+        synchronized (this) {
+            TextLayout layout = layouts.get(key);
+            if (layout != null) {
+                hits++;
+                return layout;
+            }
+            misses++;
+        }
+        // Made outside the lock; two threads making the same one at once
+        // both make the same thing.
+        TextLayout layout = new TextLayout(text, font, context);
+        synchronized (this) {
+            layouts.put(key, layout);
+        }
+        return layout;
+    }
+
+    /**
+     * Retrieves the most entries the cache holds.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Retrieves the number of entries the cache holds now.
+     */
+    public synchronized int getSize() {
+        return layouts.size();
+    }
+
+    /**
+     * Retrieves the number of times a string was measured or drawn from an
+     * entry already in the cache.
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Retrieves the number of times a string which needed laying out had to
+     * be laid out.
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Retrieves the fraction of the strings needing laying out which were
+     * found in the cache, or zero if there have been none.
+     */
+    public synchronized double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    /**
+     * Sets the counts of hits and misses back to zero, leaving the entries
+     * as they are.
+     */
+    public synchronized void resetStatistics() {
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * Forgets all the entries.
+     */
+    public synchronized void clear() {
+        layouts.clear();
+    }
+
+    /**
+     * What an entry is for: a string in a font, measured or drawn in a
+     * render context.
+     */
+    private static final class Key {
+        private final Font font;
+
+        private final FontRenderContext context;
+
+        private final String text;
+
+        private final int hash;
+
+        Key(Font font, FontRenderContext context, String text) {
+            this.font = font;
+            this.context = context;
+            this.text = text;
+            this.hash = (text.hashCode() * 31 + font.hashCode()) * 31 + context.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && text.equals(other.text) && font.equals(other.font)
+                    && context.equals(other.context);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package org.computronium.bakesale.axis;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the scale always comes out with a nice step and ticks which
+ * cover the data, whatever the range.
+ */
+class AxisScaleTest {
+    /**
+     * Fits a scale to the given range and checks everything which should
+     * hold of any fitted scale.
+     */
+    private static AxisScale fit(double dataMin, double dataMax, double length, double spacing) {
+        AxisScale scale = new AxisScale().fit(dataMin, dataMax, length, spacing, 0);
+        assertNiceStep(scale.getStep());
+        assertTrue(scale.getTickCount() >= 2, scale.toString());
+        assertTrue((scale.getTickCount() - 1) * spacing <= Math.max(length, spacing),
+                "ticks too close: " + scale);
+        assertEquals(scale.getMin(), scale.getTick(0));
+        assertEquals(scale.getMax(), scale.getTick(scale.getTickCount() - 1));
+        for (int tick = 1; tick < scale.getTickCount(); tick++) {
+            assertTrue(scale.getTick(tick) > scale.getTick(tick - 1), scale.toString());
+        }
+        if (dataMin <= dataMax && !Double.isInfinite(dataMin) && !Double.isInfinite(dataMax)) {
+            assertTrue(scale.getMin() <= dataMin, scale.toString());
+            assertTrue(scale.getMax() >= dataMax, scale.toString());
+        }
+        return scale;
+    }
+
+    /**
+     * Checks that the step is 1, 2 or 5 times a power of ten.
+     */
+    private static void assertNiceStep(double step) {
+        assertTrue(step > 0 && !Double.isInfinite(step), "step " + step);
+        double mantissa = step / Math.pow(10, Math.floor(Math.log10(step)));
+        assertTrue(Math.abs(mantissa - 1) < 1e-9 || Math.abs(mantissa - 2) < 1e-9
+                || Math.abs(mantissa - 5) < 1e-9, "step " + step);
+    }
+
+    private static String[] getLabels(AxisScale scale) {
+        String[] labels = new String[scale.getTickCount()];
+        for (int tick = 0; tick < labels.length; tick++) {
+            labels[tick] = scale.getLabel(tick);
+        }
+        return labels;
+    }
+
+    @Test
+    void picksTheSmallestStepThatFits() {
+        AxisScale scale = fit(0, 100, 500, 50);
+        assertEquals(10, scale.getStep());
+        assertEquals(11, scale.getTickCount());
+        assertEquals("0", scale.getLabel(0));
+        assertEquals("100", scale.getLabel(10));
+    }
+
+    @Test
+    void negativeRange() {
+        AxisScale scale = fit(-237, -12, 400, 20);
+        assertEquals(20, scale.getStep());
+        assertEquals(-240, scale.getMin());
+        assertEquals(0, scale.getMax());
+        assertEquals("-240", scale.getLabel(0));
+    }
+
+    @Test
+    void rangeAcrossZero() {
+        AxisScale scale = fit(-0.5, 0.25, 200, 20);
+        assertEquals(0.1, scale.getStep(), 1e-12);
+        assertEquals("-0.5", scale.getLabel(0));
+        assertEquals("0.0", scale.getLabel(5));
+        assertEquals("0.3", scale.getLabel(scale.getTickCount() - 1));
+    }
+
+    @Test
+    void fractionalRange() {
+        AxisScale scale = fit(0.0012, 0.0047, 300, 20);
+        assertEquals(0.0005, scale.getStep(), 1e-15);
+        assertEquals(4, scale.getFractionDigits());
+        String[] labels = getLabels(scale);
+        assertEquals("0.0010", labels[0]);
+        assertEquals("0.0015", labels[1]);
+        assertEquals("0.0050", labels[labels.length - 1]);
+    }
+
+    @Test
+    void zeroWidthRange() {
+        AxisScale scale = fit(5, 5, 300, 20);
+        assertTrue(scale.getMin() < 5 && scale.getMax() > 5, scale.toString());
+
+        scale = fit(0, 0, 300, 20);
+        assertTrue(scale.getMin() < 0 && scale.getMax() > 0, scale.toString());
+    }
+
+    @Test
+    void hugeMagnitudes() {
+        AxisScale scale = fit(1e15, 9e15, 300, 20);
+        assertEquals(1e15, scale.getStep());
+
+        scale = fit(-1e300, 1e300, 300, 20);
+        assertEquals(2e299, scale.getStep(), 1e285);
+        assertEquals(11, scale.getTickCount());
+
+        // A narrow range a long way from zero.
+        scale = fit(1e18, 1e18 + 1e4, 300, 20);
+        assertEquals(1000, scale.getStep());
+    }
+
+    @Test
+    void noDataFallsBackToZeroToOne() {
+        double[][] ranges = {
+                {Double.NaN, Double.NaN},
+                {Double.NaN, 5},
+                {5, Double.NaN},
+                {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY},
+                {0, Double.POSITIVE_INFINITY},
+                {3, 2},
+        };
+        for (double[] range : ranges) {
+            AxisScale scale = fit(range[0], range[1], 300, 20);
+            assertEquals(0, scale.getMin());
+            assertEquals(1, scale.getMax());
+        }
+    }
+
+    @Test
+    void axisShorterThanOneTick() {
+        AxisScale scale = fit(1, 2, 5, 50);
+        assertEquals(2, scale.getTickCount());
+    }
+
+    @Test
+    void fitWithinKeepsTheRange() {
+        AxisScale scale = new AxisScale().fitWithin(0.3, 7.7, 300, 40, 0);
+        assertNiceStep(scale.getStep());
+        assertEquals(0.3, scale.getMin());
+        assertEquals(7.7, scale.getMax());
+        for (int tick = 0; tick < scale.getTickCount(); tick++) {
+            double value = scale.getTick(tick);
+            assertTrue(value >= 0.3 && value <= 7.7, "tick " + value);
+        }
+
+        // Narrower than a step, so there may be no ticks at all.
+        scale = new AxisScale().fitWithin(0.31, 0.32, 10, 40, 0);
+        assertTrue(scale.getTickCount() >= 0);
+    }
+
+    @Test
+    void labelLength() {
+        assertEquals(1, AxisScale.getLabelLength(0, 0));
+        assertEquals(3, AxisScale.getLabelLength(-12, 0));
+        assertEquals(6, AxisScale.getLabelLength(123.5, 2));
+        assertEquals("NaN".length(), AxisScale.getLabelLength(Double.NaN, 0));
+    }
+
+    @Test
+    void keepsLabelsUntilTheTicksMove() {
+        AxisScale scale = new AxisScale().fit(0, 100, 500, 50, 0);
+        String label = scale.getLabel(3);
+        assertEquals("30", label);
+        scale.fit(0, 100, 500, 50, 0);
+        assertSame(label, scale.getLabel(3));
+        scale.fit(0, 300, 1500, 50, 0);
+        assertEquals(31, scale.getTickCount());
+        assertSame(label, scale.getLabel(3));
+        assertEquals("300", scale.getLabel(30));
+
+        // A new step, or a first tick moved along, formats them afresh.
+        scale.fit(0, 1, 500, 50, 0);
+        assertArrayEquals(new String[]{"0.0", "0.1", "0.2", "0.3", "0.4", "0.5", "0.6", "0.7",
+                "0.8", "0.9", "1.0"}, getLabels(scale));
+        scale.fit(-0.5, 0.5, 500, 50, 0);
+        assertEquals("-0.5", scale.getLabel(0));
+        assertEquals("0.5", scale.getLabel(scale.getTickCount() - 1));
+    }
+}
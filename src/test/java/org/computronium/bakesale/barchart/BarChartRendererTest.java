@@ -0,0 +1,373 @@
+package org.computronium.bakesale.barchart;
+
+import org.computronium.bakesale.metrics.RenderMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that bars too many to fit scroll, with only those showing drawn,
+ * and where the values of multi-series bars go, stacked or side by side.
+ */
+class BarChartRendererTest {
+    /**
+     * Keeps the counts of bars drawn and left out at the last paint.
+     */
+    private static class PaintCounts implements RenderMetrics {
+        int drawn;
+
+        int skipped;
+
+        @Override
+        public void itemsPainted(int drawn, int skipped) {
+            this.drawn = drawn;
+            this.skipped = skipped;
+        }
+    }
+
+    /**
+     * Bars with a value from each of a number of series.
+     */
+    private static class Series implements MultiSeriesBarChartModel {
+        private final String[] names;
+
+        private final Color[] colors;
+
+        private final double[][] values;
+
+        Series(String[] names, Color[] colors, double[]... values) {
+            this.names = names;
+            this.colors = colors;
+            this.values = values;
+        }
+
+        public int getSeriesCount() {
+            return names.length;
+        }
+
+        public String getSeriesName(int series) {
+            return names[series];
+        }
+
+        public Color getSeriesColor(int series) {
+            return colors[series];
+        }
+
+        public double getValue(int index, int series) {
+            return values[index][series];
+        }
+
+        public int getBarCount() {
+            return values.length;
+        }
+
+        public String getLabel(int index) {
+            return "Bar " + index;
+        }
+    }
+
+    private static ConcurrentBarChartModel bars(int count) {
+        String[] labels = new String[count];
+        double[] values = new double[count];
+        Color[] colors = new Color[count];
+        for (int i = 0; i < count; i++) {
+            labels[i] = "Bar " + i;
+            values[i] = i % 10 + 1;
+            colors[i] = Color.BLUE;
+        }
+        ConcurrentBarChartModel model = new ConcurrentBarChartModel();
+        model.setBars(labels, values, colors);
+        return model;
+    }
+
+    private static void layOut(BarChartRenderer renderer, int width, int height) {
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        renderer.layout(g, new Rectangle(0, 0, width, height));
+        g.dispose();
+    }
+
+    private static BufferedImage paint(BarChartRenderer renderer) {
+        Rectangle bounds = renderer.getBounds();
+        BufferedImage image = new BufferedImage(bounds.width, bounds.height,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        renderer.paint(g);
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * Returns the bar found at the given x coordinate, anywhere up the
+     * chart, or -1 if there's none.
+     */
+    private static int findBar(BarChartRenderer renderer, int x) {
+        for (int y = 0; y < renderer.getBounds().height; y++) {
+            int index = renderer.getBarAt(x, y);
+            if (index >= 0) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the screen x coordinates at which the bar with the given index
+     * is found, somewhere up the chart.
+     */
+    private static List<Integer> findXs(BarChartRenderer renderer, int index) {
+        List<Integer> xs = new ArrayList<>();
+        for (int x = 0; x < renderer.getBounds().width; x++) {
+            if (findBar(renderer, x) == index) {
+                xs.add(x);
+            }
+        }
+        return xs;
+    }
+
+    /**
+     * A run of screen positions with the same series under them.
+     */
+    private static class Run {
+        final int series;
+
+        final int from;
+
+        int to;
+
+        Run(int series, int at) {
+            this.series = series;
+            this.from = at;
+            this.to = at;
+        }
+    }
+
+    /**
+     * Finds the series under each position down the given screen x
+     * coordinate, from the top, as runs.
+     */
+    private static List<Run> seriesDown(BarChartRenderer renderer, int x) {
+        List<Run> runs = new ArrayList<>();
+        for (int y = 0; y < renderer.getBounds().height; y++) {
+            int series = renderer.getSeriesAt(x, y);
+            if (series < 0) {
+                continue;
+            }
+            Run last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+            if (last != null && last.series == series) {
+                last.to = y;
+            } else {
+                runs.add(new Run(series, y));
+            }
+        }
+        return runs;
+    }
+
+    private static int[] seriesOf(List<Run> runs) {
+        int[] series = new int[runs.size()];
+        for (int i = 0; i < series.length; i++) {
+            series[i] = runs.get(i).series;
+        }
+        return series;
+    }
+
+    private static final Color[] SERIES_COLORS = {new Color(200, 0, 0), new Color(0, 0, 200)};
+
+    private static Series threeBars() {
+        return new Series(new String[]{"Up", "Down"}, SERIES_COLORS,
+                new double[]{3, 4}, new double[]{2, -1}, new double[]{-2, -3});
+    }
+
+    @Test
+    void stacksValuesUpAndDownFromZero() {
+        BarChartRenderer renderer = new BarChartRenderer();
+        renderer.setStacked(true);
+        renderer.setModel(threeBars());
+        layOut(renderer, 400, 300);
+        BufferedImage image = paint(renderer);
+        for (int index = 0; index < 3; index++) {
+            List<Integer> xs = findXs(renderer, index);
+            int x = xs.get(xs.size() / 2);
+            List<Run> runs = seriesDown(renderer, x);
+            // Positive values go up from zero in series order, so the last
+            // is on top; negative ones go down, so the first is nearest.
+            int[][] expected = {{1, 0}, {0, 1}, {0, 1}};
+            assertEquals(Arrays.toString(expected[index]), Arrays.toString(seriesOf(runs)),
+                    "bar " + index);
+            for (Run run : runs) {
+                if (run.to - run.from > 4) {
+                    assertEquals(SERIES_COLORS[run.series].getRGB(),
+                            image.getRGB(x, (run.from + run.to) / 2), "bar " + index);
+                }
+            }
+            if (index == 0) {
+                // Each value is as tall as it is big.
+                double ratio = (double) (runs.get(0).to - runs.get(0).from)
+                        / (runs.get(1).to - runs.get(1).from);
+                assertEquals(4.0 / 3, ratio, 0.1);
+            }
+        }
+    }
+
+    @Test
+    void putsValuesSideBySide() {
+        BarChartRenderer renderer = new BarChartRenderer();
+        renderer.setModel(threeBars());
+        layOut(renderer, 400, 300);
+        BufferedImage image = paint(renderer);
+        for (int index = 0; index < 3; index++) {
+            List<Integer> xs = findXs(renderer, index);
+            // Across the bar, the first series comes first.
+            List<Integer> order = new ArrayList<>();
+            for (int x : xs) {
+                List<Run> runs = seriesDown(renderer, x);
+                assertEquals(1, runs.size(), "bar " + index + " at " + x);
+                int series = runs.get(0).series;
+                if (order.isEmpty() || order.get(order.size() - 1) != series) {
+                    order.add(series);
+                }
+            }
+            assertEquals(Arrays.asList(0, 1), order, "bar " + index);
+        }
+
+        // Side by side, the first bar's values reach only as far as the
+        // biggest of them, and stand on the same zero line.
+        List<Integer> xs = findXs(renderer, 0);
+        Run left = seriesDown(renderer, xs.get(1)).get(0);
+        Run right = seriesDown(renderer, xs.get(xs.size() - 2)).get(0);
+        assertEquals(left.to, right.to, 1);
+        double ratio = (double) (right.to - right.from) / (left.to - left.from);
+        assertEquals(4.0 / 3, ratio, 0.1);
+        assertEquals(SERIES_COLORS[1].getRGB(),
+                image.getRGB(xs.get(xs.size() - 3), (right.from + right.to) / 2));
+    }
+
+    @Test
+    void stackingMakesRoomForTheTotals() {
+        BarChartRenderer renderer = new BarChartRenderer();
+        renderer.setModel(threeBars());
+        layOut(renderer, 400, 300);
+        List<Integer> xs = findXs(renderer, 0);
+        Run four = seriesDown(renderer, xs.get(xs.size() - 2)).get(0);
+        double side_by_side = (four.to - four.from) / 4.0;
+
+        // Stacked, the axis has to reach 7 and -5 rather than 4 and -3, so
+        // each unit gets less room, and the whole stack is on the chart.
+        renderer.setStacked(true);
+        layOut(renderer, 400, 300);
+        xs = findXs(renderer, 0);
+        List<Run> stack = seriesDown(renderer, xs.get(xs.size() / 2));
+        double stacked = (stack.get(1).to - stack.get(0).from) / 7.0;
+        assertTrue(stacked < side_by_side * 0.8, stacked + " against " + side_by_side);
+        assertTrue(stack.get(0).from > 0);
+        xs = findXs(renderer, 2);
+        List<Run> below = seriesDown(renderer, xs.get(xs.size() / 2));
+        assertTrue(below.get(1).to < renderer.getBounds().height);
+        assertEquals(5 * stacked, below.get(1).to - below.get(0).from, 3);
+    }
+
+    @Test
+    void showsTheSeriesInTheLegend() {
+        BarChartRenderer renderer = new BarChartRenderer();
+        renderer.setModel(threeBars());
+        layOut(renderer, 400, 300);
+        Object key = renderer.getStaticLayerKey();
+        layOut(renderer, 400, 300);
+        assertEquals(key, renderer.getStaticLayerKey());
+        renderer.setModel(new Series(new String[]{"Up", "Renamed"}, SERIES_COLORS,
+                new double[]{3, 4}, new double[]{2, -1}, new double[]{-2, -3}));
+        layOut(renderer, 400, 300);
+        assertNotEquals(key, renderer.getStaticLayerKey());
+    }
+
+    @Test
+    void squeezesInBarsThatFit() {
+        BarChartRenderer renderer = new BarChartRenderer();
+        PaintCounts counts = new PaintCounts();
+        renderer.setMetrics(counts);
+        renderer.setModel(bars(10));
+        layOut(renderer, 400, 300);
+        assertEquals(0, renderer.getScrollRange());
+        assertTrue(renderer.getSlotWidth() > 20);
+        renderer.setScrollX(50);
+        assertEquals(0, renderer.getScrollX());
+        paint(renderer);
+        assertEquals(10, counts.drawn);
+        assertEquals(0, counts.skipped);
+    }
+
+    @Test
+    void scrollsBarsThatDont() {
+        BarChartRenderer renderer = new BarChartRenderer();
+        PaintCounts counts = new PaintCounts();
+        renderer.setMetrics(counts);
+        renderer.setMinBarWidth(20);
+        renderer.setModel(bars(1000));
+        layOut(renderer, 400, 300);
+        assertEquals(20, renderer.getSlotWidth());
+        int range = renderer.getScrollRange();
+        assertTrue(range > 20000 - 400 && range < 20000, "range " + range);
+
+        renderer.setScrollX(-5);
+        assertEquals(0, renderer.getScrollX());
+        renderer.setScrollX(Integer.MAX_VALUE);
+        assertEquals(range, renderer.getScrollX());
+
+        // Only the bars showing are drawn.
+        renderer.setScrollX(0);
+        paint(renderer);
+        assertTrue(counts.drawn > 0 && counts.drawn <= 400 / 20 + 1, counts.drawn + " drawn");
+        assertEquals(1000, counts.drawn + counts.skipped);
+        renderer.setScrollX(range);
+        paint(renderer);
+        assertTrue(counts.drawn > 0 && counts.drawn <= 400 / 20 + 1, counts.drawn + " drawn");
+        assertEquals(1000, counts.drawn + counts.skipped);
+
+        // Scrolling ten bars along shows the bar ten further on at the same
+        // place.
+        renderer.setScrollX(0);
+        int x = 200;
+        while (findBar(renderer, x) < 0) {
+            x++;
+        }
+        int index = findBar(renderer, x);
+        renderer.setScrollX(10 * 20);
+        assertEquals(index + 10, findBar(renderer, x));
+
+        // Scrolled all the way, the last bar is at the right hand end.
+        renderer.setScrollX(range);
+        x = 399;
+        while (findBar(renderer, x) < 0) {
+            x--;
+        }
+        assertEquals(999, findBar(renderer, x));
+    }
+
+    @Test
+    void keepsTheScrollAcrossLayouts() {
+        BarChartRenderer renderer = new BarChartRenderer();
+        renderer.setMinBarWidth(20);
+        ConcurrentBarChartModel model = bars(1000);
+        renderer.setModel(model);
+        layOut(renderer, 400, 300);
+        renderer.setScrollX(5000);
+        model.setValue(3, 50);
+        layOut(renderer, 400, 300);
+        assertEquals(5000, renderer.getScrollX());
+
+        // Fewer bars leave less to scroll through.
+        model.setBars(new String[]{"a", "b"}, new double[]{1, 2},
+                new Color[]{Color.RED, Color.RED});
+        layOut(renderer, 400, 300);
+        assertEquals(0, renderer.getScrollRange());
+        assertEquals(0, renderer.getScrollX());
+    }
+}
@@ -0,0 +1,225 @@
+package org.computronium.bakesale.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the oldest points are dropped once the model is full, that
+ * the extents kept follow the points held, and that a snapshot never
+ * changes once taken.
+ */
+class ConcurrentGraphModelTest {
+    /**
+     * Checks the snapshot's extents against a scan of its points, leaving
+     * out NaN.
+     */
+    private static void assertExtents(GraphSnapshot snapshot) {
+        double min_x = Double.NaN;
+        double max_x = Double.NaN;
+        double min_y = Double.NaN;
+        double max_y = Double.NaN;
+        for (int i = 0; i < snapshot.getPointCount(); i++) {
+            double x = snapshot.getX(i);
+            double y = snapshot.getY(i);
+            if (!Double.isNaN(x)) {
+                min_x = Double.isNaN(min_x) ? x : Math.min(min_x, x);
+                max_x = Double.isNaN(max_x) ? x : Math.max(max_x, x);
+            }
+            if (!Double.isNaN(y)) {
+                min_y = Double.isNaN(min_y) ? y : Math.min(min_y, y);
+                max_y = Double.isNaN(max_y) ? y : Math.max(max_y, y);
+            }
+        }
+        assertEquals(min_x, snapshot.getMinX());
+        assertEquals(max_x, snapshot.getMaxX());
+        assertEquals(min_y, snapshot.getMinY());
+        assertEquals(max_y, snapshot.getMaxY());
+    }
+
+    private static double[] getXs(GraphModel model) {
+        double[] xs = new double[model.getPointCount()];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = model.getX(i);
+        }
+        return xs;
+    }
+
+    @Test
+    void dropsTheOldestOnceFull() {
+        ConcurrentGraphModel model = new ConcurrentGraphModel(5, Color.BLUE);
+        for (int i = 0; i < 8; i++) {
+            model.append(i, -i);
+        }
+        assertEquals(5, model.getPointCount());
+        assertArrayEquals(new double[]{3, 4, 5, 6, 7}, getXs(model));
+        model.append(new double[]{100, 101, 102, 103, 104, 105, 106}, new double[7], 1, 6);
+        assertArrayEquals(new double[]{102, 103, 104, 105, 106}, getXs(model));
+        assertEquals(102, model.getMinX());
+        assertEquals(106, model.getMaxX());
+        assertEquals(0, model.getMinY());
+    }
+
+    @Test
+    void extentsFollowThePointsHeld() {
+        Random random = new Random(1);
+        ConcurrentGraphModel model = new ConcurrentGraphModel(100, Color.BLUE);
+        for (int i = 0; i < 2000; i++) {
+            if (i % 10 == 0) {
+                int count = random.nextInt(150);
+                double[] xs = new double[count];
+                double[] ys = new double[count];
+                for (int j = 0; j < count; j++) {
+                    xs[j] = random.nextInt(50);
+                    ys[j] = random.nextInt(7) == 0 ? Double.NaN : random.nextInt(20) - 10;
+                }
+                model.append(xs, ys, 0, count);
+            } else {
+                // Plenty of repeated values, to catch ties.
+                model.append(random.nextInt(50),
+                        random.nextInt(7) == 0 ? Double.NaN : random.nextInt(20) - 10);
+            }
+            assertExtents(model.snapshot());
+        }
+    }
+
+    @Test
+    void extentsAreNaNWithNothingElse() {
+        ConcurrentGraphModel model = new ConcurrentGraphModel(3, Color.BLUE);
+        assertTrue(Double.isNaN(model.getMinX()));
+        model.append(1, Double.NaN);
+        model.append(2, Double.NaN);
+        assertEquals(1, model.getMinX());
+        assertTrue(Double.isNaN(model.getMinY()));
+        assertTrue(Double.isNaN(model.getMaxY()));
+        model.append(3, 4);
+        assertEquals(4, model.getMinY());
+        assertEquals(4, model.getMaxY());
+        GraphSnapshot copied = new GraphSnapshot(new double[]{1, Double.NaN, 3},
+                new double[]{Double.NaN, Double.NaN, Double.NaN}, Color.BLUE);
+        assertEquals(1, copied.getMinX());
+        assertEquals(3, copied.getMaxX());
+        assertTrue(Double.isNaN(copied.getMinY()));
+    }
+
+    @Test
+    void snapshotsNeverChange() {
+        ConcurrentGraphModel model = new ConcurrentGraphModel(50, Color.BLUE);
+        List<GraphSnapshot> snapshots = new ArrayList<>();
+        List<double[]> seen = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            model.append(i, i);
+            if (i % 17 == 0) {
+                GraphSnapshot snapshot = model.snapshot();
+                snapshots.add(snapshot);
+                seen.add(getXs(snapshot));
+            }
+        }
+        for (int i = 0; i < snapshots.size(); i++) {
+            assertArrayEquals(seen.get(i), getXs(snapshots.get(i)));
+        }
+    }
+
+    @Test
+    void snapshotsSayHowTheyDiffer() {
+        ConcurrentGraphModel model = new ConcurrentGraphModel(10, Color.BLUE);
+        for (int i = 0; i < 6; i++) {
+            model.append(i, i);
+        }
+        GraphSnapshot earlier = model.snapshot();
+        for (int i = 6; i < 13; i++) {
+            model.append(i, i);
+        }
+        GraphSnapshot later = model.snapshot();
+        assertTrue(later.follows(earlier));
+        assertFalse(earlier.follows(later));
+        assertEquals(3, later.getDroppedSince(earlier));
+        assertEquals(7, later.getAppendedSince(earlier));
+
+        // Anything else starts a new series.
+        model.setPoints(new double[]{1, 2}, new double[]{3, 4});
+        assertFalse(model.snapshot().follows(later));
+        GraphSnapshot replaced = model.snapshot();
+        model.clear();
+        assertFalse(model.snapshot().follows(replaced));
+        assertEquals(0, model.getPointCount());
+    }
+
+    @Test
+    void tellsListenersWhatChanged() {
+        ConcurrentGraphModel model = new ConcurrentGraphModel(4, Color.BLUE);
+        List<String> heard = new ArrayList<>();
+        model.addGraphModelListener(new GraphModelListener() {
+            public void modelChanged(GraphModel model) {
+                heard.add("changed");
+            }
+
+            public void pointsAppended(GraphModel model, int dropped, int appended) {
+                heard.add(dropped + "+" + appended);
+            }
+        });
+        model.append(0, 0);
+        model.append(new double[3], new double[3], 0, 3);
+        model.append(1, 1);
+        // More than it can hold: only the last four are kept.
+        model.append(new double[10], new double[10], 0, 10);
+        model.setPoints(new double[2], new double[2]);
+        assertEquals(Arrays.asList("0+1", "0+3", "1+1", "4+4", "changed"), heard);
+    }
+
+    @Test
+    void keepsEveryPointAppendedFromManyThreads() throws Exception {
+        ConcurrentGraphModel model = new ConcurrentGraphModel(Color.BLUE);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int offset = t * 10000;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    if (i % 100 == 0) {
+                        double[] xs = {offset + i};
+                        model.append(xs, xs, 0, 1);
+                    } else {
+                        model.append(offset + i, offset + i);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        GraphSnapshot snapshot = model.snapshot();
+        assertEquals(40000, snapshot.getPointCount());
+        assertEquals(0, snapshot.getMinX());
+        assertEquals(39999, snapshot.getMaxY());
+        double[] xs = getXs(snapshot);
+        Arrays.sort(xs);
+        for (int i = 0; i < xs.length; i++) {
+            assertEquals(i, xs[i]);
+        }
+    }
+
+    @Test
+    void snapshotsCheckTheirBounds() {
+        double[] xs = {1, 2, 3};
+        GraphSnapshot snapshot = new GraphSnapshot(xs, new double[]{4, 5, 6}, Color.BLUE);
+        xs[0] = 100;
+        assertEquals(1, snapshot.getX(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> snapshot.getX(3));
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> snapshot.getY(2, new double[2], 0, 2));
+        assertThrows(IllegalArgumentException.class,
+                () -> new GraphSnapshot(new double[2], new double[3], Color.BLUE));
+        assertThrows(IllegalArgumentException.class, () -> new ConcurrentGraphModel(0, Color.BLUE));
+    }
+}
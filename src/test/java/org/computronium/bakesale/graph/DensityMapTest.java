@@ -0,0 +1,113 @@
+package org.computronium.bakesale.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks which pixels the points are counted into, how the counts are
+ * colored, and that counting in parts on several threads comes to the same
+ * thing as counting on one.
+ */
+class DensityMapTest {
+    private static final Color LOW = new Color(0, 0, 255);
+
+    private static final Color HIGH = new Color(255, 0, 0);
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0,
+                image.getWidth());
+    }
+
+    @Test
+    void colorsPixelsByTheirCounts() {
+        DensityMap map = new DensityMap();
+        map.setColors(LOW, HIGH);
+        // One point at (1, 1), four at (3, 2), and some which fall outside
+        // or can't be placed at all.
+        double[] xs = {1.5, 3.1, 3.9, 3.5, 3.5, -1, 10, 2, Double.NaN};
+        double[] ys = {1.5, 2.1, 2.9, 2.5, 2.5, 1, 1, -0.5, 1};
+        List<GraphModel> models = Collections.singletonList(
+                new ArrayGraphModel(xs, ys, Color.BLACK));
+        BufferedImage image = map.paint(models, new int[]{0}, new int[]{xs.length}, 0, 0,
+                5, 4, 1, 0, 1, 0);
+        assertEquals(5, image.getWidth());
+        assertEquals(4, image.getHeight());
+        int[] pixels = pixels(image);
+        for (int pixel = 0; pixel < pixels.length; pixel++) {
+            if (pixel == 1 * 5 + 1) {
+                assertEquals(LOW.getRGB(), pixels[pixel]);
+            } else if (pixel == 2 * 5 + 3) {
+                assertEquals(HIGH.getRGB(), pixels[pixel]);
+            } else {
+                assertEquals(0, pixels[pixel], "pixel " + pixel);
+            }
+        }
+
+        // Only the stretch asked for is counted, and the image is placed at
+        // left, top.
+        image = map.paint(models, new int[]{1}, new int[]{2}, 2, 1, 5, 4, 1, 0, 1, 0);
+        pixels = pixels(image);
+        assertEquals(LOW.getRGB(), pixels[1 * 5 + 1]);
+        assertEquals(1, Arrays.stream(pixels).filter(argb -> argb != 0).count());
+    }
+
+    @Test
+    void blendsByTheLogarithmOfTheCount() {
+        DensityMap map = new DensityMap();
+        map.setColors(LOW, HIGH);
+        double[] xs = new double[1 + 16 + 256];
+        double[] ys = new double[xs.length];
+        Arrays.fill(xs, 0, 1, 0.5);
+        Arrays.fill(xs, 1, 17, 1.5);
+        Arrays.fill(xs, 17, xs.length, 2.5);
+        BufferedImage image = map.paint(Collections.singletonList(
+                        new ArrayGraphModel(xs, ys, Color.BLACK)), new int[]{0},
+                new int[]{xs.length}, 0, 0, 3, 1, 1, 0, 1, 0);
+        int[] pixels = pixels(image);
+        assertEquals(LOW.getRGB(), pixels[0]);
+        assertEquals(HIGH.getRGB(), pixels[2]);
+        // Sixteen points is half way to 256 on a log scale.
+        Color middle = new Color(pixels[1]);
+        assertEquals(127, middle.getRed(), 1);
+        assertEquals(128, middle.getBlue(), 1);
+    }
+
+    @Test
+    void countsInPartsAsOnOneThread() {
+        int count = GraphModels.PARALLEL_THRESHOLD * 3 + 123;
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = (i * 0.37) % 100;
+            ys[i] = Math.sin(i * 0.001) * 40 + Math.cos(i * 0.7) * 5;
+        }
+        Object series = new Object();
+        GraphModel parallel = new GraphSnapshot(xs, ys, 0, count, Color.BLACK, series, 0);
+        GraphModel sequential = new ArrayGraphModel(xs, ys, Color.BLACK);
+        int[] starts = {5, 0};
+        int[] ends = {count, count / 2};
+
+        DensityMap map = new DensityMap();
+        int[] expected = pixels(map.paint(Arrays.asList(sequential, sequential), starts, ends,
+                0, 0, 120, 90, 1.1, 2, -1, 45));
+        int[] actual = pixels(map.paint(Arrays.asList(parallel, parallel), starts, ends,
+                0, 0, 120, 90, 1.1, 2, -1, 45));
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    void needsBothColors() {
+        DensityMap map = new DensityMap();
+        assertThrows(IllegalArgumentException.class, () -> map.setColors(null, HIGH));
+        assertThrows(IllegalArgumentException.class, () -> map.setColors(LOW, null));
+    }
+}
@@ -0,0 +1,100 @@
+package org.computronium.bakesale.graph;
+
+import org.computronium.bakesale.render.RepaintScheduler;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a panel with a repaint scheduler only reads models which
+ * aren't snapshot models on the event dispatch thread, where they're
+ * appended to, while scheduled updates run.
+ */
+class GraphPanelSchedulerTest {
+    /**
+     * A StreamingGraphModel which counts the times it's read away from the
+     * event dispatch thread.
+     */
+    private static class CheckedModel extends StreamingGraphModel {
+        final AtomicInteger offThreadReads = new AtomicInteger();
+
+        final AtomicInteger reads = new AtomicInteger();
+
+        CheckedModel(int capacity) {
+            super(capacity, Color.BLUE);
+        }
+
+        private void check() {
+            reads.incrementAndGet();
+            if (!SwingUtilities.isEventDispatchThread()) {
+                offThreadReads.incrementAndGet();
+            }
+        }
+
+        @Override
+        public int getPointCount() {
+            check();
+            return super.getPointCount();
+        }
+
+        @Override
+        public double getX(int index) {
+            check();
+            return super.getX(index);
+        }
+
+        @Override
+        public double getY(int index) {
+            check();
+            return super.getY(index);
+        }
+
+        @Override
+        public void getX(int index, double[] dest, int offset, int count) {
+            check();
+            super.getX(index, dest, offset, count);
+        }
+
+        @Override
+        public void getY(int index, double[] dest, int offset, int count) {
+            check();
+            super.getY(index, dest, offset, count);
+        }
+    }
+
+    @Test
+    void readsOtherModelsOnlyOnTheEventDispatchThread() throws Exception {
+        CheckedModel model = new CheckedModel(500);
+        GraphPanel[] panel = new GraphPanel[1];
+        try (RepaintScheduler scheduler = new RepaintScheduler(1000)) {
+            SwingUtilities.invokeAndWait(() -> {
+                panel[0] = new GraphPanel();
+                panel[0].setSize(400, 300);
+                panel[0].setRepaintScheduler(scheduler);
+                panel[0].addModel(model);
+            });
+
+            // Append from a thread of its own, by way of the event dispatch
+            // thread, so that scheduled updates keep running meanwhile.
+            for (int i = 0; i < 2000; i++) {
+                int x = i;
+                SwingUtilities.invokeAndWait(() -> model.append(x, Math.sin(x)));
+                if (i % 100 == 0) {
+                    Thread.sleep(2);
+                }
+            }
+            Thread.sleep(100);
+            SwingUtilities.invokeAndWait(() -> { });
+        }
+
+        assertTrue(model.reads.get() > 0);
+        assertEquals(0, model.offThreadReads.get());
+        assertNotNull(panel[0].getRenderer().getBounds());
+    }
+}
@@ -0,0 +1,117 @@
+package org.computronium.bakesale.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that decimation keeps the first, lowest, highest and last point of
+ * each pixel column, in order, with and without the help of a pyramid.
+ */
+class LineDecimatorTest {
+    private static GraphModel randomWalk(int count, double step, long seed) {
+        Random random = new Random(seed);
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        double y = 0;
+        for (int i = 0; i < count; i++) {
+            xs[i] = i * step;
+            y += random.nextGaussian();
+            ys[i] = y;
+        }
+        return new ArrayGraphModel(xs, ys, Color.BLUE);
+    }
+
+    /**
+     * Works out what decimation should leave of the points from start up to
+     * end, the slow way, as x and y pairs.
+     */
+    private static List<double[]> expected(GraphModel model, int start, int end,
+                                           double originX, double pixelsPerUnit) {
+        List<double[]> points = new ArrayList<>();
+        int run = start;
+        while (run < end) {
+            long column = (long) Math.floor((model.getX(run) - originX) * pixelsPerUnit);
+            int run_end = run;
+            int min = run;
+            int max = run;
+            while (run_end < end && (long) Math.floor((model.getX(run_end) - originX)
+                    * pixelsPerUnit) == column) {
+                if (model.getY(run_end) < model.getY(min)) {
+                    min = run_end;
+                }
+                if (model.getY(run_end) > model.getY(max)) {
+                    max = run_end;
+                }
+                run_end++;
+            }
+            int last = run_end - 1;
+            for (int index = run; index <= last; index++) {
+                if (index == run || index == min || index == max || index == last) {
+                    points.add(new double[]{model.getX(index), model.getY(index)});
+                }
+            }
+            run = run_end;
+        }
+        return points;
+    }
+
+    private static void assertDecimated(List<double[]> expected, LineDecimator decimator) {
+        assertEquals(expected.size(), decimator.getSize());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i)[0], decimator.getX(i), "x of point " + i);
+            assertEquals(expected.get(i)[1], decimator.getY(i), "y of point " + i);
+        }
+    }
+
+    @Test
+    void keepsTheExtremesOfEachColumn() {
+        GraphModel model = randomWalk(20000, 0.01, 1);
+        LineDecimator decimator = new LineDecimator();
+        decimator.decimate(model, 0, 2);
+        assertDecimated(expected(model, 0, model.getPointCount(), 0, 2), decimator);
+        // 200 units at two pixels each, and at most four points a column.
+        assertTrue(decimator.getSize() <= 4 * 401, "size " + decimator.getSize());
+    }
+
+    @Test
+    void leavesSparsePointsAlone() {
+        GraphModel model = randomWalk(100, 1, 2);
+        LineDecimator decimator = new LineDecimator();
+        decimator.decimate(model, 0, 10);
+        assertEquals(100, decimator.getSize());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(model.getX(i), decimator.getX(i));
+            assertEquals(model.getY(i), decimator.getY(i));
+        }
+    }
+
+    @Test
+    void emptyModel() {
+        LineDecimator decimator = new LineDecimator();
+        decimator.decimate(new ArrayGraphModel(new double[0], new double[0], Color.BLUE), 0, 1);
+        assertEquals(0, decimator.getSize());
+    }
+
+    @Test
+    void pyramidGivesTheSameAnswer() {
+        GraphModel model = randomWalk(100000, 0.001, 3);
+        MinMaxPyramid pyramid = new MinMaxPyramid(model);
+        assertTrue(pyramid.isSorted());
+        LineDecimator decimator = new LineDecimator();
+
+        decimator.decimate(model, pyramid, 0, model.getPointCount(), 0, 3);
+        assertDecimated(expected(model, 0, model.getPointCount(), 0, 3), decimator);
+
+        // A stretch in the middle, not lined up with the buckets, with the
+        // columns starting somewhere other than zero.
+        decimator.decimate(model, pyramid, 12345, 87654, 11.1, 7.5);
+        assertDecimated(expected(model, 12345, 87654, 11.1, 7.5), decimator);
+    }
+}
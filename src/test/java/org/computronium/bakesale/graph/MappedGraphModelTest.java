@@ -0,0 +1,127 @@
+package org.computronium.bakesale.graph;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks reads which cross from one mapped segment to the next, using tiny
+ * segments, and that a summary is only believed while it matches the file.
+ */
+class MappedGraphModelTest {
+    @TempDir
+    Path directory;
+
+    private static final int COUNT = 100;
+
+    private Path writePoints() throws IOException {
+        double[] xs = new double[COUNT];
+        double[] ys = new double[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            xs[i] = i * 0.5;
+            ys[i] = Math.sin(i) * 10;
+        }
+        Path file = directory.resolve("points.bin");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            MappedGraphModel.write(xs, ys, COUNT, out);
+        }
+        return file;
+    }
+
+    @Test
+    void readsAcrossSegments() throws IOException {
+        Path file = writePoints();
+        // Segments of 16 points, so the 100 points take seven.
+        MappedGraphModel model = MappedGraphModel.open(file, Color.BLUE, false, 4);
+        assertEquals(COUNT, model.getPointCount());
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(i * 0.5, model.getX(i));
+            assertEquals(Math.sin(i) * 10, model.getY(i));
+        }
+        for (int start = 0; start < COUNT; start += 7) {
+            int length = Math.min(37, COUNT - start);
+            double[] xs = new double[length + 2];
+            double[] ys = new double[length + 2];
+            model.getX(start, xs, 1, length);
+            model.getY(start, ys, 1, length);
+            double[] expected_xs = new double[length + 2];
+            double[] expected_ys = new double[length + 2];
+            for (int i = 0; i < length; i++) {
+                expected_xs[i + 1] = (start + i) * 0.5;
+                expected_ys[i + 1] = Math.sin(start + i) * 10;
+            }
+            assertArrayEquals(expected_xs, xs, "from " + start);
+            assertArrayEquals(expected_ys, ys, "from " + start);
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> model.getX(COUNT));
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> model.getY(COUNT - 5, new double[10], 0, 10));
+    }
+
+    @Test
+    void ignoresTrailingBytes() throws IOException {
+        Path file = writePoints();
+        Files.write(file, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+        assertEquals(COUNT, MappedGraphModel.open(file, Color.BLUE).getPointCount());
+    }
+
+    @Test
+    void extentsOnlyFromAnUpToDateSummary() throws IOException {
+        Path file = writePoints();
+        MappedGraphModel model = MappedGraphModel.open(file, Color.BLUE);
+        assertFalse(model instanceof ExtentGraphModel);
+        assertTrue(model instanceof ParallelGraphModel);
+        double min_y = model.getMinY();
+        double max_y = model.getMaxY();
+
+        MappedGraphModel.writeSummary(file);
+        model = MappedGraphModel.open(file, Color.BLUE);
+        assertTrue(model instanceof ExtentGraphModel);
+        assertEquals(0, model.getMinX());
+        assertEquals((COUNT - 1) * 0.5, model.getMaxX());
+        assertEquals(min_y, model.getMinY());
+        assertEquals(max_y, model.getMaxY());
+
+        // Touching the file makes the summary out of date.
+        Files.setLastModifiedTime(file, FileTime.fromMillis(
+                Files.getLastModifiedTime(file).toMillis() + 10000));
+        assertFalse(MappedGraphModel.open(file, Color.BLUE) instanceof ExtentGraphModel);
+
+        // As does a summary cut short or written for something else.
+        MappedGraphModel.writeSummary(file);
+        Path summary = file.resolveSibling(file.getFileName() + MappedGraphModel.SUMMARY_SUFFIX);
+        byte[] bytes = Files.readAllBytes(summary);
+        Files.write(summary, Arrays.copyOf(bytes, 20));
+        assertFalse(MappedGraphModel.open(file, Color.BLUE) instanceof ExtentGraphModel);
+        bytes[0] ^= 1;
+        Files.write(summary, bytes);
+        assertFalse(MappedGraphModel.open(file, Color.BLUE) instanceof ExtentGraphModel);
+    }
+
+    @Test
+    void opensSorted() throws IOException {
+        Path file = writePoints();
+        MappedGraphModel model = MappedGraphModel.openSorted(file, Color.BLUE);
+        assertTrue(model instanceof SortedGraphModel);
+        assertFalse(model instanceof ExtentGraphModel);
+        MappedGraphModel.writeSummary(file);
+        model = MappedGraphModel.openSorted(file, Color.BLUE);
+        assertTrue(model instanceof SortedGraphModel);
+        assertTrue(model instanceof ExtentGraphModel);
+        assertFalse(MappedGraphModel.open(file, Color.BLUE) instanceof SortedGraphModel);
+    }
+}
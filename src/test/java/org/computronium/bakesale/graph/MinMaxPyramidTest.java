@@ -0,0 +1,111 @@
+package org.computronium.bakesale.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the buckets of the pyramid against the points they summarize, as
+ * built all at once and as points are appended.
+ */
+class MinMaxPyramidTest {
+    private static void assertBuckets(GraphModel model, MinMaxPyramid pyramid) {
+        int count = model.getPointCount();
+        assertEquals(count, pyramid.getCount());
+        for (int level = 1; level <= pyramid.getLevels(); level++) {
+            int size = MinMaxPyramid.getBucketSize(level);
+            for (int bucket = 0; bucket * size < count; bucket++) {
+                int min = bucket * size;
+                int max = min;
+                for (int index = min; index < Math.min(count, (bucket + 1) * size); index++) {
+                    if (model.getY(index) < model.getY(min)) {
+                        min = index;
+                    }
+                    if (model.getY(index) > model.getY(max)) {
+                        max = index;
+                    }
+                }
+                String where = "level " + level + " bucket " + bucket;
+                assertEquals(model.getY(min), pyramid.getMinY(level, bucket), where);
+                assertEquals(model.getY(max), pyramid.getMaxY(level, bucket), where);
+                assertEquals(model.getY(pyramid.getMinIndex(level, bucket)),
+                        pyramid.getMinY(level, bucket), where);
+                assertEquals(model.getY(pyramid.getMaxIndex(level, bucket)),
+                        pyramid.getMaxY(level, bucket), where);
+            }
+        }
+        // The top level is a single bucket.
+        assertTrue(MinMaxPyramid.getBucketSize(pyramid.getLevels()) >= count);
+    }
+
+    @Test
+    void summarizesEveryBucket() {
+        Random random = new Random(1);
+        int count = 5000;
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = i / 2;
+            ys[i] = random.nextDouble();
+        }
+        GraphModel model = new ArrayGraphModel(xs, ys, Color.BLUE);
+        MinMaxPyramid pyramid = new MinMaxPyramid(model);
+        assertTrue(pyramid.isSorted());
+        assertBuckets(model, pyramid);
+
+        assertEquals(0, pyramid.findFirstAtLeast(-1));
+        assertEquals(20, pyramid.findFirstAtLeast(10));
+        assertEquals(22, pyramid.findFirstAtLeast(10.5));
+        assertEquals(count, pyramid.findFirstAtLeast(count));
+    }
+
+    @Test
+    void noticesUnsortedModels() {
+        GraphModel model = new ArrayGraphModel(new double[]{0, 1, 2, 1.5, 3},
+                new double[]{0, 0, 0, 0, 0}, Color.BLUE);
+        assertFalse(new MinMaxPyramid(model).isSorted());
+    }
+
+    @Test
+    void foldsInAppendedPoints() {
+        Random random = new Random(2);
+        StreamingGraphModel model = new StreamingGraphModel(100000, Color.BLUE);
+        MinMaxPyramid pyramid = new MinMaxPyramid(model);
+        int x = 0;
+        for (int batch = 0; batch < 50; batch++) {
+            int appended = random.nextInt(700);
+            for (int i = 0; i < appended; i++) {
+                model.append(x++, random.nextGaussian());
+            }
+            pyramid.pointsAppended(0, appended);
+            assertTrue(pyramid.isSorted());
+            assertBuckets(model, pyramid);
+        }
+
+        // A point out of order spoils it.
+        model.append(x - 10, 0);
+        pyramid.pointsAppended(0, 1);
+        assertFalse(pyramid.isSorted());
+    }
+
+    @Test
+    void startsAgainWhenPointsAreDropped() {
+        StreamingGraphModel model = new StreamingGraphModel(1000, Color.BLUE);
+        MinMaxPyramid pyramid = new MinMaxPyramid(model);
+        for (int i = 0; i < 1000; i++) {
+            model.append(i, Math.sin(i));
+        }
+        assertTrue(pyramid.isSorted());
+        for (int i = 1000; i < 1500; i++) {
+            model.append(i, Math.cos(i));
+        }
+        pyramid.pointsAppended(500, 500);
+        assertTrue(pyramid.isSorted());
+        assertBuckets(model, pyramid);
+    }
+}
@@ -0,0 +1,116 @@
+package org.computronium.bakesale.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the point found nearest a position against a search of every
+ * point, for models in order of x and not, and as a stream is appended to.
+ */
+class PointIndexTest {
+    /**
+     * Finds the nearest point the slow way.
+     */
+    private static int findNearest(GraphModel model, double x, double y, double pixelsPerUnitX,
+                                   double pixelsPerUnitY, double maxDistance) {
+        int nearest = -1;
+        double nearest_distance = maxDistance * maxDistance;
+        for (int index = 0; index < model.getPointCount(); index++) {
+            double dx = (model.getX(index) - x) * pixelsPerUnitX;
+            double dy = (model.getY(index) - y) * pixelsPerUnitY;
+            double distance = dx * dx + dy * dy;
+            if (distance <= nearest_distance) {
+                nearest = index;
+                nearest_distance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    private static double distance(GraphModel model, int index, double x, double y,
+                                   double pixelsPerUnitX, double pixelsPerUnitY) {
+        if (index < 0) {
+            return -1;
+        }
+        return Math.hypot((model.getX(index) - x) * pixelsPerUnitX,
+                (model.getY(index) - y) * pixelsPerUnitY);
+    }
+
+    /**
+     * Checks the index against the slow search at random positions.  Which
+     * of two points the same distance away is found doesn't matter, so the
+     * distances are compared rather than the indices.
+     */
+    private static void assertFindsNearest(GraphModel model, PointIndex index, Random random,
+                                           double width, double height) {
+        for (int probe = 0; probe < 500; probe++) {
+            double x = model.getX(0) + random.nextDouble() * width;
+            double y = (random.nextDouble() - 0.5) * height;
+            int found = index.findNearest(x, y, 4, 2, 5);
+            int expected = findNearest(model, x, y, 4, 2, 5);
+            assertEquals(distance(model, expected, x, y, 4, 2),
+                    distance(model, found, x, y, 4, 2), 1e-9, "at " + x + ", " + y);
+        }
+    }
+
+    @Test
+    void sortedModel() {
+        Random random = new Random(1);
+        int count = 10000;
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = i * 0.1;
+            ys[i] = random.nextGaussian() * 3;
+        }
+        GraphModel model = new ArrayGraphModel(xs, ys, Color.BLUE);
+        assertFindsNearest(model, new PointIndex(model), random, count * 0.1, 10);
+    }
+
+    @Test
+    void unsortedModel() {
+        Random random = new Random(2);
+        int count = 10000;
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = random.nextDouble() * 1000;
+            ys[i] = random.nextGaussian() * 3;
+        }
+        GraphModel model = new ArrayGraphModel(xs, ys, Color.BLUE);
+        assertFindsNearest(model, new PointIndex(model), random, 1000, 10);
+    }
+
+    @Test
+    void nothingCloseEnough() {
+        GraphModel model = new ArrayGraphModel(new double[]{0, 10, 20},
+                new double[]{0, 0, 0}, Color.BLUE);
+        PointIndex index = new PointIndex(model);
+        assertEquals(-1, index.findNearest(5, 0, 1, 1, 4));
+        assertEquals(1, index.findNearest(9, 0, 1, 1, 4));
+        assertEquals(-1, index.findNearest(10, 100, 1, 1, 4));
+    }
+
+    @Test
+    void followsAStream() {
+        Random random = new Random(3);
+        StreamingGraphModel model = new StreamingGraphModel(2000, Color.BLUE);
+        PointIndex index = new PointIndex(model);
+        int x = 0;
+        for (int batch = 0; batch < 30; batch++) {
+            int before = model.getPointCount();
+            int appended = random.nextInt(400);
+            for (int i = 0; i < appended; i++) {
+                model.append(x++ * 0.5, random.nextGaussian() * 3);
+            }
+            index.pointsAppended(before + appended - model.getPointCount(), appended);
+            if (model.getPointCount() > 0) {
+                assertFindsNearest(model, index, random, model.getPointCount() * 0.5, 10);
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.computronium.bakesale.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that what's worked out about one snapshot is carried over to the
+ * next when only points have been appended, and worked out afresh
+ * otherwise.
+ * <p>
+ * The snapshots here share arrays, and the tests change points the earlier
+ * snapshots could already see, which real snapshots promise never to do.
+ * Whether the change shows up tells a carried over pyramid from a rebuilt
+ * one.
+ */
+class SeriesCacheTest {
+    private static final int FAN_OUT = MinMaxPyramid.FAN_OUT;
+
+    /**
+     * A SnapshotGraphModel whose snapshot is whatever it's given.
+     */
+    private static class Snapshots implements SnapshotGraphModel {
+        GraphSnapshot snapshot;
+
+        public GraphSnapshot snapshot() {
+            return snapshot;
+        }
+
+        public int getPointCount() {
+            return snapshot.getPointCount();
+        }
+
+        public double getX(int index) {
+            return snapshot.getX(index);
+        }
+
+        public double getY(int index) {
+            return snapshot.getY(index);
+        }
+
+        public Color getColor() {
+            return Color.BLUE;
+        }
+    }
+
+    /**
+     * A model over arrays which shows however many points it's told to.
+     */
+    private static class Growing implements GraphModel {
+        final double[] xs;
+
+        final double[] ys;
+
+        int count;
+
+        Growing(double[] xs, double[] ys) {
+            this.xs = xs;
+            this.ys = ys;
+        }
+
+        public int getPointCount() {
+            return count;
+        }
+
+        public double getX(int index) {
+            return xs[index];
+        }
+
+        public double getY(int index) {
+            return ys[index];
+        }
+
+        public Color getColor() {
+            return Color.BLUE;
+        }
+    }
+
+    private static double[] line(int length) {
+        double[] values = new double[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = i;
+        }
+        return values;
+    }
+
+    @Test
+    void carriesThePyramidOverAppends() {
+        double[] xs = line(1000);
+        double[] ys = new double[1000];
+        Object series = new Object();
+        Snapshots model = new Snapshots();
+        model.snapshot = new GraphSnapshot(xs, ys, 0, 500, Color.BLUE, series, 0);
+        SeriesCache cache = new SeriesCache(model);
+        MinMaxPyramid pyramid = cache.getPyramid();
+        assertTrue(pyramid.isSorted());
+        assertEquals(500, pyramid.getCount());
+
+        ys[3] = 100;
+        ys[550] = 50;
+        model.snapshot = new GraphSnapshot(xs, ys, 0, 600, Color.BLUE, series, 0);
+        cache.takeSnapshot();
+        assertSame(model.snapshot, cache.getPoints());
+        assertSame(pyramid, cache.getPyramid());
+        assertTrue(pyramid.isSorted());
+        assertEquals(600, pyramid.getCount());
+        // Only the points appended were looked at.
+        assertEquals(0, pyramid.getMaxY(1, 0));
+        assertEquals(50, pyramid.getMaxY(1, 550 / FAN_OUT));
+
+        // Taking the same snapshot again changes nothing.
+        cache.takeSnapshot();
+        assertEquals(0, pyramid.getMaxY(1, 0));
+    }
+
+    @Test
+    void startsAfreshForAnythingElse() {
+        double[] xs = line(1000);
+        double[] ys = new double[1000];
+        Object series = new Object();
+        Snapshots model = new Snapshots();
+        model.snapshot = new GraphSnapshot(xs, ys, 0, 500, Color.BLUE, series, 0);
+        SeriesCache cache = new SeriesCache(model);
+        MinMaxPyramid pyramid = cache.getPyramid();
+        assertTrue(pyramid.isSorted());
+
+        // Points dropped from the start move every bucket along.
+        ys[20] = 100;
+        model.snapshot = new GraphSnapshot(xs, ys, 10, 500, Color.BLUE, series, 10);
+        cache.takeSnapshot();
+        assertTrue(pyramid.isSorted());
+        assertEquals(500, pyramid.getCount());
+        assertEquals(100, pyramid.getMaxY(1, 10 / FAN_OUT));
+
+        // A new series starts again, even with as many points as before.
+        ys[30] = 200;
+        model.snapshot = new GraphSnapshot(xs, ys, 10, 500, Color.BLUE, new Object(), 10);
+        cache.takeSnapshot();
+        assertTrue(pyramid.isSorted());
+        assertEquals(200, pyramid.getMaxY(1, 20 / FAN_OUT));
+    }
+
+    @Test
+    void takesTheExtentsFromEachSnapshot() {
+        ConcurrentGraphModel model = new ConcurrentGraphModel(100, Color.BLUE);
+        for (int i = 0; i < 50; i++) {
+            model.append(i, Math.sin(i));
+        }
+        SeriesCache cache = new SeriesCache(model);
+        assertEquals(0, cache.getMinX());
+        assertEquals(49, cache.getMaxX());
+        for (int i = 50; i < 200; i++) {
+            model.append(i, i % 3 - 1);
+        }
+        cache.takeSnapshot();
+        assertEquals(100, cache.getMinX());
+        assertEquals(199, cache.getMaxX());
+        assertEquals(-1, cache.getMinY());
+        assertEquals(1, cache.getMaxY());
+    }
+
+    @Test
+    void widensTheExtentsByTheAppendedPoints() {
+        double[] xs = line(100);
+        double[] ys = new double[100];
+        Growing model = new Growing(xs, ys);
+        model.count = 50;
+        SeriesCache cache = new SeriesCache(model);
+        assertEquals(49, cache.getMaxX());
+        assertEquals(0, cache.getMaxY());
+
+        ys[10] = 100;
+        ys[60] = 50;
+        model.count = 70;
+        cache.pointsAppended(0, 20);
+        assertEquals(69, cache.getMaxX());
+        // Only the points appended were looked at.
+        assertEquals(50, cache.getMaxY());
+
+        // Dropping points might drop the extremes, so they're looked for
+        // again.
+        cache.pointsAppended(1, 0);
+        assertEquals(100, cache.getMaxY());
+        ys[10] = 0;
+        cache.invalidate();
+        assertEquals(50, cache.getMaxY());
+    }
+}
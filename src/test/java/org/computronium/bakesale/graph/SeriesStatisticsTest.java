@@ -0,0 +1,99 @@
+package org.computronium.bakesale.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the statistics of a series read in parallel pieces against those
+ * worked out by reading it straight through.
+ */
+class SeriesStatisticsTest {
+    /**
+     * Checks the statistics against the given points, read one by one.
+     */
+    private static void assertStatistics(double[] xs, double[] ys,
+                                         SeriesStatistics statistics) {
+        int nan_count = 0;
+        double min_x = Double.POSITIVE_INFINITY;
+        double max_x = Double.NEGATIVE_INFINITY;
+        double min_y = Double.POSITIVE_INFINITY;
+        double max_y = Double.NEGATIVE_INFINITY;
+        double sum_y = 0;
+        for (int i = 0; i < xs.length; i++) {
+            min_x = Math.min(min_x, xs[i]);
+            max_x = Math.max(max_x, xs[i]);
+            if (Double.isNaN(ys[i])) {
+                nan_count++;
+            } else {
+                min_y = Math.min(min_y, ys[i]);
+                max_y = Math.max(max_y, ys[i]);
+                sum_y += ys[i];
+            }
+        }
+        assertEquals(xs.length, statistics.getCount());
+        assertEquals(nan_count, statistics.getNaNCount());
+        assertEquals(min_x, statistics.getMinX());
+        assertEquals(max_x, statistics.getMaxX());
+        assertEquals(min_y, statistics.getMinY());
+        assertEquals(max_y, statistics.getMaxY());
+        // The pieces are added up in a different order.
+        double mean = sum_y / (xs.length - nan_count);
+        assertEquals(mean, statistics.getMeanY(), Math.abs(mean) * 1e-9);
+    }
+
+    @Test
+    void matchesAStraightReadInParallel() {
+        int count = GraphModels.PARALLEL_THRESHOLD * 5 + 17;
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        Random random = new Random(3);
+        for (int i = 0; i < count; i++) {
+            xs[i] = random.nextGaussian() * 100;
+            ys[i] = random.nextInt(50) == 0 ? Double.NaN : random.nextGaussian() + 2;
+        }
+        // Put the extremes at the ends, where the pieces start and stop.
+        xs[0] = -1000;
+        ys[count - 1] = 99;
+
+        GraphModel parallel = new GraphSnapshot(xs, ys, 0, count, Color.BLUE, new Object(), 0);
+        assertTrue(parallel instanceof ParallelGraphModel);
+        assertStatistics(xs, ys, SeriesStatistics.of(parallel));
+        assertStatistics(xs, ys, SeriesStatistics.of(new ArrayGraphModel(xs, ys, Color.BLUE)));
+    }
+
+    @Test
+    void readsASnapshot() {
+        ConcurrentGraphModel model = new ConcurrentGraphModel(100, Color.BLUE);
+        for (int i = 0; i < 150; i++) {
+            model.append(i, i % 7 == 0 ? Double.NaN : i);
+        }
+        SeriesStatistics statistics = SeriesStatistics.of(model);
+        assertEquals(100, statistics.getCount());
+        assertEquals(14, statistics.getNaNCount());
+        assertEquals(50, statistics.getMinX());
+        assertEquals(149, statistics.getMaxX());
+        assertEquals(50, statistics.getMinY());
+        assertEquals(149, statistics.getMaxY());
+    }
+
+    @Test
+    void hasNoExtentsWithoutPoints() {
+        SeriesStatistics statistics = SeriesStatistics.of(
+                new ArrayGraphModel(new double[0], new double[0], Color.BLUE));
+        assertEquals(0, statistics.getCount());
+        assertEquals(Double.POSITIVE_INFINITY, statistics.getMinX());
+        assertEquals(Double.NEGATIVE_INFINITY, statistics.getMaxY());
+        assertTrue(Double.isNaN(statistics.getMeanY()));
+
+        statistics = SeriesStatistics.of(new ArrayGraphModel(new double[]{1, 2},
+                new double[]{Double.NaN, Double.NaN}, Color.BLUE));
+        assertEquals(2, statistics.getNaNCount());
+        assertEquals(Double.POSITIVE_INFINITY, statistics.getMinY());
+        assertTrue(Double.isNaN(statistics.getMeanY()));
+    }
+}
@@ -0,0 +1,186 @@
+package org.computronium.bakesale.graph;
+
+import org.computronium.bakesale.metrics.RenderMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the binary search for the points in view, that a model which says
+ * its x values are sorted has only those points read, and that one which
+ * says so wrongly is still drawn properly.
+ */
+class SortedGraphModelTest {
+    /**
+     * A model over arrays which counts the points read from it.
+     */
+    private static class Counted implements GraphModel {
+        final double[] xs;
+
+        final double[] ys;
+
+        int xReads;
+
+        int yReads;
+
+        Counted(double[] xs, double[] ys) {
+            this.xs = xs;
+            this.ys = ys;
+        }
+
+        public int getPointCount() {
+            return xs.length;
+        }
+
+        public double getX(int index) {
+            xReads++;
+            return xs[index];
+        }
+
+        public double getY(int index) {
+            yReads++;
+            return ys[index];
+        }
+
+        public Color getColor() {
+            return Color.BLUE;
+        }
+    }
+
+    private static class SortedCounted extends Counted implements SortedGraphModel {
+        SortedCounted(double[] xs, double[] ys) {
+            super(xs, ys);
+        }
+    }
+
+    /**
+     * Keeps the counts of points drawn and left out at the last paint.
+     */
+    private static class PaintCounts implements RenderMetrics {
+        int drawn;
+
+        int skipped;
+
+        @Override
+        public void itemsPainted(int drawn, int skipped) {
+            this.drawn = drawn;
+            this.skipped = skipped;
+        }
+    }
+
+    private static BufferedImage paint(GraphRenderer renderer, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        renderer.layout(g, new Rectangle(0, 0, width, height));
+        renderer.paint(g);
+        g.dispose();
+        return image;
+    }
+
+    private static double[] line(int count) {
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = i;
+        }
+        return values;
+    }
+
+    @Test
+    void findsTheFirstPointAtLeast() {
+        double[] xs = {1, 2, 2, 2, 5, 7};
+        GraphModel model = new ArrayGraphModel(xs, new double[xs.length], Color.BLUE);
+        assertEquals(0, GraphModels.findFirstAtLeast(model, 6, Double.NEGATIVE_INFINITY));
+        assertEquals(0, GraphModels.findFirstAtLeast(model, 6, 1));
+        assertEquals(1, GraphModels.findFirstAtLeast(model, 6, 1.5));
+        assertEquals(1, GraphModels.findFirstAtLeast(model, 6, 2));
+        assertEquals(4, GraphModels.findFirstAtLeast(model, 6, Math.nextUp(2.0)));
+        assertEquals(5, GraphModels.findFirstAtLeast(model, 6, 7));
+        assertEquals(6, GraphModels.findFirstAtLeast(model, 6, 8));
+        // Only the first count points are searched.
+        assertEquals(4, GraphModels.findFirstAtLeast(model, 4, 5));
+        assertEquals(0, GraphModels.findFirstAtLeast(model, 0, 5));
+    }
+
+    @Test
+    void takesTheXExtentsFromTheEnds() {
+        double[] xs = line(10000);
+        double[] ys = new double[xs.length];
+        ys[5000] = 3;
+        ys[7000] = -2;
+        SortedCounted model = new SortedCounted(xs, ys);
+        SeriesCache cache = new SeriesCache(model);
+        assertEquals(0, cache.getMinX());
+        assertEquals(9999, cache.getMaxX());
+        assertEquals(-2, cache.getMinY());
+        assertEquals(3, cache.getMaxY());
+        assertEquals(2, model.xReads);
+        assertEquals(xs.length, model.yReads);
+        assertTrue(cache.isSorted());
+        assertEquals(2, model.xReads);
+    }
+
+    @Test
+    void readsOnlyThePointsInView() {
+        int count = 1000000;
+        double[] ys = new double[count];
+        for (int i = 0; i < count; i++) {
+            ys[i] = Math.sin(i * 0.01);
+        }
+        SortedCounted model = new SortedCounted(line(count), ys);
+        PaintCounts counts = new PaintCounts();
+        GraphRenderer renderer = new GraphRenderer();
+        renderer.setMetrics(counts);
+        renderer.addModel(model);
+        renderer.setViewport(new Rectangle2D.Double(500000, -1, 100, 2));
+        paint(renderer, 400, 300);
+        model.xReads = 0;
+        model.yReads = 0;
+        paint(renderer, 400, 300);
+
+        // Just the points in view and one either side are drawn, and apart
+        // from those only the few the searches look at are read.
+        assertEquals(103, counts.drawn);
+        assertEquals(0, counts.skipped);
+        assertTrue(model.xReads < counts.drawn + 200, "x read " + model.xReads + " times");
+        assertTrue(model.yReads < counts.drawn + 200, "y read " + model.yReads + " times");
+    }
+
+    @Test
+    void drawsAModelWronglySaidToBeSorted() {
+        // The ends are the smallest and largest x values, so the axes come
+        // out the same either way, but the points between are shuffled.
+        int count = 50000;
+        double[] xs = line(count);
+        double[] ys = new double[count];
+        Random random = new Random(1);
+        for (int i = count - 2; i > 1; i--) {
+            int j = 1 + random.nextInt(i);
+            double swap = xs[i];
+            xs[i] = xs[j];
+            xs[j] = swap;
+        }
+        for (int i = 0; i < count; i++) {
+            ys[i] = Math.sin(xs[i] * 0.001) + random.nextGaussian() * 0.1;
+        }
+
+        PaintCounts counts = new PaintCounts();
+        GraphRenderer renderer = new GraphRenderer();
+        renderer.setMetrics(counts);
+        renderer.addModel(new SortedCounted(xs, ys));
+        BufferedImage claimed = paint(renderer, 400, 300);
+        assertEquals(count, counts.drawn + counts.skipped);
+
+        renderer = new GraphRenderer();
+        renderer.addModel(new Counted(xs, ys));
+        BufferedImage actual = paint(renderer, 400, 300);
+        assertArrayEquals(actual.getRGB(0, 0, 400, 300, null, 0, 400),
+                claimed.getRGB(0, 0, 400, 300, null, 0, 400));
+    }
+}
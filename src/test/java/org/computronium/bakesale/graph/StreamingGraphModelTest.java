@@ -0,0 +1,110 @@
+package org.computronium.bakesale.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the extents kept by the monotonic queues match those of the
+ * points in the window, as points come and go.
+ */
+class StreamingGraphModelTest {
+    private static void assertExtents(StreamingGraphModel model) {
+        double min_x = Double.POSITIVE_INFINITY;
+        double max_x = Double.NEGATIVE_INFINITY;
+        double min_y = Double.POSITIVE_INFINITY;
+        double max_y = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < model.getPointCount(); i++) {
+            min_x = Math.min(min_x, model.getX(i));
+            max_x = Math.max(max_x, model.getX(i));
+            min_y = Math.min(min_y, model.getY(i));
+            max_y = Math.max(max_y, model.getY(i));
+        }
+        assertEquals(min_x, model.getMinX());
+        assertEquals(max_x, model.getMaxX());
+        assertEquals(min_y, model.getMinY());
+        assertEquals(max_y, model.getMaxY());
+    }
+
+    @Test
+    void extentsFollowTheWindow() {
+        Random random = new Random(1);
+        StreamingGraphModel model = new StreamingGraphModel(100, Color.BLUE);
+        for (int i = 0; i < 1000; i++) {
+            // Plenty of repeated values, to catch ties.
+            model.append(random.nextInt(50), random.nextInt(20) - 10);
+            assertEquals(Math.min(i + 1, 100), model.getPointCount());
+            assertExtents(model);
+        }
+    }
+
+    @Test
+    void extentsOfRisingAndFallingRuns() {
+        StreamingGraphModel model = new StreamingGraphModel(10, Color.BLUE);
+        for (int i = 0; i < 100; i++) {
+            // Up for 15, then down for 15, longer than the window each way.
+            int y = i % 30 < 15 ? i % 30 : 30 - i % 30;
+            model.append(i, y);
+            assertExtents(model);
+        }
+    }
+
+    @Test
+    void extentsAfterBulkAppend() {
+        Random random = new Random(2);
+        StreamingGraphModel model = new StreamingGraphModel(64, Color.BLUE);
+        for (int batch = 0; batch < 50; batch++) {
+            int count = random.nextInt(100);
+            double[] xs = new double[count];
+            double[] ys = new double[count];
+            for (int i = 0; i < count; i++) {
+                xs[i] = random.nextGaussian();
+                ys[i] = random.nextGaussian();
+            }
+            model.append(xs, ys, 0, count);
+            assertExtents(model);
+        }
+    }
+
+    @Test
+    void nanIsLeftOutOfTheExtents() {
+        StreamingGraphModel model = new StreamingGraphModel(4, Color.BLUE);
+        model.append(Double.NaN, Double.NaN);
+        assertTrue(Double.isNaN(model.getMinY()));
+        model.append(1, 5);
+        model.append(2, Double.NaN);
+        model.append(Double.NaN, -3);
+        assertEquals(1, model.getMinX());
+        assertEquals(2, model.getMaxX());
+        assertEquals(-3, model.getMinY());
+        assertEquals(5, model.getMaxY());
+
+        // The 5 and the 2 go, leaving only NaN x values and a -3.
+        model.append(Double.NaN, Double.NaN);
+        model.append(Double.NaN, Double.NaN);
+        model.append(Double.NaN, Double.NaN);
+        assertTrue(Double.isNaN(model.getMaxX()));
+        assertEquals(-3, model.getMaxY());
+    }
+
+    @Test
+    void noExtentsWhenEmpty() {
+        StreamingGraphModel model = new StreamingGraphModel(10, Color.BLUE);
+        assertTrue(Double.isNaN(model.getMinX()));
+        assertTrue(Double.isNaN(model.getMaxY()));
+        model.append(1, 2);
+        model.clear();
+        assertEquals(0, model.getPointCount());
+        assertTrue(Double.isNaN(model.getMinY()));
+        assertTrue(Double.isNaN(model.getMaxX()));
+
+        // And it carries on from there.
+        model.append(3, 4);
+        model.append(5, -6);
+        assertExtents(model);
+    }
+}
@@ -0,0 +1,93 @@
+package org.computronium.bakesale.piechart;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Checks that the biggest wedges are kept, in the model's order, and the
+ * rest lumped together.
+ */
+class OtherPieChartModelTest {
+    private static PieChartModel model(double... values) {
+        String[] names = new String[values.length];
+        Color[] colors = new Color[values.length];
+        for (int i = 0; i < values.length; i++) {
+            names[i] = "Wedge " + i;
+            colors[i] = new Color(i);
+        }
+        ConcurrentPieChartModel model = new ConcurrentPieChartModel();
+        model.setWedges(names, values, colors, new boolean[values.length]);
+        return model;
+    }
+
+    @Test
+    void keepsTheBiggestInOrder() {
+        PieChartModel source = model(5, 1, 9, 3, 7, 2, 8);
+        OtherPieChartModel other = OtherPieChartModel.aggregate(source, 3, 0, "Rest", Color.GRAY);
+        assertNotNull(other);
+        assertEquals(4, other.getCount());
+        assertEquals("Wedge 2", other.getName(0));
+        assertEquals("Wedge 4", other.getName(1));
+        assertEquals("Wedge 6", other.getName(2));
+        assertEquals(2, other.getModelIndex(0));
+        assertEquals(-1, other.getModelIndex(3));
+        assertEquals("Rest", other.getName(3));
+        assertEquals(Color.GRAY, other.getColor(3));
+        assertEquals(5 + 1 + 3 + 2, other.getValue(3));
+    }
+
+    @Test
+    void matchesSortingOnRandomValues() {
+        Random random = new Random(1);
+        double[] values = new double[5000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextDouble();
+        }
+        OtherPieChartModel other = OtherPieChartModel.aggregate(model(values), 50, 0, "Rest",
+                Color.GRAY);
+        assertNotNull(other);
+
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        double smallest_kept = sorted[sorted.length - 50];
+        double kept_total = 0;
+        int previous = -1;
+        for (int i = 0; i < 50; i++) {
+            int index = other.getModelIndex(i);
+            assertEquals(true, index > previous, "kept out of order");
+            assertEquals(true, values[index] >= smallest_kept, "kept a small wedge");
+            kept_total += values[index];
+            previous = index;
+        }
+        double total = 0;
+        for (double value : values) {
+            total += value;
+        }
+        assertEquals(total - kept_total, other.getValue(50), 1e-9);
+    }
+
+    @Test
+    void dropsWedgesUnderTheMinimumShare() {
+        // 1 and 2 are each under 5% of 100.
+        PieChartModel source = model(40, 1, 30, 2, 27);
+        OtherPieChartModel other = OtherPieChartModel.aggregate(source, 0, 5, "Rest", Color.GRAY);
+        assertNotNull(other);
+        assertEquals(4, other.getCount());
+        assertEquals(3, other.getValue(3));
+    }
+
+    @Test
+    void leavesModelsAloneWhenThereIsNothingToLump() {
+        assertNull(OtherPieChartModel.aggregate(model(1, 2, 3), 0, 0, "Rest", Color.GRAY));
+        // Lumping one wedge on its own into "Rest" would gain nothing.
+        assertNull(OtherPieChartModel.aggregate(model(1, 2, 3, 4), 3, 0, "Rest", Color.GRAY));
+        assertNull(OtherPieChartModel.aggregate(model(50, 49, 1), 0, 2, "Rest", Color.GRAY));
+    }
+}
@@ -0,0 +1,174 @@
+package org.computronium.bakesale.piechart;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the outlines of the wedges, and that laying the chart out again
+ * only marks the static layer as changed when the title or the legend
+ * would be drawn differently.
+ */
+class PieChartRendererTest {
+    private static ConcurrentPieChartModel model(double... values) {
+        String[] names = new String[values.length];
+        Color[] colors = new Color[values.length];
+        for (int i = 0; i < values.length; i++) {
+            names[i] = "Wedge " + i;
+            colors[i] = new Color(i);
+        }
+        ConcurrentPieChartModel model = new ConcurrentPieChartModel();
+        model.setWedges(names, values, colors, new boolean[values.length]);
+        return model;
+    }
+
+    @Test
+    void keepsTheStaticLayerWhileItLooksTheSame() {
+        BufferedImage image = new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        Rectangle bounds = new Rectangle(0, 0, 400, 300);
+        ConcurrentPieChartModel model = model(5, 1, 9, 3);
+        PieChartRenderer renderer = new PieChartRenderer();
+        renderer.setModel(model);
+        renderer.layout(g, bounds);
+        Object key = renderer.getStaticLayerKey();
+
+        // New values move the wedges but not the legend.
+        model.setWedges(new String[]{"Wedge 0", "Wedge 1", "Wedge 2", "Wedge 3"},
+                new double[]{1, 2, 3, 4},
+                new Color[]{new Color(0), new Color(1), new Color(2), new Color(3)},
+                new boolean[4]);
+        renderer.layout(g, bounds);
+        assertEquals(key, renderer.getStaticLayerKey());
+
+        // A new name does change it, as does new bounds.
+        model.setWedges(new String[]{"Wedge 0", "Wedge 1", "Wedge 2", "Renamed"},
+                new double[]{1, 2, 3, 4},
+                new Color[]{new Color(0), new Color(1), new Color(2), new Color(3)},
+                new boolean[4]);
+        renderer.layout(g, bounds);
+        assertNotEquals(key, renderer.getStaticLayerKey());
+        key = renderer.getStaticLayerKey();
+        renderer.layout(g, new Rectangle(0, 0, 500, 300));
+        assertNotEquals(key, renderer.getStaticLayerKey());
+        g.dispose();
+    }
+
+    private static PieChartRenderer layOut(PieChartModel model, int width, int height) {
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        PieChartRenderer renderer = new PieChartRenderer();
+        renderer.setModel(model);
+        renderer.layout(g, new Rectangle(0, 0, width, height));
+        g.dispose();
+        return renderer;
+    }
+
+    private static double area(Polygon polygon) {
+        double twice = 0;
+        for (int i = 0; i < polygon.npoints; i++) {
+            int j = (i + 1) % polygon.npoints;
+            twice += (double) polygon.xpoints[i] * polygon.ypoints[j]
+                    - (double) polygon.xpoints[j] * polygon.ypoints[i];
+        }
+        return Math.abs(twice) / 2;
+    }
+
+    @Test
+    void wedgesTileTheCircle() {
+        PieChartRenderer renderer = layOut(model(5, 1, 9, 3, 0.01, 7), 600, 400);
+        Polygon[] wedges = renderer.getWedges();
+        assertEquals(6, wedges.length);
+        int center_x = wedges[0].xpoints[0];
+        int center_y = wedges[0].ypoints[0];
+        double radius = Math.hypot(wedges[0].xpoints[1] - center_x,
+                wedges[0].ypoints[1] - center_y);
+        double total_area = 0;
+        for (int index = 0; index < wedges.length; index++) {
+            Polygon wedge = wedges[index];
+            assertEquals(center_x, wedge.xpoints[0]);
+            assertEquals(center_y, wedge.ypoints[0]);
+            // Every other point is on the circle, give or take rounding to
+            // whole pixels, here and in the radius.
+            for (int i = 1; i < wedge.npoints; i++) {
+                double distance = Math.hypot(wedge.xpoints[i] - center_x,
+                        wedge.ypoints[i] - center_y);
+                assertEquals(radius, distance, 3, "wedge " + index + " point " + i);
+            }
+            // Each starts where the one before ended, and the last goes
+            // back round to where the first started.
+            Polygon before = wedges[(index + wedges.length - 1) % wedges.length];
+            assertEquals(before.xpoints[before.npoints - 1], wedge.xpoints[1], 1);
+            assertEquals(before.ypoints[before.npoints - 1], wedge.ypoints[1], 1);
+            total_area += area(wedge);
+        }
+        assertEquals(Math.PI * radius * radius, total_area, Math.PI * radius * radius * 0.01);
+    }
+
+    @Test
+    void bigPiesHaveMorePoints() {
+        int small = 0;
+        for (Polygon wedge : layOut(model(1, 1, 1, 1), 200, 150).getWedges()) {
+            small += wedge.npoints;
+        }
+        int big = 0;
+        for (Polygon wedge : layOut(model(1, 1, 1, 1), 2000, 1500).getWedges()) {
+            big += wedge.npoints;
+        }
+        assertTrue(big > 2 * small, small + " points against " + big);
+    }
+
+    @Test
+    void findsTheWedgeAtAPoint() {
+        ConcurrentPieChartModel model = new ConcurrentPieChartModel();
+        model.setWedges(new String[]{"A", "B", "C", "D"}, new double[]{1, 1, 1, 1},
+                new Color[]{Color.RED, Color.GREEN, Color.BLUE, Color.BLACK},
+                new boolean[]{false, true, false, false});
+        PieChartRenderer renderer = layOut(model, 600, 400);
+        Polygon[] wedges = renderer.getWedges();
+        int center_x = wedges[0].xpoints[0];
+        int center_y = wedges[0].ypoints[0];
+        double radius = Math.hypot(wedges[0].xpoints[1] - center_x,
+                wedges[0].ypoints[1] - center_y);
+        for (int index = 0; index < 4; index++) {
+            // Halfway out along the middle of each wedge, which is a quarter
+            // turn, clockwise on screen from the positive x axis.
+            double angle = (index + 0.5) * Math.PI / 2;
+            int x = center_x + (int) (Math.cos(angle) * radius / 2);
+            int y = center_y + (int) (Math.sin(angle) * radius / 2);
+            if (index == 1) {
+                // Outset, so moved out further along the same line.
+                x += (int) (Math.cos(angle) * radius * 0.16);
+                y += (int) (Math.sin(angle) * radius * 0.16);
+            }
+            assertEquals(index, renderer.getWedgeAt(x, y), "wedge " + index);
+            assertTrue(wedges[index].contains(x, y), "wedge " + index);
+        }
+        assertEquals(-1, renderer.getWedgeAt(center_x + (int) radius * 2, center_y));
+    }
+
+    @Test
+    void keepsTheOutlinesWhileNothingMoves() {
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        ConcurrentPieChartModel model = model(5, 1, 9, 3);
+        PieChartRenderer renderer = new PieChartRenderer();
+        renderer.setModel(model);
+        renderer.layout(g, new Rectangle(0, 0, 400, 300));
+        Polygon[] wedges = renderer.getWedges();
+        renderer.layout(g, new Rectangle(0, 0, 400, 300));
+        assertSame(wedges, renderer.getWedges());
+        model.setWedges(new String[]{"a", "b", "c", "d"}, new double[]{5, 1, 9, 4},
+                new Color[]{Color.RED, Color.GREEN, Color.BLUE, Color.BLACK}, new boolean[4]);
+        renderer.layout(g, new Rectangle(0, 0, 400, 300));
+        assertNotSame(wedges, renderer.getWedges());
+        g.dispose();
+    }
+}
@@ -0,0 +1,170 @@
+package org.computronium.bakesale.render;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that every job is written or reported as failed, and that no more
+ * jobs are run, or taken from the stream, than there are contexts for.
+ */
+class BatchRendererTest {
+    /**
+     * Fills the chart with one color, keeping count of how many charts are
+     * being painted at once.
+     */
+    private static class FillRenderer implements ChartRenderer {
+        private final Color color;
+
+        private final AtomicInteger painting;
+
+        private final AtomicInteger mostPainting;
+
+        private Rectangle bounds;
+
+        FillRenderer(Color color, AtomicInteger painting, AtomicInteger mostPainting) {
+            this.color = color;
+            this.painting = painting;
+            this.mostPainting = mostPainting;
+        }
+
+        public void layout(Graphics2D g, Rectangle bounds) {
+            this.bounds = new Rectangle(bounds);
+        }
+
+        public Rectangle getBounds() {
+            return bounds;
+        }
+
+        public void paintStaticLayer(Graphics2D g) {
+        }
+
+        public void paintDataLayer(Graphics2D g) {
+            int now = painting.incrementAndGet();
+            mostPainting.accumulateAndGet(now, Math::max);
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            g.setColor(color);
+            g.fill(bounds);
+            painting.decrementAndGet();
+        }
+
+        public Object getStaticLayerKey() {
+            return color;
+        }
+    }
+
+    @Test
+    void writesEveryChart() throws Exception {
+        AtomicInteger painting = new AtomicInteger();
+        AtomicInteger most_painting = new AtomicInteger();
+        List<ByteArrayOutputStream> outputs = new ArrayList<>();
+        List<ChartJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            outputs.add(out);
+            // Sizes vary, so that the contexts' images are made afresh.
+            jobs.add(new ChartJob(new FillRenderer(new Color(i * 5, 0, 0), painting,
+                    most_painting), 20 + i % 3, 10, "png", () -> out));
+        }
+        BatchReport report;
+        try (BatchRenderer renderer = new BatchRenderer(3)) {
+            report = renderer.renderAll(jobs);
+        }
+        assertEquals(40, report.getRendered());
+        assertTrue(report.getFailures().isEmpty());
+        assertTrue(most_painting.get() <= 3, "painted " + most_painting + " at once");
+        for (int i = 0; i < 40; i++) {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(
+                    outputs.get(i).toByteArray()));
+            assertNotNull(image);
+            assertEquals(20 + i % 3, image.getWidth());
+            assertEquals(new Color(i * 5, 0, 0).getRGB(), image.getRGB(5, 5));
+        }
+    }
+
+    @Test
+    void reportsFailuresAndCarriesOn() throws Exception {
+        AtomicInteger painting = new AtomicInteger();
+        AtomicInteger most_painting = new AtomicInteger();
+        IOException problem = new IOException("disk full");
+        ChartJob failing = new ChartJob(new FillRenderer(Color.RED, painting, most_painting),
+                10, 10, "png", () -> {
+            throw problem;
+        });
+        ChartJob unknown_format = new ChartJob(new FillRenderer(Color.RED, painting,
+                most_painting), 10, 10, "no such format", ByteArrayOutputStream::new);
+        ChartJob fine = new ChartJob(new FillRenderer(Color.RED, painting, most_painting),
+                10, 10, "png", ByteArrayOutputStream::new);
+        BatchReport report;
+        try (BatchRenderer renderer = new BatchRenderer(2)) {
+            report = renderer.renderAll(Stream.of(failing, fine, unknown_format, fine));
+        }
+        assertEquals(2, report.getRendered());
+        assertEquals(2, report.getFailures().size());
+        for (BatchReport.Failure failure : report.getFailures()) {
+            if (failure.getJob() == failing) {
+                assertSame(problem, failure.getException());
+            } else {
+                assertSame(unknown_format, failure.getJob());
+            }
+        }
+    }
+
+    @Test
+    void onlyTakesJobsThereAreContextsFor() throws Exception {
+        AtomicInteger painting = new AtomicInteger();
+        AtomicInteger most_painting = new AtomicInteger();
+        AtomicInteger taken = new AtomicInteger();
+        AtomicInteger written = new AtomicInteger();
+        AtomicInteger most_ahead = new AtomicInteger();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try (BatchRenderer renderer = new BatchRenderer(executor, 2)) {
+            Stream<ChartJob> jobs = IntStream.range(0, 30).mapToObj(i -> {
+                most_ahead.accumulateAndGet(taken.incrementAndGet() - written.get(), Math::max);
+                return new ChartJob(new FillRenderer(Color.BLUE, painting, most_painting),
+                        10, 10, "png", () -> {
+                    written.incrementAndGet();
+                    return new ByteArrayOutputStream();
+                });
+            });
+            assertEquals(30, renderer.renderAll(jobs).getRendered());
+        } finally {
+            executor.shutdown();
+        }
+        // Two running, and the one waiting for a context to come free.
+        assertTrue(most_ahead.get() <= 3, most_ahead + " jobs taken ahead");
+        assertTrue(most_painting.get() <= 2, "painted " + most_painting + " at once");
+    }
+
+    @Test
+    void refusesWorkOnceClosed() {
+        BatchRenderer renderer = new BatchRenderer(1);
+        renderer.close();
+        renderer.close();
+        assertThrows(IllegalStateException.class, () -> renderer.renderAll(Stream.of(
+                new ChartJob(new FillRenderer(Color.RED, new AtomicInteger(),
+                        new AtomicInteger()), 10, 10, "png", ByteArrayOutputStream::new))));
+    }
+}
@@ -0,0 +1,160 @@
+package org.computronium.bakesale.render;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that requests for an update are coalesced, and that the update is
+ * never run more than once a frame.
+ */
+class RepaintSchedulerTest {
+    @Test
+    void coalescesABurstOfRequests() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        Semaphore ran = new Semaphore(0);
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        try (RepaintScheduler scheduler = new RepaintScheduler(10)) {
+            RepaintScheduler.Update update = scheduler.register(() -> {
+                thread.set(Thread.currentThread());
+                runs.incrementAndGet();
+                ran.release();
+            });
+            for (int i = 0; i < 1000; i++) {
+                update.request();
+            }
+            assertTrue(ran.tryAcquire(5, TimeUnit.SECONDS));
+            // The first request may have run straight away, leaving the rest
+            // for one more update a frame later, but no more.
+            Thread.sleep(400);
+        }
+        assertTrue(runs.get() <= 2, runs + " updates");
+        assertEquals("RepaintScheduler", thread.get().getName());
+        assertTrue(thread.get().isDaemon());
+    }
+
+    @Test
+    void runsNoMoreThanOnceAFrame() throws Exception {
+        List<Long> times = new ArrayList<>();
+        try (RepaintScheduler scheduler = new RepaintScheduler(20)) {
+            assertEquals(20, scheduler.getFramesPerSecond());
+            RepaintScheduler.Update update = scheduler.register(() -> {
+                synchronized (times) {
+                    times.add(System.nanoTime());
+                }
+            });
+            long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(600);
+            while (System.nanoTime() < end) {
+                update.request();
+                Thread.sleep(1);
+            }
+        }
+        synchronized (times) {
+            assertTrue(times.size() >= 5, times.size() + " updates");
+            assertTrue(times.size() <= 14, times.size() + " updates");
+            for (int i = 1; i < times.size(); i++) {
+                long gap = times.get(i) - times.get(i - 1);
+                assertTrue(gap >= TimeUnit.MILLISECONDS.toNanos(45), "gap of " + gap + "ns");
+            }
+        }
+    }
+
+    @Test
+    void holdsEachUpdateToTheFrameRateSeparately() throws Exception {
+        Semaphore ran = new Semaphore(0);
+        try (RepaintScheduler scheduler = new RepaintScheduler(1)) {
+            RepaintScheduler.Update first = scheduler.register(ran::release);
+            RepaintScheduler.Update second = scheduler.register(ran::release);
+            first.request();
+            assertTrue(ran.tryAcquire(5, TimeUnit.SECONDS));
+            // The first has to wait a second now, but the second needn't.
+            first.request();
+            second.request();
+            assertTrue(ran.tryAcquire(500, TimeUnit.MILLISECONDS));
+            assertFalse(ran.tryAcquire(300, TimeUnit.MILLISECONDS));
+            assertTrue(ran.tryAcquire(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void runsAgainForRequestsWhileRunning() throws Exception {
+        Semaphore started = new Semaphore(0);
+        Semaphore carryOn = new Semaphore(0);
+        AtomicInteger runs = new AtomicInteger();
+        try (RepaintScheduler scheduler = new RepaintScheduler(100)) {
+            RepaintScheduler.Update update = scheduler.register(() -> {
+                if (runs.incrementAndGet() == 1) {
+                    started.release();
+                    carryOn.acquireUninterruptibly();
+                }
+            });
+            update.request();
+            assertTrue(started.tryAcquire(5, TimeUnit.SECONDS));
+            update.request();
+            carryOn.release();
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (runs.get() < 2 && System.nanoTime() < end) {
+                Thread.sleep(5);
+            }
+        }
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void stopsWhenCancelledOrClosed() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        RepaintScheduler scheduler = new RepaintScheduler(100);
+        RepaintScheduler.Update cancelled = scheduler.register(runs::incrementAndGet);
+        cancelled.cancel();
+        cancelled.request();
+        RepaintScheduler.Update closed = scheduler.register(runs::incrementAndGet);
+        scheduler.close();
+        closed.request();
+        Thread.sleep(100);
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void carriesOnAfterAFailedUpdate() throws Exception {
+        Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+        List<Throwable> caught = new ArrayList<>();
+        Thread.setDefaultUncaughtExceptionHandler((thread, e) -> {
+            synchronized (caught) {
+                caught.add(e);
+            }
+        });
+        Semaphore ran = new Semaphore(0);
+        RuntimeException problem = new IllegalStateException("broken");
+        try (RepaintScheduler scheduler = new RepaintScheduler(100)) {
+            scheduler.register(() -> {
+                ran.release();
+                throw problem;
+            }).request();
+            assertTrue(ran.tryAcquire(5, TimeUnit.SECONDS));
+            scheduler.register(ran::release).request();
+            assertTrue(ran.tryAcquire(5, TimeUnit.SECONDS));
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(handler);
+        }
+        synchronized (caught) {
+            assertEquals(1, caught.size());
+            assertSame(problem, caught.get(0));
+        }
+    }
+
+    @Test
+    void needsAFrameRate() {
+        assertThrows(IllegalArgumentException.class, () -> new RepaintScheduler(0));
+    }
+}
@@ -0,0 +1,191 @@
+package org.computronium.bakesale.render;
+
+import org.computronium.bakesale.graph.ArrayGraphModel;
+import org.computronium.bakesale.graph.GraphRenderer;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the SVG and PDF written through VectorGraphics2D: that lines drawn
+ * a segment at a time are joined up, that clips are shared, and that the
+ * documents are well formed.
+ */
+class VectorExportTest {
+    private static int countOf(String text, String part) {
+        int count = 0;
+        for (int at = text.indexOf(part); at >= 0; at = text.indexOf(part, at + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static Document parse(byte[] svg) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(svg));
+    }
+
+    @Test
+    void formatsNumbers() {
+        StringBuilder sb = new StringBuilder();
+        VectorWriter.appendNumber(sb, 12);
+        sb.append(' ');
+        VectorWriter.appendNumber(sb, 0.5);
+        sb.append(' ');
+        VectorWriter.appendNumber(sb, -1.25);
+        sb.append(' ');
+        VectorWriter.appendNumber(sb, 3.0004);
+        sb.append(' ');
+        VectorWriter.appendNumber(sb, 0.0625);
+        sb.append(' ');
+        VectorWriter.appendNumber(sb, 2.007);
+        assertEquals("12 0.5 -1.25 3 0.063 2.007", sb.toString());
+    }
+
+    @Test
+    void joinsSegmentsIntoPolylines() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        VectorGraphics2D g = VectorExport.createSvgGraphics(out, 100, 100);
+        g.setColor(Color.RED);
+        for (int i = 0; i < 50; i++) {
+            g.drawLine(i, i % 7, i + 1, (i + 1) % 7);
+        }
+        // A change of color starts a new one, as does a gap.
+        g.setColor(Color.BLUE);
+        g.drawLine(0, 50, 10, 50);
+        g.drawLine(10, 50, 20, 60);
+        g.drawLine(30, 60, 40, 60);
+        g.finish();
+        String svg = out.toString("UTF-8");
+        assertEquals(3, countOf(svg, "<path"), svg);
+        assertTrue(svg.contains("d=\"M0 0L1 1L2 2"), svg);
+        assertTrue(svg.contains("d=\"M0 50L10 50L20 60\""), svg);
+        parse(out.toByteArray());
+    }
+
+    @Test
+    void sharesClipsAndEscapesText() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        VectorGraphics2D g = VectorExport.createSvgGraphics(out, 100, 100);
+        g.setClip(new Rectangle(10, 10, 50, 50));
+        g.fillRect(0, 0, 20, 20);
+        g.drawString("<a & b>", 15, 30);
+        g.setClip(new Rectangle(0, 0, 5, 5));
+        g.fillRect(0, 0, 20, 20);
+        // Equal to the first, though not the same object.
+        g.setClip(new Rectangle2D.Double(10, 10, 50, 50));
+        g.fillRect(0, 0, 20, 20);
+        g.setClip(null);
+        g.fillRect(0, 0, 20, 20);
+        g.finish();
+        String svg = out.toString("UTF-8");
+        assertEquals(2, countOf(svg, "<clipPath"), svg);
+        assertEquals(2, countOf(svg, "url(#clip1)"), svg);
+        assertEquals(3, countOf(svg, "<g "), svg);
+        assertTrue(svg.contains("&lt;a &amp; b&gt;"), svg);
+        Document document = parse(out.toByteArray());
+        assertEquals("<a & b>", document.getElementsByTagName("text").item(0).getTextContent());
+    }
+
+    @Test
+    void writesAWellFormedPdf() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        VectorGraphics2D g = VectorExport.createPdfGraphics(out, 200, 100);
+        g.setColor(Color.RED);
+        for (int i = 0; i < 10; i++) {
+            g.drawLine(i * 10, 0, i * 10 + 10, 50);
+            g.drawLine(i * 10 + 10, 50, i * 10 + 10, 0);
+        }
+        g.setClip(0, 0, 50, 50);
+        g.drawImage(new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB), 0, 0, null);
+        g.drawString("Hi", 20, 20);
+        g.finish();
+        String pdf = new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+        assertTrue(pdf.startsWith("%PDF-1.4\n"));
+        assertTrue(pdf.endsWith("%%EOF\n"));
+
+        // The cross reference table points at each object.
+        int xref = Integer.parseInt(pdf.substring(pdf.indexOf("startxref\n") + 10,
+                pdf.indexOf("\n%%EOF")));
+        assertTrue(pdf.startsWith("xref\n0 6\n", xref));
+        for (int object = 1; object <= 5; object++) {
+            int entry = xref + "xref\n0 6\n".length() + 20 * object;
+            int offset = Integer.parseInt(pdf.substring(entry, entry + 10));
+            assertTrue(pdf.startsWith(object + " 0 obj\n", offset), "object " + object);
+        }
+
+        // The stream is as long as object 5 says, and holds the lines as
+        // one path.
+        int start = pdf.indexOf("stream\n") + 7;
+        int end = pdf.indexOf("\nendstream");
+        int length_at = pdf.indexOf("5 0 obj\n") + 8;
+        assertEquals(end - start, Integer.parseInt(pdf.substring(length_at,
+                pdf.indexOf('\n', length_at))));
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(
+                out.toByteArray(), start, end - start))) {
+            byte[] buffer = new byte[4096];
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                content.write(buffer, 0, read);
+            }
+        }
+        String operators = new String(content.toByteArray(), StandardCharsets.ISO_8859_1);
+        assertTrue(operators.startsWith("1 0 0 -1 0 100 cm\nq\n"), operators);
+        assertTrue(operators.contains("0 0 m\n10 50 l\n10 0 l\n20 50 l\n"), operators);
+        assertTrue(operators.contains("100 50 l\n100 0 l\nS\n"), operators);
+        assertEquals(1, countOf(operators, "S\n"), operators);
+        assertTrue(operators.contains("BI /W 4 /H 4"), operators);
+        assertTrue(operators.endsWith("Q\n"), operators);
+    }
+
+    @Test
+    void exportsCharts() throws Exception {
+        GraphRenderer renderer = new GraphRenderer();
+        double[] xs = new double[1000];
+        double[] ys = new double[1000];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = i;
+            ys[i] = Math.sin(i / 50.0);
+        }
+        renderer.addModel(new ArrayGraphModel(xs, ys, Color.BLUE));
+        renderer.setTitle("Sine");
+
+        ByteArrayOutputStream svg = new ByteArrayOutputStream();
+        VectorExport.writeSvg(renderer, 400, 300, svg);
+        Document document = parse(svg.toByteArray());
+        assertEquals("400", document.getDocumentElement().getAttribute("width"));
+        assertTrue(svg.toString("UTF-8").contains(">Sine</text>"));
+
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        VectorExport.writePdf(renderer, 400, 300, pdf);
+        assertTrue(new String(pdf.toByteArray(), StandardCharsets.ISO_8859_1)
+                .contains("/MediaBox [0 0 400 300]"));
+    }
+
+    @Test
+    void passesOnWriteFailures() {
+        GraphRenderer renderer = new GraphRenderer();
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("broken");
+            }
+        };
+        assertThrows(IOException.class, () -> VectorExport.writeSvg(renderer, 100, 100, broken));
+        assertThrows(IOException.class, () -> VectorExport.writePdf(renderer, 100, 100, broken));
+    }
+}
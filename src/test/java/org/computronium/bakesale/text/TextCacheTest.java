@@ -0,0 +1,114 @@
+package org.computronium.bakesale.text;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.font.TextAttribute;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks which strings are kept, that the one least recently used is the
+ * one forgotten, and the counts of hits and misses.
+ */
+class TextCacheTest {
+    private static final String[] HEBREW = {"שלום", "עוגה", "לחם"};
+
+    private static FontMetrics metrics(Font font) {
+        Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+        try {
+            return g.getFontMetrics(font);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    @Test
+    void passesPlainTextStraightThrough() {
+        TextCache cache = new TextCache(10);
+        FontMetrics metrics = metrics(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+        assertEquals(metrics.stringWidth("Bake sale"), cache.stringWidth(metrics, "Bake sale"));
+        assertEquals(metrics.stringWidth(""), cache.stringWidth(metrics, ""));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+        assertEquals(0, cache.getHitRate());
+    }
+
+    @Test
+    void keepsTextWhichNeedsLayingOut() {
+        TextCache cache = new TextCache(10);
+        FontMetrics metrics = metrics(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+        int width = cache.stringWidth(metrics, HEBREW[0]);
+        assertEquals(metrics.stringWidth(HEBREW[0]), width, 1);
+        assertEquals(width, cache.stringWidth(metrics, HEBREW[0]));
+        assertEquals(1, cache.getSize());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate());
+
+        // Any text in a font with kerning needs laying out.
+        Font kerned = new Font(Font.SANS_SERIF, Font.PLAIN, 12).deriveFont(
+                Collections.singletonMap(TextAttribute.KERNING, TextAttribute.KERNING_ON));
+        cache.stringWidth(metrics(kerned), "AVATAR");
+        assertEquals(2, cache.getSize());
+        assertEquals(2, cache.getMissCount());
+
+        // The same string in another font is another entry.
+        cache.stringWidth(metrics(new Font(Font.SANS_SERIF, Font.BOLD, 14)), HEBREW[0]);
+        assertEquals(3, cache.getSize());
+        assertEquals(3, cache.getMissCount());
+
+        cache.resetStatistics();
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+        assertEquals(3, cache.getSize());
+        cache.clear();
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void forgetsTheLeastRecentlyUsed() {
+        TextCache cache = new TextCache(2);
+        FontMetrics metrics = metrics(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+        cache.stringWidth(metrics, HEBREW[0]);
+        cache.stringWidth(metrics, HEBREW[1]);
+        // Using the first makes the second the least recently used.
+        cache.stringWidth(metrics, HEBREW[0]);
+        cache.stringWidth(metrics, HEBREW[2]);
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+
+        cache.stringWidth(metrics, HEBREW[0]);
+        cache.stringWidth(metrics, HEBREW[2]);
+        assertEquals(3, cache.getHitCount());
+        cache.stringWidth(metrics, HEBREW[1]);
+        assertEquals(4, cache.getMissCount());
+        assertEquals(2, cache.getSize());
+    }
+
+    @Test
+    void drawsFromTheCache() {
+        TextCache cache = new TextCache(10);
+        BufferedImage image = new BufferedImage(100, 30, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+        cache.drawString(g, "plain", 5, 20);
+        assertEquals(0, cache.getMissCount());
+        cache.drawString(g, HEBREW[0], 5, 20);
+        cache.drawString(g, HEBREW[0], 5, 20);
+        g.dispose();
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void needsSomeCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new TextCache(0));
+        assertEquals(TextCache.DEFAULT_CAPACITY, TextCache.getShared().getCapacity());
+    }
+}